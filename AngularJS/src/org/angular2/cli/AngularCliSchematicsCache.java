@@ -0,0 +1,301 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angular2.cli;
+
+import com.google.gson.*;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.angular2.lang.Angular2LangUtil.ANGULAR_CLI_PACKAGE;
+
+/**
+ * On-disk cache of schematics loaded by Node for an Angular CLI project. An entry is valid as long as the fingerprint
+ * of the project matches, which covers the CLI config file, the versions of all schematic collection packages
+ * in {@code node_modules}, and the content of their {@code collection.json} and schema files. Computing the
+ * fingerprint only reads these files, so a valid entry is returned without starting Node, also after a restart
+ * or a {@code node_modules} change, which does not affect schematics.
+ */
+final class AngularCliSchematicsCache {
+
+  @NonNls private static final Logger LOG = Logger.getInstance(AngularCliSchematicsCache.class);
+  private static final int FORMAT_VERSION = 1;
+
+  @NonNls private static final String NODE_MODULES = "node_modules";
+  @NonNls private static final String PACKAGE_JSON = "package.json";
+  @NonNls private static final String NAME_PROP = "name";
+  @NonNls private static final String VERSION_PROP = "version";
+  @NonNls private static final String SCHEMATICS_PROP = "schematics";
+  @NonNls private static final String SCHEMA_PROP = "schema";
+  @NonNls private static final String FINGERPRINT_PROP = "fingerprint";
+  @NonNls private static final String FORMAT_VERSION_PROP = "formatVersion";
+  @NonNls private static final String LOAD_TIME_PROP = "loadTime";
+  @NonNls private static final List<String> CLI_JSON_NAMES = Arrays.asList("angular.json", ".angular-cli.json", "angular-cli.json");
+
+  private static final AngularCliSchematicsCache INSTANCE =
+    new AngularCliSchematicsCache(new File(PathManager.getSystemPath(), "angular-cli-schematics"));
+
+  private final File myCacheDir;
+  private final Gson myGson = new GsonBuilder().create();
+  private final AtomicInteger myHits = new AtomicInteger();
+  private final AtomicInteger myMisses = new AtomicInteger();
+  private volatile long myInvalidationTime;
+
+  AngularCliSchematicsCache(@NotNull File cacheDir) {
+    myCacheDir = cacheDir;
+  }
+
+  @NotNull
+  static AngularCliSchematicsCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns schematics stored for the project, if its fingerprint has not changed, otherwise runs the loader
+   * and stores its result.
+   */
+  @NotNull
+  List<Schematic> getSchematics(@NotNull File cliDir, boolean includeHidden, @NotNull Supplier<List<Schematic>> loader) {
+    long start = System.currentTimeMillis();
+    String fingerprint = computeFingerprint(cliDir, includeHidden);
+    File cacheFile = getCacheFile(cliDir, includeHidden);
+    if (fingerprint != null) {
+      List<Schematic> cached = read(cacheFile, fingerprint);
+      if (cached != null) {
+        myHits.incrementAndGet();
+        LOG.info("Angular CLI schematics cache hit for " + cliDir + " in " + (System.currentTimeMillis() - start) + " ms");
+        return cached;
+      }
+    }
+    myMisses.incrementAndGet();
+    long loadStart = System.currentTimeMillis();
+    // a load started right after an invalidation is always newer than it
+    long loadTime = Math.max(loadStart, myInvalidationTime + 1);
+    List<Schematic> schematics = loader.get();
+    LOG.info("Angular CLI schematics cache miss for " + cliDir + ", fingerprint computed in " + (loadStart - start) +
+             " ms, schematics loaded in " + (System.currentTimeMillis() - loadStart) + " ms");
+    if (fingerprint != null && !schematics.isEmpty()) {
+      write(cacheFile, fingerprint, loadTime, schematics);
+    }
+    return schematics;
+  }
+
+  /**
+   * Makes all stored entries invalid, so schematics are loaded by Node again on the next request.
+   */
+  void invalidate() {
+    myInvalidationTime = System.currentTimeMillis();
+  }
+
+  int getHitCount() {
+    return myHits.get();
+  }
+
+  int getMissCount() {
+    return myMisses.get();
+  }
+
+  @NotNull
+  private File getCacheFile(@NotNull File cliDir, boolean includeHidden) {
+    String name = StringUtil.toHexString(digest(cliDir.getAbsolutePath().getBytes(StandardCharsets.UTF_8)));
+    return new File(myCacheDir, name + (includeHidden ? "-all" : "") + ".json");
+  }
+
+  @Nullable
+  private List<Schematic> read(@NotNull File cacheFile, @NotNull String fingerprint) {
+    if (!cacheFile.isFile()) {
+      return null;
+    }
+    try (InputStreamReader reader = new InputStreamReader(new FileInputStream(cacheFile), StandardCharsets.UTF_8)) {
+      JsonObject entry = new JsonParser().parse(reader).getAsJsonObject();
+      // entries loaded before an invalidation are stale, even if the fingerprint matches
+      if (entry.get(FORMAT_VERSION_PROP).getAsInt() != FORMAT_VERSION
+          || entry.get(LOAD_TIME_PROP).getAsLong() <= myInvalidationTime
+          || !fingerprint.equals(entry.get(FINGERPRINT_PROP).getAsString())) {
+        return null;
+      }
+      Type listType = new TypeToken<ArrayList<Schematic>>() {
+      }.getType();
+      List<Schematic> schematics = myGson.fromJson(entry.get(SCHEMATICS_PROP), listType);
+      return schematics != null ? Collections.unmodifiableList(schematics) : null;
+    }
+    catch (IOException | RuntimeException e) {
+      LOG.info("Failed to read Angular CLI schematics cache " + cacheFile, e);
+      return null;
+    }
+  }
+
+  private void write(@NotNull File cacheFile, @NotNull String fingerprint, long loadTime, @NotNull List<Schematic> schematics) {
+    JsonObject entry = new JsonObject();
+    entry.addProperty(FORMAT_VERSION_PROP, FORMAT_VERSION);
+    entry.addProperty(LOAD_TIME_PROP, loadTime);
+    entry.addProperty(FINGERPRINT_PROP, fingerprint);
+    entry.add(SCHEMATICS_PROP, myGson.toJsonTree(schematics));
+    try {
+      // write to a temporary file first, so a concurrent read never sees a partial entry
+      File tempFile = new File(cacheFile.getPath() + ".tmp");
+      FileUtil.writeToFile(tempFile, myGson.toJson(entry));
+      FileUtil.rename(tempFile, cacheFile);
+    }
+    catch (IOException e) {
+      LOG.info("Failed to write Angular CLI schematics cache " + cacheFile, e);
+    }
+  }
+
+  /**
+   * @return fingerprint of everything the Node schematics provider reads, or {@code null}
+   * if the project has no {@code node_modules} or its files cannot be read
+   */
+  @Nullable
+  static String computeFingerprint(@NotNull File cliDir, boolean includeHidden) {
+    File nodeModules = new File(cliDir, NODE_MODULES);
+    if (!nodeModules.isDirectory()) {
+      return null;
+    }
+    try {
+      MessageDigest digest = createDigest();
+      update(digest, FORMAT_VERSION + ":" + includeHidden);
+      for (String name : CLI_JSON_NAMES) {
+        File cliJson = new File(cliDir, name);
+        if (cliJson.isFile()) {
+          update(digest, name);
+          digest.update(FileUtil.loadFileBytes(cliJson));
+        }
+      }
+      for (File packageDir : listPackages(nodeModules)) {
+        updateWithPackage(digest, packageDir);
+      }
+      return StringUtil.toHexString(digest.digest());
+    }
+    catch (IOException | RuntimeException e) {
+      LOG.info("Failed to compute Angular CLI schematics fingerprint for " + cliDir, e);
+      return null;
+    }
+  }
+
+  // the same packages the schematics provider looks at, in a stable order
+  @NotNull
+  private static List<File> listPackages(@NotNull File nodeModules) {
+    List<File> result = new ArrayList<>();
+    for (File dir : listSortedDirs(nodeModules)) {
+      if (dir.getName().startsWith("@")) {
+        result.addAll(listSortedDirs(dir));
+      }
+      else {
+        result.add(dir);
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  private static List<File> listSortedDirs(@NotNull File dir) {
+    File[] children = dir.listFiles(File::isDirectory);
+    if (children == null) {
+      return Collections.emptyList();
+    }
+    Arrays.sort(children, Comparator.comparing(File::getName));
+    return Arrays.asList(children);
+  }
+
+  private static void updateWithPackage(@NotNull MessageDigest digest, @NotNull File packageDir) throws IOException {
+    File packageJson = new File(packageDir, PACKAGE_JSON);
+    if (!packageJson.isFile()) {
+      return;
+    }
+    String name = null;
+    String version = null;
+    String schematics = null;
+    try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(packageJson), StandardCharsets.UTF_8))) {
+      reader.setLenient(true);
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String key = reader.nextName();
+        if (NAME_PROP.equals(key) || VERSION_PROP.equals(key) || SCHEMATICS_PROP.equals(key)) {
+          JsonElement value = new JsonParser().parse(reader);
+          String text = value.isJsonPrimitive() ? value.getAsString() : null;
+          if (NAME_PROP.equals(key)) {
+            name = text;
+          }
+          else if (VERSION_PROP.equals(key)) {
+            version = text;
+          }
+          else {
+            schematics = text;
+          }
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+    }
+    if (schematics == null && !ANGULAR_CLI_PACKAGE.equals(name)) {
+      return;
+    }
+    update(digest, packageDir.getName() + "|" + name + "@" + version);
+    if (schematics != null) {
+      updateWithCollection(digest, new File(packageDir, schematics).getCanonicalFile());
+    }
+  }
+
+  private static void updateWithCollection(@NotNull MessageDigest digest, @NotNull File collectionJson) throws IOException {
+    if (!collectionJson.isFile()) {
+      update(digest, "missing");
+      return;
+    }
+    byte[] content = FileUtil.loadFileBytes(collectionJson);
+    digest.update(content);
+    JsonElement collection = new JsonParser().parse(new String(content, StandardCharsets.UTF_8));
+    JsonElement schematics = collection.isJsonObject() ? collection.getAsJsonObject().get(SCHEMATICS_PROP) : null;
+    if (schematics == null || !schematics.isJsonObject()) {
+      return;
+    }
+    for (Map.Entry<String, JsonElement> schematic : schematics.getAsJsonObject().entrySet()) {
+      JsonElement schema = schematic.getValue().isJsonObject() ? schematic.getValue().getAsJsonObject().get(SCHEMA_PROP) : null;
+      if (schema != null && schema.isJsonPrimitive()) {
+        File schemaFile = new File(collectionJson.getParentFile(), schema.getAsString());
+        update(digest, schematic.getKey());
+        if (schemaFile.isFile()) {
+          digest.update(FileUtil.loadFileBytes(schemaFile));
+        }
+      }
+    }
+  }
+
+  private static void update(@NotNull MessageDigest digest, @NotNull String text) {
+    digest.update(text.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte)0);
+  }
+
+  @NotNull
+  private static byte[] digest(@NotNull byte[] bytes) {
+    return createDigest().digest(bytes);
+  }
+
+  @NotNull
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
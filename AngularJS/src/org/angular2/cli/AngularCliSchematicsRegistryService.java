@@ -55,6 +55,8 @@ public abstract class AngularCliSchematicsRegistryService {
   /**
    * Loads schematics available in a particular location. The results are cached
    * and recalculated on every change of package.json in any node_modules directory.
+   * Recalculation reuses schematics persisted on disk, unless versions of schematic
+   * collections or their schemas have changed.
    */
   @NotNull
   public abstract Collection<Schematic> getSchematics(@NotNull Project project,
@@ -63,7 +65,7 @@ public abstract class AngularCliSchematicsRegistryService {
                                                       boolean logErrors);
 
   /**
-   * Clears cache for getSchematics method
+   * Clears cache for getSchematics method, including schematics persisted on disk
    */
   public abstract void clearProjectSchematicsCache();
 
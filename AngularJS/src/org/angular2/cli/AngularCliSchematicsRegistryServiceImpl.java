@@ -16,6 +16,7 @@ import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.*;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
@@ -119,8 +120,10 @@ public class AngularCliSchematicsRegistryServiceImpl extends AngularCliSchematic
       .map(angularJson -> ReadAction.compute(() -> PsiManager.getInstance(project).findFile(angularJson)))
       .map(angularJson -> getCachedSchematics(angularJson, includeHidden ? SCHEMATICS_ALL : SCHEMATICS_PUBLIC).getUpToDateOrCompute(
         () -> CachedValueProvider.Result.create(
-          SchematicsLoaderKt.doLoad(angularJson.getProject(),
-                                    angularJson.getVirtualFile().getParent(), includeHidden, logErrors),
+          AngularCliSchematicsCache.getInstance().getSchematics(
+            VfsUtilCore.virtualToIoFile(angularJson.getVirtualFile().getParent()), includeHidden,
+            () -> SchematicsLoaderKt.doLoad(angularJson.getProject(),
+                                            angularJson.getVirtualFile().getParent(), includeHidden, logErrors)),
           NodeModulesDirectoryManager.getInstance(angularJson.getProject()).getNodeModulesDirChangeTracker(),
           SCHEMATICS_CACHE_TRACKER,
           angularJson)))
@@ -129,6 +132,7 @@ public class AngularCliSchematicsRegistryServiceImpl extends AngularCliSchematic
 
   @Override
   public void clearProjectSchematicsCache() {
+    AngularCliSchematicsCache.getInstance().invalidate();
     SCHEMATICS_CACHE_TRACKER.incModificationCount();
   }
 
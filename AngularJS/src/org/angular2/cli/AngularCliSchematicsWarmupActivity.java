@@ -0,0 +1,43 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angular2.cli;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.startup.StartupActivity;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Loads schematics of Angular CLI projects in content roots on project open, so "Generate Angular code"
+ * finds them in memory. Schematics persisted on disk are reused without starting Node, if still valid.
+ */
+public class AngularCliSchematicsWarmupActivity implements StartupActivity.Background {
+
+  @NonNls private static final Logger LOG = Logger.getInstance(AngularCliSchematicsWarmupActivity.class);
+
+  @Override
+  public void runActivity(@NotNull Project project) {
+    if (ApplicationManager.getApplication().isUnitTestMode()) {
+      return;
+    }
+    List<VirtualFile> cliFolders = ReadAction.compute(() -> ContainerUtil.filter(
+      ProjectRootManager.getInstance(project).getContentRoots(),
+      root -> AngularCliUtil.findCliJson(root) != null && AngularCliUtil.hasAngularCLIPackageInstalled(project, root)));
+    for (VirtualFile cliFolder : cliFolders) {
+      if (project.isDisposed()) {
+        return;
+      }
+      long start = System.currentTimeMillis();
+      int count = AngularCliSchematicsRegistryService.getInstance().getSchematics(project, cliFolder, false, false).size();
+      LOG.info("Loaded " + count + " Angular CLI schematics for " + cliFolder.getPath() +
+               " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+  }
+}
@@ -25,6 +25,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.intellij.openapi.util.Pair.pair;
 import static com.intellij.openapi.util.Trinity.create;
@@ -33,12 +34,14 @@ import static com.intellij.util.containers.ContainerUtil.exists;
 import static com.intellij.util.containers.ContainerUtil.filter;
 
 /**
- * Objects of this class should not be cached or stored. It is intended for single use.
+ * Objects of this class should not be cached or stored, except for the instance shared through
+ * {@link Angular2TemplateAnalysis}, which lives until the next PSI modification.
  */
 public class Angular2DeclarationsScope {
 
   private final NotNullLazyValue<Trinity<Angular2Module, Set<Angular2Declaration>, Boolean>> myScope;
-  private final Map<Project, MultiMap<Angular2Declaration, Angular2Module>> myExport2NgModuleMap = new HashMap<>();
+  private final Map<Project, MultiMap<Angular2Declaration, Angular2Module>> myExport2NgModuleMap = new ConcurrentHashMap<>();
+  private final Map<Angular2Declaration, DeclarationProximity> myProximities = new ConcurrentHashMap<>();
   private final NotNullLazyValue<ProjectFileIndex> myFileIndex;
 
   public Angular2DeclarationsScope(@NotNull PsiElement element) {
@@ -92,6 +95,16 @@ public class Angular2DeclarationsScope {
 
   @NotNull
   public DeclarationProximity getDeclarationProximity(@NotNull Angular2Declaration declaration) {
+    DeclarationProximity result = myProximities.get(declaration);
+    if (result == null) {
+      result = computeDeclarationProximity(declaration);
+      myProximities.put(declaration, result);
+    }
+    return result;
+  }
+
+  @NotNull
+  private DeclarationProximity computeDeclarationProximity(@NotNull Angular2Declaration declaration) {
     if (contains(declaration)) {
       return DeclarationProximity.IN_SCOPE;
     }
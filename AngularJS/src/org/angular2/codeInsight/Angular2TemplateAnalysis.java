@@ -0,0 +1,89 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angular2.codeInsight;
+
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptClass;
+import com.intellij.openapi.util.AtomicNullableLazyValue;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.psi.xml.XmlTag;
+import org.angular2.codeInsight.attributes.Angular2ApplicableDirectivesProvider;
+import org.angular2.index.Angular2IndexingHandler;
+import org.angular2.lang.expr.psi.Angular2TemplateBindings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Analysis of a template file shared by inspections, attribute and tag descriptors and type evaluation.
+ * Directives applicable to tags and template bindings, as well as the component class and the declarations
+ * scope with proximity of declarations, are computed once per element and reused until the next PSI modification,
+ * which covers changes of the template, its component and any module. Types shared by expressions of the template
+ * are kept in {@link Angular2TemplateTypeCache}.
+ */
+public final class Angular2TemplateAnalysis {
+
+  private final Angular2DeclarationsScope myScope;
+  private final AtomicNullableLazyValue<TypeScriptClass> myComponentClass;
+  private final Map<XmlTag, Angular2ApplicableDirectivesProvider> myTagDirectives = new ConcurrentHashMap<>();
+  private final Map<XmlTag, Angular2ApplicableDirectivesProvider> myTagNameDirectives = new ConcurrentHashMap<>();
+  private final Map<Angular2TemplateBindings, Angular2ApplicableDirectivesProvider> myBindingsDirectives = new ConcurrentHashMap<>();
+
+  private Angular2TemplateAnalysis(@NotNull PsiFile file) {
+    myScope = new Angular2DeclarationsScope(file);
+    myComponentClass = AtomicNullableLazyValue.createValue(() -> Angular2IndexingHandler.findComponentClass(file));
+  }
+
+  @NotNull
+  public static Angular2TemplateAnalysis get(@NotNull PsiElement element) {
+    PsiFile file = element.getContainingFile();
+    return CachedValuesManager.getCachedValue(file, () -> CachedValueProvider.Result.create(
+      new Angular2TemplateAnalysis(file), PsiModificationTracker.MODIFICATION_COUNT));
+  }
+
+  @NotNull
+  public Angular2DeclarationsScope getDeclarationsScope() {
+    return myScope;
+  }
+
+  @Nullable
+  public TypeScriptClass getComponentClass() {
+    return myComponentClass.getValue();
+  }
+
+  @NotNull
+  public Angular2ApplicableDirectivesProvider getApplicableDirectives(@NotNull XmlTag tag) {
+    return getOrCompute(myTagDirectives, tag, t -> new Angular2ApplicableDirectivesProvider(t));
+  }
+
+  @NotNull
+  public Angular2ApplicableDirectivesProvider getApplicableDirectives(@NotNull XmlTag tag, boolean onlyMatchingTagName) {
+    return onlyMatchingTagName
+           ? getOrCompute(myTagNameDirectives, tag, t -> new Angular2ApplicableDirectivesProvider(t, true))
+           : getApplicableDirectives(tag);
+  }
+
+  @NotNull
+  public Angular2ApplicableDirectivesProvider getApplicableDirectives(@NotNull Angular2TemplateBindings bindings) {
+    return getOrCompute(myBindingsDirectives, bindings, b -> new Angular2ApplicableDirectivesProvider(b));
+  }
+
+  // matching may request results for other elements, so the value is computed outside of the map
+  @NotNull
+  static <K, V> V getOrCompute(@NotNull Map<K, V> map, @NotNull K key, @NotNull Function<K, V> computation) {
+    V result = map.get(key);
+    if (result == null) {
+      result = computation.apply(key);
+      V existing = map.putIfAbsent(key, result);
+      if (existing != null) {
+        result = existing;
+      }
+    }
+    return result;
+  }
+}
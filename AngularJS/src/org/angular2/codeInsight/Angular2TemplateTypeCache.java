@@ -0,0 +1,172 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angular2.codeInsight;
+
+import com.intellij.lang.javascript.psi.JSParameter;
+import com.intellij.lang.javascript.psi.JSPsiElementBase;
+import com.intellij.lang.javascript.psi.JSType;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptClass;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
+import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunctionSignature;
+import com.intellij.lang.javascript.psi.resolve.JSResolveResult;
+import com.intellij.lang.javascript.psi.types.JSGenericTypeImpl;
+import com.intellij.lang.javascript.psi.types.TypeScriptTypeParser;
+import com.intellij.lang.javascript.psi.util.JSClassUtils;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.NotNullLazyValue;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.ResolveResult;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.util.ObjectUtils;
+import com.intellij.util.containers.ContainerUtil;
+import one.util.streamex.StreamEx;
+import org.angular2.entities.Angular2EntitiesProvider;
+import org.angular2.entities.Angular2Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.angular2.codeInsight.Angular2TemplateAnalysis.getOrCompute;
+import static org.angular2.entities.Angular2EntityUtils.TEMPLATE_REF;
+
+/**
+ * Types of a template file shared by all its bindings and expressions. The cache is stored on the template
+ * file and kept until a class in the hierarchy of its component changes, or until another component starts
+ * using the template, so members of the component are resolved once, also across edits of the template.
+ * Template context types of structural directives and pipe transforms depend on directives, pipes and modules,
+ * so they are kept until the next PSI modification.
+ */
+public final class Angular2TemplateTypeCache {
+
+  private static final Key<CachedValue<Angular2TemplateTypeCache>> CACHE_KEY = new Key<>("angular2.templateTypeCache");
+
+  @Nullable private final TypeScriptClass myComponentClass;
+  private final NotNullLazyValue<List<Angular2ComponentPropertyResolveResult>> myComponentMembers;
+  private final CachedValue<ScopeTypes> myScopeTypes;
+
+  private Angular2TemplateTypeCache(@NotNull PsiFile file, @Nullable TypeScriptClass componentClass) {
+    myComponentClass = componentClass;
+    myComponentMembers = NotNullLazyValue.createValue(
+      () -> componentClass != null ? buildComponentMembers(componentClass) : Collections.emptyList());
+    myScopeTypes = CachedValuesManager.getManager(file.getProject()).createCachedValue(
+      () -> CachedValueProvider.Result.create(new ScopeTypes(), PsiModificationTracker.MODIFICATION_COUNT), false);
+  }
+
+  @NotNull
+  public static Angular2TemplateTypeCache get(@NotNull PsiElement element) {
+    PsiFile file = element.getContainingFile();
+    TypeScriptClass componentClass = Angular2TemplateAnalysis.get(file).getComponentClass();
+    CachedValue<Angular2TemplateTypeCache> cachedValue = file.getUserData(CACHE_KEY);
+    Angular2TemplateTypeCache cache = cachedValue != null ? cachedValue.getValue() : null;
+    if (cache == null || cache.myComponentClass != componentClass) {
+      // another component may start using the template without a change of the cached one
+      cachedValue = CachedValuesManager.getManager(file.getProject()).createCachedValue(() -> {
+        TypeScriptClass clazz = Angular2TemplateAnalysis.get(file).getComponentClass();
+        return CachedValueProvider.Result.create(new Angular2TemplateTypeCache(file, clazz), getDependencies(clazz));
+      }, false);
+      cache = cachedValue.getValue();
+      file.putUserData(CACHE_KEY, cachedValue);
+    }
+    return cache;
+  }
+
+  @Nullable
+  public TypeScriptClass getComponentClass() {
+    return myComponentClass;
+  }
+
+  /**
+   * @return resolve results for all members of the component class, including inherited ones
+   */
+  @NotNull
+  public List<Angular2ComponentPropertyResolveResult> getComponentMembers() {
+    return myComponentMembers.getValue();
+  }
+
+  /**
+   * @return type of the context of {@code TemplateRef} injected into the constructor of a structural directive,
+   * before generic arguments of the directive are applied
+   */
+  @Nullable
+  public JSType getTemplateContextType(@NotNull TypeScriptClass directiveClass) {
+    return getOrCompute(myScopeTypes.getValue().myTemplateContextTypes, directiveClass,
+                        clazz -> Optional.ofNullable(buildTemplateContextType(clazz)))
+      .orElse(null);
+  }
+
+  /**
+   * @return transform methods, or the class of the pipe with the given name, which is in scope of the template
+   */
+  public ResolveResult @NotNull [] resolvePipe(@NotNull PsiElement context, @NotNull String name) {
+    return getOrCompute(myScopeTypes.getValue().myPipes, name, pipeName -> doResolvePipe(context, pipeName));
+  }
+
+  @NotNull
+  private static Object[] getDependencies(@Nullable TypeScriptClass componentClass) {
+    if (componentClass == null) {
+      // any change may assign a component to the template
+      return new Object[]{PsiModificationTracker.MODIFICATION_COUNT};
+    }
+    Set<Object> dependencies = new HashSet<>();
+    JSClassUtils.processClassesInHierarchy(componentClass, true, (aClass, typeSubstitutor, fromImplements) -> {
+      dependencies.add(aClass);
+      return true;
+    });
+    return dependencies.toArray();
+  }
+
+  @NotNull
+  private static List<Angular2ComponentPropertyResolveResult> buildComponentMembers(@NotNull TypeScriptClass componentClass) {
+    return StreamEx.of(TypeScriptTypeParser
+                         .buildTypeFromClass(componentClass, false)
+                         .getProperties())
+      .mapToEntry(prop -> prop.getMemberSource().getAllSourceElements())
+      .flatMapValues(Collection::stream)
+      .selectValues(JSPsiElementBase.class)
+      .filterValues(el -> !(el instanceof TypeScriptFunctionSignature))
+      .filterValues(el -> !(el instanceof TypeScriptFunction) || !((TypeScriptFunction)el).isOverloadImplementation())
+      .map(entry -> new Angular2ComponentPropertyResolveResult(entry.getValue(), entry.getKey()))
+      .toImmutableList();
+  }
+
+  @Nullable
+  private static JSType buildTemplateContextType(@NotNull TypeScriptClass clazz) {
+    JSType templateRefType = null;
+    for (TypeScriptFunction fun : clazz.getConstructors()) {
+      for (JSParameter param : fun.getParameterVariables()) {
+        if (param.getJSType() != null && param.getJSType().getTypeText().startsWith(TEMPLATE_REF + "<")) {
+          templateRefType = param.getJSType();
+          break;
+        }
+      }
+    }
+    if (!(templateRefType instanceof JSGenericTypeImpl)) {
+      return null;
+    }
+    return ContainerUtil.getFirstItem(((JSGenericTypeImpl)templateRefType).getArguments());
+  }
+
+  private static ResolveResult @NotNull [] doResolvePipe(@NotNull PsiElement context, @NotNull String name) {
+    Angular2DeclarationsScope scope = Angular2TemplateAnalysis.get(context).getDeclarationsScope();
+    Angular2Pipe pipe = ContainerUtil.find(Angular2EntitiesProvider.findPipes(context.getProject(), name),
+                                           scope::contains);
+    if (pipe == null) {
+      return ResolveResult.EMPTY_ARRAY;
+    }
+    if (!pipe.getTransformMethods().isEmpty()) {
+      return ContainerUtil.map2Array(pipe.getTransformMethods(), ResolveResult.EMPTY_ARRAY,
+                                     JSResolveResult::new);
+    }
+    return new ResolveResult[]{new JSResolveResult(ObjectUtils.notNull(pipe.getTypeScriptClass(), pipe.getSourceElement()))};
+  }
+
+  private static final class ScopeTypes {
+    private final Map<TypeScriptClass, Optional<JSType>> myTemplateContextTypes = new ConcurrentHashMap<>();
+    private final Map<String, ResolveResult[]> myPipes = new ConcurrentHashMap<>();
+  }
+}
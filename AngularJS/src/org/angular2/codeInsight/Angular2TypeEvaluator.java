@@ -4,12 +4,12 @@ package org.angular2.codeInsight;
 import com.intellij.lang.javascript.ecmascript6.TypeScriptTypeEvaluator;
 import com.intellij.lang.javascript.psi.*;
 import com.intellij.lang.javascript.psi.ecma6.TypeScriptClass;
-import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
 import com.intellij.lang.javascript.psi.resolve.JSEvaluateContext;
 import com.intellij.lang.javascript.psi.resolve.JSGenericMappings;
 import com.intellij.lang.javascript.psi.resolve.JSGenericTypesEvaluatorBase;
 import com.intellij.lang.javascript.psi.resolve.JSTypeProcessor;
 import com.intellij.lang.javascript.psi.types.*;
+import com.intellij.openapi.util.AtomicNullableLazyValue;
 import com.intellij.openapi.util.Pair;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.ResolveResult;
@@ -29,7 +29,6 @@ import org.angular2.codeInsight.attributes.Angular2ApplicableDirectivesProvider;
 import org.angular2.codeInsight.attributes.Angular2AttributeDescriptor;
 import org.angular2.entities.Angular2Directive;
 import org.angular2.entities.Angular2DirectiveProperty;
-import org.angular2.index.Angular2IndexingHandler;
 import org.angular2.lang.expr.psi.Angular2Binding;
 import org.angular2.lang.expr.psi.Angular2EmbeddedExpression;
 import org.angular2.lang.expr.psi.Angular2TemplateBinding;
@@ -38,7 +37,6 @@ import org.angular2.lang.html.parser.Angular2AttributeNameParser;
 import org.angular2.lang.html.parser.Angular2AttributeNameParser.AttributeInfo;
 import org.angular2.lang.html.parser.Angular2AttributeNameParser.PropertyBindingInfo;
 import org.angular2.lang.html.psi.Angular2HtmlEvent.EventType;
-import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -51,7 +49,6 @@ import static com.intellij.lang.javascript.psi.types.JSUnionOrIntersectionType.O
 import static com.intellij.lang.javascript.psi.types.guard.TypeScriptTypeRelations.expandAndOptimizeTypeRecursive;
 import static com.intellij.util.ObjectUtils.doIfNotNull;
 import static com.intellij.util.containers.ContainerUtil.*;
-import static org.angular2.entities.Angular2EntityUtils.TEMPLATE_REF;
 import static org.angular2.lang.html.parser.Angular2AttributeType.*;
 import static org.angular2.lang.html.psi.PropertyBindingType.PROPERTY;
 
@@ -171,7 +168,7 @@ public class Angular2TypeEvaluator extends TypeScriptTypeEvaluator {
   @Override
   protected void processThisQualifierInExecutionScope(@NotNull JSThisExpression thisQualifier, PsiElement thisScope) {
     if (thisScope instanceof Angular2EmbeddedExpression) {
-      TypeScriptClass componentClass = Angular2IndexingHandler.findComponentClass(thisQualifier);
+      TypeScriptClass componentClass = Angular2TemplateTypeCache.get(thisQualifier).getComponentClass();
       if (componentClass != null) {
         addType(componentClass.getJSType(), thisQualifier);
       }
@@ -183,26 +180,6 @@ public class Angular2TypeEvaluator extends TypeScriptTypeEvaluator {
     super.processThisQualifierInExecutionScope(thisQualifier, thisScope);
   }
 
-  @Contract("null -> null") //NON-NLS
-  private static JSType getTemplateContextType(@Nullable TypeScriptClass clazz) {
-    if (clazz == null) {
-      return null;
-    }
-    JSType templateRefType = null;
-    for (TypeScriptFunction fun : clazz.getConstructors()) {
-      for (JSParameter param : fun.getParameterVariables()) {
-        if (param.getJSType() != null && param.getJSType().getTypeText().startsWith(TEMPLATE_REF + "<")) {
-          templateRefType = param.getJSType();
-          break;
-        }
-      }
-    }
-    if (!(templateRefType instanceof JSGenericTypeImpl)) {
-      return null;
-    }
-    return getFirstItem(((JSGenericTypeImpl)templateRefType).getArguments());
-  }
-
   @NotNull
   private static JSTypeSubstitutor intersectGenerics(@NotNull MultiMap<JSTypeSubstitutor.JSTypeGenericId, JSType> arguments,
                                                      @NotNull JSTypeSource source) {
@@ -238,9 +215,12 @@ public class Angular2TypeEvaluator extends TypeScriptTypeEvaluator {
     @NotNull private final Angular2DeclarationsScope myScope;
     @Nullable private final JSType myRawTemplateContextType;
     @Nullable private final JSTypeSubstitutor myTypeSubstitutor;
+    // shared by all references to variables of the template bindings
+    private final AtomicNullableLazyValue<JSType> myTemplateContextType =
+      AtomicNullableLazyValue.createValue(this::buildTemplateContextType);
 
     private BindingsTypeResolver(@NotNull Angular2TemplateBindings bindings) {
-      this(bindings, new Angular2ApplicableDirectivesProvider(bindings), b ->
+      this(bindings, Angular2TemplateAnalysis.get(bindings).getApplicableDirectives(bindings), b ->
         StreamEx.of(b.getBindings())
           .filter(binding -> !binding.keyIsVar())
           .mapToEntry(Angular2TemplateBinding::getKey,
@@ -249,7 +229,7 @@ public class Angular2TypeEvaluator extends TypeScriptTypeEvaluator {
     }
 
     private BindingsTypeResolver(@NotNull XmlTag tag) {
-      this(tag, new Angular2ApplicableDirectivesProvider(tag), t ->
+      this(tag, Angular2TemplateAnalysis.get(tag).getApplicableDirectives(tag), t ->
         StreamEx.of(t.getAttributes())
           .mapToEntry(attr -> Angular2AttributeNameParser.parse(attr.getName(), attr.getParent()),
                       Function.identity())
@@ -264,7 +244,7 @@ public class Angular2TypeEvaluator extends TypeScriptTypeEvaluator {
                                                         @NotNull Function<T, EntryStream<String, JSExpression>> inputExpressionsProvider) {
       myElement = element;
       myMatched = provider.getMatched();
-      myScope = new Angular2DeclarationsScope(element);
+      myScope = Angular2TemplateAnalysis.get(element).getDeclarationsScope();
 
       List<Angular2Directive> directives = findAll(
         myMatched, directive -> myScope.contains(directive));
@@ -320,6 +300,11 @@ public class Angular2TypeEvaluator extends TypeScriptTypeEvaluator {
 
     @Nullable
     public JSType resolveTemplateContextType() {
+      return myTemplateContextType.getValue();
+    }
+
+    @Nullable
+    private JSType buildTemplateContextType() {
       return myTypeSubstitutor != null
              ? applyGenericArguments(myRawTemplateContextType, myTypeSubstitutor)
              : myRawTemplateContextType;
@@ -348,12 +333,13 @@ public class Angular2TypeEvaluator extends TypeScriptTypeEvaluator {
         .toMap((a, b) -> a);
       MultiMap<JSTypeSubstitutor.JSTypeGenericId, JSType> genericArguments = MultiMap.createSmart();
       List<JSType> templateContextTypes = new SmartList<>();
+      Angular2TemplateTypeCache typeCache = Angular2TemplateTypeCache.get(element);
       directives.forEach(directive -> {
         TypeScriptClass clazz = directive.getTypeScriptClass();
         if (clazz == null) {
           return;
         }
-        JSType templateContextType = getTemplateContextType(clazz);
+        JSType templateContextType = typeCache.getTemplateContextType(clazz);
         if (templateContextType != null) {
           templateContextTypes.add(templateContextType);
         }
@@ -406,7 +392,7 @@ public class Angular2TypeEvaluator extends TypeScriptTypeEvaluator {
   @Nullable
   private static JSTypeSource getTypeSource(@NotNull PsiElement element,
                                             @NotNull List<JSType> types) {
-    TypeScriptClass componentClass = Angular2IndexingHandler.findComponentClass(element);
+    TypeScriptClass componentClass = Angular2TemplateTypeCache.get(element).getComponentClass();
     if (componentClass != null) {
       return JSTypeSourceFactory.createTypeSource(componentClass, true);
     }
@@ -8,14 +8,12 @@ import com.intellij.util.containers.ContainerUtil;
 import org.angular2.entities.Angular2Directive;
 import org.angular2.lang.expr.psi.Angular2TemplateBindings;
 import org.angular2.lang.selector.Angular2DirectiveSimpleSelector;
-import org.angular2.lang.selector.Angular2SelectorMatcher;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
 
 import static org.angular2.codeInsight.tags.Angular2TagDescriptorsProvider.NG_TEMPLATE;
 import static org.angular2.codeInsight.template.Angular2TemplateElementsScopeProvider.isTemplateTag;
-import static org.angular2.entities.Angular2EntitiesProvider.findElementDirectivesCandidates;
 
 public class Angular2ApplicableDirectivesProvider {
 
@@ -40,23 +38,25 @@ public class Angular2ApplicableDirectivesProvider {
                                                @NotNull String tagName,
                                                boolean onlyMatchingTagName,
                                                @NotNull Angular2DirectiveSimpleSelector cssSelector) {
-    Set<Angular2Directive> directiveCandidates = new HashSet<>(
-      findElementDirectivesCandidates(project, tagName));
-    if (!onlyMatchingTagName) {
-      directiveCandidates.addAll(findElementDirectivesCandidates(project, ""));
-    }
-
-    Angular2SelectorMatcher<Angular2Directive> matcher = new Angular2SelectorMatcher<>();
-    directiveCandidates.forEach(d -> matcher.addSelectables(d.getSelector().getSimpleSelectors(), d));
-    myDirectiveCandidates = NotNullLazyValue.createValue(() -> new ArrayList<>(directiveCandidates));
+    List<Angular2CompiledDirectiveMatcher> matchers = onlyMatchingTagName
+                                                      ? Collections.singletonList(Angular2CompiledDirectiveMatcher.get(project, tagName))
+                                                      : Arrays.asList(Angular2CompiledDirectiveMatcher.get(project, tagName),
+                                                                      Angular2CompiledDirectiveMatcher.get(project, ""));
+    myDirectiveCandidates = NotNullLazyValue.createValue(() -> {
+      Set<Angular2Directive> directiveCandidates = new HashSet<>();
+      matchers.forEach(matcher -> directiveCandidates.addAll(matcher.getCandidates()));
+      return new ArrayList<>(directiveCandidates);
+    });
 
     boolean isTemplateTag = isTemplateTag(tagName);
     Set<Angular2Directive> matchedDirectives = new HashSet<>();
-    matcher.match(cssSelector, (selector, directive) -> {
-      if (directive.getDirectiveKind().isRegular() || isTemplateTag) {
-        matchedDirectives.add(directive);
-      }
-    });
+    for (Angular2CompiledDirectiveMatcher matcher : matchers) {
+      matcher.match(cssSelector, (selector, directive) -> {
+        if (directive.getDirectiveKind().isRegular() || isTemplateTag) {
+          matchedDirectives.add(directive);
+        }
+      });
+    }
     myMatchedDirectives = ContainerUtil.sorted(matchedDirectives,
                                                Comparator.comparing(Angular2Directive::getName));
   }
@@ -23,6 +23,7 @@ import com.intellij.util.containers.MultiMap;
 import com.intellij.xml.XmlAttributeDescriptor;
 import com.intellij.xml.XmlAttributeDescriptorsProvider;
 import com.intellij.xml.XmlElementDescriptor;
+import org.angular2.codeInsight.Angular2TemplateAnalysis;
 import org.angular2.entities.Angular2Directive;
 import org.angular2.entities.Angular2DirectiveKind;
 import org.angular2.entities.Angular2DirectiveProperty;
@@ -161,7 +162,8 @@ public class Angular2AttributeDescriptorsProvider implements XmlAttributeDescrip
   @NotNull
   private static Collection<XmlAttributeDescriptor> getDirectiveDescriptors(@NotNull XmlTag xmlTag,
                                                                             @NotNull Predicate<String> shouldIncludeOneTimeBinding) {
-    Angular2ApplicableDirectivesProvider applicableDirectives = new Angular2ApplicableDirectivesProvider(xmlTag);
+    Angular2ApplicableDirectivesProvider applicableDirectives =
+      Angular2TemplateAnalysis.get(xmlTag).getApplicableDirectives(xmlTag);
 
     List<XmlAttributeDescriptor> result = new ArrayList<>();
     for (Angular2Directive matchedDirective : applicableDirectives.getMatched()) {
@@ -0,0 +1,63 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angular2.codeInsight.attributes;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.util.CachedValuesManager;
+import org.angular2.entities.Angular2Directive;
+import org.angular2.entities.Angular2EntitiesRegistry;
+import org.angular2.lang.selector.Angular2DirectiveSimpleSelector;
+import org.angular2.lang.selector.Angular2SelectorMatcher;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import static com.intellij.psi.util.CachedValueProvider.Result.create;
+import static org.angular2.entities.Angular2EntitiesProvider.findElementDirectivesCandidates;
+
+/**
+ * Selector matcher of directive candidates for an element name, compiled once and shared by all tags
+ * with that name until entities of the project change, as tracked by {@link Angular2EntitiesRegistry}.
+ * The empty element name stands for directives whose selectors do not specify an element.
+ */
+public final class Angular2CompiledDirectiveMatcher {
+
+  private final List<Angular2Directive> myCandidates;
+  private final Angular2SelectorMatcher<Angular2Directive> myMatcher = new Angular2SelectorMatcher<>();
+
+  private Angular2CompiledDirectiveMatcher(@NotNull List<Angular2Directive> candidates) {
+    myCandidates = Collections.unmodifiableList(candidates);
+    candidates.forEach(d -> myMatcher.addSelectables(d.getSelector().getSimpleSelectors(), d));
+  }
+
+  @NotNull
+  public static Angular2CompiledDirectiveMatcher get(@NotNull Project project, @NotNull String elementName) {
+    Map<String, Angular2CompiledDirectiveMatcher> matchers = CachedValuesManager.getManager(project).getCachedValue(
+      project, () -> create(new ConcurrentHashMap<>(), Angular2EntitiesRegistry.getInstance(project)));
+    Angular2CompiledDirectiveMatcher result = matchers.get(elementName);
+    if (result == null) {
+      // matchers are compiled only for element names actually used in templates
+      result = new Angular2CompiledDirectiveMatcher(findElementDirectivesCandidates(project, elementName));
+      Angular2CompiledDirectiveMatcher existing = matchers.putIfAbsent(elementName, result);
+      if (existing != null) {
+        result = existing;
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  public List<Angular2Directive> getCandidates() {
+    return myCandidates;
+  }
+
+  public void match(@NotNull Angular2DirectiveSimpleSelector cssSelector,
+                    @NotNull BiConsumer<Angular2DirectiveSimpleSelector, Angular2Directive> matchedCallback) {
+    if (!myCandidates.isEmpty()) {
+      myMatcher.match(cssSelector, matchedCallback);
+    }
+  }
+}
@@ -15,14 +15,10 @@ import com.intellij.lang.javascript.psi.impl.JSReferenceExpressionImpl;
 import com.intellij.lang.javascript.psi.resolve.JSResolveResult;
 import com.intellij.lang.javascript.psi.util.JSClassUtils;
 import com.intellij.psi.ResolveResult;
-import com.intellij.util.ObjectUtils;
 import com.intellij.util.SmartList;
-import com.intellij.util.containers.ContainerUtil;
 import org.angular2.codeInsight.Angular2ComponentPropertyResolveResult;
-import org.angular2.codeInsight.Angular2DeclarationsScope;
+import org.angular2.codeInsight.Angular2TemplateTypeCache;
 import org.angular2.codeInsight.template.Angular2TemplateScopesResolver;
-import org.angular2.entities.Angular2EntitiesProvider;
-import org.angular2.entities.Angular2Pipe;
 import org.angular2.lang.expr.psi.Angular2PipeReferenceExpression;
 import org.jetbrains.annotations.NotNull;
 
@@ -61,18 +57,7 @@ public class Angular2ReferenceExpressionResolver extends TypeScriptReferenceExpr
       return new JSTypeSignatureChooser(((JSCallExpression)expression.getParent())).chooseOverload(results);
     }
     assert myReferencedName != null;
-
-    Angular2DeclarationsScope scope = new Angular2DeclarationsScope(expression);
-    Angular2Pipe pipe = ContainerUtil.find(Angular2EntitiesProvider.findPipes(expression.getProject(), myReferencedName),
-                                           scope::contains);
-    if (pipe == null) {
-      return ResolveResult.EMPTY_ARRAY;
-    }
-    if (!pipe.getTransformMethods().isEmpty()) {
-      return ContainerUtil.map2Array(pipe.getTransformMethods(), ResolveResult.EMPTY_ARRAY,
-                                     JSResolveResult::new);
-    }
-    return new ResolveResult[]{new JSResolveResult(ObjectUtils.notNull(pipe.getTypeScriptClass(), pipe.getSourceElement()))};
+    return Angular2TemplateTypeCache.get(expression).resolvePipe(expression, myReferencedName);
   }
 
   private ResolveResult @NotNull [] resolveTemplateVariable(@NotNull JSReferenceExpressionImpl expression) {
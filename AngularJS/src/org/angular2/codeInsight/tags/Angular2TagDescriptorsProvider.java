@@ -24,6 +24,7 @@ import icons.AngularJSIcons;
 import org.angular2.codeInsight.Angular2CodeInsightUtils;
 import org.angular2.codeInsight.Angular2DeclarationsScope;
 import org.angular2.codeInsight.Angular2DeclarationsScope.DeclarationProximity;
+import org.angular2.codeInsight.Angular2TemplateAnalysis;
 import org.angular2.codeInsight.attributes.Angular2ApplicableDirectivesProvider;
 import org.angular2.entities.Angular2Directive;
 import org.angular2.entities.Angular2DirectiveSelector.SimpleSelectorWithPsi;
@@ -146,11 +147,12 @@ public class Angular2TagDescriptorsProvider implements XmlElementDescriptorProvi
       return new Angular2TagDescriptor(xmlTag);
     }
 
-    Angular2ApplicableDirectivesProvider provider = new Angular2ApplicableDirectivesProvider(xmlTag, true);
+    Angular2TemplateAnalysis analysis = Angular2TemplateAnalysis.get(xmlTag);
+    Angular2ApplicableDirectivesProvider provider = analysis.getApplicableDirectives(xmlTag, true);
     Collection<?> sources = provider.getMatched();
     boolean implied = false;
     if (sources.isEmpty()) {
-      sources = Angular2CodeInsightUtils.getAvailableNgContentSelectorsStream(xmlTag, new Angular2DeclarationsScope(xmlTag))
+      sources = Angular2CodeInsightUtils.getAvailableNgContentSelectorsStream(xmlTag, analysis.getDeclarationsScope())
         .map(SimpleSelectorWithPsi::getElement)
         .nonNull()
         .filter(el -> StringUtil.toLowerCase(el.getName()).equals(tagName))
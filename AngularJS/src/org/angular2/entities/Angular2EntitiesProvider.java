@@ -19,7 +19,6 @@ import com.intellij.util.ObjectUtils;
 import com.intellij.util.SmartList;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.MultiMap;
-import one.util.streamex.StreamEx;
 import org.angular2.entities.ivy.Angular2IvyUtil;
 import org.angular2.entities.metadata.Angular2MetadataUtil;
 import org.angular2.entities.metadata.psi.Angular2MetadataDirectiveBase;
@@ -33,12 +32,11 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.function.Consumer;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 
 import static com.intellij.psi.util.CachedValueProvider.Result.create;
 import static com.intellij.util.ObjectUtils.tryCast;
-import static java.util.stream.Collectors.toMap;
 import static org.angular2.Angular2DecoratorUtil.*;
 import static org.angular2.entities.Angular2EntityUtils.*;
 import static org.angular2.entities.ivy.Angular2IvyUtil.getIvyEntity;
@@ -117,14 +115,23 @@ public class Angular2EntitiesProvider {
   @NotNull
   public static List<Angular2Pipe> findPipes(@NotNull Project project, @NotNull String name) {
     List<Angular2Pipe> result = new SmartList<>();
+    processPipes(project, name, (element, pipe) -> result.add(pipe));
+    return result;
+  }
+
+  static void processPipes(@NotNull Project project,
+                           @NotNull String name,
+                           @NotNull BiConsumer<PsiElement, Angular2Pipe> consumer) {
     AngularIndexUtil.multiResolve(
-      project, Angular2SourcePipeIndex.KEY, name, pipe -> {
-        ContainerUtil.addIfNotNull(result, tryCast(getSourceEntity(pipe), Angular2Pipe.class));
+      project, Angular2SourcePipeIndex.KEY, name, element -> {
+        Angular2Pipe pipe = tryCast(getSourceEntity(element), Angular2Pipe.class);
+        if (pipe != null) {
+          consumer.accept(element, pipe);
+        }
         return true;
       });
-    processIvyEntities(project, name, Angular2IvyPipeIndex.KEY, Angular2Pipe.class, result::add);
-    processMetadataEntities(project, name, Angular2MetadataPipe.class, Angular2MetadataPipeIndex.KEY, result::add);
-    return result;
+    processIvyEntities(project, name, Angular2IvyPipeIndex.KEY, Angular2Pipe.class, consumer);
+    processMetadataEntities(project, name, Angular2MetadataPipe.class, Angular2MetadataPipeIndex.KEY, consumer);
   }
 
   @NotNull
@@ -145,31 +152,12 @@ public class Angular2EntitiesProvider {
 
   @NotNull
   public static Map<String, List<Angular2Directive>> getAllElementDirectives(@NotNull Project project) {
-    return CachedValuesManager.getManager(project).getCachedValue(project, () -> create(
-      StreamEx.of(AngularIndexUtil.getAllKeys(Angular2SourceDirectiveIndex.KEY, project))
-        .append(AngularIndexUtil.getAllKeys(Angular2MetadataDirectiveIndex.KEY, project))
-        .append(AngularIndexUtil.getAllKeys(Angular2IvyDirectiveIndex.KEY, project))
-        .map(name -> isElementDirectiveIndexName(name) ? getElementName(name) : null)
-        .nonNull()
-        .distinct()
-        .collect(toMap(Function.identity(),
-                       name -> findDirectivesCandidates(
-                         project, getElementDirectiveIndexName(name)))),
-      PsiModificationTracker.MODIFICATION_COUNT)
-    );
+    return Angular2EntitiesRegistry.getInstance(project).getElementDirectives();
   }
 
   @NotNull
   public static Map<String, List<Angular2Pipe>> getAllPipes(@NotNull Project project) {
-    return CachedValuesManager.getManager(project).getCachedValue(project, () -> create(
-      StreamEx.of(AngularIndexUtil.getAllKeys(Angular2SourcePipeIndex.KEY, project))
-        .append(AngularIndexUtil.getAllKeys(Angular2MetadataPipeIndex.KEY, project))
-        .append(AngularIndexUtil.getAllKeys(Angular2IvyPipeIndex.KEY, project))
-        .distinct()
-        .collect(toMap(Function.identity(),
-                       name -> findPipes(project, name))),
-      PsiModificationTracker.MODIFICATION_COUNT)
-    );
+    return Angular2EntitiesRegistry.getInstance(project).getPipes();
   }
 
   public static boolean isPipeTransformMethod(@Nullable PsiElement element) {
@@ -199,21 +187,24 @@ public class Angular2EntitiesProvider {
   }
 
   public static List<Angular2Module> getAllModules(@NotNull Project project) {
-    return CachedValuesManager.getManager(project).getCachedValue(project, () -> {
-      List<Angular2Module> result = new ArrayList<>();
-      StubIndex.getInstance().processElements(Angular2SourceModuleIndex.KEY, NG_MODULE_INDEX_NAME,
-                                              project, GlobalSearchScope.allScope(project),
-                                              JSImplicitElementProvider.class, (module) -> {
-          if (module.isValid()) {
-            ContainerUtil.addIfNotNull(result, tryCast(getSourceEntity(module), Angular2Module.class));
+    return Angular2EntitiesRegistry.getInstance(project).getModules();
+  }
+
+  static void processModules(@NotNull Project project, @NotNull BiConsumer<PsiElement, Angular2Module> consumer) {
+    StubIndex.getInstance().processElements(Angular2SourceModuleIndex.KEY, NG_MODULE_INDEX_NAME,
+                                            project, GlobalSearchScope.allScope(project),
+                                            JSImplicitElementProvider.class, (provider) -> {
+        if (provider.isValid()) {
+          Angular2Module module = tryCast(getSourceEntity(provider), Angular2Module.class);
+          if (module != null) {
+            consumer.accept(provider, module);
           }
-          return true;
-        });
-      processIvyEntities(project, NG_MODULE_INDEX_NAME, Angular2IvyModuleIndex.KEY, Angular2Module.class, result::add);
-      processMetadataEntities(project, NG_MODULE_INDEX_NAME, Angular2MetadataModule.class,
-                              Angular2MetadataModuleIndex.KEY, result::add);
-      return create(result, PsiModificationTracker.MODIFICATION_COUNT);
-    });
+        }
+        return true;
+      });
+    processIvyEntities(project, NG_MODULE_INDEX_NAME, Angular2IvyModuleIndex.KEY, Angular2Module.class, consumer);
+    processMetadataEntities(project, NG_MODULE_INDEX_NAME, Angular2MetadataModule.class,
+                            Angular2MetadataModuleIndex.KEY, consumer);
   }
 
   public static Angular2SourceEntity getSourceEntity(@NotNull PsiElement element) {
@@ -272,6 +263,13 @@ public class Angular2EntitiesProvider {
   @NotNull
   private static List<Angular2Directive> findDirectivesCandidates(@NotNull Project project, @NotNull String indexLookupName) {
     List<Angular2Directive> result = new ArrayList<>();
+    processDirectivesCandidates(project, indexLookupName, (element, directive) -> result.add(directive));
+    return result;
+  }
+
+  static void processDirectivesCandidates(@NotNull Project project,
+                                          @NotNull String indexLookupName,
+                                          @NotNull BiConsumer<PsiElement, Angular2Directive> consumer) {
     StubIndex.getInstance().processElements(
       Angular2SourceDirectiveIndex.KEY, indexLookupName, project, GlobalSearchScope.allScope(project), JSImplicitElementProvider.class,
       provider -> {
@@ -283,7 +281,7 @@ public class Angular2EntitiesProvider {
               if (element.isValid()) {
                 Angular2Directive directive = tryCast(getSourceEntity(element), Angular2Directive.class);
                 if (directive != null) {
-                  result.add(directive);
+                  consumer.accept(provider, directive);
                   return true;
                 }
               }
@@ -293,20 +291,19 @@ public class Angular2EntitiesProvider {
         return true;
       }
     );
-    processIvyEntities(project, indexLookupName, Angular2IvyDirectiveIndex.KEY, Angular2Directive.class, result::add);
+    processIvyEntities(project, indexLookupName, Angular2IvyDirectiveIndex.KEY, Angular2Directive.class, consumer);
     processMetadataEntities(project, indexLookupName, Angular2MetadataDirectiveBase.class,
-                            Angular2MetadataDirectiveIndex.KEY, result::add);
-    return result;
+                            Angular2MetadataDirectiveIndex.KEY, consumer);
   }
 
   private static <T extends Angular2MetadataEntity<?>> void processMetadataEntities(@NotNull Project project,
                                                                                     @NotNull String name,
                                                                                     @NotNull Class<T> entityClass,
                                                                                     @NotNull StubIndexKey<String, T> key,
-                                                                                    @NotNull Consumer<T> consumer) {
+                                                                                    @NotNull BiConsumer<PsiElement, ? super T> consumer) {
     StubIndex.getInstance().processElements(key, name, project, GlobalSearchScope.allScope(project), entityClass, el -> {
       if (el.isValid() && !hasIvyMetadata(el)) {
-        consumer.accept(el);
+        consumer.accept(el, el);
       }
       return true;
     });
@@ -316,12 +313,12 @@ public class Angular2EntitiesProvider {
                                                                     @NotNull String name,
                                                                     @NotNull StubIndexKey<String, TypeScriptClass> key,
                                                                     @NotNull Class<T> entityClass,
-                                                                    @NotNull Consumer<T> consumer) {
+                                                                    @NotNull BiConsumer<PsiElement, ? super T> consumer) {
     StubIndex.getInstance().processElements(key, name, project, GlobalSearchScope.allScope(project), TypeScriptClass.class, el -> {
       if (el.isValid()) {
         T entity = tryCast(getIvyEntity(el), entityClass);
         if (entity != null) {
-          consumer.accept(entity);
+          consumer.accept(el, entity);
         }
       }
       return true;
@@ -0,0 +1,357 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angular2.entities;
+
+import com.intellij.lang.javascript.JavascriptLanguage;
+import com.intellij.lang.javascript.psi.JSImplicitElementProvider;
+import com.intellij.lang.javascript.psi.stubs.JSElementIndexingData;
+import com.intellij.lang.javascript.psi.stubs.JSImplicitElement;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.fileTypes.LanguageFileType;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.impl.source.PsiFileImpl;
+import com.intellij.psi.impl.source.StubbedSpine;
+import com.intellij.psi.util.PsiUtilCore;
+import com.intellij.util.SmartList;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.containers.MultiMap;
+import one.util.streamex.StreamEx;
+import org.angular2.entities.metadata.Angular2MetadataFileType;
+import org.angular2.index.*;
+import org.angularjs.index.AngularIndexUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.intellij.util.ObjectUtils.tryCast;
+import static org.angular2.entities.Angular2EntitiesProvider.*;
+import static org.angular2.entities.Angular2EntityUtils.getElementName;
+import static org.angular2.entities.Angular2EntityUtils.isElementDirectiveIndexName;
+import static org.angular2.index.Angular2IndexingHandler.*;
+
+/**
+ * Keeps element directives, pipes and modules of the project together with files, which contributed them.
+ * <p>
+ * When a JavaScript or TypeScript source file changes, only entities of that file are collected again from its stubs,
+ * and entities of other files are reused. Changes, which may affect entities of other files, like changes in
+ * .d.ts or metadata files, or in directories and project roots, make the registry rebuild everything from indexes.
+ */
+public final class Angular2EntitiesRegistry implements ModificationTracker {
+
+  private static final class FileEntities {
+    static final FileEntities EMPTY = new FileEntities();
+
+    final MultiMap<String, Angular2Directive> myElementDirectives = MultiMap.createSmart();
+    final MultiMap<String, Angular2Pipe> myPipes = MultiMap.createSmart();
+    final List<Angular2Module> myModules = new SmartList<>();
+
+    boolean isEmpty() {
+      return myElementDirectives.isEmpty() && myPipes.isEmpty() && myModules.isEmpty();
+    }
+  }
+
+  private static final class State {
+    // entities are attributed to files of index elements, metadata entities to .metadata.json files
+    final Map<VirtualFile, FileEntities> myFileEntities;
+    final Map<String, List<Angular2Directive>> myElementDirectives;
+    final Map<String, List<Angular2Pipe>> myPipes;
+    final List<Angular2Module> myModules;
+
+    State(@NotNull Map<VirtualFile, FileEntities> fileEntities,
+          @NotNull Map<String, List<Angular2Directive>> elementDirectives,
+          @NotNull Map<String, List<Angular2Pipe>> pipes,
+          @NotNull List<Angular2Module> modules) {
+      myFileEntities = fileEntities;
+      myElementDirectives = Collections.unmodifiableMap(elementDirectives);
+      myPipes = Collections.unmodifiableMap(pipes);
+      myModules = Collections.unmodifiableList(modules);
+    }
+  }
+
+  private final Project myProject;
+  private final Object myLock = new Object();
+  // null if the registry needs to be rebuilt from indexes
+  private volatile State myState;
+  private final Set<VirtualFile> myChangedFiles = ContainerUtil.newConcurrentSet();
+  private final AtomicLong myModificationCount = new AtomicLong();
+
+  public static Angular2EntitiesRegistry getInstance(@NotNull Project project) {
+    return ServiceManager.getService(project, Angular2EntitiesRegistry.class);
+  }
+
+  public Angular2EntitiesRegistry(@NotNull Project project) {
+    myProject = project;
+
+    PsiManager.getInstance(project).addPsiTreeChangeListener(new PsiTreeChangeAdapter() {
+      @Override
+      public void childAdded(@NotNull PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void childMoved(@NotNull PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void propertyChanged(@NotNull PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+    }, project);
+
+    // indexes may have been rebuilt
+    project.getMessageBus().connect(project).subscribe(DumbService.DUMB_MODE, new DumbService.DumbModeListener() {
+      @Override
+      public void exitDumbMode() {
+        invalidateAll();
+      }
+    });
+  }
+
+  @NotNull
+  public Map<String, List<Angular2Directive>> getElementDirectives() {
+    return getState().myElementDirectives;
+  }
+
+  @NotNull
+  public Map<String, List<Angular2Pipe>> getPipes() {
+    return getState().myPipes;
+  }
+
+  @NotNull
+  public List<Angular2Module> getModules() {
+    return getState().myModules;
+  }
+
+  /**
+   * @return count incremented on every change, which may affect entities of the project
+   */
+  @Override
+  public long getModificationCount() {
+    return myModificationCount.get();
+  }
+
+  /**
+   * Makes the registry rebuild all entities from indexes on the next request.
+   */
+  public void invalidateAll() {
+    synchronized (myLock) {
+      myState = null;
+      myChangedFiles.clear();
+      myModificationCount.incrementAndGet();
+    }
+  }
+
+  private void psiChanged(@NotNull PsiTreeChangeEvent event) {
+    PsiElement changed = event.getFile();
+    if (changed == null) {
+      // a file or a directory has been added, removed, moved or renamed, or roots or unloaded files have changed,
+      // changes in files without loaded PSI are reported as PROP_UNLOADED_PSI without an element
+      changed = ContainerUtil.find(Arrays.asList(event.getChild(), event.getElement(), event.getNewChild(), event.getOldChild()),
+                                   Objects::nonNull);
+    }
+    if (changed instanceof PsiFile) {
+      if (changed.isPhysical()) {
+        fileChanged(((PsiFile)changed).getViewProvider().getVirtualFile());
+      }
+    }
+    else {
+      invalidateAll();
+    }
+  }
+
+  private void fileChanged(@NotNull VirtualFile file) {
+    if (isLibraryMetadataFile(file)) {
+      // metadata entities are filtered by presence of Ivy metadata in .d.ts files next to them
+      invalidateAll();
+    }
+    else if (isSourceFile(file)) {
+      synchronized (myLock) {
+        if (myState != null) {
+          myChangedFiles.add(file);
+        }
+        myModificationCount.incrementAndGet();
+      }
+    }
+  }
+
+  private static boolean isLibraryMetadataFile(@NotNull VirtualFile file) {
+    return StringUtil.endsWith(file.getNameSequence(), Angular2MetadataFileType.D_TS_SUFFIX)
+           || StringUtil.endsWith(file.getNameSequence(), Angular2MetadataFileType.METADATA_SUFFIX);
+  }
+
+  private static boolean isSourceFile(@NotNull VirtualFile file) {
+    FileType fileType = file.getFileType();
+    return fileType instanceof LanguageFileType
+           && ((LanguageFileType)fileType).getLanguage().isKindOf(JavascriptLanguage.INSTANCE);
+  }
+
+  @NotNull
+  private State getState() {
+    long modificationCount = myModificationCount.get();
+    State state = myState;
+    if (state != null && myChangedFiles.isEmpty()) {
+      return state;
+    }
+    List<VirtualFile> changedFiles = new ArrayList<>(myChangedFiles);
+    State newState = state == null ? build() : update(state, changedFiles);
+    synchronized (myLock) {
+      // the state is not saved if files have been changed or another thread has saved its state meanwhile
+      if (myModificationCount.get() == modificationCount && myState == state) {
+        myState = newState;
+        myChangedFiles.removeAll(changedFiles);
+      }
+    }
+    return newState;
+  }
+
+  @NotNull
+  private State build() {
+    Map<VirtualFile, FileEntities> fileEntities = new HashMap<>();
+    StreamEx.of(AngularIndexUtil.getAllKeys(Angular2SourceDirectiveIndex.KEY, myProject))
+      .append(AngularIndexUtil.getAllKeys(Angular2MetadataDirectiveIndex.KEY, myProject))
+      .append(AngularIndexUtil.getAllKeys(Angular2IvyDirectiveIndex.KEY, myProject))
+      .filter(Angular2EntityUtils::isElementDirectiveIndexName)
+      .distinct()
+      .forEach(indexName -> processDirectivesCandidates(
+        myProject, indexName, (element, directive) ->
+          getFileEntities(fileEntities, element).myElementDirectives.putValue(getElementName(indexName), directive)));
+    StreamEx.of(AngularIndexUtil.getAllKeys(Angular2SourcePipeIndex.KEY, myProject))
+      .append(AngularIndexUtil.getAllKeys(Angular2MetadataPipeIndex.KEY, myProject))
+      .append(AngularIndexUtil.getAllKeys(Angular2IvyPipeIndex.KEY, myProject))
+      .distinct()
+      .forEach(name -> processPipes(
+        myProject, name, (element, pipe) -> getFileEntities(fileEntities, element).myPipes.putValue(name, pipe)));
+    processModules(myProject, (element, module) -> getFileEntities(fileEntities, element).myModules.add(module));
+
+    Map<String, List<Angular2Directive>> elementDirectives = new HashMap<>();
+    Map<String, List<Angular2Pipe>> pipes = new HashMap<>();
+    for (FileEntities entities : fileEntities.values()) {
+      update(elementDirectives, FileEntities.EMPTY.myElementDirectives, entities.myElementDirectives);
+      update(pipes, FileEntities.EMPTY.myPipes, entities.myPipes);
+    }
+    return new State(fileEntities, elementDirectives, pipes, collectModules(fileEntities));
+  }
+
+  @NotNull
+  private static FileEntities getFileEntities(@NotNull Map<VirtualFile, FileEntities> fileEntities, @NotNull PsiElement element) {
+    // entities without a file, if any, are kept under the null key and are updated only when everything is rebuilt
+    return fileEntities.computeIfAbsent(PsiUtilCore.getVirtualFile(element), file -> new FileEntities());
+  }
+
+  @NotNull
+  private State update(@NotNull State state, @NotNull List<VirtualFile> changedFiles) {
+    Map<VirtualFile, FileEntities> fileEntities = new HashMap<>(state.myFileEntities);
+    Map<String, List<Angular2Directive>> elementDirectives = new HashMap<>(state.myElementDirectives);
+    Map<String, List<Angular2Pipe>> pipes = new HashMap<>(state.myPipes);
+    boolean modulesChanged = false;
+
+    PsiManager psiManager = PsiManager.getInstance(myProject);
+    for (VirtualFile file : changedFiles) {
+      PsiFile psiFile = file.isValid() ? psiManager.findFile(file) : null;
+      FileEntities newEntities = psiFile instanceof PsiFileImpl ? collectSourceEntities((PsiFileImpl)psiFile) : FileEntities.EMPTY;
+      FileEntities oldEntities = fileEntities.remove(file);
+      if (oldEntities == null) {
+        oldEntities = FileEntities.EMPTY;
+      }
+      if (!newEntities.isEmpty()) {
+        fileEntities.put(file, newEntities);
+      }
+
+      update(elementDirectives, oldEntities.myElementDirectives, newEntities.myElementDirectives);
+      update(pipes, oldEntities.myPipes, newEntities.myPipes);
+      modulesChanged |= !oldEntities.myModules.isEmpty() || !newEntities.myModules.isEmpty();
+    }
+    return new State(fileEntities, elementDirectives, pipes, modulesChanged ? collectModules(fileEntities) : state.myModules);
+  }
+
+  /**
+   * Collects entities from implicit elements of a source file in the same way as they are stored in indexes
+   */
+  @NotNull
+  private static FileEntities collectSourceEntities(@NotNull PsiFileImpl file) {
+    FileEntities result = new FileEntities();
+    StubbedSpine spine = file.getStubbedSpine();
+    for (int i = 0; i < spine.getStubCount(); i++) {
+      JSImplicitElementProvider provider = tryCast(spine.getStubPsi(i), JSImplicitElementProvider.class);
+      JSElementIndexingData indexingData = provider != null ? provider.getIndexingData() : null;
+      Collection<JSImplicitElement> elements = indexingData != null ? indexingData.getImplicitElements() : null;
+      if (elements == null) {
+        continue;
+      }
+      for (JSImplicitElement element : elements) {
+        if (isDirective(element)) {
+          Angular2Directive directive = tryCast(getSourceEntity(element), Angular2Directive.class);
+          if (directive != null) {
+            for (String indexName : getDirectiveIndexNames(element)) {
+              if (isElementDirectiveIndexName(indexName)) {
+                result.myElementDirectives.putValue(getElementName(indexName), directive);
+              }
+            }
+          }
+        }
+        else if (isPipe(element)) {
+          Angular2Pipe pipe = tryCast(getSourceEntity(element), Angular2Pipe.class);
+          if (pipe != null) {
+            result.myPipes.putValue(element.getName(), pipe);
+          }
+        }
+        else if (isModule(element)) {
+          ContainerUtil.addIfNotNull(result.myModules, tryCast(getSourceEntity(element), Angular2Module.class));
+        }
+      }
+    }
+    return result;
+  }
+
+  private static <T> void update(@NotNull Map<String, List<T>> map,
+                                 @NotNull MultiMap<String, T> removed,
+                                 @NotNull MultiMap<String, T> added) {
+    for (String name : ContainerUtil.union(removed.keySet(), added.keySet())) {
+      Collection<T> toRemove = removed.get(name);
+      List<T> list = new ArrayList<>();
+      for (T entity : map.getOrDefault(name, Collections.emptyList())) {
+        if (!ContainerUtil.exists(toRemove, e -> e == entity)) {
+          list.add(entity);
+        }
+      }
+      list.addAll(added.get(name));
+      if (list.isEmpty()) {
+        map.remove(name);
+      }
+      else {
+        map.put(name, Collections.unmodifiableList(list));
+      }
+    }
+  }
+
+  @NotNull
+  private static List<Angular2Module> collectModules(@NotNull Map<VirtualFile, FileEntities> fileEntities) {
+    List<Angular2Module> result = new ArrayList<>();
+    for (FileEntities entities : fileEntities.values()) {
+      result.addAll(entities.myModules);
+    }
+    return result;
+  }
+}
@@ -30,6 +30,10 @@ public interface Angular2Module extends Angular2Entity {
 
   @NotNull
   default Set<Angular2Declaration> getDeclarationsInScope() {
+    Set<Angular2Declaration> scope = Angular2ModuleGraph.getInstance(getSourceElement().getProject()).getDeclarationsInScope(this);
+    if (scope != null) {
+      return scope;
+    }
     Set<Angular2Declaration> result = new HashSet<>(getDeclarations());
     for (Angular2Module imported : getImports()) {
       result.addAll(imported.getAllExportedDeclarations());
@@ -0,0 +1,348 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angular2.entities;
+
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.reference.SoftReference;
+import com.intellij.util.containers.Stack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.intellij.psi.util.CachedValueProvider.Result.create;
+
+/**
+ * Import and export graph of all modules of the project. Strongly connected components of the graph are collapsed
+ * once, so every module of an export cycle shares the same immutable set of transitively exported declarations,
+ * and both exported declarations and declaration scopes are backed by bit sets over a common declaration index.
+ * <p>
+ * The graph is rebuilt only if imports, exports or declarations of some module were resolved to a different list
+ * since it has been built, otherwise the previous graph is reused after any PSI change. The previous graph is held
+ * softly, so that it does not keep modules and declarations of the project reachable under memory pressure.
+ */
+public final class Angular2ModuleGraph {
+
+  private static final Key<SoftReference<Angular2ModuleGraph>> LAST_GRAPH_KEY = new Key<>("angular.moduleGraph.last");
+
+  private final List<Angular2Module> myRootModules;
+  private final List<Angular2Module> myModules = new ArrayList<>();
+  private final Map<Angular2Module, Integer> myModuleIndex = new HashMap<>();
+  private final List<Set<Angular2Declaration>> myDeclarationLists = new ArrayList<>();
+  private final List<Set<Angular2Module>> myImportLists = new ArrayList<>();
+  private final List<Set<Angular2Entity>> myExportLists = new ArrayList<>();
+
+  private final List<Angular2Declaration> myDeclarations = new ArrayList<>();
+  private final Map<Angular2Declaration, Integer> myDeclarationIndex = new HashMap<>();
+
+  private final int[][] myDependencies;
+  private final int[] myDependencyComponents;
+  private final int[] myExportComponents;
+  private final DeclarationSet[] myExportedDeclarations;
+  private final Map<Angular2Module, Set<Angular2Declaration>> myScopes = new ConcurrentHashMap<>();
+
+  private Angular2ModuleGraph(@NotNull List<Angular2Module> rootModules) {
+    myRootModules = rootModules;
+    rootModules.forEach(this::addModule);
+    // imports and exports may reference modules, which are not indexed, e.g. returned by forRoot() calls
+    for (int i = 0; i < myModules.size(); i++) {
+      ProgressManager.checkCanceled();
+      Angular2Module module = myModules.get(i);
+      Set<Angular2Declaration> declarations = module.getDeclarations();
+      Set<Angular2Module> imports = module.getImports();
+      Set<Angular2Entity> exports = module.getExports();
+      myDeclarationLists.add(declarations);
+      myImportLists.add(imports);
+      myExportLists.add(exports);
+      declarations.forEach(this::addDeclaration);
+      imports.forEach(this::addModule);
+      for (Angular2Entity export : exports) {
+        if (export instanceof Angular2Module) {
+          addModule((Angular2Module)export);
+        }
+        else if (export instanceof Angular2Declaration) {
+          addDeclaration((Angular2Declaration)export);
+        }
+        else {
+          throw new IllegalArgumentException(
+            "Class " + export.getClass() + " extends neither Angular2Module nor Angular2Declaration");
+        }
+      }
+    }
+
+    int size = myModules.size();
+    int[][] exportedModules = new int[size][];
+    myDependencies = new int[size][];
+    for (int i = 0; i < size; i++) {
+      List<Integer> exported = new ArrayList<>();
+      for (Angular2Entity export : myExportLists.get(i)) {
+        if (export instanceof Angular2Module) {
+          exported.add(myModuleIndex.get(export));
+        }
+      }
+      exportedModules[i] = toArray(exported);
+      for (Angular2Module imported : myImportLists.get(i)) {
+        exported.add(myModuleIndex.get(imported));
+      }
+      myDependencies[i] = toArray(exported);
+    }
+    myDependencyComponents = findStronglyConnectedComponents(myDependencies);
+    myExportComponents = findStronglyConnectedComponents(exportedModules);
+    myExportedDeclarations = collectExportedDeclarations(exportedModules);
+  }
+
+  @NotNull
+  public static Angular2ModuleGraph getInstance(@NotNull Project project) {
+    return CachedValuesManager.getManager(project).getCachedValue(project, () -> {
+      List<Angular2Module> modules = Angular2EntitiesProvider.getAllModules(project);
+      Angular2ModuleGraph graph = SoftReference.dereference(project.getUserData(LAST_GRAPH_KEY));
+      if (graph == null || !graph.isUpToDate(modules)) {
+        graph = new Angular2ModuleGraph(modules);
+        project.putUserData(LAST_GRAPH_KEY, new SoftReference<>(graph));
+      }
+      return create(graph, PsiModificationTracker.MODIFICATION_COUNT);
+    });
+  }
+
+  /**
+   * @return declarations exported by the module directly or through exported modules,
+   * or {@code null} if the module is not part of the graph
+   */
+  @Nullable
+  public Set<Angular2Declaration> getAllExportedDeclarations(@NotNull Angular2Module module) {
+    Integer index = myModuleIndex.get(module);
+    return index != null ? myExportedDeclarations[myExportComponents[index]] : null;
+  }
+
+  /**
+   * @return declarations of the module together with declarations exported by its imported and exported modules,
+   * or {@code null} if the module is not part of the graph
+   */
+  @Nullable
+  public Set<Angular2Declaration> getDeclarationsInScope(@NotNull Angular2Module module) {
+    Integer index = myModuleIndex.get(module);
+    if (index == null) {
+      return null;
+    }
+    return myScopes.computeIfAbsent(module, m -> {
+      BitSet scope = new BitSet(myDeclarations.size());
+      for (Angular2Declaration declaration : myDeclarationLists.get(index)) {
+        scope.set(myDeclarationIndex.get(declaration));
+      }
+      for (int dependency : myDependencies[index]) {
+        scope.or(myExportedDeclarations[myExportComponents[dependency]].myBits);
+      }
+      return new DeclarationSet(scope);
+    });
+  }
+
+  /**
+   * Checks whether the {@code module}, which the {@code dependent} module imports or exports, can depend
+   * on the {@code dependent} module back. The answer is {@code true} if the graph does not know the dependency.
+   */
+  public boolean mayDependOn(@NotNull Angular2Module module, @NotNull Angular2Module dependent) {
+    Integer moduleIndex = myModuleIndex.get(module);
+    Integer dependentIndex = myModuleIndex.get(dependent);
+    if (moduleIndex == null || dependentIndex == null) {
+      return true;
+    }
+    for (int dependency : myDependencies[dependentIndex]) {
+      if (dependency == moduleIndex) {
+        return myDependencyComponents[moduleIndex] == myDependencyComponents[dependentIndex];
+      }
+    }
+    return true;
+  }
+
+  private boolean isUpToDate(@NotNull List<Angular2Module> rootModules) {
+    if (myRootModules != rootModules && !myRootModules.equals(rootModules)) {
+      return false;
+    }
+    // resolved lists are cached by modules with their own dependencies, so an unchanged list is the same object
+    for (int i = 0; i < myModules.size(); i++) {
+      Angular2Module module = myModules.get(i);
+      if (module.getDeclarations() != myDeclarationLists.get(i)
+          || module.getImports() != myImportLists.get(i)
+          || module.getExports() != myExportLists.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void addModule(@NotNull Angular2Module module) {
+    if (!myModuleIndex.containsKey(module)) {
+      myModuleIndex.put(module, myModules.size());
+      myModules.add(module);
+    }
+  }
+
+  private void addDeclaration(@NotNull Angular2Declaration declaration) {
+    if (!myDeclarationIndex.containsKey(declaration)) {
+      myDeclarationIndex.put(declaration, myDeclarations.size());
+      myDeclarations.add(declaration);
+    }
+  }
+
+  @NotNull
+  private DeclarationSet[] collectExportedDeclarations(int[][] exportedModules) {
+    int componentCount = 0;
+    for (int component : myExportComponents) {
+      componentCount = Math.max(componentCount, component + 1);
+    }
+    List<List<Integer>> members = new ArrayList<>(componentCount);
+    for (int i = 0; i < componentCount; i++) {
+      members.add(new ArrayList<>());
+    }
+    for (int i = 0; i < myExportComponents.length; i++) {
+      members.get(myExportComponents[i]).add(i);
+    }
+    // components are numbered in reverse topological order, so exported components are always processed first
+    DeclarationSet[] result = new DeclarationSet[componentCount];
+    for (int component = 0; component < componentCount; component++) {
+      BitSet own = new BitSet();
+      Set<DeclarationSet> exported = new LinkedHashSet<>();
+      for (int module : members.get(component)) {
+        for (Angular2Entity export : myExportLists.get(module)) {
+          if (export instanceof Angular2Declaration) {
+            own.set(myDeclarationIndex.get(export));
+          }
+        }
+        for (int exportedModule : exportedModules[module]) {
+          if (myExportComponents[exportedModule] != component) {
+            exported.add(result[myExportComponents[exportedModule]]);
+          }
+        }
+      }
+      if (own.isEmpty() && exported.size() == 1) {
+        // modules, which only re-export another module, share its set
+        result[component] = exported.iterator().next();
+        continue;
+      }
+      for (DeclarationSet set : exported) {
+        own.or(set.myBits);
+      }
+      result[component] = new DeclarationSet(own);
+    }
+    return result;
+  }
+
+  /**
+   * Tarjan's algorithm without recursion.
+   *
+   * @return index of the strongly connected component of each node, components are numbered in reverse topological order
+   */
+  @NotNull
+  static int[] findStronglyConnectedComponents(int[][] edges) {
+    int size = edges.length;
+    int[] index = new int[size];
+    int[] lowLink = new int[size];
+    int[] edgePosition = new int[size];
+    int[] components = new int[size];
+    boolean[] onStack = new boolean[size];
+    Arrays.fill(index, -1);
+    Stack<Integer> stack = new Stack<>();
+    Stack<Integer> callStack = new Stack<>();
+    int nextIndex = 0;
+    int nextComponent = 0;
+    for (int root = 0; root < size; root++) {
+      if (index[root] >= 0) {
+        continue;
+      }
+      index[root] = lowLink[root] = nextIndex++;
+      stack.push(root);
+      onStack[root] = true;
+      callStack.push(root);
+      while (!callStack.isEmpty()) {
+        int node = callStack.peek();
+        if (edgePosition[node] < edges[node].length) {
+          int next = edges[node][edgePosition[node]++];
+          if (index[next] < 0) {
+            index[next] = lowLink[next] = nextIndex++;
+            stack.push(next);
+            onStack[next] = true;
+            callStack.push(next);
+          }
+          else if (onStack[next]) {
+            lowLink[node] = Math.min(lowLink[node], index[next]);
+          }
+          continue;
+        }
+        callStack.pop();
+        if (!callStack.isEmpty()) {
+          int parent = callStack.peek();
+          lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+        }
+        if (lowLink[node] == index[node]) {
+          int member;
+          do {
+            member = stack.pop();
+            onStack[member] = false;
+            components[member] = nextComponent;
+          }
+          while (member != node);
+          nextComponent++;
+        }
+      }
+    }
+    return components;
+  }
+
+  private static int[] toArray(@NotNull List<Integer> list) {
+    int[] result = new int[list.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = list.get(i);
+    }
+    return result;
+  }
+
+  private final class DeclarationSet extends AbstractSet<Angular2Declaration> {
+
+    private final BitSet myBits;
+    private final int mySize;
+
+    private DeclarationSet(@NotNull BitSet bits) {
+      myBits = bits;
+      mySize = bits.cardinality();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      //noinspection SuspiciousMethodCalls
+      Integer index = myDeclarationIndex.get(o);
+      return index != null && myBits.get(index);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Angular2Declaration> iterator() {
+      return new Iterator<Angular2Declaration>() {
+        private int myNext = myBits.nextSetBit(0);
+
+        @Override
+        public boolean hasNext() {
+          return myNext >= 0;
+        }
+
+        @Override
+        public Angular2Declaration next() {
+          if (myNext < 0) {
+            throw new NoSuchElementException();
+          }
+          Angular2Declaration result = myDeclarations.get(myNext);
+          myNext = myBits.nextSetBit(myNext + 1);
+          return result;
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return mySize;
+    }
+  }
+}
@@ -82,28 +82,33 @@ public class Angular2ModuleResolver<T extends PsiElement> {
   @NotNull
   public Set<Angular2Declaration> getAllExportedDeclarations() {
     final T source = mySourceSupplier.get();
+    Angular2Module module = source instanceof Angular2Module
+                            ? (Angular2Module)source
+                            : Angular2EntitiesProvider.getModule(source);
+    if (module == null) {
+      return Collections.emptySet();
+    }
+    Set<Angular2Declaration> exported = Angular2ModuleGraph.getInstance(source.getProject()).getAllExportedDeclarations(module);
+    if (exported != null) {
+      return exported;
+    }
     return CachedValuesManager.getCachedValue(source, () -> {
       Set<Angular2Declaration> result = new HashSet<>();
-      Angular2Module module = source instanceof Angular2Module
-                              ? (Angular2Module)source
-                              : Angular2EntitiesProvider.getModule(source);
-      if (module != null) {
-        Set<Angular2Module> processedModules = new HashSet<>();
-        Stack<Angular2Module> moduleQueue = new Stack<>(module);
-        while (!moduleQueue.empty()) {
-          Angular2Module current = moduleQueue.pop();
-          if (processedModules.add(current)) {
-            for (Angular2Entity export : current.getExports()) {
-              if (export instanceof Angular2Module) {
-                moduleQueue.push((Angular2Module)export);
-              }
-              else if (export instanceof Angular2Declaration) {
-                result.add((Angular2Declaration)export);
-              }
-              else {
-                throw new IllegalArgumentException(
-                  "Class " + export.getClass() + " extends neither Angular2Module nor Angular2Declaration");
-              }
+      Set<Angular2Module> processedModules = new HashSet<>();
+      Stack<Angular2Module> moduleQueue = new Stack<>(module);
+      while (!moduleQueue.empty()) {
+        Angular2Module current = moduleQueue.pop();
+        if (processedModules.add(current)) {
+          for (Angular2Entity export : current.getExports()) {
+            if (export instanceof Angular2Module) {
+              moduleQueue.push((Angular2Module)export);
+            }
+            else if (export instanceof Angular2Declaration) {
+              result.add((Angular2Declaration)export);
+            }
+            else {
+              throw new IllegalArgumentException(
+                "Class " + export.getClass() + " extends neither Angular2Module nor Angular2Declaration");
             }
           }
         }
@@ -2,6 +2,7 @@
 package org.angular2.entities.metadata.stubs;
 
 import com.intellij.json.psi.JsonObject;
+import com.intellij.json.psi.JsonProperty;
 import com.intellij.json.psi.JsonValue;
 import com.intellij.psi.stubs.StubElement;
 import com.intellij.psi.stubs.StubInputStream;
@@ -12,10 +13,20 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 
+import static org.angular2.entities.Angular2ModuleResolver.NG_MODULE_PROP;
+
 public class Angular2MetadataObjectStub extends Angular2MetadataElementStub<Angular2MetadataObject> {
+
+  /**
+   * Objects, like providers or host bindings, are stubbed without properties, except for the module
+   * of a {@code ModuleWithProviders} object, which is the only property ever resolved.
+   */
   public Angular2MetadataObjectStub(@Nullable String memberName, JsonValue source, @Nullable StubElement parent) {
     super(memberName, parent, Angular2MetadataElementTypes.OBJECT);
-    ((JsonObject)source).getPropertyList().forEach(this::loadMemberProperty);
+    JsonProperty ngModule = ((JsonObject)source).findProperty(NG_MODULE_PROP);
+    if (ngModule != null) {
+      loadMemberProperty(ngModule);
+    }
   }
 
   public Angular2MetadataObjectStub(@NotNull StubInputStream stream, @Nullable StubElement parent) throws IOException {
@@ -47,7 +47,7 @@ import org.angular2.lang.Angular2Bundle;
 import org.angular2.lang.expr.Angular2Language;
 import org.angular2.lang.html.Angular2HtmlLanguage;
 import org.angularjs.index.AngularIndexUtil;
-import org.angularjs.index.AngularSymbolIndex;
+import org.angularjs.index.AngularJSIndex;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -114,6 +114,18 @@ public class Angular2IndexingHandler extends FrameworkIndexingHandler {
     return type.startsWith(DIRECTIVE_TYPE);
   }
 
+  /**
+   * @return index names of a directive implicit element as they are stored in {@link Angular2SourceDirectiveIndex}
+   */
+  @NotNull
+  public static List<String> getDirectiveIndexNames(@NotNull JSImplicitElement directive) {
+    String type = directive.getTypeString();
+    if (type == null || !type.startsWith(DIRECTIVE_TYPE)) {
+      return emptyList();
+    }
+    return StringUtil.split(type.substring(DIRECTIVE_TYPE.length()), "/");
+  }
+
   public static boolean isModule(@NotNull JSImplicitElement element) {
     return element instanceof JSImplicitElementImpl
            && MODULE_TYPE.equals(element.getTypeString());
@@ -213,18 +225,14 @@ public class Angular2IndexingHandler extends FrameworkIndexingHandler {
     final String userID = element.getUserString();
     final StubIndexKey<String, JSImplicitElementProvider> index = userID != null ? INDEX_MAP.get(userID) : null;
     if (index == Angular2SourceDirectiveIndex.KEY) {
-      String type = element.toImplicitElement(null).getTypeString();
-      if (type != null && type.startsWith(DIRECTIVE_TYPE)) {
-        type = type.substring(DIRECTIVE_TYPE.length());
-        StringUtil.split(type, "/")
-          .forEach(name -> sink.occurrence(index, name));
-      }
+      getDirectiveIndexNames(element.toImplicitElement(null))
+        .forEach(name -> sink.occurrence(index, name));
       return true;
     }
     else if (index != null) {
       sink.occurrence(index, element.getName());
       if (index == Angular2SourcePipeIndex.KEY) {
-        sink.occurrence(AngularSymbolIndex.KEY, element.getName());
+        sink.occurrence(AngularJSIndex.KEY, AngularJSIndex.getSymbolKey(element.getName()));
       }
       else {
         return true;
@@ -245,7 +253,7 @@ public class Angular2IndexingHandler extends FrameworkIndexingHandler {
           String name = ((Angular2IvySymbolDef.Pipe)entityDef).getName();
           if (name != null) {
             sink.occurrence(Angular2IvyPipeIndex.KEY, name);
-            sink.occurrence(AngularSymbolIndex.KEY, name);
+            sink.occurrence(AngularJSIndex.KEY, AngularJSIndex.getSymbolKey(name));
           }
         }
         else if (entityDef instanceof Angular2IvySymbolDef.Directive) {
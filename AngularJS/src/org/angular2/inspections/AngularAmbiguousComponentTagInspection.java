@@ -9,7 +9,7 @@ import com.intellij.util.ObjectUtils;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.xml.util.XmlTagUtil;
 import org.angular2.codeInsight.Angular2DeclarationsScope;
-import org.angular2.codeInsight.attributes.Angular2ApplicableDirectivesProvider;
+import org.angular2.codeInsight.Angular2TemplateAnalysis;
 import org.angular2.codeInsight.attributes.Angular2AttributeDescriptor;
 import org.angular2.entities.Angular2Directive;
 import org.angular2.entities.Angular2EntityUtils;
@@ -26,12 +26,13 @@ public class AngularAmbiguousComponentTagInspection extends AngularHtmlLikeTempl
 
   @Override
   protected void visitXmlTag(@NotNull ProblemsHolder holder, @NotNull XmlTag tag) {
-    Angular2DeclarationsScope scope = new Angular2DeclarationsScope(tag);
+    Angular2TemplateAnalysis analysis = Angular2TemplateAnalysis.get(tag);
+    Angular2DeclarationsScope scope = analysis.getDeclarationsScope();
     if (scope.getModule() == null) {
       return;
     }
     List<Angular2Directive> components = ContainerUtil.filter(
-      new Angular2ApplicableDirectivesProvider(tag).getMatched(), d -> d.isComponent() && scope.contains(d));
+      analysis.getApplicableDirectives(tag).getMatched(), d -> d.isComponent() && scope.contains(d));
     final TextRange startTag = ObjectUtils.notNull(XmlTagUtil.getStartTagRange(tag), () -> tag.getTextRange())
       .shiftLeft(tag.getTextOffset());
     if (isTemplateTag(tag)) {
@@ -56,9 +57,10 @@ public class AngularAmbiguousComponentTagInspection extends AngularHtmlLikeTempl
                                        @NotNull Angular2AttributeDescriptor descriptor) {
     if (descriptor.getInfo().type == Angular2AttributeType.TEMPLATE_BINDINGS
         && !isTemplateTag(attribute.getParent())) {
-      Angular2DeclarationsScope scope = new Angular2DeclarationsScope(attribute);
+      Angular2TemplateAnalysis analysis = Angular2TemplateAnalysis.get(attribute);
+      Angular2DeclarationsScope scope = analysis.getDeclarationsScope();
       List<Angular2Directive> components = ContainerUtil.filter(
-        new Angular2ApplicableDirectivesProvider(Angular2TemplateBindings.get(attribute)).getMatched(),
+        analysis.getApplicableDirectives(Angular2TemplateBindings.get(attribute)).getMatched(),
         d -> d.isComponent() && scope.contains(d));
       if (!components.isEmpty()) {
         holder.registerProblem(attribute, Angular2Bundle.message(
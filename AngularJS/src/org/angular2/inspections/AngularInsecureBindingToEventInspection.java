@@ -6,6 +6,7 @@ import com.intellij.codeInspection.ProblemsHolder;
 import com.intellij.psi.xml.XmlAttribute;
 import com.intellij.util.containers.ContainerUtil;
 import org.angular2.codeInsight.Angular2DeclarationsScope;
+import org.angular2.codeInsight.Angular2TemplateAnalysis;
 import org.angular2.codeInsight.attributes.Angular2AttributeDescriptor;
 import org.angular2.inspections.quickfixes.ConvertToEventQuickFix;
 import org.angular2.lang.Angular2Bundle;
@@ -34,7 +35,7 @@ public class AngularInsecureBindingToEventInspection extends AngularHtmlLikeTemp
                                    new RemoveAttributeIntentionFix(attribute.getName()));
             break;
           case PROPERTY:
-            Angular2DeclarationsScope scope = new Angular2DeclarationsScope(attribute);
+            Angular2DeclarationsScope scope = Angular2TemplateAnalysis.get(attribute).getDeclarationsScope();
             if (ContainerUtil.find(descriptor.getSourceDirectives(), scope::contains) == null) {
               holder.registerProblem(attribute.getNameElement(),
                                      Angular2Bundle.message("angular.inspection.insecure-binding-to-event.message.property", propertyName),
@@ -10,7 +10,7 @@ import com.intellij.psi.xml.XmlAttribute;
 import com.intellij.util.SmartList;
 import com.intellij.util.containers.ContainerUtil;
 import org.angular2.codeInsight.Angular2DeclarationsScope;
-import org.angular2.codeInsight.attributes.Angular2ApplicableDirectivesProvider;
+import org.angular2.codeInsight.Angular2TemplateAnalysis;
 import org.angular2.codeInsight.attributes.Angular2AttributeDescriptor;
 import org.angular2.entities.Angular2Directive;
 import org.angular2.entities.Angular2EntityUtils;
@@ -32,10 +32,11 @@ public class AngularInvalidTemplateReferenceVariableInspection extends AngularHt
     if (info.type == Angular2AttributeType.REFERENCE) {
       String exportName = attribute.getValue();
       if (exportName != null && !exportName.isEmpty()) {
+        Angular2TemplateAnalysis analysis = Angular2TemplateAnalysis.get(attribute);
         List<Angular2Directive> allMatching =
-          ContainerUtil.filter(new Angular2ApplicableDirectivesProvider(attribute.getParent()).getMatched(),
+          ContainerUtil.filter(analysis.getApplicableDirectives(attribute.getParent()).getMatched(),
                                dir -> dir.getExportAsList().contains(exportName));
-        Angular2DeclarationsScope scope = new Angular2DeclarationsScope(attribute);
+        Angular2DeclarationsScope scope = analysis.getDeclarationsScope();
         List<Angular2Directive> matching = ContainerUtil.filter(allMatching, d -> scope.contains(d));
         TextRange range = new TextRange(0, info.name.length()).shiftRight(attribute.getName().length() - info.name.length());
         if (matching.isEmpty()) {
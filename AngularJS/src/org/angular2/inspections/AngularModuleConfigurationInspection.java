@@ -19,6 +19,7 @@ import org.angular2.entities.Angular2Declaration;
 import org.angular2.entities.Angular2EntitiesProvider;
 import org.angular2.entities.Angular2Entity;
 import org.angular2.entities.Angular2Module;
+import org.angular2.entities.Angular2ModuleGraph;
 import org.angular2.lang.Angular2Bundle;
 import org.jetbrains.annotations.NotNull;
 
@@ -104,6 +105,10 @@ public abstract class AngularModuleConfigurationInspection extends LocalInspecti
     }
 
     protected void checkCyclicDependencies(@NotNull Angular2Module module) {
+      Angular2ModuleGraph graph = Angular2ModuleGraph.getInstance(module.getSourceElement().getProject());
+      if (!graph.mayDependOn(module, myModule)) {
+        return;
+      }
       Stack<Angular2Module> cycleTrack = new Stack<>();
       Set<Angular2Module> processedModules = new HashSet<>();
       Stack<List<Angular2Module>> dfsStack = new Stack<>();
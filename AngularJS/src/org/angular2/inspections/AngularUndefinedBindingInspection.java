@@ -13,7 +13,7 @@ import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.MultiMap;
 import org.angular2.codeInsight.Angular2DeclarationsScope;
 import org.angular2.codeInsight.Angular2DeclarationsScope.DeclarationProximity;
-import org.angular2.codeInsight.attributes.Angular2ApplicableDirectivesProvider;
+import org.angular2.codeInsight.Angular2TemplateAnalysis;
 import org.angular2.codeInsight.attributes.Angular2AttributeDescriptor;
 import org.angular2.entities.Angular2Directive;
 import org.angular2.inspections.quickfixes.Angular2FixesFactory;
@@ -53,7 +53,8 @@ public class AngularUndefinedBindingInspection extends AngularHtmlLikeTemplateLo
       return;
     }
     List<Angular2Directive> sourceDirectives = descriptor.getSourceDirectives();
-    Angular2DeclarationsScope scope = new Angular2DeclarationsScope(attribute);
+    Angular2TemplateAnalysis analysis = Angular2TemplateAnalysis.get(attribute);
+    Angular2DeclarationsScope scope = analysis.getDeclarationsScope();
     DeclarationProximity proximity;
     if (descriptor.isImplied()) {
       if (templateTag) {
@@ -64,8 +65,7 @@ public class AngularUndefinedBindingInspection extends AngularHtmlLikeTemplateLo
       }
     }
     else {
-      Set<Angular2Directive> matchedDirectives = new HashSet<>(new Angular2ApplicableDirectivesProvider(
-        attribute.getParent()).getMatched());
+      Set<Angular2Directive> matchedDirectives = new HashSet<>(analysis.getApplicableDirectives(attribute.getParent()).getMatched());
       proximity = scope.getDeclarationsProximity(ContainerUtil.findAll(sourceDirectives, matchedDirectives::contains));
     }
     if (proximity == IN_SCOPE) {
@@ -123,8 +123,9 @@ public class AngularUndefinedBindingInspection extends AngularHtmlLikeTemplateLo
   private static void visitTemplateBindings(@NotNull ProblemsHolder holder,
                                             @NotNull XmlAttribute attribute,
                                             @NotNull Angular2TemplateBindings bindings) {
-    List<Angular2Directive> matched = new Angular2ApplicableDirectivesProvider(bindings).getMatched();
-    Angular2DeclarationsScope scope = new Angular2DeclarationsScope(attribute);
+    Angular2TemplateAnalysis analysis = Angular2TemplateAnalysis.get(attribute);
+    List<Angular2Directive> matched = analysis.getApplicableDirectives(bindings).getMatched();
+    Angular2DeclarationsScope scope = analysis.getDeclarationsScope();
     DeclarationProximity proximity = scope.getDeclarationsProximity(matched);
     if (proximity != IN_SCOPE) {
       List<LocalQuickFix> fixes = new SmartList<>();
@@ -11,6 +11,7 @@ import com.intellij.xml.XmlElementDescriptor;
 import com.intellij.xml.util.XmlTagUtil;
 import org.angular2.codeInsight.Angular2DeclarationsScope;
 import org.angular2.codeInsight.Angular2DeclarationsScope.DeclarationProximity;
+import org.angular2.codeInsight.Angular2TemplateAnalysis;
 import org.angular2.codeInsight.attributes.Angular2ApplicableDirectivesProvider;
 import org.angular2.codeInsight.tags.Angular2TagDescriptor;
 import org.angular2.inspections.quickfixes.Angular2FixesFactory;
@@ -31,8 +32,9 @@ public class AngularUndefinedTagInspection extends AngularHtmlLikeTemplateLocalI
         || ((Angular2TagDescriptor)descriptor).isImplied()) {
       return;
     }
-    Angular2DeclarationsScope scope = new Angular2DeclarationsScope(tag);
-    Angular2ApplicableDirectivesProvider provider = new Angular2ApplicableDirectivesProvider(tag, true);
+    Angular2TemplateAnalysis analysis = Angular2TemplateAnalysis.get(tag);
+    Angular2DeclarationsScope scope = analysis.getDeclarationsScope();
+    Angular2ApplicableDirectivesProvider provider = analysis.getApplicableDirectives(tag, true);
     DeclarationProximity proximity = scope.getDeclarationsProximity(provider.getMatched());
     if (proximity == IN_SCOPE) {
       return;
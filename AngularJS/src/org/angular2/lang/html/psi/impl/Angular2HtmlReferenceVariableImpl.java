@@ -30,7 +30,7 @@ import com.intellij.util.IncorrectOperationException;
 import com.intellij.util.ObjectUtils;
 import one.util.streamex.StreamEx;
 import org.angular2.codeInsight.Angular2DeclarationsScope;
-import org.angular2.codeInsight.attributes.Angular2ApplicableDirectivesProvider;
+import org.angular2.codeInsight.Angular2TemplateAnalysis;
 import org.angular2.index.Angular2IndexingHandler;
 import org.angular2.lang.html.parser.Angular2HtmlStubElementTypes;
 import org.angular2.lang.html.psi.Angular2HtmlReference;
@@ -66,10 +66,11 @@ public class Angular2HtmlReferenceVariableImpl extends JSVariableImpl<JSVariable
     }
     XmlTag tag = reference.getParent();
     if (tag != null) {
-      Angular2DeclarationsScope scope = new Angular2DeclarationsScope(this);
+      Angular2TemplateAnalysis analysis = Angular2TemplateAnalysis.get(this);
+      Angular2DeclarationsScope scope = analysis.getDeclarationsScope();
       String exportName = reference.getValue();
       boolean hasExport = exportName != null && !exportName.isEmpty();
-      return StreamEx.of(new Angular2ApplicableDirectivesProvider(tag).getMatched())
+      return StreamEx.of(analysis.getApplicableDirectives(tag).getMatched())
         .filter(directive -> scope.contains(directive)
                              && hasExport ? directive.getExportAsList().contains(exportName)
                                           : directive.isComponent())
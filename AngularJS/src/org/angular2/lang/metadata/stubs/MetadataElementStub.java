@@ -6,7 +6,6 @@ import com.intellij.lang.javascript.index.flags.BooleanStructureElement;
 import com.intellij.lang.javascript.index.flags.FlagsStructure;
 import com.intellij.lang.javascript.index.flags.FlagsStructureElement;
 import com.intellij.lang.javascript.index.flags.IntFlagsSerializer;
-import com.intellij.openapi.util.AtomicNotNullLazyValue;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.DataInputOutputUtilRt;
 import com.intellij.psi.stubs.*;
@@ -19,6 +18,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -64,18 +64,8 @@ public abstract class MetadataElementStub<Psi extends MetadataElement> extends S
 
   private final StringRef myMemberName;
   private int myFlags;
-  private final AtomicNotNullLazyValue<Map<String, MetadataElementStub>> membersMap =
-    new AtomicNotNullLazyValue<Map<String, MetadataElementStub>>() {
-      @NotNull
-      @Override
-      protected Map<String, MetadataElementStub> compute() {
-        return getChildrenStubs().stream()
-          .filter(stub -> ((MetadataElementStub)stub).getMemberName() != null)
-          .collect(Collectors.toMap(stub -> ((MetadataElementStub)stub).getMemberName(),
-                                    stub -> (MetadataElementStub)stub,
-                                    (a, b) -> a));
-      }
-    };
+  // computed on first lookup, most stubs are never asked for members
+  private volatile Map<String, MetadataElementStub> myMembersMap;
 
   public MetadataElementStub(@Nullable String memberName, @Nullable StubElement parent, @NotNull MetadataElementType elementType) {
     super(parent, elementType);
@@ -147,7 +137,18 @@ public abstract class MetadataElementStub<Psi extends MetadataElement> extends S
   }
 
   public MetadataElementStub findMember(@Nullable String name) {
-    return membersMap.getValue().get(name);
+    Map<String, MetadataElementStub> membersMap = myMembersMap;
+    if (membersMap == null) {
+      membersMap = getChildrenStubs().isEmpty()
+                   ? Collections.emptyMap()
+                   : getChildrenStubs().stream()
+                     .filter(stub -> ((MetadataElementStub)stub).getMemberName() != null)
+                     .collect(Collectors.toMap(stub -> ((MetadataElementStub)stub).getMemberName(),
+                                               stub -> (MetadataElementStub)stub,
+                                               (a, b) -> a));
+      myMembersMap = membersMap;
+    }
+    return membersMap.get(name);
   }
 
   protected static void writeString(@Nullable StringRef ref, @NotNull final StubOutputStream dataStream) throws IOException {
@@ -25,13 +25,11 @@ public class Angular2SelectorMatcher<T> {
   private final Map<String, Angular2SelectorMatcher<T>> _classPartialMap = new HashMap<>();
   private final Map<String, Map<String, List<SelectorContext<T>>>> _attrValueMap = new HashMap<>();
   private final Map<String, Map<String, Angular2SelectorMatcher<T>>> _attrValuePartialMap = new HashMap<>();
-  private final List<SelectorListContext> _listContexts = new ArrayList<>();
 
   public void addSelectables(@NotNull List<Angular2DirectiveSimpleSelector> cssSelectors, @Nullable T context) {
     SelectorListContext listContext = null;
     if (cssSelectors.size() > 1) {
       listContext = new SelectorListContext(cssSelectors);
-      this._listContexts.add(listContext);
     }
     for (Angular2DirectiveSimpleSelector selector : cssSelectors) {
       _addSelectable(selector, context, listContext);
@@ -106,6 +104,9 @@ public class Angular2SelectorMatcher<T> {
   /**
    * Find the objects that have been added via `addSelectable`
    * whose css selector is contained in the given css selector.
+   * <p>
+   * Matching does not modify the matcher, so once all selectables are added,
+   * the matcher can be shared and used from several threads.
    *
    * @param cssSelector     A css selector
    * @param matchedCallback This callback will be called with the object handed into `addSelectable`
@@ -113,18 +114,22 @@ public class Angular2SelectorMatcher<T> {
    */
   public boolean match(@NotNull Angular2DirectiveSimpleSelector cssSelector,
                        @Nullable BiConsumer<Angular2DirectiveSimpleSelector, T> matchedCallback) {
+    return _match(cssSelector, matchedCallback, new MatchingState());
+  }
+
+  private boolean _match(@NotNull Angular2DirectiveSimpleSelector cssSelector,
+                         @Nullable BiConsumer<Angular2DirectiveSimpleSelector, T> matchedCallback,
+                         @NotNull MatchingState state) {
     final String element = cssSelector.element;
     final List<String> classNames = cssSelector.classNames;
     final List<String> attrs = cssSelector.attrs;
 
-    _listContexts.forEach(l -> l.alreadyMatched = false);
-
-    boolean result = this._matchTerminal(this._elementMap, element, cssSelector, matchedCallback);
-    result |= this._matchPartial(this._elementPartialMap, element, cssSelector, matchedCallback);
+    boolean result = this._matchTerminal(this._elementMap, element, cssSelector, matchedCallback, state);
+    result |= this._matchPartial(this._elementPartialMap, element, cssSelector, matchedCallback, state);
 
     for (String className : classNames) {
-      result |= this._matchTerminal(this._classMap, className, cssSelector, matchedCallback);
-      result |= this._matchPartial(this._classPartialMap, className, cssSelector, matchedCallback);
+      result |= this._matchTerminal(this._classMap, className, cssSelector, matchedCallback, state);
+      result |= this._matchPartial(this._classPartialMap, className, cssSelector, matchedCallback, state);
     }
 
     for (int i = 0; i < attrs.size(); i += 2) {
@@ -133,15 +138,15 @@ public class Angular2SelectorMatcher<T> {
 
       Map<String, List<SelectorContext<T>>> terminalValuesMap = this._attrValueMap.get(name);
       if (StringUtil.isNotEmpty(value)) {
-        result |= this._matchTerminal(terminalValuesMap, "", cssSelector, matchedCallback);
+        result |= this._matchTerminal(terminalValuesMap, "", cssSelector, matchedCallback, state);
       }
-      result |= this._matchTerminal(terminalValuesMap, value, cssSelector, matchedCallback);
+      result |= this._matchTerminal(terminalValuesMap, value, cssSelector, matchedCallback, state);
 
       Map<String, Angular2SelectorMatcher<T>> partialValuesMap = this._attrValuePartialMap.get(name);
       if (StringUtil.isNotEmpty(value)) {
-        result |= this._matchPartial(partialValuesMap, "", cssSelector, matchedCallback);
+        result |= this._matchPartial(partialValuesMap, "", cssSelector, matchedCallback, state);
       }
-      result |= this._matchPartial(partialValuesMap, value, cssSelector, matchedCallback);
+      result |= this._matchPartial(partialValuesMap, value, cssSelector, matchedCallback, state);
     }
     return result;
   }
@@ -152,7 +157,8 @@ public class Angular2SelectorMatcher<T> {
   private boolean _matchTerminal(@Nullable Map<String, List<SelectorContext<T>>> map,
                                  @Nullable String name,
                                  @NotNull Angular2DirectiveSimpleSelector cssSelector,
-                                 @Nullable BiConsumer<? super Angular2DirectiveSimpleSelector, ? super T> matchedCallback) {
+                                 @Nullable BiConsumer<? super Angular2DirectiveSimpleSelector, ? super T> matchedCallback,
+                                 @NotNull MatchingState state) {
     if (map == null || name == null) {
       return false;
     }
@@ -164,7 +170,7 @@ public class Angular2SelectorMatcher<T> {
     }
     boolean result = false;
     for (SelectorContext<T> selectable : concat(selectables, starSelectables)) {
-      result = selectable.finalize(cssSelector, matchedCallback) || result;
+      result = selectable.finalize(cssSelector, matchedCallback, state) || result;
     }
     return result;
   }
@@ -175,7 +181,8 @@ public class Angular2SelectorMatcher<T> {
   private boolean _matchPartial(@Nullable Map<String, Angular2SelectorMatcher<T>> map,
                                 @Nullable String name,
                                 @NotNull Angular2DirectiveSimpleSelector cssSelector,
-                                @Nullable BiConsumer<Angular2DirectiveSimpleSelector, T> matchedCallback) {
+                                @Nullable BiConsumer<Angular2DirectiveSimpleSelector, T> matchedCallback,
+                                @NotNull MatchingState state) {
     if (map == null || name == null) {
       return false;
     }
@@ -187,12 +194,11 @@ public class Angular2SelectorMatcher<T> {
     // TODO(perf): get rid of recursion and measure again
     // TODO(perf): don't pass the whole selector into the recursion,
     // but only the not processed parts
-    return nestedSelector.match(cssSelector, matchedCallback);
+    return nestedSelector._match(cssSelector, matchedCallback, state);
   }
 
 
   private static class SelectorListContext {
-    public boolean alreadyMatched = false;
     public final List<Angular2DirectiveSimpleSelector> selectors;
 
     SelectorListContext(@NotNull List<Angular2DirectiveSimpleSelector> selectors) {
@@ -200,30 +206,48 @@ public class Angular2SelectorMatcher<T> {
     }
   }
 
+  // Keeps the selector lists matched by a single `match` call
+  private static class MatchingState {
+    private Set<SelectorListContext> matchedListContexts;
+
+    boolean isAlreadyMatched(@Nullable SelectorListContext listContext) {
+      return listContext != null && matchedListContexts != null && matchedListContexts.contains(listContext);
+    }
+
+    void setAlreadyMatched(@NotNull SelectorListContext listContext) {
+      if (matchedListContexts == null) {
+        matchedListContexts = new HashSet<>();
+      }
+      matchedListContexts.add(listContext);
+    }
+  }
+
   // Store context to pass back selector and context when a selector is matched
   private static class SelectorContext<T> {
     public final List<Angular2DirectiveSimpleSelector> notSelectors;
+    public final Angular2SelectorMatcher<T> notMatcher;
     public final Angular2DirectiveSimpleSelector selector;
     public final T context;
     public final SelectorListContext listContext;
 
     SelectorContext(@NotNull Angular2DirectiveSimpleSelector selector, @Nullable T context, @Nullable SelectorListContext listContext) {
       this.notSelectors = selector.notSelectors;
+      this.notMatcher = notSelectors.isEmpty() ? null : createNotMatcher(notSelectors);
       this.selector = selector;
       this.context = context;
       this.listContext = listContext;
     }
 
     boolean finalize(@NotNull Angular2DirectiveSimpleSelector cssSelector,
-                     @Nullable BiConsumer<? super Angular2DirectiveSimpleSelector, ? super T> callback) {
+                     @Nullable BiConsumer<? super Angular2DirectiveSimpleSelector, ? super T> callback,
+                     @NotNull MatchingState state) {
       boolean result = true;
-      if (!notSelectors.isEmpty() && (listContext == null || listContext.alreadyMatched)) {
-        Angular2SelectorMatcher<T> notMatcher = createNotMatcher(notSelectors);
+      if (notMatcher != null && (listContext == null || state.isAlreadyMatched(listContext))) {
         result = !notMatcher.match(cssSelector, null);
       }
-      if (result && callback != null && (this.listContext == null || !listContext.alreadyMatched)) {
+      if (result && callback != null && (this.listContext == null || !state.isAlreadyMatched(listContext))) {
         if (listContext != null) {
-          listContext.alreadyMatched = true;
+          state.setAlreadyMatched(listContext);
         }
         callback.accept(selector, context);
       }
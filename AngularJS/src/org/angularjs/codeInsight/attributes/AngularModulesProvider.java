@@ -8,7 +8,6 @@ import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.SmartPointerManager;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.psi.stubs.StubIndex;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.CommonProcessors;
 import com.intellij.util.indexing.FileBasedIndex;
@@ -49,13 +48,13 @@ public class AngularModulesProvider implements JSModuleConnectionProvider {
     final CommonProcessors.CollectProcessor<String> processor = new CommonProcessors.CollectProcessor<>();
     final GlobalSearchScope fileScope = GlobalSearchScope.fileScope(file);
     final int fileId = FileBasedIndex.getFileId(file.getVirtualFile());
-    StubIndex.getInstance().processAllKeys(AngularModuleIndex.KEY, processor, fileScope,
-                                           new IdFilter() {
-                                             @Override
-                                             public boolean containsFileId(int id) {
-                                               return id == fileId;
-                                             }
-                                           });
+    AngularIndexUtil.processAllKeys(AngularModuleIndex.KEY, processor, fileScope,
+                                    new IdFilter() {
+                                      @Override
+                                      public boolean containsFileId(int id) {
+                                        return id == fileId;
+                                      }
+                                    });
     for (String key : processor.getResults()) {
       AngularIndexUtil.multiResolve(project, AngularModuleIndex.KEY, key,
                                     element -> {
@@ -2,18 +2,12 @@ package org.angularjs.index;
 
 import com.intellij.lang.javascript.psi.JSImplicitElementProvider;
 import com.intellij.psi.stubs.StubIndexKey;
-import org.jetbrains.annotations.NotNull;
 
 /**
+ * Kind of entries of {@link AngularJSIndex}, see {@link AngularIndexUtil}.
+ *
  * @author Dennis.Ushakov
  */
-public class AngularDirectivesDocIndex extends AngularIndexBase {
-
+public class AngularDirectivesDocIndex {
   public static final StubIndexKey<String, JSImplicitElementProvider> KEY = StubIndexKey.createIndexKey("angularjs.directives.doc.index");
-
-  @NotNull
-  @Override
-  public StubIndexKey<String, JSImplicitElementProvider> getKey() {
-    return KEY;
-  }
 }
@@ -2,18 +2,12 @@ package org.angularjs.index;
 
 import com.intellij.lang.javascript.psi.JSImplicitElementProvider;
 import com.intellij.psi.stubs.StubIndexKey;
-import org.jetbrains.annotations.NotNull;
 
 /**
+ * Kind of entries of {@link AngularJSIndex}, see {@link AngularIndexUtil}.
+ *
  * @author Dennis.Ushakov
  */
-public class AngularFilterIndex extends AngularIndexBase {
-
+public class AngularFilterIndex {
   public static final StubIndexKey<String, JSImplicitElementProvider> KEY = StubIndexKey.createIndexKey("angularjs.filter.index");
-
-  @NotNull
-  @Override
-  public StubIndexKey<String, JSImplicitElementProvider> getKey() {
-    return KEY;
-  }
 }
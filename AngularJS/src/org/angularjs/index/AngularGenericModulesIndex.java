@@ -2,17 +2,12 @@ package org.angularjs.index;
 
 import com.intellij.lang.javascript.psi.JSImplicitElementProvider;
 import com.intellij.psi.stubs.StubIndexKey;
-import org.jetbrains.annotations.NotNull;
 
 /**
+ * Kind of entries of {@link AngularJSIndex}, see {@link AngularIndexUtil}.
+ *
  * @author Irina.Chernushina on 7/13/2016.
  */
-public class AngularGenericModulesIndex extends AngularIndexBase {
+public class AngularGenericModulesIndex {
   public static final StubIndexKey<String, JSImplicitElementProvider> KEY = StubIndexKey.createIndexKey("angularjs.generic.modules.index");
-
-  @NotNull
-  @Override
-  public StubIndexKey<String, JSImplicitElementProvider> getKey() {
-    return KEY;
-  }
 }
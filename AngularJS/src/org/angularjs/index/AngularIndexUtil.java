@@ -36,6 +36,7 @@ import com.intellij.util.Processor;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.indexing.FileBasedIndex;
 import com.intellij.util.indexing.ID;
+import com.intellij.util.indexing.IdFilter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -50,7 +51,7 @@ import java.util.concurrent.ConcurrentMap;
  * @author Dennis.Ushakov
  */
 public class AngularIndexUtil {
-  public static final int BASE_VERSION = 65; // Don't forget to update AngularJSIndexingHandler registration
+  public static final int BASE_VERSION = 66; // Don't forget to update AngularJSIndexingHandler registration
   public static final Function<JSImplicitElement, ResolveResult> JS_IMPLICIT_TO_RESOLVE_RESULT = JSResolveResult::new;
 
   private static final ConcurrentMap<String, Key<ParameterizedCachedValue<Collection<String>, Pair<Project, ID<String, ?>>>>> ourCacheKeys =
@@ -85,8 +86,24 @@ public class AngularIndexUtil {
                                   @NotNull StubIndexKey<? super String, JSImplicitElementProvider> index,
                                   @NotNull String lookupKey,
                                   @NotNull Processor<? super JSImplicitElement> processor) {
+    String kind = AngularJSIndexingHandler.getIndexKind(index);
+    if (kind != null) {
+      processImplicitElements(project, scope, AngularJSIndex.KEY, AngularJSIndex.getKey(kind, lookupKey), index, lookupKey, processor);
+    }
+    else {
+      processImplicitElements(project, scope, index, lookupKey, index, lookupKey, processor);
+    }
+  }
+
+  private static <K> void processImplicitElements(@NotNull Project project,
+                                                  @NotNull GlobalSearchScope scope,
+                                                  @NotNull StubIndexKey<K, JSImplicitElementProvider> storageIndex,
+                                                  @NotNull K storageKey,
+                                                  @NotNull StubIndexKey<? super String, JSImplicitElementProvider> index,
+                                                  @NotNull String lookupKey,
+                                                  @NotNull Processor<? super JSImplicitElement> processor) {
     StubIndex.getInstance().processElements(
-      index, lookupKey, project, scope, JSImplicitElementProvider.class, provider -> {
+      storageIndex, storageKey, project, scope, JSImplicitElementProvider.class, provider -> {
         final JSElementIndexingData indexingData = provider.getIndexingData();
         if (indexingData != null) {
           final Collection<JSImplicitElement> elements = indexingData.getImplicitElements();
@@ -138,6 +155,27 @@ public class AngularIndexUtil {
     return list.toArray(ResolveResult.EMPTY_ARRAY);
   }
 
+  /**
+   * Processes keys of an index like {@link AngularModuleIndex#KEY}, which elements are stored in {@link AngularJSIndex}.
+   * <p>
+   * {@link StubIndex} has no ordered or prefix key scan, so this iterates the keys of all kinds in {@link AngularJSIndex} and
+   * filters them by the kind prefix; the cost is proportional to the number of AngularJS elements of all kinds, not of the
+   * requested one. {@link #getAllKeys} caches the result until the next PSI change.
+   */
+  public static boolean processAllKeys(@NotNull StubIndexKey<String, JSImplicitElementProvider> index,
+                                       @NotNull Processor<? super String> processor,
+                                       @NotNull GlobalSearchScope scope,
+                                       @Nullable IdFilter idFilter) {
+    String kind = AngularJSIndexingHandler.getIndexKind(index);
+    if (kind == null) {
+      return StubIndex.getInstance().processAllKeys(index, processor, scope, idFilter);
+    }
+    return StubIndex.getInstance().processAllKeys(AngularJSIndex.KEY, key -> {
+      String name = AngularJSIndex.getName(kind, key);
+      return name == null || processor.process(name);
+    }, scope, idFilter);
+  }
+
   public static @NotNull Collection<String> getAllKeys(final @NotNull ID<String, ?> index, final @NotNull Project project) {
     final String indexId = index.getName();
     final Key<ParameterizedCachedValue<Collection<String>, Pair<Project, ID<String, ?>>>> key =
@@ -227,16 +265,31 @@ public class AngularIndexUtil {
       final GlobalSearchScope scope = GlobalSearchScope.allScope(project);
       final FileBasedIndex fileIndex = FileBasedIndex.getInstance();
       final StubIndex stubIndex = StubIndex.getInstance();
-      Collection<String> allKeys = id instanceof StubIndexKey
-                                   ? stubIndex.getAllKeys((StubIndexKey<String, ?>)id, project)
-                                   : fileIndex.getAllKeys(id, project);
-
-      List<String> filteredKeys = ContainerUtil.filter(
-        allKeys,
-        key -> id instanceof StubIndexKey
-               ? !stubIndex.processElements((StubIndexKey<String, PsiElement>)id, key, project, scope, PsiElement.class, element -> false)
-               : !fileIndex.processValues(id, key, null, (file, value) -> false, scope)
-      );
+      final String kind = id instanceof StubIndexKey ? AngularJSIndexingHandler.getIndexKind((StubIndexKey<?, ?>)id) : null;
+      final List<String> filteredKeys;
+      if (kind != null) {
+        // keys of all kinds are stored together, so only keys of the requested kind are checked for elements
+        filteredKeys = new ArrayList<>();
+        processAllKeys((StubIndexKey<String, JSImplicitElementProvider>)id, name -> {
+          if (!stubIndex.processElements(AngularJSIndex.KEY, AngularJSIndex.getKey(kind, name), project, scope,
+                                         JSImplicitElementProvider.class, element -> false)) {
+            filteredKeys.add(name);
+          }
+          return true;
+        }, scope, null);
+      }
+      else {
+        Collection<String> allKeys = id instanceof StubIndexKey
+                                     ? stubIndex.getAllKeys((StubIndexKey<String, ?>)id, project)
+                                     : fileIndex.getAllKeys(id, project);
+
+        filteredKeys = ContainerUtil.filter(
+          allKeys,
+          key -> id instanceof StubIndexKey
+                 ? !stubIndex.processElements((StubIndexKey<String, PsiElement>)id, key, project, scope, PsiElement.class, element -> false)
+                 : !fileIndex.processValues(id, key, null, (file, value) -> false, scope)
+        );
+      }
       return Result.create(filteredKeys, PsiManager.getInstance(project).getModificationTracker());
     }
   }
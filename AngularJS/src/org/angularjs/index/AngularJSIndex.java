@@ -0,0 +1,49 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angularjs.index;
+
+import com.intellij.lang.javascript.psi.JSImplicitElementProvider;
+import com.intellij.psi.stubs.StubIndexKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Single stub index of all AngularJS implicit elements. Every key is the name of an element prefixed with
+ * the short kind of the element, so directives, controllers, modules, filters, states and other kinds, which
+ * are identified by keys like {@link AngularDirectivesIndex#KEY}, are written in one pass and looked up through
+ * {@link AngularIndexUtil}.
+ */
+public class AngularJSIndex extends AngularIndexBase {
+  public static final StubIndexKey<String, JSImplicitElementProvider> KEY = StubIndexKey.createIndexKey("angularjs.index");
+
+  private static final char KIND_SEPARATOR = ':';
+
+  @NotNull
+  @Override
+  public StubIndexKey<String, JSImplicitElementProvider> getKey() {
+    return KEY;
+  }
+
+  /**
+   * @return key of the element for lookups by {@link AngularSymbolIndex#KEY}
+   */
+  @NotNull
+  public static String getSymbolKey(@NotNull String name) {
+    return getKey(AngularJSIndexingHandler.ANGULAR_SYMBOL_INDEX_USER_STRING, name);
+  }
+
+  @NotNull
+  static String getKey(@NotNull String kind, @NotNull String name) {
+    return kind + KIND_SEPARATOR + name;
+  }
+
+  /**
+   * @return name of the element from the key, or {@code null} if the key belongs to another kind
+   */
+  @Nullable
+  static String getName(@NotNull String kind, @NotNull String key) {
+    int length = kind.length();
+    return key.length() > length && key.charAt(length) == KIND_SEPARATOR && key.startsWith(kind)
+           ? key.substring(length + 1)
+           : null;
+  }
+}
@@ -382,18 +382,29 @@ public class AngularJSIndexingHandler extends FrameworkIndexingHandler {
   @Override
   public boolean indexImplicitElement(@NotNull JSImplicitElementStructure element, @Nullable IndexSink sink) {
     final String userID = element.getUserString();
-    final StubIndexKey<String, JSImplicitElementProvider> index = userID != null ? INDEXES.get(userID) : null;
-    if (index != null) {
+    if (userID != null && INDEXES.containsKey(userID)) {
       if (sink != null) {
-        sink.occurrence(index, element.getName());
-        if (index != AngularSymbolIndex.KEY) {
-          sink.occurrence(AngularSymbolIndex.KEY, element.getName());
+        // all kinds are written to the single index, the user string of the element is the kind of the key
+        sink.occurrence(AngularJSIndex.KEY, AngularJSIndex.getKey(userID, element.getName()));
+        if (!ANGULAR_SYMBOL_INDEX_USER_STRING.equals(userID)) {
+          sink.occurrence(AngularJSIndex.KEY, AngularJSIndex.getSymbolKey(element.getName()));
         }
       }
     }
     return false;
   }
 
+  /**
+   * @return kind of {@link AngularJSIndex} keys for the index key like {@link AngularDirectivesIndex#KEY},
+   * or {@code null} if elements of the index are not stored in {@link AngularJSIndex}
+   */
+  @SuppressWarnings("unchecked")
+  @Nullable
+  static String getIndexKind(@NotNull StubIndexKey<?, ?> index) {
+    final List<String> keys = INDEXES.getKeysByValue((StubIndexKey<String, JSImplicitElementProvider>)index);
+    return keys != null && keys.size() == 1 ? keys.get(0) : null;
+  }
+
   @Override
   public JSElementIndexingData processJSDocComment(@NotNull final JSDocComment comment, @Nullable JSElementIndexingData outData) {
     JSDocTag ngdocTag = null;
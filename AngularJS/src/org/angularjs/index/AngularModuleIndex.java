@@ -4,7 +4,6 @@ import com.intellij.lang.javascript.index.JSSymbolUtil;
 import com.intellij.lang.javascript.psi.*;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.stubs.StubIndexKey;
-import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -12,17 +11,13 @@ import java.util.List;
 import java.util.Set;
 
 /**
+ * Kind of entries of {@link AngularJSIndex}, see {@link AngularIndexUtil}.
+ *
  * @author Dennis.Ushakov
  */
-public class AngularModuleIndex extends AngularIndexBase {
+public class AngularModuleIndex {
   public static final StubIndexKey<String, JSImplicitElementProvider> KEY = StubIndexKey.createIndexKey("angularjs.module.index");
 
-  @NotNull
-  @Override
-  public StubIndexKey<String, JSImplicitElementProvider> getKey() {
-    return KEY;
-  }
-
   // todo have common method for angular module call
   public static List<String> findDependenciesInModuleDeclaration(JSCallExpression call) {
     final JSExpression methodExpression = call.getMethodExpression();
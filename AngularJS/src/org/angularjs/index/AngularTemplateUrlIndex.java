@@ -3,15 +3,10 @@ package org.angularjs.index;
 
 import com.intellij.lang.javascript.psi.JSImplicitElementProvider;
 import com.intellij.psi.stubs.StubIndexKey;
-import org.jetbrains.annotations.NotNull;
-
-public class AngularTemplateUrlIndex extends AngularIndexBase {
 
+/**
+ * Kind of entries of {@link AngularJSIndex}, see {@link AngularIndexUtil}.
+ */
+public class AngularTemplateUrlIndex {
   public static final StubIndexKey<String, JSImplicitElementProvider> KEY = StubIndexKey.createIndexKey("angularjs.templateUrl.index");
-
-  @NotNull
-  @Override
-  public StubIndexKey<String, JSImplicitElementProvider> getKey() {
-    return KEY;
-  }
 }
@@ -1,6 +1,7 @@
 // Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package org.angular2;
 
+import org.angular2.cli.AngularCliSchematicsCacheTest;
 import org.angular2.cli.AngularConfigTest;
 import org.angular2.cli.BlueprintListTest;
 import org.angular2.codeInsight.*;
@@ -88,6 +89,7 @@ import org.junit.runners.Suite;
   CssInspectionsTest.class,
   Angular2ReSharperTestSuite.class,
   AngularConfigTest.class,
+  AngularCliSchematicsCacheTest.class,
   Angular2LiveTemplateTest.class
 })
 public class Angular2TestSuite {
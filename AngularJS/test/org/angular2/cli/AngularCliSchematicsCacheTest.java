@@ -0,0 +1,82 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angular2.cli;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.LightPlatformTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class AngularCliSchematicsCacheTest extends LightPlatformTestCase {
+
+  private static final String SCHEMATICS_DIR = "node_modules/@schematics/angular/";
+
+  public void testPersistedSchematics() throws IOException {
+    File root = FileUtil.createTempDirectory(getTestName(true), null, true);
+    File cacheDir = new File(root, "cache");
+    File cli = new File(root, "project");
+    writeFile(cli, "angular.json", "{}");
+    writeFile(cli, SCHEMATICS_DIR + "package.json",
+              "{\"name\": \"@schematics/angular\", \"version\": \"9.0.0\", \"schematics\": \"./collection.json\"}");
+    writeFile(cli, SCHEMATICS_DIR + "collection.json", "{\"schematics\": {\"component\": {\"schema\": \"./component/schema.json\"}}}");
+    writeFile(cli, SCHEMATICS_DIR + "component/schema.json", "{\"properties\": {}}");
+    writeFile(cli, "node_modules/lodash/package.json", "{\"name\": \"lodash\", \"version\": \"4.0.0\"}");
+
+    AtomicInteger loads = new AtomicInteger();
+    Supplier<List<Schematic>> loader = () -> {
+      loads.incrementAndGet();
+      return Collections.singletonList(
+        new Schematic("component", "Creates a component", Collections.singletonList(new Option("flat")), Collections.emptyList()));
+    };
+
+    AngularCliSchematicsCache cache = new AngularCliSchematicsCache(cacheDir);
+    cache.getSchematics(cli, false, loader);
+    assertEquals(1, loads.get());
+
+    // a new instance reads the entry written before a restart
+    cache = new AngularCliSchematicsCache(cacheDir);
+    List<Schematic> schematics = cache.getSchematics(cli, false, loader);
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.getHitCount());
+    assertEquals("component", schematics.get(0).getName());
+    assertEquals("flat", schematics.get(0).getOptions().get(0).getName());
+
+    // packages without schematics do not matter
+    writeFile(cli, "node_modules/lodash/package.json", "{\"name\": \"lodash\", \"version\": \"4.0.1\"}");
+    cache.getSchematics(cli, false, loader);
+    assertEquals(1, loads.get());
+
+    // hidden schematics are stored separately
+    cache.getSchematics(cli, true, loader);
+    assertEquals(2, loads.get());
+
+    writeFile(cli, SCHEMATICS_DIR + "component/schema.json", "{\"properties\": {\"flat\": {\"type\": \"boolean\"}}}");
+    cache.getSchematics(cli, false, loader);
+    assertEquals(3, loads.get());
+
+    writeFile(cli, SCHEMATICS_DIR + "package.json",
+              "{\"name\": \"@schematics/angular\", \"version\": \"9.0.1\", \"schematics\": \"./collection.json\"}");
+    cache.getSchematics(cli, false, loader);
+    assertEquals(4, loads.get());
+
+    cache.invalidate();
+    cache.getSchematics(cli, false, loader);
+    cache.getSchematics(cli, false, loader);
+    assertEquals(5, loads.get());
+    assertEquals(4, cache.getMissCount());
+  }
+
+  public void testNoNodeModules() throws IOException {
+    File cli = FileUtil.createTempDirectory(getTestName(true), null, true);
+    assertNull(AngularCliSchematicsCache.computeFingerprint(cli, false));
+  }
+
+  private static void writeFile(@NotNull File dir, @NotNull String path, @NotNull String content) throws IOException {
+    FileUtil.writeToFile(new File(dir, path), content);
+  }
+}
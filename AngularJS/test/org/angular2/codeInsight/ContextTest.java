@@ -7,6 +7,7 @@ import com.intellij.lang.javascript.JavaScriptBundle;
 import com.intellij.lang.javascript.inspections.JSUnusedGlobalSymbolsInspection;
 import com.intellij.lang.javascript.inspections.JSUnusedLocalSymbolsInspection;
 import com.intellij.lang.javascript.psi.JSFunction;
+import com.intellij.lang.javascript.psi.JSPsiElementBase;
 import com.intellij.lang.javascript.psi.ecma6.TypeScriptFunction;
 import com.intellij.lang.javascript.psi.ecma6.impl.TypeScriptFieldImpl;
 import com.intellij.lang.javascript.psi.ecma6.impl.TypeScriptParameterImpl;
@@ -14,13 +15,19 @@ import com.intellij.lang.typescript.formatter.TypeScriptCodeStyleSettings;
 import com.intellij.lang.typescript.inspections.TypeScriptUnresolvedFunctionInspection;
 import com.intellij.lang.typescript.inspections.TypeScriptUnresolvedVariableInspection;
 import com.intellij.lang.typescript.inspections.TypeScriptValidateTypesInspection;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
 import one.util.streamex.StreamEx;
 import org.angular2.Angular2CodeInsightFixtureTestCase;
 import org.angular2.inspections.Angular2TemplateInspectionsProvider;
 import org.angularjs.AngularTestUtil;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+
 import static com.intellij.lang.javascript.BaseJSCompletionTestCase.getLocationPresentation;
 import static com.intellij.util.containers.ContainerUtil.newArrayList;
 
@@ -245,4 +252,38 @@ public class ContextTest extends Angular2CodeInsightFixtureTestCase {
     myFixture.configureByFiles("unions.ts", "ng_for_of.ts", "iterable_differs.ts", "package.json");
     myFixture.checkHighlighting();
   }
+
+  public void testTemplateTypeCache() {
+    myFixture.configureByFiles("package.json");
+    PsiFile component = myFixture.addFileToProject("cache.component.ts", getCacheComponentText("title: string;"));
+    myFixture.configureByText("cache.component.html", "<div>{{ <caret> }}</div>");
+    List<Angular2ComponentPropertyResolveResult> members = Angular2TemplateTypeCache.get(myFixture.getFile()).getComponentMembers();
+    assertEquals(newArrayList("title"), getNames(members));
+
+    // edits of the template keep members of the component
+    myFixture.type("title");
+    PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+    assertSame(members, Angular2TemplateTypeCache.get(myFixture.getFile()).getComponentMembers());
+
+    Document document = PsiDocumentManager.getInstance(getProject()).getDocument(component);
+    assertNotNull(document);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      document.setText(getCacheComponentText("title: string;\n  count: number;"));
+      PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+    });
+    assertEquals(newArrayList("title", "count"),
+                 getNames(Angular2TemplateTypeCache.get(myFixture.getFile()).getComponentMembers()));
+  }
+
+  @NotNull
+  private static String getCacheComponentText(@NotNull String members) {
+    return "import {Component} from '@angular/core';\n" +
+           "@Component({selector: 'app-cache', templateUrl: './cache.component.html'})\n" +
+           "export class CacheComponent {\n  " + members + "\n}\n";
+  }
+
+  @NotNull
+  private static List<String> getNames(@NotNull List<Angular2ComponentPropertyResolveResult> members) {
+    return StreamEx.of(members).map(member -> ((JSPsiElementBase)member.getElement()).getName()).toList();
+  }
 }
@@ -3,6 +3,7 @@ package org.angular2.codeInsight;
 
 import com.intellij.lang.javascript.psi.ecma6.TypeScriptClass;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.containers.ContainerUtil;
@@ -12,12 +13,15 @@ import org.angular2.entities.Angular2Declaration;
 import org.angular2.entities.Angular2EntitiesProvider;
 import org.angular2.entities.Angular2Entity;
 import org.angular2.entities.Angular2Module;
+import org.angular2.entities.Angular2ModuleGraph;
 import org.angularjs.AngularTestUtil;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class ModulesTest extends Angular2CodeInsightFixtureTestCase {
@@ -183,6 +187,52 @@ public class ModulesTest extends Angular2CodeInsightFixtureTestCase {
                      "check.txt");
   }
 
+  public void testExportCycleDeclarations() {
+    myFixture.configureByText("cycle.ts", "import {Component, NgModule} from \"@angular/core\"\n" +
+                                          "@Component({selector: 'a-cmp', template: ''}) export class ACmp {}\n" +
+                                          "@Component({selector: 'b-cmp', template: ''}) export class BCmp {}\n" +
+                                          "@Component({selector: 'c-cmp', template: ''}) export class CCmp {}\n" +
+                                          "@NgModule({declarations: [ACmp], exports: [ACmp, BModule]}) export class AModule {}\n" +
+                                          "@NgModule({declarations: [BCmp], exports: [BCmp, AModule]}) export class BModule {}\n" +
+                                          "@NgModule({declarations: [CCmp], imports: [AModule], exports: [BModule]}) " +
+                                          "export class CModule {}\n");
+    Map<String, Angular2Module> modules = StreamEx.of(Angular2EntitiesProvider.getAllModules(getProject()))
+      .toMap(m -> m.getName(), m -> m);
+    Angular2Module aModule = modules.get("AModule");
+    Angular2Module cModule = modules.get("CModule");
+
+    assertEquals(Arrays.asList("ACmp", "BCmp"), getSortedNames(aModule.getAllExportedDeclarations()));
+    assertSame(aModule.getAllExportedDeclarations(), modules.get("BModule").getAllExportedDeclarations());
+    assertSame(aModule.getAllExportedDeclarations(), cModule.getAllExportedDeclarations());
+    assertEquals(Arrays.asList("ACmp", "BCmp", "CCmp"), getSortedNames(cModule.getDeclarationsInScope()));
+    assertFalse(aModule.getDeclarationsInScope().contains(cModule.getDeclarations().iterator().next()));
+  }
+
+  public void testModuleGraphRebuiltOnImportsChange() {
+    myFixture.configureByText("imports.ts", "import {Component, NgModule} from \"@angular/core\"\n" +
+                                            "@Component({selector: 'a-cmp', template: ''}) export class ACmp {}\n" +
+                                            "@Component({selector: 'b-cmp', template: ''}) export class BCmp {}\n" +
+                                            "@NgModule({declarations: [ACmp], exports: [ACmp]}) export class AModule {}\n" +
+                                            "@NgModule({declarations: [BCmp], exports: [BCmp]}) export class BModule {}\n" +
+                                            "@NgModule({imports: [AModule]}) export class CModule {}\n");
+    Angular2ModuleGraph graph = Angular2ModuleGraph.getInstance(getProject());
+    assertEquals(Arrays.asList("ACmp"), getSortedNames(getModule("CModule").getDeclarationsInScope()));
+
+    AngularTestUtil.moveToOffsetBySignature("imports: [<caret>AModule]", myFixture);
+    myFixture.type("BModule, ");
+    PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+
+    assertNotSame(graph, Angular2ModuleGraph.getInstance(getProject()));
+    assertEquals(Arrays.asList("ACmp", "BCmp"), getSortedNames(getModule("CModule").getDeclarationsInScope()));
+  }
+
+  @NotNull
+  private Angular2Module getModule(@NotNull String name) {
+    Angular2Module module = ContainerUtil.find(Angular2EntitiesProvider.getAllModules(getProject()), m -> name.equals(m.getName()));
+    assertNotNull(name, module);
+    return module;
+  }
+
   private void doResolutionTest(@NotNull String directory,
                                 @NotNull String moduleFile,
                                 @NotNull String signature,
@@ -223,6 +273,11 @@ public class ModulesTest extends Angular2CodeInsightFixtureTestCase {
                    .toList());
   }
 
+  @NotNull
+  private static List<String> getSortedNames(@NotNull Set<? extends Angular2Entity> entities) {
+    return StreamEx.of(entities).map(Angular2Entity::getName).sorted().toList();
+  }
+
   private static void printEntity(int level,
                                   @NotNull Angular2Entity entity,
                                   @NotNull StringBuilder result,
@@ -3,6 +3,9 @@ package org.angular2.metadata;
 
 import com.intellij.codeInspection.htmlInspections.HtmlUnknownAttributeInspection;
 import com.intellij.codeInspection.htmlInspections.HtmlUnknownTagInspection;
+import com.intellij.json.JsonLanguage;
+import com.intellij.json.psi.JsonFile;
+import com.intellij.json.psi.JsonValue;
 import com.intellij.json.psi.impl.JsonFileImpl;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
@@ -11,22 +14,32 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDirectory;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
 import com.intellij.psi.SingleRootFileViewProvider;
 import com.intellij.psi.impl.DebugUtil;
+import com.intellij.psi.stubs.SerializationManagerEx;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.testFramework.UsefulTestCase;
 import org.angular2.Angular2CodeInsightFixtureTestCase;
+import org.angular2.entities.metadata.Angular2MetadataFileType;
 import org.angular2.entities.metadata.psi.Angular2MetadataNodeModule;
 import org.angular2.entities.metadata.psi.Angular2MetadataReference;
+import org.angular2.entities.metadata.stubs.Angular2MetadataNodeModuleStub;
 import org.angular2.inspections.Angular2TemplateInspectionsProvider;
 import org.angular2.inspections.AngularAmbiguousComponentTagInspection;
 import org.angular2.inspections.AngularUndefinedBindingInspection;
 import org.angular2.inspections.AngularUndefinedTagInspection;
 import org.angular2.lang.metadata.MetadataJsonFileViewProviderFactory;
 import org.angular2.lang.metadata.psi.MetadataFileImpl;
+import org.angular2.lang.metadata.stubs.MetadataFileStubImpl;
 import org.angularjs.AngularTestUtil;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import static com.intellij.openapi.util.Pair.pair;
 import static java.util.Arrays.asList;
@@ -227,6 +240,38 @@ public class JsonMetadataTest extends Angular2CodeInsightFixtureTestCase {
     myFixture.checkHighlighting();
   }
 
+  public void testMetadataStubsOfRecordedFiles() throws IOException {
+    // the expected stub counts are the element counts of the recorded stub dumps
+    for (Pair<String, Integer> check : asList(pair("ng-zorro-antd.metadata.json", 979),
+                                              pair("@syncfusion-ej2-angular-dropdowns/ej2-angular-dropdowns.metadata.json", 348),
+                                              pair("spread-operator/evo-ui-kit.metadata.json", 147),
+                                              pair("forms.metadata.json", 137),
+                                              pair("transloco/ngneat-transloco.metadata.json", 49),
+                                              pair("@agm-core/core.module.metadata.json", 23),
+                                              pair("test-ng-attr.metadata.json", 10),
+                                              pair("ngxs-labs-dispatch.metadata.json", 9))) {
+      String text = FileUtil.loadFile(new File(getTestDataPath(), check.first), StandardCharsets.UTF_8);
+      JsonFile jsonFile = (JsonFile)PsiFileFactory.getInstance(getProject()).createFileFromText(JsonLanguage.INSTANCE, text);
+      MetadataFileStubImpl fileStub = new MetadataFileStubImpl(null, Angular2MetadataFileType.INSTANCE.getFileElementType());
+      new Angular2MetadataNodeModuleStub(fileStub, jsonFile.getTopLevelValue());
+
+      int stubCount = countStubs(fileStub);
+      assertEquals(check.first, (int)check.second, stubCount);
+      assertTrue(check.first, stubCount < PsiTreeUtil.findChildrenOfType(jsonFile, JsonValue.class).size());
+      ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+      SerializationManagerEx.getInstanceEx().serialize(fileStub, serialized);
+      assertTrue(check.first + ": " + serialized.size() + " bytes serialized", serialized.size() < text.length());
+    }
+  }
+
+  private static int countStubs(@NotNull StubElement<?> stub) {
+    int result = 1;
+    for (StubElement<?> child : stub.getChildrenStubs()) {
+      result += countStubs(child);
+    }
+    return result;
+  }
+
   private void testMetadataStubBuilding(String metadataJson) {
     testMetadataStubBuilding(metadataJson, StringUtil.trimEnd(metadataJson, ".json") + ".psi.txt");
   }
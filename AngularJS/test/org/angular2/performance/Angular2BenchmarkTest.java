@@ -0,0 +1,215 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angular2.performance;
+
+import com.intellij.codeInsight.lookup.LookupManager;
+import com.intellij.lang.typescript.inspections.TypeScriptUnresolvedFunctionInspection;
+import com.intellij.lang.typescript.inspections.TypeScriptUnresolvedVariableInspection;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.usageView.UsageInfo;
+import com.intellij.util.ThrowableRunnable;
+import org.angular2.Angular2CodeInsightFixtureTestCase;
+import org.angular2.inspections.Angular2TemplateInspectionsProvider;
+import org.angularjs.AngularTestUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.angular2.performance.Angular2GeneratedProject.generateModuleFile;
+import static org.angular2.performance.Angular2GeneratedProject.generateTemplate;
+
+/**
+ * Benchmarks of Angular 2+ highlighting, completion and find usages over a generated project with hundreds
+ * of components, directives, pipes and modules and a template of about 5,500 lines. Baseline timings are stored
+ * in {@code data/baselines.properties} together with the reference machine they were measured on, and are
+ * recorded with the {@code recordAngular2Benchmarks} Gradle task. A benchmark fails when its timing exceeds the
+ * baseline by more than the tolerance of {@link PlatformTestUtil#startPerformanceTest}; the baselines can be
+ * scaled with the {@code angular2.benchmark.factor} system property on machines slower than the reference one.
+ * <p>
+ * The benchmarks are not part of the default test run, they are run with the {@code angular2Benchmarks} Gradle task.
+ */
+public class Angular2BenchmarkTest extends Angular2CodeInsightFixtureTestCase {
+
+  private static final String BASELINES_FILE = "baselines.properties";
+  private static final String FACTOR_PROPERTY = "angular2.benchmark.factor";
+  /**
+   * The path of the file to store measured timings to instead of checking them, set by {@code recordAngular2Benchmarks}.
+   */
+  private static final String RECORD_PROPERTY = "angular2.benchmark.record";
+  private static final String MACHINE_KEY = "machine";
+
+  private static final String PREFIX = "app";
+  private static final int MODULES = 50;
+  private static final int COMPONENTS_PER_MODULE = 8;
+  private static final int DIRECTIVES_PER_MODULE = 4;
+  private static final int PIPES_PER_MODULE = 2;
+  private static final int TEMPLATE_BLOCKS = 500;
+  private static final int ATTEMPTS = 3;
+
+  private static final String CARET = "<caret>";
+
+  @Override
+  protected String getTestDataPath() {
+    return AngularTestUtil.getBaseTestDataPath(getClass());
+  }
+
+  public void testHighlighting() {
+    configureProject(null);
+    myFixture.enableInspections(new Angular2TemplateInspectionsProvider());
+    myFixture.enableInspections(TypeScriptUnresolvedVariableInspection.class, TypeScriptUnresolvedFunctionInspection.class);
+
+    benchmark(() -> {
+      myFixture.getPsiManager().dropPsiCaches();
+      myFixture.doHighlighting();
+    });
+  }
+
+  public void testTagCompletion() {
+    configureProject("<app-cmp-" + CARET + "\n");
+    benchmarkCompletion("app-cmp-0", "app-cmp-" + (MODULES * COMPONENTS_PER_MODULE - 1));
+  }
+
+  public void testAttributeCompletion() {
+    configureProject("<app-cmp-7 " + CARET + "></app-cmp-7>\n");
+    benchmarkCompletion("[value7]");
+  }
+
+  public void testInterpolationCompletion() {
+    configureProject("<span>{{ " + CARET + " }}</span>\n");
+    benchmarkCompletion("title", "count", "describe");
+  }
+
+  public void testPipeCompletion() {
+    configureProject("<span>{{ title | " + CARET + " }}</span>\n");
+    benchmarkCompletion("appPipe0", "appPipe" + (MODULES * PIPES_PER_MODULE - 1));
+  }
+
+  public void testFindUsages() {
+    configureProject(null);
+    myFixture.configureFromTempProjectFile("app.component.ts");
+    AngularTestUtil.moveToOffsetBySignature("tit<caret>le: string", myFixture);
+
+    benchmark(() -> {
+      myFixture.getPsiManager().dropPsiCaches();
+      Collection<UsageInfo> usages = myFixture.findUsages(myFixture.getElementAtCaret());
+      // a property binding and an interpolation in each block, and the reference in describe()
+      assertEquals(TEMPLATE_BLOCKS * 2 + 1, usages.size());
+    });
+  }
+
+  private void benchmarkCompletion(String @NotNull ... expected) {
+    benchmark(() -> {
+      myFixture.getPsiManager().dropPsiCaches();
+      myFixture.completeBasic();
+      List<String> lookupElements = myFixture.getLookupElementStrings();
+      assertNotNull(lookupElements);
+      assertContainsElements(lookupElements, expected);
+      LookupManager.getInstance(getProject()).hideActiveLookup();
+    });
+  }
+
+  private void benchmark(@NotNull ThrowableRunnable<?> test) {
+    String recordPath = System.getProperty(RECORD_PROPERTY);
+    if (recordPath != null) {
+      recordTiming(new File(recordPath), getTestName(true), test);
+      return;
+    }
+    PlatformTestUtil.startPerformanceTest(getTestName(false), getExpectedMs(loadBaselines(), getTestName(true)), test)
+      .attempts(ATTEMPTS)
+      .usesAllCPUCores()
+      .assertTiming();
+  }
+
+  @NotNull
+  private Properties loadBaselines() {
+    Properties baselines = new Properties();
+    try (InputStream input = new FileInputStream(getTestDataPath() + BASELINES_FILE)) {
+      baselines.load(input);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return baselines;
+  }
+
+  private static int getExpectedMs(@NotNull Properties baselines, @NotNull String name) {
+    String baseline = baselines.getProperty(name);
+    assertNotNull("No baseline for " + name + " in " + BASELINES_FILE + ", record it with the recordAngular2Benchmarks Gradle task",
+                  baseline);
+    String factor = System.getProperty(FACTOR_PROPERTY);
+    return (int)(Integer.parseInt(baseline) * (factor != null ? Double.parseDouble(factor) : 1.0));
+  }
+
+  // stores the median of the measured timings and the description of the machine to the given file
+  private static void recordTiming(@NotNull File file, @NotNull String name, @NotNull ThrowableRunnable<?> test) {
+    long[] timings = new long[ATTEMPTS];
+    for (int i = 0; i < ATTEMPTS; i++) {
+      long start = System.nanoTime();
+      try {
+        test.run();
+      }
+      catch (Throwable e) {
+        throw new RuntimeException(e);
+      }
+      timings[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+    Arrays.sort(timings);
+
+    Properties recorded = new Properties();
+    try {
+      if (file.exists()) {
+        try (InputStream input = new FileInputStream(file)) {
+          recorded.load(input);
+        }
+      }
+      recorded.setProperty(name, String.valueOf(timings[ATTEMPTS / 2]));
+      recorded.setProperty(MACHINE_KEY, SystemInfo.OS_NAME + " " + SystemInfo.OS_ARCH + ", " +
+                                        Runtime.getRuntime().availableProcessors() + " cores, " +
+                                        Runtime.getRuntime().maxMemory() / (1024 * 1024) + " MB max heap, Java " +
+                                        SystemInfo.JAVA_RUNTIME_VERSION);
+      FileUtil.createParentDirs(file);
+      try (OutputStream output = new FileOutputStream(file)) {
+        recorded.store(output, null);
+      }
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void configureProject(String insertion) {
+    myFixture.addFileToProject("package.json", "{\"dependencies\": {\"@angular/core\": \"0.0.0\"}}");
+    StringBuilder imports = new StringBuilder("import {Component, NgModule} from \"@angular/core\"\n");
+    StringBuilder modules = new StringBuilder();
+    for (int m = 0; m < MODULES; m++) {
+      myFixture.addFileToProject("lib/module" + m + ".ts",
+                                 generateModuleFile(PREFIX, m, COMPONENTS_PER_MODULE, DIRECTIVES_PER_MODULE, PIPES_PER_MODULE));
+      imports.append("import {Lib").append(m).append("Module} from \"./lib/module").append(m).append("\"\n");
+      modules.append(m == 0 ? "" : ", ").append("Lib").append(m).append("Module");
+    }
+    myFixture.addFileToProject("app.component.ts", imports + "\n" +
+                                                   "@Component({selector: 'app-root', templateUrl: './app.component.html'})\n" +
+                                                   "export class AppComponent {\n" +
+                                                   "  title: string;\n" +
+                                                   "  count: number;\n" +
+                                                   "  visible: boolean;\n\n" +
+                                                   "  describe(value: number): string {\n    return this.title + value;\n  }\n" +
+                                                   "}\n\n" +
+                                                   "@NgModule({declarations: [AppComponent], imports: [" + modules + "]})\n" +
+                                                   "export class AppModule {\n}\n");
+    myFixture.configureByText("app.component.html", generateTemplate(PREFIX, TEMPLATE_BLOCKS, MODULES * COMPONENTS_PER_MODULE,
+                                                                     MODULES * DIRECTIVES_PER_MODULE, MODULES * PIPES_PER_MODULE,
+                                                                     insertion));
+  }
+}
@@ -0,0 +1,82 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angular2.performance;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Generates sources of large Angular 2+ projects for {@link Angular2PerformanceTest} and {@link Angular2BenchmarkTest}. Components,
+ * directives and pipes of module {@code m} are numbered from {@code m} times their count per module, so modules can be combined, and
+ * templates use them with the same numbering.
+ */
+final class Angular2GeneratedProject {
+
+  private Angular2GeneratedProject() {
+  }
+
+  /**
+   * Components with an input, directives matched by attribute or class, directives matched by a {@code :not} selector and pipes,
+   * all declared and exported by module {@code Lib<m>Module}.
+   */
+  @NotNull
+  static String generateModuleFile(@NotNull String prefix, int m, int components, int directives, int pipes) {
+    StringBuilder result = new StringBuilder("import {Component, Directive, Input, NgModule, Pipe} from \"@angular/core\"\n\n");
+    StringBuilder declarations = new StringBuilder();
+    for (int i = m * components; i < (m + 1) * components; i++) {
+      result.append("@Component({selector: '").append(prefix).append("-cmp-").append(i).append("', template: '<div></div>'})\n")
+        .append("export class Cmp").append(i).append("Component {\n  @Input() value").append(i).append(": string;\n}\n\n");
+      declarations.append(declarations.length() == 0 ? "" : ", ").append("Cmp").append(i).append("Component");
+    }
+    for (int i = m * directives; i < (m + 1) * directives; i++) {
+      result.append("@Directive({selector: '[").append(prefix).append("Dir").append(i).append("], .").append(prefix).append("-cls-")
+        .append(i).append("'})\n")
+        .append("export class Dir").append(i).append("Directive {\n  @Input() ").append(prefix).append("Dir").append(i)
+        .append(": string;\n}\n\n")
+        .append("@Directive({selector: 'button[").append(prefix).append("Button").append(i).append("]:not(.disabled)'})\n")
+        .append("export class Button").append(i).append("Directive {\n}\n\n");
+      declarations.append(", Dir").append(i).append("Directive, Button").append(i).append("Directive");
+    }
+    for (int i = m * pipes; i < (m + 1) * pipes; i++) {
+      result.append("@Pipe({name: '").append(prefix).append("Pipe").append(i).append("'})\n")
+        .append("export class Pipe").append(i).append("Pipe {\n")
+        .append("  transform(value: string, suffix?: string): string {\n    return value + suffix;\n  }\n}\n\n");
+      declarations.append(", Pipe").append(i).append("Pipe");
+    }
+    return result.append("@NgModule({declarations: [").append(declarations).append("], exports: [").append(declarations).append("]})\n")
+      .append("export class Lib").append(m).append("Module {\n}\n").toString();
+  }
+
+  /**
+   * About 11 lines per block. Each block uses a component, both kinds of directives and a pipe, refers to the {@code title} member
+   * of the component twice and to its {@code count} and {@code describe()} members once.
+   *
+   * @param insertion text placed in the middle of the template
+   */
+  @NotNull
+  static String generateTemplate(@NotNull String prefix, int blocks, int components, int directives, int pipes,
+                                 @Nullable String insertion) {
+    StringBuilder result = new StringBuilder("<div>\n");
+    for (int i = 0; i < blocks; i++) {
+      if (i == blocks / 2 && insertion != null) {
+        result.append(insertion);
+      }
+      int c = i % components;
+      int d = i % directives;
+      result.append("  <section class=\"").append(prefix).append("-cls-").append(d).append("\">\n")
+        .append("    <").append(prefix).append("-cmp-").append(c).append(" [value").append(c).append("]=\"title\"></")
+        .append(prefix).append("-cmp-").append(c).append(">\n")
+        .append("    <div ").append(prefix).append("Dir").append(d).append("=\"text\">{{ title | ").append(prefix).append("Pipe")
+        .append(i % pipes).append(": '").append(i).append("' }}</div>\n")
+        .append("    <button ").append(prefix).append("Button").append(d).append(" class=\"primary\">Button ").append(i)
+        .append("</button>\n")
+        .append("    <span>{{ count + ").append(i).append(" }}</span>\n")
+        .append("    <ng-template [ngIf]=\"visible\">\n")
+        .append("      <p>{{ describe(").append(i).append(") }}</p>\n")
+        .append("    </ng-template>\n")
+        .append("    <input type=\"text\" name=\"field").append(i).append("\">\n")
+        .append("  </section>\n")
+        .append("  <p>Paragraph ").append(i).append("</p>\n");
+    }
+    return result.append("</div>\n").toString();
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angular2.performance;
+
+import com.intellij.json.JsonLanguage;
+import com.intellij.json.psi.JsonFile;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.testFramework.PlatformTestUtil;
+import org.angular2.Angular2CodeInsightFixtureTestCase;
+import org.angular2.entities.metadata.Angular2MetadataFileType;
+import org.angular2.entities.metadata.stubs.Angular2MetadataNodeModuleStub;
+import org.angular2.lang.metadata.stubs.MetadataFileStubImpl;
+import org.angular2.metadata.JsonMetadataTest;
+import org.angularjs.AngularTestUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Builds metadata stubs of the recorded {@code .metadata.json} files of {@link JsonMetadataTest}, or of the files in the directory set
+ * with the {@code angular2.metadata.benchmark.corpus} system property, e.g. a large {@code node_modules}.
+ */
+public class Angular2MetadataStubsBenchmarkTest extends Angular2CodeInsightFixtureTestCase {
+
+  private static final Pattern METADATA_FILE_PATTERN = Pattern.compile(".*\\.metadata\\.json");
+
+  public void testMetadataStubsBenchmark() throws IOException {
+    String corpusPath = System.getProperty("angular2.metadata.benchmark.corpus",
+                                           AngularTestUtil.getBaseTestDataPath(JsonMetadataTest.class) + "/json");
+    List<File> metadataFiles = FileUtil.findFilesByMask(METADATA_FILE_PATTERN, new File(corpusPath));
+    List<JsonFile> jsonFiles = new ArrayList<>();
+    for (File metadataFile : metadataFiles) {
+      jsonFiles.add((JsonFile)PsiFileFactory.getInstance(getProject()).createFileFromText(
+        JsonLanguage.INSTANCE, FileUtil.loadFile(metadataFile, StandardCharsets.UTF_8)));
+    }
+
+    PlatformTestUtil.startPerformanceTest("Metadata stubs of " + jsonFiles.size() + " modules", 2_000, () -> {
+      for (JsonFile jsonFile : jsonFiles) {
+        buildStub(jsonFile);
+      }
+    }).attempts(3).assertTiming();
+  }
+
+  @NotNull
+  private static MetadataFileStubImpl buildStub(@NotNull JsonFile jsonFile) {
+    MetadataFileStubImpl fileStub = new MetadataFileStubImpl(null, Angular2MetadataFileType.INSTANCE.getFileElementType());
+    if (jsonFile.getTopLevelValue() != null) {
+      new Angular2MetadataNodeModuleStub(fileStub, jsonFile.getTopLevelValue());
+    }
+    return fileStub;
+  }
+}
@@ -0,0 +1,124 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.angular2.performance;
+
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.testFramework.PlatformTestUtil;
+import org.angular2.Angular2CodeInsightFixtureTestCase;
+import org.angular2.entities.Angular2Directive;
+import org.angular2.entities.Angular2EntitiesProvider;
+import org.angular2.entities.Angular2EntitiesRegistry;
+import org.angular2.inspections.Angular2TemplateInspectionsProvider;
+import org.angular2.inspections.AngularUndefinedBindingInspection;
+import org.angular2.inspections.AngularUndefinedTagInspection;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.angular2.performance.Angular2GeneratedProject.generateModuleFile;
+import static org.angular2.performance.Angular2GeneratedProject.generateTemplate;
+
+public class Angular2PerformanceTest extends Angular2CodeInsightFixtureTestCase {
+
+  private static final String PREFIX = "lib";
+  private static final int LIBRARY_SIZE = 300;
+  private static final int TEMPLATE_BLOCKS = 250;
+  private static final int PROJECT_COMPONENTS = 1500;
+  private static final int TYPED_CHARS = 20;
+
+  public void testLargeTemplateHighlighting() {
+    myFixture.addFileToProject("package.json", "{\"dependencies\": {\"@angular/core\": \"0.0.0\"}}");
+    myFixture.addFileToProject("library.ts", generateLibrary());
+    myFixture.configureByText("large.html", generateLargeTemplate());
+    myFixture.enableInspections(AngularUndefinedBindingInspection.class, AngularUndefinedTagInspection.class);
+
+    PlatformTestUtil.startPerformanceTest(getTestName(false), 10_000, () -> {
+      myFixture.getPsiManager().dropPsiCaches();
+      myFixture.doHighlighting();
+    }).attempts(3).usesAllCPUCores().assertTiming();
+  }
+
+  public void testFullInspectionPassOverLargeTemplate() {
+    myFixture.addFileToProject("package.json", "{\"dependencies\": {\"@angular/core\": \"0.0.0\"}}");
+    myFixture.addFileToProject("library.ts", generateLibrary());
+    myFixture.addFileToProject("app.component.ts", "import {Component, NgModule} from \"@angular/core\"\n" +
+                                                   "import {Lib0Module} from \"./library\"\n\n" +
+                                                   "@Component({selector: 'app-root', templateUrl: './large.html'})\n" +
+                                                   "export class AppComponent {\n}\n\n" +
+                                                   "@NgModule({declarations: [AppComponent], imports: [Lib0Module]})\n" +
+                                                   "export class AppModule {\n}\n");
+    myFixture.configureByText("large.html", generateLargeTemplate());
+    myFixture.enableInspections(new Angular2TemplateInspectionsProvider());
+
+    // every template inspection reads applicable directives and the declarations scope from the shared analysis
+    PlatformTestUtil.startPerformanceTest(getTestName(false), 15_000, () -> {
+      myFixture.getPsiManager().dropPsiCaches();
+      myFixture.doHighlighting();
+    }).attempts(3).usesAllCPUCores().assertTiming();
+  }
+
+  public void testTypingInComponentFile() {
+    myFixture.addFileToProject("package.json", "{\"dependencies\": {\"@angular/core\": \"0.0.0\"}}");
+    for (int i = 0; i < PROJECT_COMPONENTS; i++) {
+      myFixture.addFileToProject("src/app/cmp" + i + ".component.ts", generateProjectFile(i));
+    }
+    myFixture.configureByText("edited.component.ts", "import {Component} from \"@angular/core\"\n\n" +
+                                                     "@Component({selector: 'app-edited', template: ''})\n" +
+                                                     "export class EditedComponent {\n  /* <caret> */\n}\n");
+    Angular2EntitiesRegistry registry = Angular2EntitiesRegistry.getInstance(getProject());
+    requestEntities();
+
+    // only entities of the edited file are collected again, and they are the same as the ones collected from indexes
+    for (int i = 0; i < TYPED_CHARS; i++) {
+      typeAndCommit();
+      requestEntities();
+    }
+    Map<String, List<Angular2Directive>> incremental = Angular2EntitiesProvider.getAllElementDirectives(getProject());
+    assertEquals(1, incremental.get("app-edited").size());
+    registry.invalidateAll();
+    assertEquals(Angular2EntitiesProvider.getAllElementDirectives(getProject()).keySet(), incremental.keySet());
+    assertEquals(PROJECT_COMPONENTS + 1, incremental.size());
+
+    PlatformTestUtil.startPerformanceTest(getTestName(false), 2_000, () -> {
+      for (int i = 0; i < TYPED_CHARS; i++) {
+        typeAndCommit();
+        requestEntities();
+      }
+    }).attempts(3).assertTiming();
+  }
+
+  private void typeAndCommit() {
+    myFixture.type('a');
+    PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+  }
+
+  private void requestEntities() {
+    Angular2EntitiesProvider.getAllElementDirectives(getProject());
+    Angular2EntitiesProvider.getAllPipes(getProject());
+    Angular2EntitiesProvider.getAllModules(getProject());
+  }
+
+  // a component in each file, a pipe in every tenth file and a module in every hundredth file
+  private static String generateProjectFile(int i) {
+    StringBuilder result = new StringBuilder("import {Component, NgModule, Pipe} from \"@angular/core\"\n\n");
+    result.append("@Component({selector: 'app-cmp-").append(i).append("', template: '<div></div>'})\n")
+      .append("export class Cmp").append(i).append("Component {\n}\n\n");
+    if (i % 10 == 0) {
+      result.append("@Pipe({name: 'appPipe").append(i).append("'})\n")
+        .append("export class App").append(i).append("Pipe {\n  transform(value: string): string {\n    return value;\n  }\n}\n\n");
+    }
+    if (i % 100 == 0) {
+      result.append("@NgModule({declarations: [Cmp").append(i).append("Component]})\n")
+        .append("export class App").append(i).append("Module {\n}\n");
+    }
+    return result.toString();
+  }
+
+  private static String generateLibrary() {
+    return generateModuleFile(PREFIX, 0, LIBRARY_SIZE, LIBRARY_SIZE, LIBRARY_SIZE / 10);
+  }
+
+  // about 2,750 lines
+  private static String generateLargeTemplate() {
+    return generateTemplate(PREFIX, TEMPLATE_BLOCKS, LIBRARY_SIZE, LIBRARY_SIZE, LIBRARY_SIZE / 10, null);
+  }
+}
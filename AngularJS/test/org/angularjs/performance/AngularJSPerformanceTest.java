@@ -1,8 +1,13 @@
 package org.angularjs.performance;
 
+import com.intellij.openapi.util.Ref;
+import com.intellij.psi.stubs.StubIndex;
 import com.intellij.testFramework.PlatformTestUtil;
 import com.intellij.testFramework.fixtures.BasePlatformTestCase;
 import org.angularjs.AngularTestUtil;
+import org.angularjs.index.*;
+
+import java.util.Collection;
 
 /**
  * @author Konstantin.Ulitin
@@ -19,4 +24,48 @@ public class AngularJSPerformanceTest extends BasePlatformTestCase {
     PlatformTestUtil.startPerformanceTest(getTestName(false), 100_000, () -> myFixture.checkHighlighting()).attempts(1).usesAllCPUCores().assertTiming();
   }
 
+  /**
+   * Indexes about 220,000 lines of AngularJS code into {@link AngularJSIndex}, the index that replaced the per-kind AngularJS indexes.
+   */
+  public void testIndexingLargeCodebase() {
+    int files = 200;
+    int unitsPerFile = 50;
+    for (int i = 0; i < files; i++) {
+      myFixture.addFileToProject("app/file" + i + ".js", generateAngularJSFile(i, unitsPerFile));
+    }
+    int units = files * unitsPerFile;
+    // files are indexed on the first query after they are added; all kinds of elements are written to the single index in one pass
+    // over the stubs of each file
+    Ref<Collection<String>> keys = Ref.create();
+    PlatformTestUtil.startPerformanceTest(getTestName(false), 15_000,
+                                          () -> keys.set(StubIndex.getInstance().getAllKeys(AngularJSIndex.KEY, getProject())))
+      .attempts(1).assertTiming();
+
+    // directives, controllers, filters and modules, each kind with its own prefix
+    assertTrue(keys.get().size() >= 3 * units + files);
+    assertSize(units, AngularIndexUtil.getAllKeys(AngularDirectivesIndex.KEY, getProject()));
+    assertSize(units, AngularIndexUtil.getAllKeys(AngularControllerIndex.KEY, getProject()));
+    assertSize(units, AngularIndexUtil.getAllKeys(AngularFilterIndex.KEY, getProject()));
+    assertSize(files, AngularIndexUtil.getAllKeys(AngularModuleIndex.KEY, getProject()));
+    assertNotNull(AngularIndexUtil.resolve(getProject(), AngularDirectivesIndex.KEY, "appDir" + (units - 1)));
+    assertNotNull(AngularIndexUtil.resolve(getProject(), AngularSymbolIndex.KEY, "Ctrl0"));
+  }
+
+  // about 1,000 lines with a module and directives, controllers, filters and services in it
+  private static String generateAngularJSFile(int file, int units) {
+    StringBuilder result = new StringBuilder("angular.module('app").append(file).append("', []);\n\n");
+    for (int i = file * units; i < (file + 1) * units; i++) {
+      String module = "angular.module('app" + file + "')";
+      result.append(module).append(".directive('appDir").append(i).append("', function() {\n")
+        .append("  return {\n    restrict: 'A',\n    scope: {value: '='},\n")
+        .append("    link: function(scope, element) {\n      element.text(scope.value);\n    }\n  };\n});\n")
+        .append(module).append(".controller('Ctrl").append(i).append("', ['$scope', function($scope) {\n")
+        .append("  $scope.value = ").append(i).append(";\n}]);\n")
+        .append(module).append(".filter('appFilter").append(i).append("', function() {\n")
+        .append("  return function(input) {\n    return input + ").append(i).append(";\n  };\n});\n")
+        .append(module).append(".service('appService").append(i).append("', function() {\n")
+        .append("  this.get = function() {\n    return ").append(i).append(";\n  };\n});\n");
+    }
+    return result.toString();
+  }
 }
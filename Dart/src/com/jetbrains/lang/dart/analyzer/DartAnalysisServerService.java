@@ -7,11 +7,15 @@ import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.dart.server.*;
 import com.google.dart.server.generated.AnalysisServer;
+import com.google.dart.server.internal.remote.AnalysisServerMetrics;
 import com.google.dart.server.internal.remote.DebugPrintStream;
 import com.google.dart.server.internal.remote.RemoteAnalysisServerImpl;
+import com.google.dart.server.internal.remote.ResponseDispatcher;
 import com.google.dart.server.internal.remote.StdioServerSocket;
+import com.google.dart.server.internal.remote.TrafficRecorder;
 import com.google.dart.server.utilities.logging.Logging;
 import com.google.gson.JsonObject;
+import com.intellij.codeInsight.completion.PrefixMatcher;
 import com.intellij.codeInsight.intention.IntentionManager;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationInfo;
@@ -31,6 +35,7 @@ import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
 import com.intellij.openapi.fileEditor.FileEditorManagerListener;
 import com.intellij.openapi.fileEditor.impl.FileOffsetsManager;
 import com.intellij.openapi.fileTypes.FileTypeRegistry;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
@@ -55,6 +60,7 @@ import com.jetbrains.lang.dart.assists.QuickAssistSet;
 import com.jetbrains.lang.dart.fixes.DartQuickFix;
 import com.jetbrains.lang.dart.fixes.DartQuickFixListener;
 import com.jetbrains.lang.dart.ide.actions.DartPubActionBase;
+import com.jetbrains.lang.dart.ide.completion.DartCompletionResultCache;
 import com.jetbrains.lang.dart.ide.errorTreeView.DartProblemsView;
 import com.jetbrains.lang.dart.ide.template.postfix.DartPostfixTemplateProvider;
 import com.jetbrains.lang.dart.sdk.DartSdk;
@@ -71,7 +77,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -86,14 +94,17 @@ public final class DartAnalysisServerService implements Disposable {
   // https://github.com/dart-lang/webdev/blob/master/webdev/pubspec.yaml#L11
   public static final String MIN_WEBDEV_SDK_VERSION = "2.6.0";
 
+  // name of the latency statistics of search_getTypeHierarchy() calls answered from the cache, see getServerMetrics()
+  public static final String CACHED_TYPE_HIERARCHY_METRIC = "search.getTypeHierarchy (cached)";
+
   private static final long UPDATE_FILES_TIMEOUT = 300;
 
   private static final long CHECK_CANCELLED_PERIOD = 10;
   private static final long SEND_REQUEST_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
-  private static final long EDIT_FORMAT_TIMEOUT = TimeUnit.SECONDS.toMillis(3);
+  public static final long EDIT_FORMAT_TIMEOUT = TimeUnit.SECONDS.toMillis(3);
   private static final long EDIT_DARTFIX_TIMEOUT = TimeUnit.SECONDS.toMillis(3);
-  private static final long EDIT_ORGANIZE_DIRECTIVES_TIMEOUT = TimeUnit.MILLISECONDS.toMillis(300);
-  private static final long EDIT_SORT_MEMBERS_TIMEOUT = TimeUnit.SECONDS.toMillis(3);
+  public static final long EDIT_ORGANIZE_DIRECTIVES_TIMEOUT = TimeUnit.MILLISECONDS.toMillis(300);
+  public static final long EDIT_SORT_MEMBERS_TIMEOUT = TimeUnit.SECONDS.toMillis(3);
   private static final long GET_HOVER_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
   private static final long GET_NAVIGATION_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
   private static final long GET_ASSISTS_TIMEOUT_EDT = TimeUnit.MILLISECONDS.toMillis(100);
@@ -126,8 +137,18 @@ public final class DartAnalysisServerService implements Disposable {
 
   // Do not wait for server response under lock. Do not take read/write action under lock.
   private final Object myLock = new Object();
-  @Nullable private RemoteAnalysisServerImpl myServer;
-  @Nullable private StdioServerSocket myServerSocket;
+  // RemoteAnalysisServerImpl, or DartShardedAnalysisServer if dart.server.shards is more than 1
+  @Nullable private AnalysisServer myServer;
+  // kept across server restarts
+  @NotNull private final AnalysisServerMetrics myServerMetrics = new AnalysisServerMetrics();
+  @NotNull private final DartTypeHierarchyCache myTypeHierarchyCache =
+    new DartTypeHierarchyCache(Registry.intValue("dart.type.hierarchy.cache.size", 200));
+  @NotNull private final DartCompletionResultCache myCompletionResultCache =
+    new DartCompletionResultCache(Registry.intValue("dart.server.completion.cache.ttl.ms", 5000));
+  // system-independent paths of the files opened in editors, for which the type hierarchies of implemented classes are not prefetched yet
+  @NotNull private final Set<String> myFilePathsToPrefetchTypeHierarchies = ContainerUtil.newConcurrentSet();
+  // one socket per server process
+  @NotNull private final List<StdioServerSocket> myServerSockets = new ArrayList<>();
 
   @NotNull private String myServerVersion = "";
   @NotNull private String mySdkVersion = "";
@@ -138,6 +159,7 @@ public final class DartAnalysisServerService implements Disposable {
   private final Map<String, Long> myFilePathWithOverlaidContentToTimestamp = new THashMap<>();
   private final List<String> myVisibleFiles = new ArrayList<>();
   private final Set<Document> myChangedDocuments = new THashSet<>();
+  private final DartContentOverlayTracker myContentOverlayTracker = new DartContentOverlayTracker();
   private final Alarm myUpdateFilesAlarm;
 
   @NotNull private final Queue<CompletionInfo> myCompletionInfos = new LinkedList<>();
@@ -172,6 +194,24 @@ public final class DartAnalysisServerService implements Disposable {
     return ApplicationInfo.getInstance().getApiVersion();
   }
 
+  /**
+   * If the {@code dart.server.traffic.recording} system property is set, the complete traffic with the server is recorded to the file
+   * it points to. The recording can be replayed offline by {@link com.google.dart.server.internal.remote.ReplayServerSocket}.
+   */
+  @Nullable
+  private static TrafficRecorder createTrafficRecorder() {
+    final String path = System.getProperty("dart.server.traffic.recording");
+    if (StringUtil.isEmptyOrSpaces(path)) return null;
+
+    try {
+      return new TrafficRecorder(new File(FileUtil.toSystemDependentName(path)));
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to record Dart Analysis Server traffic to " + path, e);
+      return null;
+    }
+  }
+
   @NotNull private final List<AnalysisServerListener> myAdditionalServerListeners = new SmartList<>();
   @NotNull private final List<RequestListener> myRequestListeners = new SmartList<>();
   @NotNull private final List<ResponseListener> myResponseListeners = new SmartList<>();
@@ -191,6 +231,10 @@ public final class DartAnalysisServerService implements Disposable {
 
     @Override
     public void computedErrors(@NotNull final String filePathSD, @NotNull final List<AnalysisError> errors) {
+      // the file has been analyzed, this may change hierarchies of its classes and hierarchies that contain them
+      myTypeHierarchyCache.invalidate(filePathSD);
+      myCompletionResultCache.analysisResultsChanged(FileUtil.toSystemIndependentName(filePathSD));
+
       final String fileName = PathUtil.getFileName(filePathSD);
 
       final ProgressIndicator indicator = myProgressIndicator;
@@ -242,7 +286,12 @@ public final class DartAnalysisServerService implements Disposable {
     public void computedImplemented(String _filePath,
                                     List<ImplementedClass> implementedClasses,
                                     List<ImplementedMember> implementedMembers) {
-      myServerData.computedImplemented(FileUtil.toSystemIndependentName(_filePath), implementedClasses, implementedMembers);
+      final String filePathSI = FileUtil.toSystemIndependentName(_filePath);
+      myServerData.computedImplemented(filePathSI, implementedClasses, implementedMembers);
+
+      if (!implementedClasses.isEmpty() && myFilePathsToPrefetchTypeHierarchies.remove(filePathSI)) {
+        prefetchTypeHierarchies(_filePath, implementedClasses);
+      }
     }
 
     @Override
@@ -268,6 +317,12 @@ public final class DartAnalysisServerService implements Disposable {
       }
 
       myServerData.onFlushedResults(filePaths);
+      for (String path : _filePaths) {
+        myTypeHierarchyCache.invalidate(path);
+      }
+      for (String filePath : filePaths) {
+        myCompletionResultCache.analysisResultsChanged(filePath);
+      }
 
       for (String filePath : filePaths) {
         onErrorsUpdated(filePath, AnalysisError.EMPTY_LIST, false, 0);
@@ -452,10 +507,19 @@ public final class DartAnalysisServerService implements Disposable {
     return StringUtil.compareVersionNumbers(sdk.getVersion(), MIN_WEBDEV_SDK_VERSION) >= 0;
   }
 
-  public void addCompletions(@NotNull final VirtualFile file,
-                             @NotNull final String completionId,
-                             @NotNull final CompletionSuggestionConsumer consumer,
-                             @NotNull final CompletionLibraryRefConsumer libraryRefConsumer) {
+  /**
+   * Passes completion suggestions to the consumers as soon as they are received, without waiting for the last notification with the given
+   * {@code completionId}. Suggestions and suggestion sets repeated in subsequent notifications are passed only once.
+   *
+   * @return {@code true} if all results have been received, {@code false} if waiting was interrupted
+   */
+  public boolean addCompletions(@NotNull final VirtualFile file,
+                                @NotNull final String completionId,
+                                @NotNull final CompletionSuggestionConsumer consumer,
+                                @NotNull final CompletionLibraryRefConsumer libraryRefConsumer) {
+    final Set<CompletionSuggestion> consumedSuggestions = new THashSet<>();
+    final Set<String> consumedSuggestionSetIds = new THashSet<>();
+
     while (true) {
       ProgressManager.checkCanceled();
 
@@ -463,11 +527,12 @@ public final class DartAnalysisServerService implements Disposable {
         CompletionInfo completionInfo;
         while ((completionInfo = myCompletionInfos.poll()) != null) {
           if (!completionInfo.myCompletionId.equals(completionId)) continue;
-          if (!completionInfo.isLast) continue;
 
+          final int convertedReplacementOffset = getConvertedOffset(file, completionInfo.myOriginalReplacementOffset);
           for (final CompletionSuggestion completion : completionInfo.myCompletions) {
-            final int convertedReplacementOffset = getConvertedOffset(file, completionInfo.myOriginalReplacementOffset);
-            consumer.consumeCompletionSuggestion(convertedReplacementOffset, completionInfo.myReplacementLength, completion);
+            if (consumedSuggestions.add(completion)) {
+              consumer.consumeCompletionSuggestion(convertedReplacementOffset, completionInfo.myReplacementLength, completion);
+            }
           }
 
           final Set<String> includedKinds = Sets.newHashSet(completionInfo.myIncludedElementKinds);
@@ -476,16 +541,19 @@ public final class DartAnalysisServerService implements Disposable {
             includedRelevanceTags.put(includedRelevanceTag.getTag(), includedRelevanceTag);
           }
           for (final IncludedSuggestionSet includedSet : completionInfo.myIncludedSuggestionSets) {
-            libraryRefConsumer.consumeLibraryRef(includedSet, includedKinds, includedRelevanceTags, completionInfo.myLibraryFilePathSD);
+            if (consumedSuggestionSetIds.add(includedSet.getId() + ":" + includedSet.getRelevance())) {
+              libraryRefConsumer.consumeLibraryRef(includedSet, includedKinds, includedRelevanceTags, completionInfo.myLibraryFilePathSD);
+            }
           }
-          return;
+
+          if (completionInfo.isLast) return true;
         }
 
         try {
           myCompletionInfos.wait(CHECK_CANCELLED_PERIOD);
         }
         catch (InterruptedException e) {
-          return;
+          return false;
         }
       }
     }
@@ -527,6 +595,11 @@ public final class DartAnalysisServerService implements Disposable {
     DartClosingLabelManager.getInstance().addListener(this::handleClosingLabelPreferenceChanged, this);
   }
 
+  /**
+   * Listener callbacks are invoked on a single thread in the order of server notifications unless the
+   * {@code dart.server.notification.lanes} registry key is set to a positive value,
+   * see {@link AnalysisServerListener}.
+   */
   @SuppressWarnings("unused") // for Flutter plugin
   public void addAnalysisServerListener(@NotNull final AnalysisServerListener serverListener) {
     if (!myAdditionalServerListeners.contains(serverListener)) {
@@ -665,6 +738,10 @@ public final class DartAnalysisServerService implements Disposable {
         updateCurrentFile();
 
         if (isLocalAnalyzableFile(file)) {
+          if (Registry.is("dart.type.hierarchy.prefetch", true)) {
+            // implemented classes become known when the server sends the 'implemented' notification for the now visible file
+            myFilePathsToPrefetchTypeHierarchies.add(file.getPath());
+          }
           updateVisibleFiles();
         }
       }
@@ -686,6 +763,7 @@ public final class DartAnalysisServerService implements Disposable {
           // file could be opened in more than one editor, so this check is needed
           if (FileEditorManager.getInstance(myProject).getSelectedEditor(file) == null) {
             myServerData.onFileClosed(file);
+            myFilePathsToPrefetchTypeHierarchies.remove(file.getPath());
           }
 
           updateVisibleFiles();
@@ -703,7 +781,23 @@ public final class DartAnalysisServerService implements Disposable {
         myServerData.onDocumentChanged(e);
 
         final VirtualFile file = FileDocumentManager.getInstance().getFile(e.getDocument());
+        if (file != null) {
+          myCompletionResultCache.documentChanged(file.getPath());
+        }
+
         if (isLocalAnalyzableFile(file)) {
+          // hierarchies of the file are keyed by its offsets and other hierarchies may contain its offsets, which are not valid any more
+          myTypeHierarchyCache.invalidate(FileUtil.toSystemDependentName(file.getPath()));
+
+          if (isIncrementalOverlaysEnabled()) {
+            synchronized (myLock) {
+              final Long overlayTimestamp = myFilePathWithOverlaidContentToTimestamp.get(file.getPath());
+              if (overlayTimestamp != null) {
+                myContentOverlayTracker.beforeDocumentChange(file.getPath(), e, overlayTimestamp);
+              }
+            }
+          }
+
           for (VirtualFile fileInEditor : FileEditorManager.getInstance(myProject).getOpenFiles()) {
             if (fileInEditor.equals(file)) {
               synchronized (myLock) {
@@ -717,6 +811,20 @@ public final class DartAnalysisServerService implements Disposable {
         myUpdateFilesAlarm.cancelAllRequests();
         myUpdateFilesAlarm.addRequest(DartAnalysisServerService.this::updateFilesContent, UPDATE_FILES_TIMEOUT);
       }
+
+      @Override
+      public void documentChanged(@NotNull DocumentEvent e) {
+        if (myServer == null || !isIncrementalOverlaysEnabled()) return;
+
+        final VirtualFile file = FileDocumentManager.getInstance().getFile(e.getDocument());
+        if (isLocalAnalyzableFile(file)) {
+          synchronized (myLock) {
+            if (myFilePathWithOverlaidContentToTimestamp.containsKey(file.getPath())) {
+              myContentOverlayTracker.documentChanged(file.getPath(), e.getDocument());
+            }
+          }
+        }
+      }
     };
 
     EditorFactory.getInstance().getEventMulticaster().addDocumentListener(documentListener, myProject);
@@ -751,6 +859,14 @@ public final class DartAnalysisServerService implements Disposable {
     return myServerData.getAvailableSuggestionSet(id);
   }
 
+  /**
+   * Returns the items of the suggestion set accepted by the completion prefix matcher, all items if the prefix is empty.
+   */
+  @NotNull
+  public List<AvailableSuggestion> getAvailableSuggestions(int id, @NotNull PrefixMatcher matcher) {
+    return myServerData.getAvailableSuggestions(id, matcher);
+  }
+
   @Nullable
   public Map<String, Map<String, Set<String>>> getExistingImports(@Nullable String filePathSD) {
     return myServerData.getExistingImports(filePathSD);
@@ -867,9 +983,16 @@ public final class DartAnalysisServerService implements Disposable {
     }
   }
 
-  private void doUpdateFilesContent() {
-    // may be use DocumentListener to collect deltas instead of sending the whole Document.getText() each time?
+  /**
+   * If enabled, document changes are sent to the server as {@link ChangeContentOverlay} with {@link SourceEdit}s collected by
+   * the DocumentListener. The whole document text ({@link AddContentOverlay}) is sent when the file gets overlaid for the first time,
+   * when some change hasn't been tracked and after a failed {@code analysis.updateContent} request.
+   */
+  private static boolean isIncrementalOverlaysEnabled() {
+    return Registry.is("dart.server.incremental.overlays", true);
+  }
 
+  private void doUpdateFilesContent() {
     AnalysisServer server = myServer;
     if (server == null) {
       return;
@@ -897,7 +1020,12 @@ public final class DartAnalysisServerService implements Disposable {
 
           final Long oldTimestamp = myFilePathWithOverlaidContentToTimestamp.get(file.getPath());
           if (oldTimestamp == null || document.getModificationStamp() != oldTimestamp) {
-            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), new AddContentOverlay(document.getText()));
+            final ChangeContentOverlay changeOverlay = oldTimestamp == null || !isIncrementalOverlaysEnabled()
+                                                       ? null
+                                                       : myContentOverlayTracker.createChangeOverlay(file.getPath(), document, oldTimestamp);
+            final Object overlay = changeOverlay != null ? changeOverlay : new AddContentOverlay(document.getText());
+            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), overlay);
+            myContentOverlayTracker.contentSent(DartContentOverlayTracker.getContentSize(overlay));
             myFilePathWithOverlaidContentToTimestamp.put(file.getPath(), document.getModificationStamp());
           }
         }
@@ -907,6 +1035,7 @@ public final class DartAnalysisServerService implements Disposable {
       for (String oldPath : oldTrackedFiles) {
         final Long removed = myFilePathWithOverlaidContentToTimestamp.remove(oldPath);
         LOG.assertTrue(removed != null, oldPath);
+        myContentOverlayTracker.forget(oldPath);
         filesToUpdate.put(FileUtil.toSystemDependentName(oldPath), new RemoveContentOverlay());
       }
 
@@ -926,15 +1055,154 @@ public final class DartAnalysisServerService implements Disposable {
     }
 
     if (!filesToUpdate.isEmpty()) {
-      server.analysis_updateContent(filesToUpdate, myServerData::onFilesContentUpdated);
+      for (String path : filesToUpdate.keySet()) {
+        myTypeHierarchyCache.invalidate(path);
+      }
+      server.analysis_updateContent(filesToUpdate, new UpdateContentConsumer() {
+        @Override
+        public void onResponse() {
+          myServerData.onFilesContentUpdated();
+        }
+
+        @Override
+        public void onError(RequestError requestError) {
+          onUpdateContentFailed(filesToUpdate);
+        }
+      });
     }
   }
 
+  /**
+   * Server content of the files for which a {@link ChangeContentOverlay} has been sent is unknown now,
+   * so the whole document text is resent for them.
+   */
+  private void onUpdateContentFailed(@NotNull final Map<String, Object> sentFiles) {
+    boolean resync = false;
+    synchronized (myLock) {
+      for (Map.Entry<String, Object> entry : sentFiles.entrySet()) {
+        if (!(entry.getValue() instanceof ChangeContentOverlay)) continue;
+
+        final String filePath = FileUtil.toSystemIndependentName(entry.getKey());
+        myContentOverlayTracker.forget(filePath);
+        if (myFilePathWithOverlaidContentToTimestamp.containsKey(filePath)) {
+          // a stamp that doesn't match any document
+          myFilePathWithOverlaidContentToTimestamp.put(filePath, -1L);
+          resync = true;
+        }
+      }
+    }
+
+    if (resync) {
+      LOG.info("analysis.updateContent failed, resending full content");
+      myUpdateFilesAlarm.cancelAllRequests();
+      myUpdateFilesAlarm.addRequest(this::updateFilesContent, 0);
+    }
+  }
+
+  /**
+   * Size of the overlaid content sent to the server per second, averaged over the last second.
+   */
+  public long getOverlayBytesSentPerSecond() {
+    synchronized (myLock) {
+      return myContentOverlayTracker.getBytesPerSecond();
+    }
+  }
+
+  public long getOverlayBytesSentTotal() {
+    synchronized (myLock) {
+      return myContentOverlayTracker.getTotalBytesSent();
+    }
+  }
+
+  /**
+   * Completion results of the last {@code completion.getSuggestions} request, reused while the user keeps typing the same identifier.
+   */
+  @NotNull
+  public DartCompletionResultCache getCompletionResultCache() {
+    return myCompletionResultCache;
+  }
+
+  /**
+   * Latency histograms, in-flight, timeout and cancellation counts of requests and statistics of notifications, kept across server restarts.
+   */
+  @NotNull
+  public AnalysisServerMetrics getServerMetrics() {
+    return myServerMetrics;
+  }
+
+  /**
+   * Statistics of the threads processing server responses, empty if the server is not running or all responses are processed on
+   * a single thread.
+   */
+  @NotNull
+  public List<ResponseDispatcher.LaneStatistics> getResponseLaneStatistics() {
+    final List<ResponseDispatcher.LaneStatistics> result = new ArrayList<>();
+    for (RemoteAnalysisServerImpl server : getServerProcesses(myServer)) {
+      result.addAll(server.getResponseLaneStatistics());
+    }
+    return result;
+  }
+
+  /**
+   * Number of Analysis Server processes, more than 1 if the sharded analysis is enabled with the {@code dart.server.shards} registry key.
+   */
+  public int getServerShardCount() {
+    return getServerProcesses(myServer).size();
+  }
+
+  /**
+   * Pubspec roots and memory of each Analysis Server process, empty if the server is not running. Memory is requested from the OS, so this
+   * method should not be called on the EDT.
+   */
+  @NotNull
+  public List<DartShardedAnalysisServer.ShardStatistics> getServerShardStatistics() {
+    final AnalysisServer server;
+    final List<Process> processes = new ArrayList<>();
+    synchronized (myLock) {
+      server = myServer;
+      for (StdioServerSocket socket : myServerSockets) {
+        processes.add(socket.getProcess());
+      }
+    }
+    if (server == null) return Collections.emptyList();
+
+    final List<DartShardedAnalysisServer.ShardStatistics> result = new ArrayList<>();
+    for (int i = 0; i < processes.size(); i++) {
+      final int packageRootCount = server instanceof DartShardedAnalysisServer
+                                   ? ((DartShardedAnalysisServer)server).getShardRoots(i).size()
+                                   : -1;
+      result.add(new DartShardedAnalysisServer.ShardStatistics(i, packageRootCount,
+                                                               DartShardedAnalysisServer.getResidentMemoryBytes(processes.get(i))));
+    }
+    return result;
+  }
+
+  @NotNull
+  private static List<RemoteAnalysisServerImpl> getServerProcesses(@Nullable final AnalysisServer server) {
+    if (server instanceof DartShardedAnalysisServer) return ((DartShardedAnalysisServer)server).getShards();
+    if (server instanceof RemoteAnalysisServerImpl) return Collections.singletonList((RemoteAnalysisServerImpl)server);
+    return Collections.emptyList();
+  }
+
+  /**
+   * The server that gets requests not related to any file; the only server if the sharded analysis is not enabled.
+   */
+  @Nullable
+  private RemoteAnalysisServerImpl getPrimaryServer() {
+    final List<RemoteAnalysisServerImpl> servers = getServerProcesses(myServer);
+    return servers.isEmpty() ? null : servers.get(0);
+  }
+
   public void ensureAnalysisRootsUpToDate() {
     myRootsHandler.updateRoots();
   }
 
-  boolean setAnalysisRoots(@NotNull final List<String> includedRoots, @NotNull final List<String> excludedRoots) {
+  /**
+   * @param packageRoots pubspec roots, distributed between server processes if the sharded analysis is enabled
+   */
+  boolean setAnalysisRoots(@NotNull final List<String> includedRoots,
+                           @NotNull final List<String> excludedRoots,
+                           @NotNull final List<String> packageRoots) {
     AnalysisServer server = myServer;
     if (server == null) {
       return false;
@@ -945,10 +1213,22 @@ public final class DartAnalysisServerService implements Disposable {
                 "\nexcluded:\n" + StringUtil.join(excludedRoots, ",\n"));
     }
 
-    server.analysis_setAnalysisRoots(includedRoots, excludedRoots, null);
+    if (server instanceof DartShardedAnalysisServer) {
+      ((DartShardedAnalysisServer)server).setAnalysisRoots(includedRoots, excludedRoots, packageRoots);
+    }
+    else {
+      server.analysis_setAnalysisRoots(includedRoots, excludedRoots, null);
+    }
     return true;
   }
 
+  /**
+   * Whether pubspec roots should be passed to {@link #setAnalysisRoots(List, List, List)}.
+   */
+  boolean isShardedAnalysis() {
+    return myServer instanceof DartShardedAnalysisServer;
+  }
+
   private void onErrorsUpdated(@NotNull final String filePath,
                                @NotNull List<? extends AnalysisError> errors,
                                boolean hasSevereProblems,
@@ -1030,7 +1310,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_HOVER_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_HOVER_TIMEOUT, "analysis_getHover");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("analysis_getHover", GET_HOVER_TIMEOUT, filePath);
@@ -1081,7 +1361,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_NAVIGATION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_NAVIGATION_TIMEOUT, "analysis_getNavigation");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("analysis_getNavigation", GET_NAVIGATION_TIMEOUT, filePath);
@@ -1118,7 +1398,7 @@ public final class DartAnalysisServerService implements Disposable {
 
     final long timeout = ApplicationManager.getApplication().isDispatchThread() ? GET_ASSISTS_TIMEOUT_EDT : GET_ASSISTS_TIMEOUT;
 
-    awaitForLatchCheckingCanceled(server, latch, timeout);
+    awaitForLatchCheckingCanceled(server, latch, timeout, "edit_getAssists");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("edit_getAssists", timeout, filePath);
@@ -1144,7 +1424,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, POSTFIX_COMPLETION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, POSTFIX_COMPLETION_TIMEOUT, "edit_isPostfixCompletionApplicable");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("edit_isPostfixCompletionApplicable", POSTFIX_COMPLETION_TIMEOUT, filePath);
@@ -1180,7 +1460,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, POSTFIX_INITIALIZATION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, POSTFIX_INITIALIZATION_TIMEOUT, "edit_listPostfixCompletionTemplates");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("edit_listPostfixCompletionTemplates", POSTFIX_INITIALIZATION_TIMEOUT, null);
@@ -1214,7 +1494,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, POSTFIX_COMPLETION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, POSTFIX_COMPLETION_TIMEOUT, "edit_getPostfixCompletion");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("edit_getPostfixCompletion", POSTFIX_COMPLETION_TIMEOUT, filePath);
@@ -1247,7 +1527,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, STATEMENT_COMPLETION_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, STATEMENT_COMPLETION_TIMEOUT, "edit_getStatementCompletion");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("edit_getStatementCompletion", STATEMENT_COMPLETION_TIMEOUT, filePath);
@@ -1297,7 +1577,7 @@ public final class DartAnalysisServerService implements Disposable {
 
     final long timeout = ApplicationManager.getApplication().isDispatchThread() ? GET_FIXES_TIMEOUT_EDT : GET_FIXES_TIMEOUT;
 
-    awaitForLatchCheckingCanceled(server, latch, timeout);
+    awaitForLatchCheckingCanceled(server, latch, timeout, "edit_getFixes");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("edit_getFixes", timeout, filePath);
@@ -1331,7 +1611,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, FIND_ELEMENT_REFERENCES_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, FIND_ELEMENT_REFERENCES_TIMEOUT, "search_findElementReferences");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("search_findElementReferences", FIND_ELEMENT_REFERENCES_TIMEOUT, filePath + "@" + offset);
@@ -1366,37 +1646,76 @@ public final class DartAnalysisServerService implements Disposable {
     }
   }
 
+  /**
+   * Results are cached until the next analysis results or content change of a file they refer to, see {@link DartTypeHierarchyCache}.
+   * Concurrent calls for the same element share one request to the server.
+   *
+   * @return unmodifiable list
+   */
   @NotNull
   public List<TypeHierarchyItem> search_getTypeHierarchy(@NotNull final VirtualFile file, final int _offset, final boolean superOnly) {
-    final List<TypeHierarchyItem> results = new ArrayList<>();
     final AnalysisServer server = myServer;
     if (server == null) {
-      return results;
+      return Collections.emptyList();
     }
 
+    final long startTime = System.nanoTime();
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
+    final DartTypeHierarchyCache.Key key = new DartTypeHierarchyCache.Key(filePath, getOriginalOffset(file, _offset), superOnly);
+    final List<TypeHierarchyItem> cached = myTypeHierarchyCache.getCached(key);
+    if (cached != null) {
+      myServerMetrics.latencyMeasured(CACHED_TYPE_HIERARCHY_METRIC, System.nanoTime() - startTime);
+      return cached;
+    }
+
+    final CompletableFuture<List<TypeHierarchyItem>> future = myTypeHierarchyCache.getOrRequest(key, this::sendTypeHierarchyRequest);
+    if (future == null) {
+      return Collections.emptyList();
+    }
+
     final CountDownLatch latch = new CountDownLatch(1);
-    final int offset = getOriginalOffset(file, _offset);
-    server.search_getTypeHierarchy(filePath, offset, superOnly, new GetTypeHierarchyConsumer() {
+    future.whenComplete((items, throwable) -> latch.countDown());
+
+    awaitForLatchCheckingCanceled(server, latch, GET_TYPE_HIERARCHY_TIMEOUT, "search_getTypeHierarchy");
+
+    if (latch.getCount() > 0) {
+      logTookTooLongMessage("search_getTypeHierarchy", GET_TYPE_HIERARCHY_TIMEOUT, filePath);
+    }
+    return future.getNow(Collections.emptyList());
+  }
+
+  private boolean sendTypeHierarchyRequest(@NotNull final DartTypeHierarchyCache.Key key,
+                                           @NotNull final Consumer<? super List<TypeHierarchyItem>> consumer) {
+    final AnalysisServer server = myServer;
+    if (server == null) {
+      return false;
+    }
+
+    server.search_getTypeHierarchy(key.getFilePath(), key.getOffset(), key.isSuperOnly(), new GetTypeHierarchyConsumer() {
       @Override
       public void computedHierarchy(List<TypeHierarchyItem> hierarchyItems) {
-        results.addAll(hierarchyItems);
-        latch.countDown();
+        consumer.consume(hierarchyItems);
       }
 
       @Override
       public void onError(RequestError error) {
-        logError("search_getTypeHierarchy()", filePath, error);
-        latch.countDown();
+        logError("search_getTypeHierarchy()", key.getFilePath(), error);
+        consumer.consume(null);
       }
     });
+    return true;
+  }
 
-    awaitForLatchCheckingCanceled(server, latch, GET_TYPE_HIERARCHY_TIMEOUT);
-
-    if (latch.getCount() > 0) {
-      logTookTooLongMessage("search_getTypeHierarchy", GET_TYPE_HIERARCHY_TIMEOUT, filePath);
+  /**
+   * Requests hierarchies of the classes that have subclasses, for which the gutter shows markers, without waiting for the responses.
+   * At most {@code dart.type.hierarchy.prefetch.limit} classes of the file are requested.
+   */
+  private void prefetchTypeHierarchies(@NotNull final String filePathSD, @NotNull final List<ImplementedClass> implementedClasses) {
+    final int limit = Registry.intValue("dart.type.hierarchy.prefetch.limit", 20);
+    for (int i = 0; i < Math.min(limit, implementedClasses.size()); i++) {
+      final DartTypeHierarchyCache.Key key = new DartTypeHierarchyCache.Key(filePathSD, implementedClasses.get(i).getOffset(), false);
+      if (myTypeHierarchyCache.getOrRequest(key, this::sendTypeHierarchyRequest) == null) return;
     }
-    return results;
   }
 
   @Nullable
@@ -1426,7 +1745,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTION_DETAILS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTION_DETAILS_TIMEOUT, "completion_getSuggestionDetails");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("completion_getSuggestionDetails", GET_SUGGESTION_DETAILS_TIMEOUT, filePath);
@@ -1459,7 +1778,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTIONS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTIONS_TIMEOUT, "completion_getSuggestions");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("completion_getSuggestions", GET_SUGGESTIONS_TIMEOUT, filePath);
@@ -1505,7 +1824,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EDIT_DARTFIX_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, EDIT_DARTFIX_TIMEOUT, "edit_dartfix");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("edit_dartfix", EDIT_DARTFIX_TIMEOUT, StringUtil.join(filePaths, ", "));
@@ -1530,11 +1849,46 @@ public final class DartAnalysisServerService implements Disposable {
     final CountDownLatch latch = new CountDownLatch(1);
     final int selectionOffset = getOriginalOffset(file, _selectionOffset);
     final int selectionLength = getOriginalOffset(file, _selectionOffset + _selectionLength) - selectionOffset;
-    server.edit_format(filePath, selectionOffset, selectionLength, lineLength, new FormatConsumer() {
+    server.edit_format(filePath, selectionOffset, selectionLength, lineLength, createFormatConsumer(filePath, result -> {
+      resultRef.set(result);
+      latch.countDown();
+    }));
+
+    awaitForLatchCheckingCanceled(server, latch, EDIT_FORMAT_TIMEOUT, "edit_format");
+
+    if (latch.getCount() > 0) {
+      logTookTooLongMessage("edit_format", EDIT_FORMAT_TIMEOUT, filePath);
+    }
+
+    return resultRef.get();
+  }
+
+  /**
+   * Sends an {@code edit.format} request for the whole file and returns without waiting for the response, so that callers processing many
+   * files can keep several requests in flight. {@code consumer} is called on a thread that handles server responses, with {@code null}
+   * if the server couldn't format the file.
+   *
+   * @return {@code false} if the server is not running, {@code consumer} is not called in this case
+   */
+  public boolean edit_format(@NotNull final VirtualFile file,
+                             final int lineLength,
+                             @NotNull final Consumer<? super FormatResult> consumer) {
+    final AnalysisServer server = myServer;
+    if (server == null) {
+      return false;
+    }
+
+    final String filePath = FileUtil.toSystemDependentName(file.getPath());
+    server.edit_format(filePath, 0, 0, lineLength, createFormatConsumer(filePath, consumer));
+    return true;
+  }
+
+  @NotNull
+  private FormatConsumer createFormatConsumer(@NotNull final String filePath, @NotNull final Consumer<? super FormatResult> consumer) {
+    return new FormatConsumer() {
       @Override
       public void computedFormat(final List<SourceEdit> edits, final int selectionOffset, final int selectionLength) {
-        resultRef.set(new FormatResult(edits, selectionOffset, selectionLength));
-        latch.countDown();
+        consumer.consume(new FormatResult(edits, selectionOffset, selectionLength));
       }
 
       @Override
@@ -1546,17 +1900,9 @@ public final class DartAnalysisServerService implements Disposable {
           logError("edit_format()", filePath, error);
         }
 
-        latch.countDown();
+        consumer.consume(null);
       }
-    });
-
-    awaitForLatchCheckingCanceled(server, latch, EDIT_FORMAT_TIMEOUT);
-
-    if (latch.getCount() > 0) {
-      logTookTooLongMessage("edit_format", EDIT_FORMAT_TIMEOUT, filePath);
-    }
-
-    return resultRef.get();
+    };
   }
 
   @Nullable
@@ -1590,7 +1936,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, IMPORTED_ELEMENTS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, IMPORTED_ELEMENTS_TIMEOUT, "analysis_getImportedElements");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("analysis_getImportedElements", IMPORTED_ELEMENTS_TIMEOUT, filePath);
@@ -1629,7 +1975,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, IMPORTED_ELEMENTS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, IMPORTED_ELEMENTS_TIMEOUT, "edit_importElements");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("edit_importElements", IMPORTED_ELEMENTS_TIMEOUT, filePath);
@@ -1667,11 +2013,44 @@ public final class DartAnalysisServerService implements Disposable {
     final String filePath = FileUtil.toSystemDependentName(_filePath);
     final Ref<SourceFileEdit> resultRef = new Ref<>();
     final CountDownLatch latch = new CountDownLatch(1);
-    server.edit_organizeDirectives(filePath, new OrganizeDirectivesConsumer() {
+    server.edit_organizeDirectives(filePath, createOrganizeDirectivesConsumer(filePath, edit -> {
+      resultRef.set(edit);
+      latch.countDown();
+    }));
+
+    awaitForLatchCheckingCanceled(server, latch, EDIT_ORGANIZE_DIRECTIVES_TIMEOUT, "edit_organizeDirectives");
+
+    if (latch.getCount() > 0) {
+      logTookTooLongMessage("edit_organizeDirectives", EDIT_ORGANIZE_DIRECTIVES_TIMEOUT, filePath);
+    }
+
+    return resultRef.get();
+  }
+
+  /**
+   * Sends an {@code edit.organizeDirectives} request without waiting for the response. {@code consumer} is called on a thread that handles
+   * server responses, with {@code null} if the server couldn't organize directives in the file.
+   *
+   * @return {@code false} if the server is not running, {@code consumer} is not called in this case
+   */
+  public boolean edit_organizeDirectives(@NotNull final String _filePath, @NotNull final Consumer<? super SourceFileEdit> consumer) {
+    final AnalysisServer server = myServer;
+    if (server == null) {
+      return false;
+    }
+
+    final String filePath = FileUtil.toSystemDependentName(_filePath);
+    server.edit_organizeDirectives(filePath, createOrganizeDirectivesConsumer(filePath, consumer));
+    return true;
+  }
+
+  @NotNull
+  private OrganizeDirectivesConsumer createOrganizeDirectivesConsumer(@NotNull final String filePath,
+                                                                      @NotNull final Consumer<? super SourceFileEdit> consumer) {
+    return new OrganizeDirectivesConsumer() {
       @Override
       public void computedEdit(final SourceFileEdit edit) {
-        resultRef.set(edit);
-        latch.countDown();
+        consumer.consume(edit);
       }
 
       @Override
@@ -1684,35 +2063,60 @@ public final class DartAnalysisServerService implements Disposable {
           logError("edit_organizeDirectives()", filePath, error);
         }
 
-        latch.countDown();
+        consumer.consume(null);
       }
-    });
+    };
+  }
 
-    awaitForLatchCheckingCanceled(server, latch, EDIT_ORGANIZE_DIRECTIVES_TIMEOUT);
+  @Nullable
+  public SourceFileEdit edit_sortMembers(@NotNull final String _filePath) {
+    final AnalysisServer server = myServer;
+    if (server == null) {
+      return null;
+    }
+
+    final String filePath = FileUtil.toSystemDependentName(_filePath);
+    final Ref<SourceFileEdit> resultRef = new Ref<>();
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    server.edit_sortMembers(filePath, createSortMembersConsumer(filePath, edit -> {
+      resultRef.set(edit);
+      latch.countDown();
+    }));
+
+    awaitForLatchCheckingCanceled(server, latch, EDIT_SORT_MEMBERS_TIMEOUT, "edit_sortMembers");
 
     if (latch.getCount() > 0) {
-      logTookTooLongMessage("edit_organizeDirectives", EDIT_ORGANIZE_DIRECTIVES_TIMEOUT, filePath);
+      logTookTooLongMessage("edit_sortMembers", EDIT_SORT_MEMBERS_TIMEOUT, filePath);
     }
 
     return resultRef.get();
   }
 
-  @Nullable
-  public SourceFileEdit edit_sortMembers(@NotNull final String _filePath) {
+  /**
+   * Sends an {@code edit.sortMembers} request without waiting for the response. {@code consumer} is called on a thread that handles server
+   * responses, with {@code null} if the server couldn't sort members in the file.
+   *
+   * @return {@code false} if the server is not running, {@code consumer} is not called in this case
+   */
+  public boolean edit_sortMembers(@NotNull final String _filePath, @NotNull final Consumer<? super SourceFileEdit> consumer) {
     final AnalysisServer server = myServer;
     if (server == null) {
-      return null;
+      return false;
     }
 
     final String filePath = FileUtil.toSystemDependentName(_filePath);
-    final Ref<SourceFileEdit> resultRef = new Ref<>();
+    server.edit_sortMembers(filePath, createSortMembersConsumer(filePath, consumer));
+    return true;
+  }
 
-    final CountDownLatch latch = new CountDownLatch(1);
-    server.edit_sortMembers(filePath, new SortMembersConsumer() {
+  @NotNull
+  private SortMembersConsumer createSortMembersConsumer(@NotNull final String filePath,
+                                                        @NotNull final Consumer<? super SourceFileEdit> consumer) {
+    return new SortMembersConsumer() {
       @Override
       public void computedEdit(final SourceFileEdit edit) {
-        resultRef.set(edit);
-        latch.countDown();
+        consumer.consume(edit);
       }
 
       @Override
@@ -1725,17 +2129,9 @@ public final class DartAnalysisServerService implements Disposable {
           logError("edit_sortMembers()", filePath, error);
         }
 
-        latch.countDown();
+        consumer.consume(null);
       }
-    });
-
-    awaitForLatchCheckingCanceled(server, latch, EDIT_SORT_MEMBERS_TIMEOUT);
-
-    if (latch.getCount() > 0) {
-      logTookTooLongMessage("edit_sortMembers", EDIT_SORT_MEMBERS_TIMEOUT, filePath);
-    }
-
-    return resultRef.get();
+    };
   }
 
   public void analysis_reanalyze() {
@@ -1810,7 +2206,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EXECUTION_CREATE_CONTEXT_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, EXECUTION_CREATE_CONTEXT_TIMEOUT, "execution_createContext");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("execution_createContext", EXECUTION_CREATE_CONTEXT_TIMEOUT, filePath);
@@ -1860,7 +2256,7 @@ public final class DartAnalysisServerService implements Disposable {
         }
       });
 
-    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTIONS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTIONS_TIMEOUT, "execution_getSuggestions");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("execution_getSuggestions", GET_SUGGESTIONS_TIMEOUT, contextFilePath);
@@ -1907,7 +2303,7 @@ public final class DartAnalysisServerService implements Disposable {
       }
     });
 
-    awaitForLatchCheckingCanceled(server, latch, EXECUTION_MAP_URI_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, EXECUTION_MAP_URI_TIMEOUT, "execution_mapUri");
 
     if (latch.getCount() > 0) {
       logTookTooLongMessage("execution_mapUri", EXECUTION_MAP_URI_TIMEOUT, filePath != null ? filePath : _uri);
@@ -1993,13 +2389,33 @@ public final class DartAnalysisServerService implements Disposable {
       //  serverArgsRaw += " --enable-completion-model";
       //}
 
-      myServerSocket =
-        new StdioServerSocket(runtimePath, StringUtil.split(vmArgsRaw, " "), analysisServerPath, StringUtil.split(serverArgsRaw, " "),
-                              debugStream);
-      myServerSocket.setClientId(getClientId());
-      myServerSocket.setClientVersion(getClientVersion());
+      final int shardCount = Math.max(1, Registry.intValue("dart.server.shards", 1));
+      final List<RemoteAnalysisServerImpl> shards = new ArrayList<>(shardCount);
+      for (int i = 0; i < shardCount; i++) {
+        final StdioServerSocket serverSocket =
+          new StdioServerSocket(runtimePath, StringUtil.split(vmArgsRaw, " "), analysisServerPath, StringUtil.split(serverArgsRaw, " "),
+                                debugStream);
+        serverSocket.setClientId(getClientId());
+        serverSocket.setClientVersion(getClientVersion());
+        serverSocket.setUseStreamingDecoder(Registry.is("dart.server.streaming.decoder", true));
+        if (i == 0) {
+          serverSocket.setTrafficRecorder(createTrafficRecorder());
+        }
+        myServerSockets.add(serverSocket);
 
-      final RemoteAnalysisServerImpl startedServer = new RemoteAnalysisServerImpl(myServerSocket);
+        final RemoteAnalysisServerImpl shard = new RemoteAnalysisServerImpl(serverSocket);
+        shard.setMetrics(myServerMetrics);
+        shard.setNotificationLaneCount(Math.max(0, Registry.intValue("dart.server.notification.lanes", 0)));
+        if (shardCount > 1) {
+          shard.setRequestIdPrefix(DartShardedAnalysisServer.getRequestIdPrefix(i));
+        }
+        shards.add(shard);
+      }
+
+      final AnalysisServer startedServer = shardCount > 1 ? new DartShardedAnalysisServer(shards) : shards.get(0);
+      if (shardCount > 1) {
+        LOG.info("Starting " + shardCount + " Dart Analysis Server processes");
+      }
 
       try {
         startedServer.start();
@@ -2073,6 +2489,10 @@ public final class DartAnalysisServerService implements Disposable {
       }
       catch (Exception e) {
         LOG.warn("Failed to start Dart analysis server", e);
+        // some of the shards may have started
+        for (StdioServerSocket serverSocket : myServerSockets) {
+          serverSocket.stop();
+        }
         stopServer();
       }
     }
@@ -2135,25 +2555,31 @@ public final class DartAnalysisServerService implements Disposable {
         myServer.server_shutdown();
 
         long startTime = System.currentTimeMillis();
-        while (myServerSocket != null && myServerSocket.isOpen()) {
-          if (System.currentTimeMillis() - startTime > SEND_REQUEST_TIMEOUT) {
-            myServerSocket.stop();
-            break;
+        for (StdioServerSocket serverSocket : myServerSockets) {
+          while (serverSocket.isOpen()) {
+            if (System.currentTimeMillis() - startTime > SEND_REQUEST_TIMEOUT) {
+              serverSocket.stop();
+              break;
+            }
+            Uninterruptibles.sleepUninterruptibly(CHECK_CANCELLED_PERIOD, TimeUnit.MILLISECONDS);
           }
-          Uninterruptibles.sleepUninterruptibly(CHECK_CANCELLED_PERIOD, TimeUnit.MILLISECONDS);
         }
       }
 
       stopShowingServerProgress();
       myUpdateFilesAlarm.cancelAllRequests();
 
-      myServerSocket = null;
+      myServerSockets.clear();
       myServer = null;
       mySdkHome = null;
       myFilePathWithOverlaidContentToTimestamp.clear();
+      myContentOverlayTracker.clear();
       myVisibleFiles.clear();
       myChangedDocuments.clear();
       myServerData.clearData();
+      myTypeHierarchyCache.invalidate();
+      myCompletionResultCache.clear();
+      myFilePathsToPrefetchTypeHierarchies.clear();
       myRootsHandler.onServerStopped();
 
       if (myProject.isOpen() && !myProject.isDisposed()) {
@@ -2245,20 +2671,33 @@ public final class DartAnalysisServerService implements Disposable {
     LOG.info(builder.toString());
   }
 
-  private static boolean awaitForLatchCheckingCanceled(@NotNull final AnalysisServer server,
-                                                       @NotNull final CountDownLatch latch,
-                                                       long timeoutInMillis) {
+  /**
+   * @param methodName used to record timeouts and cancellations in {@link #getServerMetrics()}, e.g. {@code analysis_getHover}
+   */
+  private boolean awaitForLatchCheckingCanceled(@NotNull final AnalysisServer server,
+                                                @NotNull final CountDownLatch latch,
+                                                long timeoutInMillis,
+                                                @NonNls @NotNull final String methodName) {
     if (ApplicationManager.getApplication().isUnitTestMode()) {
       timeoutInMillis *= TESTS_TIMEOUT_COEFF;
     }
 
+    // protocol method names are domain.method
+    final String protocolMethodName = methodName.replace('_', '.');
     long startTime = System.currentTimeMillis();
     while (true) {
-      ProgressManager.checkCanceled();
+      try {
+        ProgressManager.checkCanceled();
+      }
+      catch (ProcessCanceledException e) {
+        myServerMetrics.requestCancelled(protocolMethodName);
+        throw e;
+      }
       if (!server.isSocketOpen()) {
         return false;
       }
       if (timeoutInMillis != -1 && System.currentTimeMillis() > startTime + timeoutInMillis) {
+        myServerMetrics.requestTimedOut(protocolMethodName);
         return false;
       }
       if (Uninterruptibles.awaitUninterruptibly(latch, CHECK_CANCELLED_PERIOD, TimeUnit.MILLISECONDS)) {
@@ -2380,7 +2819,7 @@ public final class DartAnalysisServerService implements Disposable {
    */
   @SuppressWarnings("unused") // for Flutter plugin
   public String generateUniqueId() {
-    final RemoteAnalysisServerImpl server = myServer;
+    final RemoteAnalysisServerImpl server = getPrimaryServer();
     if (server == null) {
       return null;
     }
@@ -2392,7 +2831,7 @@ public final class DartAnalysisServerService implements Disposable {
    */
   @SuppressWarnings("unused") // for Flutter plugin
   public void sendRequest(String id, JsonObject request) {
-    final RemoteAnalysisServerImpl server = myServer;
+    final RemoteAnalysisServerImpl server = getPrimaryServer();
     if (server != null) {
       server.sendRequestToServer(id, request);
     }
@@ -2403,7 +2842,7 @@ public final class DartAnalysisServerService implements Disposable {
    */
   @SuppressWarnings("unused") // for Flutter plugin
   public void sendRequestToServer(String id, JsonObject request, com.google.dart.server.Consumer consumer) {
-    final RemoteAnalysisServerImpl server = myServer;
+    final RemoteAnalysisServerImpl server = getPrimaryServer();
     if (server != null) {
       server.sendRequestToServer(id, request, consumer);
     }
@@ -0,0 +1,174 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.codeInsight.completion.PrefixMatcher;
+import org.dartlang.analysis.server.protocol.AvailableSuggestion;
+import org.dartlang.analysis.server.protocol.AvailableSuggestionSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the labels of {@link AvailableSuggestionSet}s that lets completion look only at the suggestions that may match the typed
+ * prefix instead of all items of the included sets, which are hundreds of thousands for Flutter projects.
+ * <p>
+ * Every possible word start of a label (the label start, any uppercase letter, a letter or digit after '_', '$' or '.', a letter after a
+ * digit and a digit after a letter) is a key. These are at least the word starts of {@link com.intellij.psi.codeStyle.NameUtil}, where
+ * the completion prefix matcher lets the first prefix character match. Keys of a set are sorted by the lowercase text that follows them,
+ * so candidates are found by a binary search for the first character of the prefix and then filtered with the prefix matcher itself.
+ * The result is the same as filtering all items with the prefix matcher, including camel hump, middle and typo tolerant matches.
+ * <p>
+ * Set indices are immutable and are replaced as the server reports changed sets, so lookups don't need locking.
+ */
+final class DartAvailableSuggestionIndex {
+
+  private static final class SetIndex {
+    @NotNull private final AvailableSuggestionSet mySet;
+    @NotNull private final String[] myLowerCaseLabels;
+    // keys sorted by the lowercase text from the word start to the end of the label
+    @NotNull private final int[] myKeyItems;
+    @NotNull private final int[] myKeyWordStarts;
+
+    private SetIndex(@NotNull final AvailableSuggestionSet set) {
+      mySet = set;
+      final List<AvailableSuggestion> items = set.getItems();
+      myLowerCaseLabels = new String[items.size()];
+
+      final List<int[]> keys = new ArrayList<>(items.size() * 2); // item index and word start
+      for (int i = 0; i < items.size(); i++) {
+        final String label = items.get(i).getLabel();
+        myLowerCaseLabels[i] = label.toLowerCase(Locale.US);
+        for (int wordStart = 0; wordStart < label.length(); wordStart++) {
+          if (isWordStart(label, wordStart)) {
+            keys.add(new int[]{i, wordStart});
+          }
+        }
+      }
+
+      keys.sort((key1, key2) -> compareKeys(myLowerCaseLabels[key1[0]], key1[1], myLowerCaseLabels[key2[0]], key2[1]));
+
+      myKeyItems = new int[keys.size()];
+      myKeyWordStarts = new int[keys.size()];
+      for (int i = 0; i < keys.size(); i++) {
+        myKeyItems[i] = keys.get(i)[0];
+        myKeyWordStarts[i] = keys.get(i)[1];
+      }
+    }
+
+    @NotNull
+    private List<AvailableSuggestion> getCandidates(@NotNull final PrefixMatcher matcher) {
+      final List<AvailableSuggestion> items = mySet.getItems();
+      if (matcher.getPrefix().isEmpty()) return items;
+
+      final char firstChar = Character.toLowerCase(matcher.getPrefix().charAt(0));
+      final int start = findFirstKey(firstChar);
+      if (!Character.isLetterOrDigit(firstChar) ||
+          start == myKeyItems.length ||
+          myLowerCaseLabels[myKeyItems[start]].charAt(myKeyWordStarts[start]) != firstChar) {
+        // e.g. '_' of a private name or a prefix typed in another keyboard layout, which the matcher may still accept
+        return filterByLinearScan(mySet, matcher);
+      }
+
+      final BitSet addedItems = new BitSet(items.size());
+      final List<AvailableSuggestion> result = new ArrayList<>();
+      for (int i = start; i < myKeyItems.length; i++) {
+        final int item = myKeyItems[i];
+        if (myLowerCaseLabels[item].charAt(myKeyWordStarts[i]) != firstChar) break;
+
+        if (!addedItems.get(item)) {
+          addedItems.set(item);
+          if (matcher.prefixMatches(items.get(item).getLabel())) {
+            result.add(items.get(item));
+          }
+        }
+      }
+      return result;
+    }
+
+    /**
+     * @return index of the first key that starts with {@code c} or a greater character
+     */
+    private int findFirstKey(final char c) {
+      int low = 0;
+      int high = myKeyItems.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (myLowerCaseLabels[myKeyItems[mid]].charAt(myKeyWordStarts[mid]) < c) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
+  private final Map<Integer, SetIndex> mySetIndices = new ConcurrentHashMap<>();
+
+  void update(@NotNull final List<? extends AvailableSuggestionSet> changed, final int @NotNull [] removed) {
+    for (int id : removed) {
+      mySetIndices.remove(id);
+    }
+    for (AvailableSuggestionSet set : changed) {
+      mySetIndices.put(set.getId(), new SetIndex(set));
+    }
+  }
+
+  void clear() {
+    mySetIndices.clear();
+  }
+
+  @Nullable
+  AvailableSuggestionSet getSet(final int id) {
+    final SetIndex index = mySetIndices.get(id);
+    return index != null ? index.mySet : null;
+  }
+
+  /**
+   * Returns the items of the set that the matcher accepts, or all items if the prefix is empty.
+   */
+  @NotNull
+  List<AvailableSuggestion> getCandidates(final int id, @NotNull final PrefixMatcher matcher) {
+    final SetIndex index = mySetIndices.get(id);
+    return index != null ? index.getCandidates(matcher) : Collections.emptyList();
+  }
+
+  /**
+   * The same result as {@link #getCandidates(int, PrefixMatcher)} without the index.
+   */
+  @NotNull
+  static List<AvailableSuggestion> filterByLinearScan(@NotNull final AvailableSuggestionSet set, @NotNull final PrefixMatcher matcher) {
+    if (matcher.getPrefix().isEmpty()) return set.getItems();
+
+    final List<AvailableSuggestion> result = new ArrayList<>();
+    for (AvailableSuggestion item : set.getItems()) {
+      if (matcher.prefixMatches(item.getLabel())) {
+        result.add(item);
+      }
+    }
+    return result;
+  }
+
+  static boolean isWordStart(@NotNull final String label, final int index) {
+    final char c = label.charAt(index);
+    if (!Character.isLetterOrDigit(c)) return false;
+    if (index == 0 || Character.isUpperCase(c)) return true;
+
+    // '_private', 'Foo.named', 'utf8' and 'Http2client'
+    final char prev = label.charAt(index - 1);
+    return !Character.isLetterOrDigit(prev) || Character.isDigit(c) != Character.isDigit(prev);
+  }
+
+  private static int compareKeys(@NotNull final String label1, final int start1, @NotNull final String label2, final int start2) {
+    final int length1 = label1.length() - start1;
+    final int length2 = label2.length() - start2;
+    for (int i = 0; i < Math.min(length1, length2); i++) {
+      final int diff = label1.charAt(start1 + i) - label2.charAt(start2 + i);
+      if (diff != 0) return diff;
+    }
+    return length1 - length2;
+  }
+}
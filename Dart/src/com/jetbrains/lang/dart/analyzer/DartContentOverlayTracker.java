@@ -0,0 +1,181 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import gnu.trove.THashMap;
+import org.dartlang.analysis.server.protocol.AddContentOverlay;
+import org.dartlang.analysis.server.protocol.ChangeContentOverlay;
+import org.dartlang.analysis.server.protocol.SourceEdit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects document changes made since the content overlay of a file was last sent to the Analysis Server, so that the next
+ * {@code analysis.updateContent} request can carry a {@link ChangeContentOverlay} instead of the whole document text.
+ * <p>
+ * Edits are tracked against the document modification stamp known to the server. If any change slips by unrecorded
+ * (stamps don't match) the pending edits are dropped and the caller falls back to a full {@code AddContentOverlay}.
+ * <p>
+ * Not thread-safe, guarded by {@code DartAnalysisServerService.myLock}.
+ */
+final class DartContentOverlayTracker {
+
+  private static final long RATE_WINDOW_MILLIS = 1000;
+
+  private final Map<String, PendingEdits> myFilePathToPendingEdits = new THashMap<>();
+
+  private long myTotalBytesSent;
+  private long myWindowStart;
+  private long myWindowBytes;
+  private long myBytesPerSecond;
+
+  private static final class PendingEdits {
+    private final long myServerStamp;
+    private long myLastStamp;
+    private boolean myValid = true;
+    private final List<SourceEdit> myEdits = new ArrayList<>();
+
+    private PendingEdits(long serverStamp) {
+      myServerStamp = serverStamp;
+      myLastStamp = serverStamp;
+    }
+  }
+
+  /**
+   * Must be called from {@code DocumentListener.beforeDocumentChange()} for files that have overlaid content on the server.
+   *
+   * @param serverStamp modification stamp of the document content last sent to the server
+   */
+  void beforeDocumentChange(@NotNull final String filePath, @NotNull final DocumentEvent e, final long serverStamp) {
+    PendingEdits pending = myFilePathToPendingEdits.get(filePath);
+    if (pending == null || pending.myServerStamp != serverStamp) {
+      pending = new PendingEdits(serverStamp);
+      myFilePathToPendingEdits.put(filePath, pending);
+    }
+
+    if (!pending.myValid) return;
+
+    if (e.getDocument().getModificationStamp() != pending.myLastStamp) {
+      // document was changed in a way we haven't seen, full content will be sent
+      pending.myValid = false;
+      pending.myEdits.clear();
+      return;
+    }
+
+    addEdit(pending.myEdits, e.getOffset(), e.getOldLength(), e.getNewFragment().toString());
+  }
+
+  /**
+   * Must be called from {@code DocumentListener.documentChanged()} for files that have overlaid content on the server.
+   */
+  void documentChanged(@NotNull final String filePath, @NotNull final Document document) {
+    final PendingEdits pending = myFilePathToPendingEdits.get(filePath);
+    if (pending != null && pending.myValid) {
+      pending.myLastStamp = document.getModificationStamp();
+    }
+  }
+
+  /**
+   * Returns an overlay with all edits collected since the {@code serverStamp} if they bring the server content in sync with the
+   * current {@code document} state, {@code null} if the whole document text needs to be sent. Pending edits for the file are consumed.
+   */
+  @Nullable
+  ChangeContentOverlay createChangeOverlay(@NotNull final String filePath, @NotNull final Document document, final long serverStamp) {
+    final PendingEdits pending = myFilePathToPendingEdits.remove(filePath);
+    if (pending == null ||
+        !pending.myValid ||
+        pending.myEdits.isEmpty() ||
+        pending.myServerStamp != serverStamp ||
+        pending.myLastStamp != document.getModificationStamp()) {
+      return null;
+    }
+
+    int replacementLength = 0;
+    for (SourceEdit edit : pending.myEdits) {
+      replacementLength += edit.getReplacement().length();
+    }
+    // sending the edits is not worth it if they are larger than the document itself
+    if (replacementLength >= document.getTextLength()) return null;
+
+    return new ChangeContentOverlay(pending.myEdits);
+  }
+
+  void forget(@NotNull final String filePath) {
+    myFilePathToPendingEdits.remove(filePath);
+  }
+
+  void clear() {
+    myFilePathToPendingEdits.clear();
+  }
+
+  /**
+   * Accounts content sent within AddContentOverlay or ChangeContentOverlay, used for the bytes-per-second statistics.
+   */
+  void contentSent(final long bytes) {
+    final long now = System.currentTimeMillis();
+    myTotalBytesSent += bytes;
+    if (now - myWindowStart >= RATE_WINDOW_MILLIS) {
+      myBytesPerSecond = myWindowStart == 0 ? myWindowBytes : myWindowBytes * RATE_WINDOW_MILLIS / (now - myWindowStart);
+      myWindowStart = now;
+      myWindowBytes = 0;
+    }
+    myWindowBytes += bytes;
+  }
+
+  long getTotalBytesSent() {
+    return myTotalBytesSent;
+  }
+
+  /**
+   * Overlay content sent per second, averaged over the last completed one-second window, 0 if nothing was sent recently.
+   */
+  long getBytesPerSecond() {
+    return System.currentTimeMillis() - myWindowStart > 2 * RATE_WINDOW_MILLIS ? 0 : myBytesPerSecond;
+  }
+
+  static long getContentSize(@NotNull final Object overlay) {
+    if (overlay instanceof ChangeContentOverlay) {
+      long size = 0;
+      for (SourceEdit edit : ((ChangeContentOverlay)overlay).getEdits()) {
+        size += edit.getReplacement().length();
+      }
+      return size;
+    }
+    if (overlay instanceof AddContentOverlay) {
+      return ((AddContentOverlay)overlay).getContent().length();
+    }
+    return 0;
+  }
+
+  /**
+   * Coalesces sequential typing and backspacing into the previous edit, otherwise appends a new one.
+   * The server applies edits in order, each against the result of the previous one, exactly as DocumentEvents are fired.
+   */
+  static void addEdit(@NotNull final List<SourceEdit> edits, final int offset, final int oldLength, @NotNull final String newText) {
+    if (!edits.isEmpty()) {
+      final SourceEdit last = edits.get(edits.size() - 1);
+      final String lastReplacement = last.getReplacement();
+      final int lastEnd = last.getOffset() + lastReplacement.length();
+
+      if (oldLength == 0 && offset == lastEnd) {
+        // typing right after the previous edit
+        edits.set(edits.size() - 1, new SourceEdit(last.getOffset(), last.getLength(), lastReplacement + newText, null));
+        return;
+      }
+
+      if (newText.isEmpty() && offset + oldLength == lastEnd && oldLength <= lastReplacement.length()) {
+        // backspacing over text inserted by the previous edit
+        final String replacement = lastReplacement.substring(0, lastReplacement.length() - oldLength);
+        edits.set(edits.size() - 1, new SourceEdit(last.getOffset(), last.getLength(), replacement, null));
+        return;
+      }
+    }
+
+    edits.add(new SourceEdit(offset, oldLength, newText, null));
+  }
+}
@@ -0,0 +1,474 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.jetbrains.lang.dart.analyzer.DartServerData.*;
+import gnu.trove.TObjectIntHashMap;
+import org.dartlang.analysis.server.protocol.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Immutable list of regions of one file, packed into primitive arrays instead of keeping a Java object per region.
+ * List elements are created on access. Highlight types and navigation target files and kinds are stored as ids in a {@link StringTable}
+ * shared by all files.
+ * <p>
+ * Lists are never modified: {@link #updateForDocumentChange(int, int, String)} returns an updated copy, so a list obtained by a reader
+ * stays consistent while the document listener replaces it. The only mutable part is the lazily converted offsets of navigation targets.
+ */
+abstract class DartPackedRegions<T extends DartRegion> extends AbstractList<T> implements RandomAccess {
+
+  static final class StringTable {
+    private final TObjectIntHashMap<String> myIds = new TObjectIntHashMap<>();
+    private volatile String[] myStrings = new String[256];
+    private int mySize;
+
+    int getId(@NotNull final String string) {
+      synchronized (myIds) {
+        if (myIds.containsKey(string)) return myIds.get(string);
+
+        String[] strings = myStrings;
+        if (mySize == strings.length) {
+          strings = Arrays.copyOf(strings, mySize * 2);
+        }
+        strings[mySize] = string;
+        myStrings = strings;
+        myIds.put(string, mySize);
+        return mySize++;
+      }
+    }
+
+    /**
+     * @return id of the string or -1 if there's no such string in the table
+     */
+    int findId(@NotNull final String string) {
+      synchronized (myIds) {
+        return myIds.containsKey(string) ? myIds.get(string) : -1;
+      }
+    }
+
+    @NotNull
+    String getString(final int id) {
+      return myStrings[id];
+    }
+  }
+
+  protected final int[] myOffsets;
+  protected final int[] myLengths;
+
+  private DartPackedRegions(final int @NotNull [] offsets, final int @NotNull [] lengths) {
+    myOffsets = offsets;
+    myLengths = lengths;
+  }
+
+  @Override
+  public final int size() {
+    return myOffsets.length;
+  }
+
+  /**
+   * {@code true} if regions touched by editing are resized, {@code false} if they are deleted.
+   */
+  protected boolean updatesTouchedRegions() {
+    return false;
+  }
+
+  /**
+   * @return {@code true} if the data attached to regions needs to be updated after a change in the given file
+   */
+  protected boolean isPayloadAffected(@NotNull final String filePath, final int eventOffset) {
+    return false;
+  }
+
+  /**
+   * Creates a list containing regions with the given indices, with the given new offsets and lengths.
+   */
+  @NotNull
+  protected abstract DartPackedRegions<T> copy(final int @NotNull [] indices,
+                                               final int @NotNull [] offsets,
+                                               final int @NotNull [] lengths,
+                                               @NotNull final String filePath,
+                                               final int eventOffset,
+                                               final int deltaLength);
+
+  /**
+   * Shifts regions after the edited range and deletes or resizes regions touched by editing.
+   *
+   * @return this list if no region is affected by the change, otherwise an updated copy
+   */
+  @NotNull
+  final DartPackedRegions<T> updateForDocumentChange(final int eventOffset, final int deltaLength, @NotNull final String filePath) {
+    if (deltaLength == 0) return this;
+
+    final int size = size();
+    final int[] indices = new int[size];
+    final int[] offsets = new int[size];
+    final int[] lengths = new int[size];
+    int count = 0;
+    boolean regionsUpdated = false;
+
+    for (int i = 0; i < size; i++) {
+      int offset = myOffsets[i];
+      int length = myLengths[i];
+
+      if (deltaLength > 0) {
+        // Something was typed. Shift untouched regions, delete or update touched.
+        if (eventOffset <= offset) {
+          offset += deltaLength;
+          regionsUpdated = true;
+        }
+        else if (eventOffset < offset + length) {
+          regionsUpdated = true;
+          if (!updatesTouchedRegions()) continue;
+          length += deltaLength;
+        }
+      }
+      else {
+        // Some text was deleted. Shift untouched regions, delete or update touched.
+        final int eventRightOffset = eventOffset - deltaLength;
+        final int regionRightOffset = offset + length;
+
+        if (eventRightOffset <= offset) {
+          offset += deltaLength;
+          regionsUpdated = true;
+        }
+        else if (updatesTouchedRegions() && offset <= eventOffset && eventRightOffset <= regionRightOffset && length != -deltaLength) {
+          length += deltaLength;
+          regionsUpdated = true;
+        }
+        else if (eventOffset < regionRightOffset) {
+          regionsUpdated = true;
+          continue;
+        }
+      }
+
+      indices[count] = i;
+      offsets[count] = offset;
+      lengths[count] = length;
+      count++;
+    }
+
+    if (!regionsUpdated && !isPayloadAffected(filePath, eventOffset)) return this;
+
+    return copy(Arrays.copyOf(indices, count), Arrays.copyOf(offsets, count), Arrays.copyOf(lengths, count),
+                filePath, eventOffset, deltaLength);
+  }
+
+  private static int @NotNull [] select(final int @NotNull [] values, final int @NotNull [] indices) {
+    final int[] result = new int[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      result[i] = values[indices[i]];
+    }
+    return result;
+  }
+
+  @NotNull
+  static DartPackedRegions<DartRegion> createRegions(@NotNull final DartAnalysisServerService service,
+                                                     @Nullable final VirtualFile file,
+                                                     final int @NotNull [] originalOffsets,
+                                                     final int @NotNull [] originalLengths) {
+    final int[] offsets = new int[originalOffsets.length];
+    final int[] lengths = new int[originalOffsets.length];
+    for (int i = 0; i < originalOffsets.length; i++) {
+      offsets[i] = service.getConvertedOffset(file, originalOffsets[i]);
+      lengths[i] = service.getConvertedOffset(file, originalOffsets[i] + originalLengths[i]) - offsets[i];
+    }
+    return new Regions(offsets, lengths);
+  }
+
+  @NotNull
+  static DartPackedRegions<DartHighlightRegion> createHighlights(@NotNull final DartAnalysisServerService service,
+                                                                 @Nullable final VirtualFile file,
+                                                                 @NotNull final List<? extends HighlightRegion> regions,
+                                                                 @NotNull final StringTable strings) {
+    int count = 0;
+    final int[] offsets = new int[regions.size()];
+    final int[] lengths = new int[regions.size()];
+    final int[] types = new int[regions.size()];
+    for (HighlightRegion region : regions) {
+      if (region.getLength() > 0) {
+        offsets[count] = service.getConvertedOffset(file, region.getOffset());
+        lengths[count] = service.getConvertedOffset(file, region.getOffset() + region.getLength()) - offsets[count];
+        types[count] = strings.getId(region.getType());
+        count++;
+      }
+    }
+    return new Highlights(Arrays.copyOf(offsets, count), Arrays.copyOf(lengths, count), Arrays.copyOf(types, count), strings);
+  }
+
+  @NotNull
+  static DartPackedRegions<DartNavigationRegion> createNavigation(@NotNull final DartAnalysisServerService service,
+                                                                  @Nullable final VirtualFile file,
+                                                                  @NotNull final List<? extends NavigationRegion> regions,
+                                                                  @NotNull final StringTable strings) {
+    int count = 0;
+    final int[] offsets = new int[regions.size()];
+    final int[] lengths = new int[regions.size()];
+    final int[] targetStarts = new int[regions.size() + 1];
+    int[] targetIndices = new int[regions.size()];
+    int targetIndexCount = 0;
+
+    // regions usually share target objects, each distinct target is stored once
+    final Map<NavigationTarget, Integer> targetToIndex = new IdentityHashMap<>();
+    final List<NavigationTarget> targets = new ArrayList<>();
+
+    for (NavigationRegion region : regions) {
+      if (region.getLength() <= 0) continue;
+
+      offsets[count] = service.getConvertedOffset(file, region.getOffset());
+      lengths[count] = service.getConvertedOffset(file, region.getOffset() + region.getLength()) - offsets[count];
+      targetStarts[count] = targetIndexCount;
+      for (NavigationTarget target : region.getTargetObjects()) {
+        Integer index = targetToIndex.get(target);
+        if (index == null) {
+          index = targets.size();
+          targetToIndex.put(target, index);
+          targets.add(target);
+        }
+        if (targetIndexCount == targetIndices.length) {
+          targetIndices = Arrays.copyOf(targetIndices, targetIndexCount * 2 + 1);
+        }
+        targetIndices[targetIndexCount++] = index;
+      }
+      count++;
+    }
+    targetStarts[count] = targetIndexCount;
+
+    final int[] targetFiles = new int[targets.size()];
+    final int[] targetOffsets = new int[targets.size()];
+    final int[] targetKinds = new int[targets.size()];
+    final int[] targetConvertedOffsets = new int[targets.size()];
+    for (int i = 0; i < targets.size(); i++) {
+      final NavigationTarget target = targets.get(i);
+      targetFiles[i] = strings.getId(FileUtil.toSystemIndependentName(target.getFile().trim()));
+      targetOffsets[i] = target.getOffset();
+      targetKinds[i] = strings.getId(target.getKind());
+      targetConvertedOffsets[i] = -1;
+    }
+
+    return new Navigation(Arrays.copyOf(offsets, count), Arrays.copyOf(lengths, count),
+                          Arrays.copyOf(targetStarts, count + 1), Arrays.copyOf(targetIndices, targetIndexCount),
+                          targetFiles, targetOffsets, targetKinds, targetConvertedOffsets, strings);
+  }
+
+  @NotNull
+  static DartPackedRegions<DartOverrideMember> createOverrides(@NotNull final DartAnalysisServerService service,
+                                                               @Nullable final VirtualFile file,
+                                                               @NotNull final List<? extends OverrideMember> overrides) {
+    int count = 0;
+    final int[] offsets = new int[overrides.size()];
+    final int[] lengths = new int[overrides.size()];
+    final OverriddenMember[] superclassMembers = new OverriddenMember[overrides.size()];
+    final Object[] interfaceMembers = new Object[overrides.size()];
+    for (OverrideMember override : overrides) {
+      if (override.getLength() > 0) {
+        offsets[count] = service.getConvertedOffset(file, override.getOffset());
+        lengths[count] = service.getConvertedOffset(file, override.getOffset() + override.getLength()) - offsets[count];
+        superclassMembers[count] = override.getSuperclassMember();
+        interfaceMembers[count] = override.getInterfaceMembers();
+        count++;
+      }
+    }
+    return new Overrides(Arrays.copyOf(offsets, count), Arrays.copyOf(lengths, count),
+                         Arrays.copyOf(superclassMembers, count), Arrays.copyOf(interfaceMembers, count));
+  }
+
+  static final class Regions extends DartPackedRegions<DartRegion> {
+    Regions(final int @NotNull [] offsets, final int @NotNull [] lengths) {
+      super(offsets, lengths);
+    }
+
+    @Override
+    public DartRegion get(final int index) {
+      return new DartRegion(myOffsets[index], myLengths[index]);
+    }
+
+    @NotNull
+    @Override
+    protected DartPackedRegions<DartRegion> copy(final int @NotNull [] indices,
+                                                 final int @NotNull [] offsets,
+                                                 final int @NotNull [] lengths,
+                                                 @NotNull final String filePath,
+                                                 final int eventOffset,
+                                                 final int deltaLength) {
+      return new Regions(offsets, lengths);
+    }
+  }
+
+  static final class Highlights extends DartPackedRegions<DartHighlightRegion> {
+    private final int[] myTypes;
+    private final StringTable myStrings;
+
+    Highlights(final int @NotNull [] offsets, final int @NotNull [] lengths, final int @NotNull [] types, @NotNull final StringTable strings) {
+      super(offsets, lengths);
+      myTypes = types;
+      myStrings = strings;
+    }
+
+    @Override
+    public DartHighlightRegion get(final int index) {
+      return new DartHighlightRegion(myOffsets[index], myLengths[index], myStrings.getString(myTypes[index]));
+    }
+
+    @Override
+    protected boolean updatesTouchedRegions() {
+      return true;
+    }
+
+    @NotNull
+    @Override
+    protected DartPackedRegions<DartHighlightRegion> copy(final int @NotNull [] indices,
+                                                          final int @NotNull [] offsets,
+                                                          final int @NotNull [] lengths,
+                                                          @NotNull final String filePath,
+                                                          final int eventOffset,
+                                                          final int deltaLength) {
+      return new Highlights(offsets, lengths, select(myTypes, indices), myStrings);
+    }
+  }
+
+  static final class Navigation extends DartPackedRegions<DartNavigationRegion> {
+    // targets of the region i are myTargetIndices[myTargetStarts[i]] .. myTargetIndices[myTargetStarts[i + 1] - 1]
+    private final int[] myTargetStarts;
+    private final int[] myTargetIndices;
+    // distinct targets, shared by copies of this list
+    private final int[] myTargetFiles;
+    private final int[] myTargetOffsets;
+    private final int[] myTargetKinds;
+    private final int[] myTargetConvertedOffsets;
+    private final StringTable myStrings;
+
+    Navigation(final int @NotNull [] offsets,
+               final int @NotNull [] lengths,
+               final int @NotNull [] targetStarts,
+               final int @NotNull [] targetIndices,
+               final int @NotNull [] targetFiles,
+               final int @NotNull [] targetOffsets,
+               final int @NotNull [] targetKinds,
+               final int @NotNull [] targetConvertedOffsets,
+               @NotNull final StringTable strings) {
+      super(offsets, lengths);
+      myTargetStarts = targetStarts;
+      myTargetIndices = targetIndices;
+      myTargetFiles = targetFiles;
+      myTargetOffsets = targetOffsets;
+      myTargetKinds = targetKinds;
+      myTargetConvertedOffsets = targetConvertedOffsets;
+      myStrings = strings;
+    }
+
+    @Override
+    public DartNavigationRegion get(final int index) {
+      final int start = myTargetStarts[index];
+      final int end = myTargetStarts[index + 1];
+      return new DartNavigationRegion(myOffsets[index], myLengths[index], new AbstractList<DartNavigationTarget>() {
+        @Override
+        public DartNavigationTarget get(final int i) {
+          if (i < 0 || i >= end - start) throw new IndexOutOfBoundsException("Index: " + i + ", size: " + (end - start));
+          final int target = myTargetIndices[start + i];
+          return new DartNavigationTarget(myStrings.getString(myTargetFiles[target]), myTargetOffsets[target],
+                                          myStrings.getString(myTargetKinds[target]), myTargetConvertedOffsets, target);
+        }
+
+        @Override
+        public int size() {
+          return end - start;
+        }
+      });
+    }
+
+    @Override
+    protected boolean isPayloadAffected(@NotNull final String filePath, final int eventOffset) {
+      final int fileId = myStrings.findId(filePath);
+      if (fileId == -1) return false;
+
+      for (int i = 0; i < myTargetFiles.length; i++) {
+        if (myTargetFiles[i] == fileId && myTargetConvertedOffsets[i] >= eventOffset) return true;
+      }
+      return false;
+    }
+
+    @NotNull
+    @Override
+    protected DartPackedRegions<DartNavigationRegion> copy(final int @NotNull [] indices,
+                                                           final int @NotNull [] offsets,
+                                                           final int @NotNull [] lengths,
+                                                           @NotNull final String filePath,
+                                                           final int eventOffset,
+                                                           final int deltaLength) {
+      int targetIndexCount = 0;
+      for (int index : indices) {
+        targetIndexCount += myTargetStarts[index + 1] - myTargetStarts[index];
+      }
+
+      final int[] targetStarts = new int[indices.length + 1];
+      final int[] targetIndices = new int[targetIndexCount];
+      int position = 0;
+      for (int i = 0; i < indices.length; i++) {
+        final int start = myTargetStarts[indices[i]];
+        final int length = myTargetStarts[indices[i] + 1] - start;
+        targetStarts[i] = position;
+        System.arraycopy(myTargetIndices, start, targetIndices, position, length);
+        position += length;
+      }
+      targetStarts[indices.length] = position;
+
+      // may be we'd better delete target touched by editing?
+      int[] convertedOffsets = myTargetConvertedOffsets;
+      if (isPayloadAffected(filePath, eventOffset)) {
+        final int fileId = myStrings.findId(filePath);
+        convertedOffsets = myTargetConvertedOffsets.clone();
+        for (int i = 0; i < convertedOffsets.length; i++) {
+          if (myTargetFiles[i] == fileId && convertedOffsets[i] >= eventOffset) {
+            convertedOffsets[i] += deltaLength;
+          }
+        }
+      }
+
+      return new Navigation(offsets, lengths, targetStarts, targetIndices, myTargetFiles, myTargetOffsets, myTargetKinds, convertedOffsets,
+                            myStrings);
+    }
+  }
+
+  static final class Overrides extends DartPackedRegions<DartOverrideMember> {
+    private final OverriddenMember[] mySuperclassMembers;
+    // List<OverriddenMember> or null
+    private final Object[] myInterfaceMembers;
+
+    Overrides(final int @NotNull [] offsets,
+              final int @NotNull [] lengths,
+              final OverriddenMember @NotNull [] superclassMembers,
+              final Object @NotNull [] interfaceMembers) {
+      super(offsets, lengths);
+      mySuperclassMembers = superclassMembers;
+      myInterfaceMembers = interfaceMembers;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public DartOverrideMember get(final int index) {
+      return new DartOverrideMember(myOffsets[index], myLengths[index], mySuperclassMembers[index],
+                                    (List<OverriddenMember>)myInterfaceMembers[index]);
+    }
+
+    @NotNull
+    @Override
+    protected DartPackedRegions<DartOverrideMember> copy(final int @NotNull [] indices,
+                                                         final int @NotNull [] offsets,
+                                                         final int @NotNull [] lengths,
+                                                         @NotNull final String filePath,
+                                                         final int eventOffset,
+                                                         final int deltaLength) {
+      final OverriddenMember[] superclassMembers = new OverriddenMember[indices.length];
+      final Object[] interfaceMembers = new Object[indices.length];
+      for (int i = 0; i < indices.length; i++) {
+        superclassMembers[i] = mySuperclassMembers[indices[i]];
+        interfaceMembers[i] = myInterfaceMembers[indices[i]];
+      }
+      return new Overrides(offsets, lengths, superclassMembers, interfaceMembers);
+    }
+  }
+}
@@ -2,6 +2,7 @@
 package com.jetbrains.lang.dart.analyzer;
 
 import com.google.common.collect.Sets;
+import com.intellij.codeInsight.completion.PrefixMatcher;
 import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
@@ -24,6 +25,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DartServerData {
 
@@ -36,13 +38,16 @@ public class DartServerData {
   private final EventDispatcher<OutlineListener> myEventDispatcher = EventDispatcher.create(OutlineListener.class);
 
   private final Map<String, List<DartError>> myErrorData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartHighlightRegion>> myHighlightData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartNavigationRegion>> myNavigationData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartOverrideMember>> myOverrideData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartRegion>> myImplementedClassData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<String, List<DartRegion>> myImplementedMemberData = Collections.synchronizedMap(new THashMap<>());
+  // region lists are immutable, document changes replace them with updated copies
+  private final Map<String, DartPackedRegions<DartHighlightRegion>> myHighlightData = new ConcurrentHashMap<>();
+  private final Map<String, DartPackedRegions<DartNavigationRegion>> myNavigationData = new ConcurrentHashMap<>();
+  private final Map<String, DartPackedRegions<DartOverrideMember>> myOverrideData = new ConcurrentHashMap<>();
+  private final Map<String, DartPackedRegions<DartRegion>> myImplementedClassData = new ConcurrentHashMap<>();
+  private final Map<String, DartPackedRegions<DartRegion>> myImplementedMemberData = new ConcurrentHashMap<>();
+  // replaced rather than cleared, region lists that are still in use keep the table they were created with
+  private volatile DartPackedRegions.StringTable myStringTable = new DartPackedRegions.StringTable();
   private final Map<String, Outline> myOutlineData = Collections.synchronizedMap(new THashMap<>());
-  private final Map<Integer, AvailableSuggestionSet> myAvailableSuggestionSetMap = Collections.synchronizedMap(new THashMap<>());
+  private final DartAvailableSuggestionIndex myAvailableSuggestionIndex = new DartAvailableSuggestionIndex();
   private final Map<String, Map<String, Map<String, Set<String>>>> myExistingImports = Collections.synchronizedMap(new THashMap<>());
 
   private final Set<String> myFilePathsWithUnsentChanges = Sets.newConcurrentHashSet();
@@ -93,35 +98,16 @@ public class DartServerData {
   void computedHighlights(@NotNull final String filePath, final @NotNull List<? extends HighlightRegion> regions) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return;
 
-    final List<DartHighlightRegion> newRegions = new ArrayList<>(regions.size());
     final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
-
-    for (HighlightRegion region : regions) {
-      if (region.getLength() > 0) {
-        final int offset = myService.getConvertedOffset(file, region.getOffset());
-        final int length = myService.getConvertedOffset(file, region.getOffset() + region.getLength()) - offset;
-        newRegions.add(new DartHighlightRegion(offset, length, region.getType()));
-      }
-    }
-
-    myHighlightData.put(filePath, newRegions);
+    myHighlightData.put(filePath, DartPackedRegions.createHighlights(myService, file, regions, myStringTable));
     forceFileAnnotation(file, false);
   }
 
   void computedNavigation(@NotNull final String filePath, final @NotNull List<? extends NavigationRegion> regions) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return;
 
-    final List<DartNavigationRegion> newRegions = new ArrayList<>(regions.size());
     final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
-
-    for (NavigationRegion region : regions) {
-      if (region.getLength() > 0) {
-        final DartNavigationRegion dartNavigationRegion = createDartNavigationRegion(myService, file, region);
-        newRegions.add(dartNavigationRegion);
-      }
-    }
-
-    myNavigationData.put(filePath, newRegions);
+    myNavigationData.put(filePath, DartPackedRegions.createNavigation(myService, file, regions, myStringTable));
     forceFileAnnotation(file, true);
   }
 
@@ -135,12 +121,7 @@ public class DartServerData {
   }
 
   void computedAvailableSuggestions(final @NotNull List<? extends AvailableSuggestionSet> changed, final int @NotNull [] removed) {
-    for (int id : removed) {
-      myAvailableSuggestionSetMap.remove(id);
-    }
-    for (AvailableSuggestionSet suggestionSet : changed) {
-      myAvailableSuggestionSetMap.put(suggestionSet.getId(), suggestionSet);
-    }
+    myAvailableSuggestionIndex.update(changed, removed);
   }
 
   void computedExistingImports(@NotNull String filePathSD, @NotNull Map<String, Map<String, Set<String>>> existingImports) {
@@ -168,18 +149,8 @@ public class DartServerData {
   void computedOverrides(@NotNull final String filePath, final @NotNull List<? extends OverrideMember> overrides) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return;
 
-    final List<DartOverrideMember> newOverrides = new ArrayList<>(overrides.size());
     final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
-
-    for (OverrideMember override : overrides) {
-      if (override.getLength() > 0) {
-        final int offset = myService.getConvertedOffset(file, override.getOffset());
-        final int length = myService.getConvertedOffset(file, override.getOffset() + override.getLength()) - offset;
-        newOverrides.add(new DartOverrideMember(offset, length, override.getSuperclassMember(), override.getInterfaceMembers()));
-      }
-    }
-
-    myOverrideData.put(filePath, newOverrides);
+    myOverrideData.put(filePath, DartPackedRegions.createOverrides(myService, file, overrides));
     forceFileAnnotation(file, false);
   }
 
@@ -190,19 +161,23 @@ public class DartServerData {
 
     final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(filePath);
 
-    final List<DartRegion> newImplementedClasses = new ArrayList<>(implementedClasses.size());
-    for (ImplementedClass implementedClass : implementedClasses) {
-      final int offset = myService.getConvertedOffset(file, implementedClass.getOffset());
-      final int length = myService.getConvertedOffset(file, implementedClass.getOffset() + implementedClass.getLength()) - offset;
-      newImplementedClasses.add(new DartRegion(offset, length));
+    final int[] classOffsets = new int[implementedClasses.size()];
+    final int[] classLengths = new int[implementedClasses.size()];
+    for (int i = 0; i < implementedClasses.size(); i++) {
+      classOffsets[i] = implementedClasses.get(i).getOffset();
+      classLengths[i] = implementedClasses.get(i).getLength();
     }
+    final DartPackedRegions<DartRegion> newImplementedClasses =
+      DartPackedRegions.createRegions(myService, file, classOffsets, classLengths);
 
-    final List<DartRegion> newImplementedMembers = new ArrayList<>(implementedMembers.size());
-    for (ImplementedMember implementedMember : implementedMembers) {
-      final int offset = myService.getConvertedOffset(file, implementedMember.getOffset());
-      final int length = myService.getConvertedOffset(file, implementedMember.getOffset() + implementedMember.getLength()) - offset;
-      newImplementedMembers.add(new DartRegion(offset, length));
+    final int[] memberOffsets = new int[implementedMembers.size()];
+    final int[] memberLengths = new int[implementedMembers.size()];
+    for (int i = 0; i < implementedMembers.size(); i++) {
+      memberOffsets[i] = implementedMembers.get(i).getOffset();
+      memberLengths[i] = implementedMembers.get(i).getLength();
     }
+    final DartPackedRegions<DartRegion> newImplementedMembers =
+      DartPackedRegions.createRegions(myService, file, memberOffsets, memberLengths);
 
     boolean hasChanges = false;
     final List<DartRegion> oldClasses = myImplementedClassData.get(filePath);
@@ -289,7 +264,15 @@ public class DartServerData {
 
   @Nullable
   AvailableSuggestionSet getAvailableSuggestionSet(int id) {
-    return myAvailableSuggestionSetMap.get(id);
+    return myAvailableSuggestionIndex.getSet(id);
+  }
+
+  /**
+   * @see DartAvailableSuggestionIndex#getCandidates(int, PrefixMatcher)
+   */
+  @NotNull
+  List<AvailableSuggestion> getAvailableSuggestions(int id, @NotNull PrefixMatcher matcher) {
+    return myAvailableSuggestionIndex.getCandidates(id, matcher);
   }
 
   boolean hasAllData_TESTS_ONLY(@NotNull VirtualFile file) {
@@ -368,8 +351,9 @@ public class DartServerData {
     myOverrideData.clear();
     myImplementedClassData.clear();
     myImplementedMemberData.clear();
+    myStringTable = new DartPackedRegions.StringTable();
     myOutlineData.clear();
-    myAvailableSuggestionSetMap.clear();
+    myAvailableSuggestionIndex.clear();
   }
 
   void onDocumentChanged(@NotNull final DocumentEvent e) {
@@ -379,23 +363,29 @@ public class DartServerData {
     final String filePath = file.getPath();
     myFilePathsWithUnsentChanges.add(filePath);
 
-    boolean regionsUpdated = updateRegionsDeletingTouched(filePath, myErrorData.get(filePath), e);
+    boolean regionsUpdated = updateRegionsDeletingTouched(myErrorData.get(filePath), e);
     if (regionsUpdated) {
       myFilePathsWithInaccurateErrorInfo.add(filePath);
     }
-    updateRegionsUpdatingTouched(myHighlightData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myNavigationData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myOverrideData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myImplementedClassData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myImplementedMemberData.get(filePath), e);
+    updatePackedRegions(myHighlightData, filePath, e);
+    updatePackedRegions(myNavigationData, filePath, e);
+    updatePackedRegions(myOverrideData, filePath, e);
+    updatePackedRegions(myImplementedClassData, filePath, e);
+    updatePackedRegions(myImplementedMemberData, filePath, e);
     // A bit outdated outline data is not a big problem, updated data will come shortly
   }
 
+  private static <T extends DartRegion> void updatePackedRegions(@NotNull final Map<String, DartPackedRegions<T>> map,
+                                                                 @NotNull final String filePath,
+                                                                 @NotNull final DocumentEvent e) {
+    final int deltaLength = e.getNewLength() - e.getOldLength();
+    map.computeIfPresent(filePath, (path, regions) -> regions.updateForDocumentChange(e.getOffset(), deltaLength, path));
+  }
+
   /**
    * @return {@code true} if at least one region has been updated or deleted, {@code false} if nothing done at all
    */
-  private static boolean updateRegionsDeletingTouched(@NotNull final String filePath,
-                                                      @Nullable final List<? extends DartRegion> regions,
+  private static boolean updateRegionsDeletingTouched(@Nullable final List<? extends DartRegion> regions,
                                                       @NotNull final DocumentEvent e) {
     if (regions == null) return false;
 
@@ -409,15 +399,6 @@ public class DartServerData {
     while (iterator.hasNext()) {
       final DartRegion region = iterator.next();
 
-      if (region instanceof DartNavigationRegion) {
-        // may be we'd better delete target touched by editing?
-        for (DartNavigationTarget target : ((DartNavigationRegion)region).getTargets()) {
-          if (target.myFile.equals(filePath) && target.myConvertedOffset >= eventOffset) {
-            target.myConvertedOffset += deltaLength;
-          }
-        }
-      }
-
       if (deltaLength > 0) {
         // Something was typed. Shift untouched regions, delete touched.
         if (eventOffset <= region.myOffset) {
@@ -447,44 +428,6 @@ public class DartServerData {
     return regionUpdated;
   }
 
-  private static void updateRegionsUpdatingTouched(@Nullable final List<? extends DartRegion> regions,
-                                                   @NotNull final DocumentEvent e) {
-    if (regions == null) return;
-
-    final int eventOffset = e.getOffset();
-    final int deltaLength = e.getNewLength() - e.getOldLength();
-
-    final Iterator<? extends DartRegion> iterator = regions.iterator();
-    while (iterator.hasNext()) {
-      final DartRegion region = iterator.next();
-
-      if (deltaLength > 0) {
-        // Something was typed. Shift untouched regions, update touched.
-        if (eventOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (eventOffset < region.myOffset + region.myLength) {
-          region.myLength += deltaLength;
-        }
-      }
-      else if (deltaLength < 0) {
-        // Some text was deleted. Shift untouched regions, delete or update touched.
-        final int eventRightOffset = eventOffset - deltaLength;
-        final int regionRightOffset = region.myOffset + region.myLength;
-
-        if (eventRightOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset <= eventOffset && eventRightOffset <= regionRightOffset && region.myLength != -deltaLength) {
-          region.myLength += deltaLength;
-        }
-        else if (eventOffset < regionRightOffset) {
-          iterator.remove();
-        }
-      }
-    }
-  }
-
   public static class DartRegion {
     protected int myOffset;
     protected int myLength;
@@ -516,9 +459,9 @@ public class DartServerData {
   public static class DartHighlightRegion extends DartRegion {
     private final String type;
 
-    private DartHighlightRegion(final int offset, final int length, @NotNull final String type) {
+    DartHighlightRegion(final int offset, final int length, @NotNull final String type) {
       super(offset, length);
-      this.type = type.intern();
+      this.type = type;
     }
 
     public String getType() {
@@ -616,12 +559,25 @@ public class DartServerData {
     private final int myOriginalOffset;
     private final String myKind;
 
-    private int myConvertedOffset = -1;
+    // lazily converted offset is stored at myConvertedOffsets[myIndex], the array may be shared with DartPackedRegions
+    private final int[] myConvertedOffsets;
+    private final int myIndex;
 
     private DartNavigationTarget(@NotNull final NavigationTarget target) {
-      myFile = FileUtil.toSystemIndependentName(target.getFile().trim()).intern();
-      myOriginalOffset = target.getOffset();
-      myKind = target.getKind().intern();
+      this(FileUtil.toSystemIndependentName(target.getFile().trim()).intern(), target.getOffset(), target.getKind().intern(),
+           new int[]{-1}, 0);
+    }
+
+    DartNavigationTarget(@NotNull final String file,
+                         final int originalOffset,
+                         @NotNull final String kind,
+                         final int @NotNull [] convertedOffsets,
+                         final int index) {
+      myFile = file;
+      myOriginalOffset = originalOffset;
+      myKind = kind;
+      myConvertedOffsets = convertedOffsets;
+      myIndex = index;
     }
 
     public String getFile() {
@@ -629,10 +585,10 @@ public class DartServerData {
     }
 
     public int getOffset(@NotNull final Project project, @Nullable final VirtualFile file) {
-      if (myConvertedOffset == -1) {
-        myConvertedOffset = DartAnalysisServerService.getInstance(project).getConvertedOffset(file, myOriginalOffset);
+      if (myConvertedOffsets[myIndex] == -1) {
+        myConvertedOffsets[myIndex] = DartAnalysisServerService.getInstance(project).getConvertedOffset(file, myOriginalOffset);
       }
-      return myConvertedOffset;
+      return myConvertedOffsets[myIndex];
     }
 
     public String getKind() {
@@ -644,10 +600,10 @@ public class DartServerData {
     @Nullable private final OverriddenMember mySuperclassMember;
     @Nullable private final List<OverriddenMember> myInterfaceMembers;
 
-    private DartOverrideMember(final int offset,
-                               final int length,
-                               @Nullable final OverriddenMember superclassMember,
-                               @Nullable final List<OverriddenMember> interfaceMembers) {
+    DartOverrideMember(final int offset,
+                       final int length,
+                       @Nullable final OverriddenMember superclassMember,
+                       @Nullable final List<OverriddenMember> interfaceMembers) {
       super(offset, length);
       mySuperclassMember = superclassMember;
       myInterfaceMembers = interfaceMembers;
@@ -40,6 +40,8 @@ public class DartServerRootsHandler {
 
   private final List<String> myIncludedRoots = new SmartList<>();
   private final List<String> myExcludedRoots = new SmartList<>();
+  // pubspec roots, collected only if the sharded analysis is enabled, see DartShardedAnalysisServer
+  private final List<String> myPackageRoots = new SmartList<>();
 
   public DartServerRootsHandler(@NotNull final Project project) {
     myProject = project;
@@ -48,6 +50,7 @@ public class DartServerRootsHandler {
   void onServerStopped() {
     myIncludedRoots.clear();
     myExcludedRoots.clear();
+    myPackageRoots.clear();
   }
 
   void onServerStarted() {
@@ -72,9 +75,11 @@ public class DartServerRootsHandler {
 
     final List<String> newIncludedRoots = new SmartList<>();
     final List<String> newExcludedRoots = new SmartList<>();
+    final List<String> newPackageRoots = new SmartList<>();
 
     final boolean isPackageScopedAnalysis =
       DartProblemsView.getScopeAnalysisMode(myProject) == DartProblemsViewSettings.ScopedAnalysisMode.DartPackage;
+    final boolean collectPackageRoots = !isPackageScopedAnalysis && DartAnalysisServerService.getInstance(myProject).isShardedAnalysis();
 
     if (isPackageScopedAnalysis) {
       final VirtualFile currentFile = DartProblemsView.getInstance(myProject).getCurrentFile();
@@ -93,7 +98,18 @@ public class DartServerRootsHandler {
     }
 
     for (Module module : DartSdkLibUtil.getModulesWithDartSdkEnabled(myProject)) {
-      final Set<String> excludedPackageSymlinkUrls = getExcludedPackageSymlinkUrls(module);
+      final Collection<VirtualFile> pubspecYamlFiles =
+        FilenameIndex.getVirtualFilesByName(myProject, PUBSPEC_YAML, module.getModuleContentScope());
+      final Set<String> excludedPackageSymlinkUrls = getExcludedPackageSymlinkUrls(myProject, pubspecYamlFiles);
+
+      if (collectPackageRoots) {
+        for (VirtualFile pubspecYamlFile : pubspecYamlFiles) {
+          final String packageRoot = FileUtil.toSystemDependentName(pubspecYamlFile.getParent().getPath());
+          if (!newPackageRoots.contains(packageRoot)) {
+            newPackageRoots.add(packageRoot);
+          }
+        }
+      }
 
       for (ContentEntry contentEntry : ModuleRootManager.getInstance(module).getContentEntries()) {
         final String contentEntryUrl = contentEntry.getUrl();
@@ -110,13 +126,17 @@ public class DartServerRootsHandler {
       }
     }
 
-    if (!myIncludedRoots.equals(newIncludedRoots) || !myExcludedRoots.equals(newExcludedRoots)) {
+    if (!myIncludedRoots.equals(newIncludedRoots) ||
+        !myExcludedRoots.equals(newExcludedRoots) ||
+        !myPackageRoots.equals(newPackageRoots)) {
       myIncludedRoots.clear();
       myExcludedRoots.clear();
+      myPackageRoots.clear();
 
-      if (DartAnalysisServerService.getInstance(myProject).setAnalysisRoots(newIncludedRoots, newExcludedRoots)) {
+      if (DartAnalysisServerService.getInstance(myProject).setAnalysisRoots(newIncludedRoots, newExcludedRoots, newPackageRoots)) {
         myIncludedRoots.addAll(newIncludedRoots);
         myExcludedRoots.addAll(newExcludedRoots);
+        myPackageRoots.addAll(newPackageRoots);
       }
     }
   }
@@ -175,14 +195,12 @@ public class DartServerRootsHandler {
     return vFile.getParent().getPath();
   }
 
-  private static Set<String> getExcludedPackageSymlinkUrls(@NotNull final Module module) {
+  private static Set<String> getExcludedPackageSymlinkUrls(@NotNull final Project project,
+                                                          @NotNull final Collection<VirtualFile> pubspecYamlFiles) {
     final Set<String> result = new THashSet<>();
 
-    final Collection<VirtualFile> pubspecYamlFiles =
-      FilenameIndex.getVirtualFilesByName(module.getProject(), PUBSPEC_YAML, module.getModuleContentScope());
-
     for (VirtualFile pubspecYamlFile : pubspecYamlFiles) {
-      result.addAll(DartStartupActivity.getExcludedPackageSymlinkUrls(module.getProject(), pubspecYamlFile));
+      result.addAll(DartStartupActivity.getExcludedPackageSymlinkUrls(project, pubspecYamlFile));
     }
 
     return result;
@@ -0,0 +1,1026 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.google.dart.server.*;
+import com.google.dart.server.generated.AnalysisServer;
+import com.google.dart.server.internal.remote.RemoteAnalysisServerImpl;
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.OSProcessUtil;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.execution.util.ExecUtil;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.PathUtil;
+import org.dartlang.analysis.server.protocol.*;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Several Analysis Server processes (shards) behind the single {@link AnalysisServer} interface used by {@link DartAnalysisServerService}.
+ * Used instead of a single {@link RemoteAnalysisServerImpl} when {@code dart.server.shards} is more than 1, which helps in monorepos with
+ * many Dart packages, where one server process takes a lot of memory and analyzes everything sequentially.
+ * <p>
+ * Each shard owns a subset of the pubspec roots, see {@link #setAnalysisRoots(List, List, List)}. Shard 0 also owns the content roots
+ * themselves, that is all files that are not in a package owned by another shard. Requests about a file go to the shard that owns the
+ * file; the owner is the shard of the innermost package root that contains the file. File contents (overlays) and global settings are sent
+ * to all shards because a shard may analyze files of other shards as dependencies. Requests that are not about a file go to shard 0.
+ * <p>
+ * Notifications of all shards are passed to the same listeners, so {@link DartServerData} and the Dart Problems View see all files as if
+ * there was one server. Ids generated by the servers (completion, search and execution context ids, available suggestion set ids) are
+ * mapped so that ids of different shards don't clash, and the shard is known when such an id comes back in a request. The server status
+ * is merged: analysis is in progress while any shard is analyzing.
+ * <p>
+ * Search requests are answered by the owner shard only, so references from packages owned by other shards are not found. Searches that
+ * are not about a file ({@code search.findTopLevelDeclarations}, {@code search.findMemberDeclarations},
+ * {@code search.findMemberReferences} and {@code search.getElementDeclarations} without a file) go to shard 0 only, so they miss
+ * declarations and references in packages owned by other shards. The Dart plugin doesn't send these requests, Go to Class and Go to
+ * Symbol use IDE indexes.
+ */
+public final class DartShardedAnalysisServer implements AnalysisServer {
+  private static final Logger LOG = Logger.getInstance(DartShardedAnalysisServer.class.getName());
+
+  private static final char ID_SEPARATOR = ':';
+
+  public static final class ShardStatistics {
+    private final int myIndex;
+    private final int myPackageRootCount;
+    private final long myResidentMemoryBytes;
+
+    ShardStatistics(final int index, final int packageRootCount, final long residentMemoryBytes) {
+      myIndex = index;
+      myPackageRootCount = packageRootCount;
+      myResidentMemoryBytes = residentMemoryBytes;
+    }
+
+    public int getIndex() {
+      return myIndex;
+    }
+
+    /**
+     * Number of pubspec roots owned by the shard, shard 0 also owns the rest of the content roots.
+     * -1 if the sharded analysis is not enabled.
+     */
+    public int getPackageRootCount() {
+      return myPackageRootCount;
+    }
+
+    /**
+     * Resident memory of the server process, -1 if unknown.
+     */
+    public long getResidentMemoryBytes() {
+      return myResidentMemoryBytes;
+    }
+  }
+
+  @NotNull private final List<RemoteAnalysisServerImpl> myShards;
+
+  private final Object myLock = new Object();
+  // system-independent package root -> index of the shard that owns it
+  @NotNull private volatile Map<String, Integer> myRootToShard = Collections.emptyMap();
+  @NotNull private volatile List<List<String>> myShardRoots = Collections.emptyList();
+  // listener passed to addAnalysisServerListener() -> listeners added to the shards
+  private final Map<AnalysisServerListener, List<AnalysisServerListener>> myShardListeners = new HashMap<>();
+  // state of each shard, used to merge notifications
+  private final boolean[] myAnalyzing;
+  private final boolean[] myListingPackageDirs;
+  private final List<List<String>> myAnalyzedFiles;
+
+  DartShardedAnalysisServer(@NotNull final List<RemoteAnalysisServerImpl> shards) {
+    myShards = shards;
+    myAnalyzing = new boolean[shards.size()];
+    myListingPackageDirs = new boolean[shards.size()];
+    myAnalyzedFiles = new ArrayList<>(Collections.nCopies(shards.size(), Collections.emptyList()));
+  }
+
+  /**
+   * Request ids of different shards must differ because all shards share {@link DartAnalysisServerService#getServerMetrics()}.
+   */
+  @NotNull
+  static String getRequestIdPrefix(final int shardIndex) {
+    return shardIndex + "" + ID_SEPARATOR;
+  }
+
+  @NotNull
+  RemoteAnalysisServerImpl getPrimaryShard() {
+    return myShards.get(0);
+  }
+
+  @NotNull
+  List<RemoteAnalysisServerImpl> getShards() {
+    return myShards;
+  }
+
+  /**
+   * Pubspec roots owned by the shard as passed to {@link #setAnalysisRoots(List, List, List)}.
+   */
+  @NotNull
+  List<String> getShardRoots(final int shardIndex) {
+    final List<List<String>> shardRoots = myShardRoots;
+    return shardIndex < shardRoots.size() ? shardRoots.get(shardIndex) : Collections.emptyList();
+  }
+
+  int getShardIndex(@NotNull final String filePath) {
+    return findShardIndex(myRootToShard, filePath);
+  }
+
+  /**
+   * @param rootToShard system-independent package root -> shard index, see {@link #createRootToShardMap(List)}
+   * @return index of the shard that owns the innermost package root containing the file, 0 if there's no such root
+   */
+  static int findShardIndex(@NotNull final Map<String, Integer> rootToShard, @NotNull final String filePath) {
+    if (rootToShard.isEmpty()) return 0;
+
+    String path = FileUtil.toSystemIndependentName(filePath);
+    while (!path.isEmpty()) {
+      final Integer shard = rootToShard.get(path);
+      if (shard != null) return shard;
+      path = PathUtil.getParentPath(path);
+    }
+    return 0;
+  }
+
+  @NotNull
+  private RemoteAnalysisServerImpl getShard(@NotNull final String filePath) {
+    return myShards.get(getShardIndex(filePath));
+  }
+
+  /**
+   * Distributes package roots between shards by the hash of the path. A package stays in the same shard when other packages are added or
+   * removed, so only the affected shard reanalyzes. With many packages each shard gets about the same number of them.
+   */
+  @NotNull
+  static List<List<String>> assignPackageRoots(@NotNull final Collection<String> packageRoots, final int shardCount) {
+    final List<List<String>> result = new ArrayList<>(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      result.add(new ArrayList<>());
+    }
+    for (String root : packageRoots) {
+      result.get(Math.floorMod(FileUtil.toSystemIndependentName(root).hashCode(), shardCount)).add(root);
+    }
+    return result;
+  }
+
+  /**
+   * @param included     content roots, all system-dependent
+   * @param excluded     folders excluded from analysis
+   * @param packageRoots pubspec roots in the content roots, distributed between shards
+   */
+  void setAnalysisRoots(@NotNull final List<String> included,
+                        @NotNull final List<String> excluded,
+                        @NotNull final List<String> packageRoots) {
+    final List<List<String>> shardRoots = assignPackageRoots(packageRoots, myShards.size());
+    final Map<String, Integer> rootToShard = createRootToShardMap(shardRoots);
+
+    myShardRoots = shardRoots;
+    myRootToShard = rootToShard;
+
+    for (int i = 0; i < myShards.size(); i++) {
+      final List<String> shardIncluded = new ArrayList<>(i == 0 ? included : shardRoots.get(i));
+      final List<String> shardExcluded = new ArrayList<>(excluded);
+
+      // packages of other shards are excluded, but own packages nested in them are included explicitly
+      for (String root : packageRoots) {
+        if (rootToShard.get(FileUtil.toSystemIndependentName(root)) != i && isInAny(root, shardIncluded)) {
+          shardExcluded.add(root);
+        }
+      }
+      if (i == 0) {
+        for (String root : shardRoots.get(0)) {
+          if (isInAny(root, shardExcluded)) {
+            shardIncluded.add(root);
+          }
+        }
+      }
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("analysis_setAnalysisRoots, shard " + i + ", included:\n" + StringUtil.join(shardIncluded, ",\n") +
+                  "\nexcluded:\n" + StringUtil.join(shardExcluded, ",\n"));
+      }
+      myShards.get(i).analysis_setAnalysisRoots(shardIncluded, shardExcluded, null);
+    }
+  }
+
+  @NotNull
+  static Map<String, Integer> createRootToShardMap(@NotNull final List<List<String>> shardRoots) {
+    final Map<String, Integer> result = new HashMap<>();
+    for (int i = 0; i < shardRoots.size(); i++) {
+      for (String root : shardRoots.get(i)) {
+        result.put(FileUtil.toSystemIndependentName(root), i);
+      }
+    }
+    return result;
+  }
+
+  private static boolean isInAny(@NotNull final String path, @NotNull final List<String> roots) {
+    for (String root : roots) {
+      if (FileUtil.isAncestor(root, path, true)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Splits files between their owner shards. Each shard gets a list, possibly empty.
+   */
+  @NotNull
+  private List<List<String>> splitFiles(@NotNull final List<String> files) {
+    final List<List<String>> result = new ArrayList<>(myShards.size());
+    for (int i = 0; i < myShards.size(); i++) {
+      result.add(new ArrayList<>());
+    }
+    for (String file : files) {
+      result.get(getShardIndex(file)).add(file);
+    }
+    return result;
+  }
+
+  @NotNull
+  private List<Map<String, List<String>>> splitSubscriptions(@NotNull final Map<String, List<String>> subscriptions) {
+    final List<Map<String, List<String>>> result = new ArrayList<>(myShards.size());
+    for (int i = 0; i < myShards.size(); i++) {
+      result.add(new HashMap<>());
+    }
+    for (Map.Entry<String, List<String>> entry : subscriptions.entrySet()) {
+      final List<List<String>> files = splitFiles(entry.getValue());
+      for (int i = 0; i < myShards.size(); i++) {
+        result.get(i).put(entry.getKey(), files.get(i));
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  private static String toGlobalId(final int shardIndex, @NotNull final String id) {
+    return shardIndex + "" + ID_SEPARATOR + id;
+  }
+
+  private int getShardIndexById(@NotNull final String globalId) {
+    final int index = StringUtil.parseInt(StringUtil.substringBefore(globalId, String.valueOf(ID_SEPARATOR)), 0);
+    return index >= 0 && index < myShards.size() ? index : 0;
+  }
+
+  @NotNull
+  private static String toLocalId(@NotNull final String globalId) {
+    return globalId.substring(globalId.indexOf(ID_SEPARATOR) + 1);
+  }
+
+  private int toGlobalSuggestionSetId(final int shardIndex, final int id) {
+    return id * myShards.size() + shardIndex;
+  }
+
+  /**
+   * Merges notifications of all shards and maps ids generated by the shards.
+   */
+  private final class ShardListener implements AnalysisServerListener {
+    private final int myShardIndex;
+    @NotNull private final AnalysisServerListener myListener;
+
+    private ShardListener(final int shardIndex, @NotNull final AnalysisServerListener listener) {
+      myShardIndex = shardIndex;
+      myListener = listener;
+    }
+
+    @Override
+    public void computedAnalyzedFiles(List<String> directories) {
+      final List<String> allFiles = new ArrayList<>();
+      synchronized (myLock) {
+        myAnalyzedFiles.set(myShardIndex, directories);
+        for (List<String> files : myAnalyzedFiles) {
+          allFiles.addAll(files);
+        }
+      }
+      myListener.computedAnalyzedFiles(allFiles);
+    }
+
+    @Override
+    public void computedAvailableSuggestions(@NotNull List<AvailableSuggestionSet> changed, int @NotNull [] removed) {
+      final List<AvailableSuggestionSet> globalChanged = new ArrayList<>(changed.size());
+      for (AvailableSuggestionSet set : changed) {
+        globalChanged.add(new AvailableSuggestionSet(toGlobalSuggestionSetId(myShardIndex, set.getId()), set.getUri(), set.getItems()));
+      }
+      final int[] globalRemoved = new int[removed.length];
+      for (int i = 0; i < removed.length; i++) {
+        globalRemoved[i] = toGlobalSuggestionSetId(myShardIndex, removed[i]);
+      }
+      myListener.computedAvailableSuggestions(globalChanged, globalRemoved);
+    }
+
+    @Override
+    public void computedCompletion(String completionId,
+                                   int replacementOffset,
+                                   int replacementLength,
+                                   List<CompletionSuggestion> completions,
+                                   List<IncludedSuggestionSet> includedSuggestionSets,
+                                   List<String> includedElementKinds,
+                                   List<IncludedSuggestionRelevanceTag> includedSuggestionRelevanceTags,
+                                   boolean isLast,
+                                   @Nullable String libraryFile) {
+      List<IncludedSuggestionSet> globalSets = includedSuggestionSets;
+      if (includedSuggestionSets != null) {
+        globalSets = new ArrayList<>(includedSuggestionSets.size());
+        for (IncludedSuggestionSet set : includedSuggestionSets) {
+          globalSets.add(new IncludedSuggestionSet(toGlobalSuggestionSetId(myShardIndex, set.getId()), set.getRelevance(),
+                                                   set.getDisplayUri()));
+        }
+      }
+      myListener.computedCompletion(toGlobalId(myShardIndex, completionId), replacementOffset, replacementLength, completions, globalSets,
+                                    includedElementKinds, includedSuggestionRelevanceTags, isLast, libraryFile);
+    }
+
+    @Override
+    public void computedErrors(String file, List<AnalysisError> errors) {
+      myListener.computedErrors(file, errors);
+    }
+
+    @Override
+    public void computedHighlights(String file, List<HighlightRegion> highlights) {
+      myListener.computedHighlights(file, highlights);
+    }
+
+    @Override
+    public void computedImplemented(String file, List<ImplementedClass> implementedClasses, List<ImplementedMember> implementedMembers) {
+      myListener.computedImplemented(file, implementedClasses, implementedMembers);
+    }
+
+    @Override
+    public void computedLaunchData(String file, String kind, String[] referencedFiles) {
+      myListener.computedLaunchData(file, kind, referencedFiles);
+    }
+
+    @Override
+    public void computedNavigation(String file, List<NavigationRegion> targets) {
+      myListener.computedNavigation(file, targets);
+    }
+
+    @Override
+    public void computedOccurrences(String file, List<Occurrences> occurrencesArray) {
+      myListener.computedOccurrences(file, occurrencesArray);
+    }
+
+    @Override
+    public void computedOutline(String file, Outline outline) {
+      myListener.computedOutline(file, outline);
+    }
+
+    @Override
+    public void computedOverrides(String file, List<OverrideMember> overrides) {
+      myListener.computedOverrides(file, overrides);
+    }
+
+    @Override
+    public void computedClosingLabels(String file, List<ClosingLabel> labels) {
+      myListener.computedClosingLabels(file, labels);
+    }
+
+    @Override
+    public void computedSearchResults(String searchId, List<SearchResult> results, boolean last) {
+      myListener.computedSearchResults(toGlobalId(myShardIndex, searchId), results, last);
+    }
+
+    @Override
+    public void flushedResults(List<String> files) {
+      myListener.flushedResults(files);
+    }
+
+    @Override
+    public void requestError(RequestError requestError) {
+      myListener.requestError(requestError);
+    }
+
+    @Override
+    public void serverConnected(String version) {
+      if (myShardIndex == 0) {
+        myListener.serverConnected(version);
+      }
+    }
+
+    @Override
+    public void serverError(boolean isFatal, String message, String stackTrace) {
+      myListener.serverError(isFatal, message, stackTrace);
+    }
+
+    @Override
+    public void serverIncompatibleVersion(String version) {
+      if (myShardIndex == 0) {
+        myListener.serverIncompatibleVersion(version);
+      }
+    }
+
+    @Override
+    public void serverStatus(AnalysisStatus analysisStatus, PubStatus pubStatus) {
+      AnalysisStatus mergedAnalysisStatus = null;
+      PubStatus mergedPubStatus = null;
+      synchronized (myLock) {
+        if (analysisStatus != null) {
+          myAnalyzing[myShardIndex] = analysisStatus.isAnalyzing();
+          mergedAnalysisStatus = new AnalysisStatus(isAnyTrue(myAnalyzing), analysisStatus.getAnalysisTarget());
+        }
+        if (pubStatus != null) {
+          myListingPackageDirs[myShardIndex] = pubStatus.isListingPackageDirs();
+          mergedPubStatus = new PubStatus(isAnyTrue(myListingPackageDirs));
+        }
+      }
+      myListener.serverStatus(mergedAnalysisStatus, mergedPubStatus);
+    }
+
+    @Override
+    public void computedExistingImports(String file, Map<String, Map<String, Set<String>>> existingImports) {
+      myListener.computedExistingImports(file, existingImports);
+    }
+  }
+
+  private static boolean isAnyTrue(final boolean @NotNull [] values) {
+    for (boolean value : values) {
+      if (value) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Resident memory of the server process in bytes, -1 if unknown. Supported on Linux and macOS; on macOS a {@code ps} process is started,
+   * so this should be called only on user request, not on the EDT.
+   */
+  static long getResidentMemoryBytes(@Nullable final Process process) {
+    if (process == null) return -1;
+
+    final int pid;
+    try {
+      pid = OSProcessUtil.getProcessID(process);
+    }
+    catch (IllegalStateException e) {
+      return -1;
+    }
+
+    try {
+      if (SystemInfo.isLinux) {
+        // VmRSS:	  123456 kB
+        for (String line : Files.readAllLines(new File("/proc/" + pid + "/status").toPath(), StandardCharsets.UTF_8)) {
+          if (line.startsWith("VmRSS:")) {
+            return parseKilobytes(StringUtil.trimEnd(line.substring("VmRSS:".length()).trim(), "kB"));
+          }
+        }
+      }
+      else if (SystemInfo.isMac) {
+        final ProcessOutput output = ExecUtil.execAndGetOutput(new GeneralCommandLine("ps", "-o", "rss=", "-p", String.valueOf(pid)));
+        if (output.getExitCode() == 0) {
+          return parseKilobytes(output.getStdout());
+        }
+      }
+    }
+    catch (IOException | ExecutionException e) {
+      LOG.debug("Failed to get memory of process " + pid, e);
+    }
+    return -1;
+  }
+
+  private static long parseKilobytes(@NonNls @NotNull final String kilobytes) {
+    try {
+      return Long.parseLong(kilobytes.trim()) * 1024;
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  // listeners
+
+  @Override
+  public void addAnalysisServerListener(AnalysisServerListener listener) {
+    final List<AnalysisServerListener> shardListeners = new ArrayList<>(myShards.size());
+    for (int i = 0; i < myShards.size(); i++) {
+      shardListeners.add(new ShardListener(i, listener));
+    }
+    synchronized (myLock) {
+      if (myShardListeners.putIfAbsent(listener, shardListeners) != null) return;
+    }
+    for (int i = 0; i < myShards.size(); i++) {
+      myShards.get(i).addAnalysisServerListener(shardListeners.get(i));
+    }
+  }
+
+  @Override
+  public void removeAnalysisServerListener(AnalysisServerListener listener) {
+    final List<AnalysisServerListener> shardListeners;
+    synchronized (myLock) {
+      shardListeners = myShardListeners.remove(listener);
+    }
+    if (shardListeners == null) return;
+
+    for (int i = 0; i < myShards.size(); i++) {
+      myShards.get(i).removeAnalysisServerListener(shardListeners.get(i));
+    }
+  }
+
+  @Override
+  public void addRequestListener(RequestListener listener) {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.addRequestListener(listener);
+    }
+  }
+
+  @Override
+  public void removeRequestListener(RequestListener listener) {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.removeRequestListener(listener);
+    }
+  }
+
+  @Override
+  public void addResponseListener(ResponseListener listener) {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.addResponseListener(listener);
+    }
+  }
+
+  @Override
+  public void removeResponseListener(ResponseListener listener) {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.removeResponseListener(listener);
+    }
+  }
+
+  @Override
+  public void addStatusListener(AnalysisServerStatusListener listener) {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.addStatusListener(listener);
+    }
+  }
+
+  // requests sent to all shards
+
+  @Override
+  public void start() throws Exception {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.start();
+    }
+  }
+
+  @Override
+  public boolean isSocketOpen() {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      if (!shard.isSocketOpen()) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public void server_shutdown() {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.server_shutdown();
+    }
+  }
+
+  @Override
+  public void server_setSubscriptions(List<String> subscriptions) {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.server_setSubscriptions(subscriptions);
+    }
+  }
+
+  @Override
+  public void analysis_reanalyze() {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.analysis_reanalyze();
+    }
+  }
+
+  @Override
+  public void analysis_setAnalysisRoots(List<String> included, List<String> excluded, Map<String, String> packageRoots) {
+    setAnalysisRoots(included, excluded, Collections.emptyList());
+  }
+
+  @Override
+  public void analysis_setGeneralSubscriptions(List<String> subscriptions) {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.analysis_setGeneralSubscriptions(subscriptions);
+    }
+  }
+
+  @Override
+  public void analysis_updateOptions(AnalysisOptions options) {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.analysis_updateOptions(options);
+    }
+  }
+
+  /**
+   * A file owned by one shard may be a dependency of packages owned by other shards, so all shards get all overlays. The consumer is
+   * notified when all shards have responded.
+   */
+  @Override
+  public void analysis_updateContent(Map<String, Object> files, UpdateContentConsumer consumer) {
+    final AtomicInteger remainingResponses = new AtomicInteger(myShards.size());
+    final RequestError[] firstError = new RequestError[1];
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.analysis_updateContent(files, new UpdateContentConsumer() {
+        @Override
+        public void onResponse() {
+          onShardResponse(null);
+        }
+
+        @Override
+        public void onError(RequestError requestError) {
+          onShardResponse(requestError);
+        }
+
+        private void onShardResponse(@Nullable final RequestError error) {
+          synchronized (firstError) {
+            if (firstError[0] == null) firstError[0] = error;
+          }
+          if (remainingResponses.decrementAndGet() == 0 && consumer != null) {
+            if (firstError[0] == null) {
+              consumer.onResponse();
+            }
+            else {
+              consumer.onError(firstError[0]);
+            }
+          }
+        }
+      });
+    }
+  }
+
+  @Override
+  public void analytics_enable(boolean value) {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.analytics_enable(value);
+    }
+  }
+
+  @Override
+  public void completion_setSubscriptions(List<String> subscriptions) {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.completion_setSubscriptions(subscriptions);
+    }
+  }
+
+  @Override
+  public void execution_setSubscriptions(List<String> subscriptions) {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.execution_setSubscriptions(subscriptions);
+    }
+  }
+
+  /**
+   * Each shard has its own diagnostics page, so the consumer gets a port for each shard.
+   */
+  @Override
+  public void diagnostic_getServerPort(GetServerPortConsumer consumer) {
+    for (RemoteAnalysisServerImpl shard : myShards) {
+      shard.diagnostic_getServerPort(consumer);
+    }
+  }
+
+  // requests split between shards
+
+  @Override
+  public void analysis_setPriorityFiles(List<String> files) {
+    final List<List<String>> shardFiles = splitFiles(files);
+    for (int i = 0; i < myShards.size(); i++) {
+      myShards.get(i).analysis_setPriorityFiles(shardFiles.get(i));
+    }
+  }
+
+  @Override
+  public void analysis_setSubscriptions(Map<String, List<String>> subscriptions) {
+    final List<Map<String, List<String>>> shardSubscriptions = splitSubscriptions(subscriptions);
+    for (int i = 0; i < myShards.size(); i++) {
+      myShards.get(i).analysis_setSubscriptions(shardSubscriptions.get(i));
+    }
+  }
+
+  @Override
+  public void flutter_setSubscriptions(Map<String, List<String>> subscriptions) {
+    final List<Map<String, List<String>>> shardSubscriptions = splitSubscriptions(subscriptions);
+    for (int i = 0; i < myShards.size(); i++) {
+      myShards.get(i).flutter_setSubscriptions(shardSubscriptions.get(i));
+    }
+  }
+
+  @Override
+  public void completion_registerLibraryPaths(List<LibraryPathSet> paths) {
+    final List<List<LibraryPathSet>> shardPaths = new ArrayList<>(myShards.size());
+    for (int i = 0; i < myShards.size(); i++) {
+      shardPaths.add(new ArrayList<>());
+    }
+    for (LibraryPathSet path : paths) {
+      shardPaths.get(getShardIndex(path.getScope())).add(path);
+    }
+    for (int i = 0; i < myShards.size(); i++) {
+      myShards.get(i).completion_registerLibraryPaths(shardPaths.get(i));
+    }
+  }
+
+  // requests sent to the shard that owns the file
+
+  @Override
+  public void analysis_getErrors(String file, GetErrorsConsumer consumer) {
+    getShard(file).analysis_getErrors(file, consumer);
+  }
+
+  @Override
+  public void analysis_getHover(String file, int offset, GetHoverConsumer consumer) {
+    getShard(file).analysis_getHover(file, offset, consumer);
+  }
+
+  @Override
+  public void analysis_getImportedElements(String file, int offset, int length, GetImportedElementsConsumer consumer) {
+    getShard(file).analysis_getImportedElements(file, offset, length, consumer);
+  }
+
+  @Override
+  public void analysis_getNavigation(String file, int offset, int length, GetNavigationConsumer consumer) {
+    getShard(file).analysis_getNavigation(file, offset, length, consumer);
+  }
+
+  @Override
+  public void analysis_getReachableSources(String file, GetReachableSourcesConsumer consumer) {
+    getShard(file).analysis_getReachableSources(file, consumer);
+  }
+
+  @Override
+  public void analysis_getSignature(String file, int offset, GetSignatureConsumer consumer) {
+    getShard(file).analysis_getSignature(file, offset, consumer);
+  }
+
+  @Override
+  public void completion_getSuggestions(String file, int offset, GetSuggestionsConsumer consumer) {
+    final int shardIndex = getShardIndex(file);
+    myShards.get(shardIndex).completion_getSuggestions(file, offset, new GetSuggestionsConsumer() {
+      @Override
+      public void computedCompletionId(String completionId) {
+        consumer.computedCompletionId(toGlobalId(shardIndex, completionId));
+      }
+
+      @Override
+      public void onError(RequestError requestError) {
+        consumer.onError(requestError);
+      }
+    });
+  }
+
+  /**
+   * {@code id} is an available suggestion set id, it identifies the shard that sent the set.
+   */
+  @Override
+  public void completion_getSuggestionDetails(String file, int id, String label, int offset, GetSuggestionDetailsConsumer consumer) {
+    myShards.get(id % myShards.size()).completion_getSuggestionDetails(file, id / myShards.size(), label, offset, consumer);
+  }
+
+  @Override
+  public void completion_listTokenDetails(String file, ListTokenDetailsConsumer consumer) {
+    getShard(file).completion_listTokenDetails(file, consumer);
+  }
+
+  /**
+   * All files are processed by the shard that owns the first one.
+   */
+  @Override
+  public void edit_dartfix(List<String> included,
+                           List<String> includedFixes,
+                           boolean includePedanticFixes,
+                           boolean includeRequiredFixes,
+                           List<String> excludedFixes,
+                           String outputDir,
+                           DartfixConsumer consumer) {
+    final RemoteAnalysisServerImpl shard = included.isEmpty() ? getPrimaryShard() : getShard(included.get(0));
+    shard.edit_dartfix(included, includedFixes, includePedanticFixes, includeRequiredFixes, excludedFixes, outputDir, consumer);
+  }
+
+  @Override
+  public void edit_format(String file, int selectionOffset, int selectionLength, int lineLength, FormatConsumer consumer) {
+    getShard(file).edit_format(file, selectionOffset, selectionLength, lineLength, consumer);
+  }
+
+  @Override
+  public void edit_getAssists(String file, int offset, int length, GetAssistsConsumer consumer) {
+    getShard(file).edit_getAssists(file, offset, length, consumer);
+  }
+
+  @Override
+  public void edit_getAvailableRefactorings(String file, int offset, int length, GetAvailableRefactoringsConsumer consumer) {
+    getShard(file).edit_getAvailableRefactorings(file, offset, length, consumer);
+  }
+
+  @Override
+  public void edit_getFixes(String file, int offset, GetFixesConsumer consumer) {
+    getShard(file).edit_getFixes(file, offset, consumer);
+  }
+
+  @Override
+  public void edit_getPostfixCompletion(String file, String key, int offset, GetPostfixCompletionConsumer consumer) {
+    getShard(file).edit_getPostfixCompletion(file, key, offset, consumer);
+  }
+
+  @Override
+  public void edit_getRefactoring(String kind,
+                                  String file,
+                                  int offset,
+                                  int length,
+                                  boolean validateOnly,
+                                  RefactoringOptions options,
+                                  GetRefactoringConsumer consumer) {
+    getShard(file).edit_getRefactoring(kind, file, offset, length, validateOnly, options, consumer);
+  }
+
+  @Override
+  public void edit_getStatementCompletion(String file, int offset, GetStatementCompletionConsumer consumer) {
+    getShard(file).edit_getStatementCompletion(file, offset, consumer);
+  }
+
+  @Override
+  public void edit_importElements(String file, List<ImportedElements> elements, int offset, ImportElementsConsumer consumer) {
+    getShard(file).edit_importElements(file, elements, offset, consumer);
+  }
+
+  @Override
+  public void edit_isPostfixCompletionApplicable(String file, String key, int offset, IsPostfixCompletionApplicableConsumer consumer) {
+    getShard(file).edit_isPostfixCompletionApplicable(file, key, offset, consumer);
+  }
+
+  @Override
+  public void edit_organizeDirectives(String file, OrganizeDirectivesConsumer consumer) {
+    getShard(file).edit_organizeDirectives(file, consumer);
+  }
+
+  @Override
+  public void edit_sortMembers(String file, SortMembersConsumer consumer) {
+    getShard(file).edit_sortMembers(file, consumer);
+  }
+
+  @Override
+  public void execution_createContext(String contextRoot, CreateContextConsumer consumer) {
+    final int shardIndex = getShardIndex(contextRoot);
+    myShards.get(shardIndex).execution_createContext(contextRoot, new CreateContextConsumer() {
+      @Override
+      public void computedExecutionContext(String contextId) {
+        consumer.computedExecutionContext(toGlobalId(shardIndex, contextId));
+      }
+
+      @Override
+      public void onError(RequestError requestError) {
+        consumer.onError(requestError);
+      }
+    });
+  }
+
+  @Override
+  public void execution_deleteContext(String id) {
+    myShards.get(getShardIndexById(id)).execution_deleteContext(toLocalId(id));
+  }
+
+  @Override
+  public void execution_getSuggestions(String code,
+                                       int offset,
+                                       String contextFile,
+                                       int contextOffset,
+                                       List<RuntimeCompletionVariable> variables,
+                                       List<RuntimeCompletionExpression> expressions,
+                                       GetRuntimeCompletionConsumer consumer) {
+    getShard(contextFile).execution_getSuggestions(code, offset, contextFile, contextOffset, variables, expressions, consumer);
+  }
+
+  @Override
+  public void execution_mapUri(String id, String file, String uri, MapUriConsumer consumer) {
+    myShards.get(getShardIndexById(id)).execution_mapUri(toLocalId(id), file, uri, consumer);
+  }
+
+  @Override
+  public void flutter_getWidgetDescription(String file, int offset, GetWidgetDescriptionConsumer consumer) {
+    getShard(file).flutter_getWidgetDescription(file, offset, consumer);
+  }
+
+  @Override
+  public void kythe_getKytheEntries(String file, GetKytheEntriesConsumer consumer) {
+    getShard(file).kythe_getKytheEntries(file, consumer);
+  }
+
+  @Override
+  public void search_findElementReferences(String file, int offset, boolean includePotential, FindElementReferencesConsumer consumer) {
+    final int shardIndex = getShardIndex(file);
+    myShards.get(shardIndex).search_findElementReferences(file, offset, includePotential, new FindElementReferencesConsumer() {
+      @Override
+      public void computedElementReferences(String searchId, Element element) {
+        consumer.computedElementReferences(searchId == null ? null : toGlobalId(shardIndex, searchId), element);
+      }
+
+      @Override
+      public void onError(RequestError requestError) {
+        consumer.onError(requestError);
+      }
+    });
+  }
+
+  // without a file only shard 0 is searched, see the class comment
+  @Override
+  public void search_getElementDeclarations(String file, String pattern, int maxResults, GetElementDeclarationsConsumer consumer) {
+    (file == null ? getPrimaryShard() : getShard(file)).search_getElementDeclarations(file, pattern, maxResults, consumer);
+  }
+
+  @Override
+  public void search_getTypeHierarchy(String file, int offset, boolean superOnly, GetTypeHierarchyConsumer consumer) {
+    getShard(file).search_getTypeHierarchy(file, offset, superOnly, consumer);
+  }
+
+  // requests sent to shard 0; the searches among them don't see packages owned by other shards
+
+  @Override
+  public void analysis_getLibraryDependencies(GetLibraryDependenciesConsumer consumer) {
+    getPrimaryShard().analysis_getLibraryDependencies(consumer);
+  }
+
+  @Override
+  public void analytics_isEnabled(IsEnabledConsumer consumer) {
+    getPrimaryShard().analytics_isEnabled(consumer);
+  }
+
+  @Override
+  public void analytics_sendEvent(String action) {
+    getPrimaryShard().analytics_sendEvent(action);
+  }
+
+  @Override
+  public void analytics_sendTiming(String event, int millis) {
+    getPrimaryShard().analytics_sendTiming(event, millis);
+  }
+
+  @Override
+  public void diagnostic_getDiagnostics(GetDiagnosticsConsumer consumer) {
+    getPrimaryShard().diagnostic_getDiagnostics(consumer);
+  }
+
+  @Override
+  public void edit_getDartfixInfo(GetDartfixInfoConsumer consumer) {
+    getPrimaryShard().edit_getDartfixInfo(consumer);
+  }
+
+  @Override
+  public void edit_listPostfixCompletionTemplates(ListPostfixCompletionTemplatesConsumer consumer) {
+    getPrimaryShard().edit_listPostfixCompletionTemplates(consumer);
+  }
+
+  @Override
+  public void flutter_setWidgetPropertyValue(int id, FlutterWidgetPropertyValue value, SetWidgetPropertyValueConsumer consumer) {
+    getPrimaryShard().flutter_setWidgetPropertyValue(id, value, consumer);
+  }
+
+  @Override
+  public void search_findMemberDeclarations(String name, FindMemberDeclarationsConsumer consumer) {
+    getPrimaryShard().search_findMemberDeclarations(name, new FindMemberDeclarationsConsumer() {
+      @Override
+      public void computedSearchId(String searchId) {
+        consumer.computedSearchId(toGlobalId(0, searchId));
+      }
+
+      @Override
+      public void onError(RequestError requestError) {
+        consumer.onError(requestError);
+      }
+    });
+  }
+
+  @Override
+  public void search_findMemberReferences(String name, FindMemberReferencesConsumer consumer) {
+    getPrimaryShard().search_findMemberReferences(name, new FindMemberReferencesConsumer() {
+      @Override
+      public void computedSearchId(String searchId) {
+        consumer.computedSearchId(toGlobalId(0, searchId));
+      }
+
+      @Override
+      public void onError(RequestError requestError) {
+        consumer.onError(requestError);
+      }
+    });
+  }
+
+  @Override
+  public void search_findTopLevelDeclarations(String pattern, FindTopLevelDeclarationsConsumer consumer) {
+    getPrimaryShard().search_findTopLevelDeclarations(pattern, new FindTopLevelDeclarationsConsumer() {
+      @Override
+      public void computedSearchId(String searchId) {
+        consumer.computedSearchId(toGlobalId(0, searchId));
+      }
+
+      @Override
+      public void onError(RequestError requestError) {
+        consumer.onError(requestError);
+      }
+    });
+  }
+
+  @Override
+  public void server_getVersion(GetVersionConsumer consumer) {
+    getPrimaryShard().server_getVersion(consumer);
+  }
+}
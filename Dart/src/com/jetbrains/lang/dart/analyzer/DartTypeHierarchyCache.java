@@ -0,0 +1,180 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.util.Consumer;
+import org.dartlang.analysis.server.protocol.Element;
+import org.dartlang.analysis.server.protocol.Location;
+import org.dartlang.analysis.server.protocol.TypeHierarchyItem;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Results of {@code search.getTypeHierarchy} requests, shared by line markers, inheritors search, hierarchy browsers and other users of
+ * {@link DartAnalysisServerService#search_getTypeHierarchy(com.intellij.openapi.vfs.VirtualFile, int, boolean)}.
+ * <p>
+ * Results are keyed by the location of the element the hierarchy was requested for (file path and server offset of the class or member
+ * name). A request for a location that is already being computed doesn't go to the server again, it waits for the same response.
+ * <p>
+ * Results are invalidated per file: when the server reports new analysis results for a file or flushes them, and when file contents change,
+ * the results requested for elements of this file and the results that contain elements of this file are forgotten, and responses to
+ * requests in flight for elements of this file are not cached. So hierarchies prefetched for one file survive typing in another one. A
+ * class added in another file doesn't invalidate the hierarchy of its superclass, it shows up after the file of the superclass is
+ * reanalyzed or the server restarts.
+ */
+final class DartTypeHierarchyCache {
+
+  interface RequestSender {
+    /**
+     * Sends a {@code search.getTypeHierarchy} request. {@code consumer} must be called once, with {@code null} if the request failed.
+     *
+     * @return {@code false} if the request wasn't sent because the server is not running
+     */
+    boolean sendRequest(@NotNull Key key, @NotNull Consumer<? super List<TypeHierarchyItem>> consumer);
+  }
+
+  static final class Key {
+    @NotNull private final String myFilePath;
+    private final int myOffset;
+    private final boolean mySuperOnly;
+
+    /**
+     * @param filePath system-dependent path as sent to the server
+     * @param offset   original (server) offset
+     */
+    Key(@NotNull final String filePath, final int offset, final boolean superOnly) {
+      myFilePath = filePath;
+      myOffset = offset;
+      mySuperOnly = superOnly;
+    }
+
+    @NotNull
+    String getFilePath() {
+      return myFilePath;
+    }
+
+    int getOffset() {
+      return myOffset;
+    }
+
+    boolean isSuperOnly() {
+      return mySuperOnly;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      final Key key = (Key)o;
+      return myOffset == key.myOffset && mySuperOnly == key.mySuperOnly && myFilePath.equals(key.myFilePath);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * myFilePath.hashCode() + myOffset) + (mySuperOnly ? 1 : 0);
+    }
+  }
+
+  private final Object myLock = new Object();
+  // access-ordered, the least recently used entry is removed when the cache is full
+  private final Map<Key, List<TypeHierarchyItem>> myCache;
+  // a response is cached only if its request is still here, invalidation removes requests for elements of invalidated files
+  private final Map<Key, CompletableFuture<List<TypeHierarchyItem>>> myInFlightRequests = new HashMap<>();
+
+  DartTypeHierarchyCache(final int maxSize) {
+    myCache = new LinkedHashMap<Key, List<TypeHierarchyItem>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, List<TypeHierarchyItem>> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns cached items for the key if there are any.
+   */
+  @Nullable
+  List<TypeHierarchyItem> getCached(@NotNull final Key key) {
+    synchronized (myLock) {
+      return myCache.get(key);
+    }
+  }
+
+  /**
+   * Returns a future that is completed with the cached items, with the items from a request already in flight for the same key, or with
+   * the items from a new request sent by {@code sender}. The future is completed with an empty list if the request fails.
+   *
+   * @return {@code null} if a new request was needed but the server is not running
+   */
+  @Nullable
+  CompletableFuture<List<TypeHierarchyItem>> getOrRequest(@NotNull final Key key, @NotNull final RequestSender sender) {
+    final CompletableFuture<List<TypeHierarchyItem>> future;
+    synchronized (myLock) {
+      final List<TypeHierarchyItem> cached = myCache.get(key);
+      if (cached != null) return CompletableFuture.completedFuture(cached);
+
+      final CompletableFuture<List<TypeHierarchyItem>> inFlight = myInFlightRequests.get(key);
+      if (inFlight != null) return inFlight;
+
+      future = new CompletableFuture<>();
+      myInFlightRequests.put(key, future);
+    }
+
+    final boolean sent = sender.sendRequest(key, items -> {
+      final List<TypeHierarchyItem> result = items != null ? Collections.unmodifiableList(items) : Collections.emptyList();
+      synchronized (myLock) {
+        if (myInFlightRequests.remove(key, future) && items != null) {
+          myCache.put(key, result);
+        }
+      }
+      future.complete(result);
+    });
+
+    if (!sent) {
+      synchronized (myLock) {
+        myInFlightRequests.remove(key, future);
+      }
+      future.complete(Collections.emptyList());
+      return null;
+    }
+
+    return future;
+  }
+
+  /**
+   * Forgets cached results. Requests that are in flight still complete their futures, but new requests for the same keys are sent again.
+   */
+  void invalidate() {
+    synchronized (myLock) {
+      myCache.clear();
+      myInFlightRequests.clear();
+    }
+  }
+
+  /**
+   * Forgets cached results for elements of the file and cached results that contain elements of the file. Requests for elements of the
+   * file that are in flight still complete their futures, but new requests for the same keys are sent again.
+   *
+   * @param filePath system-dependent path as sent to the server
+   */
+  void invalidate(@NotNull final String filePath) {
+    synchronized (myLock) {
+      myCache.entrySet().removeIf(entry -> entry.getKey().getFilePath().equals(filePath) || containsElementOf(entry.getValue(), filePath));
+      myInFlightRequests.keySet().removeIf(key -> key.getFilePath().equals(filePath));
+    }
+  }
+
+  private static boolean containsElementOf(@NotNull final List<TypeHierarchyItem> items, @NotNull final String filePath) {
+    for (TypeHierarchyItem item : items) {
+      if (isInFile(item.getClassElement(), filePath) || isInFile(item.getMemberElement(), filePath)) return true;
+    }
+    return false;
+  }
+
+  private static boolean isInFile(@Nullable final Element element, @NotNull final String filePath) {
+    final Location location = element != null ? element.getLocation() : null;
+    return location != null && filePath.equals(location.getFile());
+  }
+}
@@ -0,0 +1,252 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.actions;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ex.ApplicationManagerEx;
+import com.intellij.openapi.command.CommandProcessor;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Consumer;
+import com.jetbrains.lang.dart.DartBundle;
+import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs an Analysis Server edit request, like {@code edit.format} or {@code edit.sortMembers}, over many files under a modal progress.
+ * <p>
+ * Instead of waiting for the response for a file before sending the request for the next one, the pipeline keeps up to
+ * {@code dart.file.processing.requests.in.flight} requests in flight, so the server always has work queued and the time spent on the
+ * round trips overlaps. Received results are applied to documents in batches of {@code dart.file.processing.batch.size} files, each
+ * batch in one write action, while the next requests are being processed by the server. All batches have the same command group, so
+ * they are undone as a single command. Throughput is logged and recorded in {@link DartAnalysisServerService#getServerMetrics()}.
+ */
+final class DartFileProcessingPipeline<T> {
+  private static final Logger LOG = Logger.getInstance(DartFileProcessingPipeline.class.getName());
+
+  private static final long CHECK_CANCELED_PERIOD = 10;
+
+  interface RequestSender<T> {
+    /**
+     * Sends a request for the file without waiting for the response. {@code resultConsumer} must be called exactly once, with
+     * {@code null} if the server couldn't process the file, on any thread.
+     *
+     * @return {@code false} if the request wasn't sent because the server is not running
+     */
+    boolean sendRequest(@NotNull DartAnalysisServerService das, @NotNull VirtualFile file, @NotNull Consumer<? super T> resultConsumer);
+  }
+
+  interface ResultApplier<T> {
+    /**
+     * Called in a write action within a command.
+     *
+     * @return {@code true} if the document has been changed
+     */
+    boolean applyResult(@NotNull VirtualFile file, @NotNull Document document, @NotNull T result);
+  }
+
+  private static final class Result<T> {
+    @NotNull private final VirtualFile myFile;
+    @NotNull private final T myResult;
+
+    private Result(@NotNull final VirtualFile file, @NotNull final T result) {
+      myFile = file;
+      myResult = result;
+    }
+  }
+
+  @NotNull private final Project myProject;
+  @NotNull private final String myCommandName;
+  @NonNls @NotNull private final String myProtocolMethodName;
+  private final long myTimeoutMillis;
+  @NotNull private final RequestSender<T> myRequestSender;
+  @NotNull private final ResultApplier<T> myResultApplier;
+  private final int myRequestsInFlight;
+  private final int myBatchSize;
+
+  // file -> time when the request was sent; a response for a file that is not here any more has timed out or was canceled
+  private final Map<VirtualFile, Long> myPendingRequests = new ConcurrentHashMap<>();
+  private final ConcurrentLinkedQueue<Result<T>> myResults = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger myCompletedCount = new AtomicInteger();
+  private final Object myCommandGroupId = new Object();
+  @NotNull private final Semaphore myPermits;
+  private int myChangedCount;
+  private int myTimedOutCount;
+
+  /**
+   * @param protocolMethodName e.g. {@code edit.format}, used in the log and in the server metrics
+   * @param timeoutMillis      timeout of a single request if it were the only one; as the server handles requests one by one, a request
+   *                           in the pipeline may wait for all other requests in flight, so the timeout is multiplied by their number
+   */
+  DartFileProcessingPipeline(@NotNull final Project project,
+                             @NotNull final String commandName,
+                             @NonNls @NotNull final String protocolMethodName,
+                             final long timeoutMillis,
+                             @NotNull final RequestSender<T> requestSender,
+                             @NotNull final ResultApplier<T> resultApplier) {
+    myProject = project;
+    myCommandName = commandName;
+    myProtocolMethodName = protocolMethodName;
+    myRequestSender = requestSender;
+    myResultApplier = resultApplier;
+    myRequestsInFlight = Math.max(1, Registry.intValue("dart.file.processing.requests.in.flight", 8));
+    myBatchSize = Math.max(1, Registry.intValue("dart.file.processing.batch.size", 50));
+    myTimeoutMillis = timeoutMillis * myRequestsInFlight;
+    myPermits = new Semaphore(myRequestsInFlight);
+  }
+
+  /**
+   * Must be called on the EDT, once per pipeline instance. Batches applied before cancellation stay applied.
+   *
+   * @return {@code false} if the user canceled the progress
+   */
+  boolean run(@NotNull final List<? extends VirtualFile> files) {
+    final DartAnalysisServerService das = DartAnalysisServerService.getInstance(myProject);
+    das.updateFilesContent();
+
+    final long startTime = System.nanoTime();
+    final boolean ok = ApplicationManagerEx.getApplicationEx()
+      .runProcessWithProgressSynchronously(() -> processFiles(das, files), myCommandName, true, myProject);
+
+    if (!ok) {
+      for (int i = 0; i < myPendingRequests.size(); i++) {
+        das.getServerMetrics().requestCancelled(myProtocolMethodName);
+      }
+      myPendingRequests.clear();
+    }
+
+    logThroughput(das, files.size(), System.nanoTime() - startTime);
+    return ok;
+  }
+
+  private void processFiles(@NotNull final DartAnalysisServerService das,
+                            @NotNull final List<? extends VirtualFile> files) {
+    final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    if (indicator != null && files.size() > 1) {
+      indicator.setIndeterminate(false);
+      indicator.setText(DartBundle.message("dart.file.processing.progress.text"));
+    }
+
+    // a file may be selected both explicitly and as a part of a directory
+    for (final VirtualFile file : new LinkedHashSet<>(files)) {
+      while (!Uninterruptibles.tryAcquireUninterruptibly(myPermits, CHECK_CANCELED_PERIOD, TimeUnit.MILLISECONDS)) {
+        onWaiting(indicator, files.size());
+      }
+
+      myPendingRequests.put(file, System.currentTimeMillis());
+      final boolean sent = myRequestSender.sendRequest(das, file, result -> {
+        if (myPendingRequests.remove(file) == null) return; // timed out or canceled
+
+        if (result != null) {
+          myResults.add(new Result<>(file, result));
+        }
+        myCompletedCount.incrementAndGet();
+        myPermits.release();
+      });
+
+      if (!sent) {
+        myPendingRequests.remove(file);
+        myPermits.release();
+        break;
+      }
+
+      if (indicator != null) {
+        indicator.setText2(FileUtil.toSystemDependentName(file.getPath()));
+      }
+      onWaiting(indicator, files.size());
+    }
+
+    // wait for the responses to the last requests
+    while (!Uninterruptibles.tryAcquireUninterruptibly(myPermits, myRequestsInFlight, CHECK_CANCELED_PERIOD, TimeUnit.MILLISECONDS)) {
+      onWaiting(indicator, files.size());
+    }
+
+    applyResults(Integer.MAX_VALUE);
+  }
+
+  private void onWaiting(@Nullable final ProgressIndicator indicator, final int fileCount) {
+    if (indicator != null) {
+      indicator.checkCanceled();
+      if (fileCount > 1) {
+        indicator.setFraction((double)myCompletedCount.get() / fileCount);
+      }
+    }
+
+    dropTimedOutRequests();
+
+    if (myResults.size() >= myBatchSize) {
+      applyResults(myBatchSize);
+    }
+  }
+
+  private void dropTimedOutRequests() {
+    final long now = System.currentTimeMillis();
+    final Iterator<Map.Entry<VirtualFile, Long>> iterator = myPendingRequests.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final Map.Entry<VirtualFile, Long> entry = iterator.next();
+      if (now - entry.getValue() > myTimeoutMillis && myPendingRequests.remove(entry.getKey(), entry.getValue())) {
+        LOG.info(myProtocolMethodName + " took longer than " + myTimeoutMillis + "ms, for file " + entry.getKey().getPath());
+        DartAnalysisServerService.getInstance(myProject).getServerMetrics().requestTimedOut(myProtocolMethodName);
+        myTimedOutCount++;
+        myCompletedCount.incrementAndGet();
+        myPermits.release();
+      }
+    }
+  }
+
+  private void applyResults(final int maxCount) {
+    final List<Result<T>> batch = new ArrayList<>();
+    Result<T> result;
+    while (batch.size() < maxCount && (result = myResults.poll()) != null) {
+      batch.add(result);
+    }
+    if (batch.isEmpty()) return;
+
+    final Runnable applyRunnable = () -> {
+      for (Result<T> r : batch) {
+        final Document document = FileDocumentManager.getInstance().getDocument(r.myFile);
+        if (document != null && myResultApplier.applyResult(r.myFile, document, r.myResult)) {
+          myChangedCount++;
+        }
+      }
+    };
+
+    ApplicationManager.getApplication().invokeAndWait(
+      () -> ApplicationManager.getApplication().runWriteAction(
+        () -> CommandProcessor.getInstance().executeCommand(myProject, applyRunnable, myCommandName, myCommandGroupId)),
+      ModalityState.defaultModalityState());
+  }
+
+  private void logThroughput(@NotNull final DartAnalysisServerService das, final int fileCount, final long nanos) {
+    final int completedCount = myCompletedCount.get();
+    if (completedCount == 0) return;
+
+    das.getServerMetrics().latencyMeasured(myProtocolMethodName + " (pipelined, per file)", nanos / completedCount);
+
+    final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    LOG.info(myProtocolMethodName + ": " + completedCount + " of " + fileCount + " files processed in " + millis + "ms" +
+             " (" + (millis == 0 ? completedCount : completedCount * 1000L / millis) + " files/s, " +
+             myRequestsInFlight + " requests in flight), " + myChangedCount + " files changed, " + myTimedOutCount + " timed out");
+  }
+}
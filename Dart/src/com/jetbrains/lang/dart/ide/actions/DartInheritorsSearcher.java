@@ -10,7 +10,6 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.search.SearchScope;
 import com.intellij.psi.search.searches.DefinitionsScopedSearch;
-import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.util.Processor;
 import com.jetbrains.lang.dart.DartComponentType;
 import com.jetbrains.lang.dart.DartLanguage;
@@ -24,31 +23,12 @@ import org.dartlang.analysis.server.protocol.Element;
 import org.dartlang.analysis.server.protocol.Location;
 import org.dartlang.analysis.server.protocol.TypeHierarchyItem;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
-import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 public class DartInheritorsSearcher extends QueryExecutorBase<PsiElement, DefinitionsScopedSearch.SearchParameters> {
-  private static class HierarchyInfo {
-    @NotNull final String filePath;
-    final int offset;
-    final long modCount;
-    @NotNull final List<TypeHierarchyItem> hierarchyItems;
-
-    private HierarchyInfo(@NotNull String filePath, int offset, long modCount, @NotNull List<TypeHierarchyItem> hierarchyItems) {
-      this.filePath = filePath;
-      this.offset = offset;
-      this.modCount = modCount;
-      this.hierarchyItems = hierarchyItems;
-    }
-  }
-
-  // This short-living cache helps not to call Analysis Server twice for the same info on a single 'Go To Implementations' action.
-  @Nullable private WeakReference<HierarchyInfo> myLastResult;
-
   @Override
   public void processQuery(@NotNull final DefinitionsScopedSearch.SearchParameters parameters,
                            @NotNull final Processor<? super PsiElement> consumer) {
@@ -61,10 +41,13 @@ public class DartInheritorsSearcher extends QueryExecutorBase<PsiElement, Defini
     if (fileRef.isNull() || offsetRef.isNull() || componentTypeRef.isNull()) return;
 
     ApplicationManager.getApplication().runReadAction(() -> {
-      List<TypeHierarchyItem> hierarchyItems = getHierarchyItems(parameters.getElement().getProject(), fileRef.get(), offsetRef.get());
+      final Project project = parameters.getElement().getProject();
+      // DartAnalysisServerService caches hierarchies, so a single 'Go To Implementations' action doesn't call the server twice
+      final List<TypeHierarchyItem> hierarchyItems =
+        DartAnalysisServerService.getInstance(project).search_getTypeHierarchy(fileRef.get(), offsetRef.get(), false);
       final Set<DartComponent> components = componentTypeRef.get() == DartComponentType.CLASS
-                                            ? getSubClasses(parameters.getElement().getProject(), parameters.getScope(), hierarchyItems)
-                                            : getSubMembers(parameters.getElement().getProject(), parameters.getScope(), hierarchyItems);
+                                            ? getSubClasses(project, parameters.getScope(), hierarchyItems)
+                                            : getSubMembers(project, parameters.getScope(), hierarchyItems);
       for (DartComponent component : components) {
         if (!consumer.process(component)) {
           return;
@@ -73,24 +56,6 @@ public class DartInheritorsSearcher extends QueryExecutorBase<PsiElement, Defini
     });
   }
 
-  @NotNull
-  private List<TypeHierarchyItem> getHierarchyItems(Project project, VirtualFile file, int offset) {
-    long modCount = PsiModificationTracker.SERVICE.getInstance(project).getModificationCount();
-    if (myLastResult != null) {
-      HierarchyInfo info = myLastResult.get();
-      if (info != null) {
-        if (info.filePath.equals(file.getPath()) && info.offset == offset && modCount == info.modCount) {
-          return info.hierarchyItems;
-        }
-      }
-    }
-
-    DartAnalysisServerService das = DartAnalysisServerService.getInstance(project);
-    List<TypeHierarchyItem> items = das.search_getTypeHierarchy(file, offset, false);
-    myLastResult = new WeakReference<>(new HierarchyInfo(file.getPath(), offset, modCount, items));
-    return items;
-  }
-
   private static void prepare(@NotNull final DefinitionsScopedSearch.SearchParameters parameters,
                               @NotNull final Ref<VirtualFile> fileRef,
                               @NotNull final Ref<Integer> offsetRef,
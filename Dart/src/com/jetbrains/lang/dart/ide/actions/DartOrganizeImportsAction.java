@@ -0,0 +1,71 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.actions;
+
+import com.intellij.CommonBundle;
+import com.intellij.codeInsight.actions.OptimizeImportsProcessor;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.jetbrains.lang.dart.DartBundle;
+import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
+import com.jetbrains.lang.dart.assists.AssistUtils;
+import org.dartlang.analysis.server.protocol.SourceFileEdit;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Organizes directives using the Analysis Server. A file open in the editor is handled by
+ * {@link com.jetbrains.lang.dart.ide.imports.DartImportOptimizer}. Unlike Optimize Imports run over a directory, which waits for the
+ * server response for each file in a write action, this action processes selected files and directories with
+ * {@link DartFileProcessingPipeline}.
+ */
+public class DartOrganizeImportsAction extends AbstractDartFileProcessingAction {
+  @NotNull
+  @Override
+  protected String getActionTextForEditor() {
+    return DartBundle.message("action.Dart.DartOrganizeImports.text");
+  }
+
+  @NotNull
+  @Override
+  protected String getActionTextForFiles() {
+    return DartBundle.message("dart.organize.imports.action.name.ellipsis"); // because with dialog
+  }
+
+  @Override
+  protected void runOverEditor(@NotNull final Project project, @NotNull final Editor editor, @NotNull final PsiFile psiFile) {
+    // a single file is organized by DartImportOptimizer, the same as Optimize Imports does
+    new OptimizeImportsProcessor(project, psiFile).run();
+  }
+
+  @Override
+  protected void runOverFiles(@NotNull final Project project, @NotNull final List<VirtualFile> dartFiles) {
+    if (dartFiles.isEmpty()) {
+      Messages.showInfoMessage(project, DartBundle.message("dart.organize.imports.files.no.dart.files"),
+                               DartBundle.message("action.Dart.DartOrganizeImports.text"));
+      return;
+    }
+
+    if (Messages.showOkCancelDialog(project, DartBundle.message("dart.organize.imports.files.dialog.question", dartFiles.size()),
+                                    DartBundle.message("action.Dart.DartOrganizeImports.text"), CommonBundle.getYesButtonText(),
+                                    CommonBundle.getNoButtonText(), null) != Messages.OK) {
+      return;
+    }
+
+    new DartFileProcessingPipeline<SourceFileEdit>(
+      project, DartBundle.message("action.Dart.DartOrganizeImports.text"), "edit.organizeDirectives",
+      DartAnalysisServerService.EDIT_ORGANIZE_DIRECTIVES_TIMEOUT,
+      (das, file, resultConsumer) -> das.edit_organizeDirectives(file.getPath(), resultConsumer),
+      (file, document, fileEdit) -> {
+        if (fileEdit.getEdits().isEmpty()) return false;
+
+        AssistUtils.applySourceEdits(project, file, document, fileEdit.getEdits(), Collections.emptySet());
+        return true;
+      }
+    ).run(dartFiles);
+  }
+}
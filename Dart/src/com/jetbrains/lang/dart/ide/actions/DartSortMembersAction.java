@@ -1,20 +1,14 @@
 // Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package com.jetbrains.lang.dart.ide.actions;
 
-import com.google.common.collect.Maps;
 import com.intellij.CommonBundle;
 import com.intellij.openapi.application.ApplicationManager;
-import com.intellij.openapi.application.ex.ApplicationManagerEx;
 import com.intellij.openapi.command.CommandProcessor;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.fileEditor.FileDocumentManager;
-import com.intellij.openapi.progress.ProgressIndicator;
-import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.ReadonlyStatusHandler;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
@@ -27,7 +21,6 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 public class DartSortMembersAction extends AbstractDartFileProcessingAction {
   private static final Logger LOG = Logger.getInstance(DartSortMembersAction.class.getName());
@@ -90,49 +83,16 @@ public class DartSortMembersAction extends AbstractDartFileProcessingAction {
       return;
     }
 
-    final Map<VirtualFile, SourceFileEdit> fileToFileEditMap = Maps.newHashMap();
+    new DartFileProcessingPipeline<SourceFileEdit>(
+      project, DartBundle.message("action.Dart.DartSortMembers.text"), "edit.sortMembers",
+      DartAnalysisServerService.EDIT_SORT_MEMBERS_TIMEOUT,
+      (das, file, resultConsumer) -> das.edit_sortMembers(file.getPath(), resultConsumer),
+      (file, document, fileEdit) -> {
+        if (fileEdit.getEdits().isEmpty()) return false;
 
-    final Runnable runnable = () -> {
-      double fraction = 0.0;
-      for (final VirtualFile virtualFile : dartFiles) {
-        fraction += 1.0;
-        final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
-        if (indicator != null) {
-          indicator.checkCanceled();
-          indicator.setText2(FileUtil.toSystemDependentName(virtualFile.getPath()));
-          if (dartFiles.size() > 1) {
-            indicator.setIndeterminate(false);
-            indicator.setFraction(fraction / dartFiles.size());
-          }
-        }
-
-        final String path = virtualFile.getPath();
-        final SourceFileEdit fileEdit = DartAnalysisServerService.getInstance(project).edit_sortMembers(path);
-        if (fileEdit != null) {
-          fileToFileEditMap.put(virtualFile, fileEdit);
-        }
+        AssistUtils.applySourceEdits(project, file, document, fileEdit.getEdits(), Collections.emptySet());
+        return true;
       }
-    };
-
-    DartAnalysisServerService.getInstance(project).updateFilesContent();
-
-    final boolean ok = ApplicationManagerEx.getApplicationEx()
-      .runProcessWithProgressSynchronously(runnable, DartBundle.message("action.Dart.DartSortMembers.text"), true, project);
-
-    if (ok) {
-      final Runnable onSuccessRunnable = () -> {
-        for (Map.Entry<VirtualFile, SourceFileEdit> entry : fileToFileEditMap.entrySet()) {
-          final VirtualFile file = entry.getKey();
-          final Document document = FileDocumentManager.getInstance().getDocument(file);
-          final SourceFileEdit fileEdit = entry.getValue();
-          if (document != null) {
-            AssistUtils.applySourceEdits(project, file, document, fileEdit.getEdits(), Collections.emptySet());
-          }
-        }
-      };
-
-      ApplicationManager.getApplication().runWriteAction(() -> CommandProcessor.getInstance()
-        .executeCommand(project, onSuccessRunnable, DartBundle.message("action.Dart.DartSortMembers.text"), null));
-    }
+    ).run(dartFiles);
   }
 }
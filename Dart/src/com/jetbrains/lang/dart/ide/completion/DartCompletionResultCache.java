@@ -0,0 +1,196 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.completion;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService.CompletionLibraryRefConsumer;
+import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService.CompletionSuggestionConsumer;
+import org.dartlang.analysis.server.protocol.CompletionSuggestion;
+import org.dartlang.analysis.server.protocol.IncludedSuggestionRelevanceTag;
+import org.dartlang.analysis.server.protocol.IncludedSuggestionSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the last completion results received from the Analysis Server. When completion is restarted because the user typed or deleted
+ * identifier characters after the replacement offset, and nothing else has changed in the file, the cached results are passed to the
+ * consumers again instead of sending a new {@code completion.getSuggestions} request. The prefix matcher and the sorter of the result set
+ * filter and rank them according to the new prefix.
+ * <p>
+ * The results are dropped after a timeout, when a document other than the completion file changes, and when the Analysis Server reports
+ * new errors or flushed results for a library directly imported by the completion file. The cache is owned by
+ * {@link com.jetbrains.lang.dart.analyzer.DartAnalysisServerService}, which reports these events.
+ */
+public final class DartCompletionResultCache {
+
+  private static final class Suggestion {
+    private final int myReplacementOffset;
+    private final int myReplacementLength;
+    @NotNull private final CompletionSuggestion mySuggestion;
+
+    private Suggestion(final int replacementOffset, final int replacementLength, @NotNull final CompletionSuggestion suggestion) {
+      myReplacementOffset = replacementOffset;
+      myReplacementLength = replacementLength;
+      mySuggestion = suggestion;
+    }
+  }
+
+  private static final class LibraryRef {
+    @NotNull private final IncludedSuggestionSet myIncludedSet;
+    @NotNull private final Set<String> myIncludedKinds;
+    @NotNull private final Map<String, IncludedSuggestionRelevanceTag> myIncludedRelevanceTags;
+    @Nullable private final String myLibraryFilePathSD;
+
+    private LibraryRef(@NotNull final IncludedSuggestionSet includedSet,
+                       @NotNull final Set<String> includedKinds,
+                       @NotNull final Map<String, IncludedSuggestionRelevanceTag> includedRelevanceTags,
+                       @Nullable final String libraryFilePathSD) {
+      myIncludedSet = includedSet;
+      myIncludedKinds = includedKinds;
+      myIncludedRelevanceTags = includedRelevanceTags;
+      myLibraryFilePathSD = libraryFilePathSD;
+    }
+  }
+
+  /**
+   * Collects the results of a single completion request, see {@link #put(Results)}.
+   */
+  static final class Results {
+    @NotNull private final String myFilePath;
+    // system-independent paths of the libraries imported by the file
+    @NotNull private final Set<String> myImportedFilePaths;
+    @NotNull private final CharSequence myText;
+    private final int myCaretOffset;
+    private final long myTimestamp = System.currentTimeMillis();
+    // converted replacement offset of the first suggestion, the caret offset if there are no suggestions
+    private int myReplacementOffset = -1;
+    @NotNull private final List<Suggestion> mySuggestions = new ArrayList<>();
+    @NotNull private final List<LibraryRef> myLibraryRefs = new ArrayList<>();
+
+    /**
+     * @param text immutable text of the document at the moment of the request
+     */
+    Results(@NotNull final String filePath,
+            @NotNull final Set<String> importedFilePaths,
+            @NotNull final CharSequence text,
+            final int caretOffset) {
+      myFilePath = filePath;
+      myImportedFilePaths = importedFilePaths;
+      myText = text;
+      myCaretOffset = caretOffset;
+    }
+
+    void addSuggestion(final int replacementOffset, final int replacementLength, @NotNull final CompletionSuggestion suggestion) {
+      if (myReplacementOffset == -1) {
+        myReplacementOffset = replacementOffset;
+      }
+      mySuggestions.add(new Suggestion(replacementOffset, replacementLength, suggestion));
+    }
+
+    void addLibraryRef(@NotNull final IncludedSuggestionSet includedSet,
+                       @NotNull final Set<String> includedKinds,
+                       @NotNull final Map<String, IncludedSuggestionRelevanceTag> includedRelevanceTags,
+                       @Nullable final String libraryFilePathSD) {
+      myLibraryRefs.add(new LibraryRef(includedSet, includedKinds, includedRelevanceTags, libraryFilePathSD));
+    }
+
+    private int getReplacementOffset() {
+      return myReplacementOffset == -1 ? myCaretOffset : myReplacementOffset;
+    }
+  }
+
+  private final long myTimeToLiveMillis;
+  @Nullable private Results myResults;
+
+  public DartCompletionResultCache(final long timeToLiveMillis) {
+    myTimeToLiveMillis = timeToLiveMillis;
+  }
+
+  synchronized void put(@NotNull final Results results) {
+    myResults = results;
+  }
+
+  public synchronized void clear() {
+    myResults = null;
+  }
+
+  /**
+   * Must be called before a document changes, typing in the completion file keeps the results.
+   */
+  public synchronized void documentChanged(@NotNull final String filePathSI) {
+    if (myResults != null && !myResults.myFilePath.equals(filePathSI)) {
+      myResults = null;
+    }
+  }
+
+  /**
+   * Must be called when the Analysis Server reports errors or flushed results for the file.
+   */
+  public synchronized void analysisResultsChanged(@NotNull final String filePathSI) {
+    if (myResults != null && myResults.myImportedFilePaths.contains(filePathSI)) {
+      myResults = null;
+    }
+  }
+
+  /**
+   * Passes cached results to the consumers if they were received for the same file and the only change in the file since then is
+   * typing or deleting identifier characters between the replacement offset and the caret.
+   *
+   * @return {@code false} if there are no applicable results and a request to the server is needed
+   */
+  boolean replayIfApplicable(@NotNull final String filePath,
+                             @NotNull final CharSequence text,
+                             final int caretOffset,
+                             @NotNull final CompletionSuggestionConsumer consumer,
+                             @NotNull final CompletionLibraryRefConsumer libraryRefConsumer) {
+    final Results results;
+    synchronized (this) {
+      results = myResults;
+    }
+
+    if (results == null || !isApplicable(results, filePath, text, caretOffset)) return false;
+
+    final int typedCharsCount = caretOffset - results.myCaretOffset;
+    for (Suggestion suggestion : results.mySuggestions) {
+      consumer.consumeCompletionSuggestion(suggestion.myReplacementOffset, suggestion.myReplacementLength + typedCharsCount,
+                                           suggestion.mySuggestion);
+    }
+    for (LibraryRef ref : results.myLibraryRefs) {
+      libraryRefConsumer.consumeLibraryRef(ref.myIncludedSet, ref.myIncludedKinds, ref.myIncludedRelevanceTags, ref.myLibraryFilePathSD);
+    }
+    return true;
+  }
+
+  private boolean isApplicable(@NotNull final Results results,
+                               @NotNull final String filePath,
+                               @NotNull final CharSequence text,
+                               final int caretOffset) {
+    if (System.currentTimeMillis() - results.myTimestamp > myTimeToLiveMillis) return false;
+    if (!results.myFilePath.equals(filePath)) return false;
+
+    final int replacementOffset = results.getReplacementOffset();
+    if (caretOffset < replacementOffset || results.myCaretOffset < replacementOffset) return false;
+
+    // the text after the caret must be the same
+    final int suffixLength = results.myText.length() - results.myCaretOffset;
+    if (text.length() - caretOffset != suffixLength) return false;
+    if (!StringUtil.equals(text.subSequence(caretOffset, text.length()),
+                           results.myText.subSequence(results.myCaretOffset, results.myText.length()))) {
+      return false;
+    }
+
+    // the text before the replacement offset must be the same
+    if (!StringUtil.equals(text.subSequence(0, replacementOffset), results.myText.subSequence(0, replacementOffset))) return false;
+
+    // only identifier characters may be typed after the replacement offset
+    for (int i = replacementOffset; i < caretOffset; i++) {
+      if (!Character.isJavaIdentifierPart(text.charAt(i))) return false;
+    }
+
+    return true;
+  }
+}
@@ -41,6 +41,8 @@ import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
 import com.jetbrains.lang.dart.assists.AssistUtils;
 import com.jetbrains.lang.dart.assists.DartSourceEditException;
 import com.jetbrains.lang.dart.ide.codeInsight.DartCodeInsightSettings;
+import com.jetbrains.lang.dart.ide.index.DartImportAndExportIndex;
+import com.jetbrains.lang.dart.ide.index.DartImportOrExportInfo;
 import com.jetbrains.lang.dart.psi.*;
 import com.jetbrains.lang.dart.sdk.DartSdk;
 import com.jetbrains.lang.dart.util.DartResolveUtil;
@@ -58,6 +60,9 @@ import static com.intellij.patterns.PlatformPatterns.psiFile;
 import static com.intellij.patterns.StandardPatterns.or;
 
 public class DartServerCompletionContributor extends CompletionContributor {
+  public static final String COMPLETION_LATENCY_METRIC = "completion.getSuggestions (first suggestion shown)";
+  public static final String CACHED_COMPLETION_LATENCY_METRIC = "completion.getSuggestions (cached)";
+
   public DartServerCompletionContributor() {
     extend(CompletionType.BASIC,
            or(psiElement().withLanguage(DartLanguage.INSTANCE),
@@ -110,84 +115,159 @@ public class DartServerCompletionContributor extends CompletionContributor {
                das.updateFilesContent();
 
                final int offset = InjectedLanguageManager.getInstance(project).injectedToHost(originalFile, parameters.getOffset());
-               final String completionId = das.completion_getSuggestions(file, offset);
-               if (completionId == null) return;
-
                final VirtualFile targetFile = file;
-               das.addCompletions(file, completionId, (replacementOffset, replacementLength, suggestion) -> {
-                 final CompletionResultSet updatedResultSet;
-                 if (uriPrefix != null) {
-                   updatedResultSet = resultSet;
-                 }
-                 else {
-                   final String specialPrefix = getPrefixForSpecialCases(parameters, replacementOffset);
-                   if (specialPrefix != null) {
-                     updatedResultSet = resultSet.withPrefixMatcher(specialPrefix);
+               final LatencyReporter latencyReporter = new LatencyReporter(das);
+
+               final DartAnalysisServerService.CompletionSuggestionConsumer suggestionConsumer =
+                 (replacementOffset, replacementLength, suggestion) -> {
+                   final CompletionResultSet updatedResultSet;
+                   if (uriPrefix != null) {
+                     updatedResultSet = resultSet;
                    }
                    else {
-                     updatedResultSet = resultSet;
+                     final String specialPrefix = getPrefixForSpecialCases(parameters, replacementOffset);
+                     if (specialPrefix != null) {
+                       updatedResultSet = resultSet.withPrefixMatcher(specialPrefix);
+                     }
+                     else {
+                       updatedResultSet = resultSet;
+                     }
                    }
-                 }
 
-                 LookupElementBuilder lookupElement = null;
+                   LookupElementBuilder lookupElement = null;
 
-                 for (DartCompletionExtension extension : DartCompletionExtension.getExtensions()) {
-                   lookupElement = extension.createLookupElement(project, suggestion);
-                   if (lookupElement != null) break;
-                 }
+                   for (DartCompletionExtension extension : DartCompletionExtension.getExtensions()) {
+                     lookupElement = extension.createLookupElement(project, suggestion);
+                     if (lookupElement != null) break;
+                   }
 
-                 if (lookupElement == null) {
-                   lookupElement = createLookupElement(project, suggestion);
-                 }
+                   if (lookupElement == null) {
+                     lookupElement = createLookupElement(project, suggestion);
+                   }
 
-                 updatedResultSet.addElement(lookupElement);
-               }, (includedSet, includedKinds, includedRelevanceTags, libraryFilePathSD) -> {
-                 if (includedKinds.isEmpty()) {
-                   return;
-                 }
+                   updatedResultSet.addElement(lookupElement);
+                   latencyReporter.elementAdded();
+                 };
 
-                 final AvailableSuggestionSet suggestionSet = das.getAvailableSuggestionSet(includedSet.getId());
-                 if (suggestionSet == null) {
-                   return;
-                 }
+               final DartAnalysisServerService.CompletionLibraryRefConsumer libraryRefConsumer =
+                 (includedSet, includedKinds, includedRelevanceTags, libraryFilePathSD) -> {
+                   if (includedKinds.isEmpty()) {
+                     return;
+                   }
 
-                 Map<String, Map<String, Set<String>>> existingImports = das.getExistingImports(libraryFilePathSD);
-                 for (AvailableSuggestion suggestion : suggestionSet.getItems()) {
-                   final String kind = suggestion.getElement().getKind();
-                   if (!includedKinds.contains(kind)) {
-                     continue;
+                   final AvailableSuggestionSet suggestionSet = das.getAvailableSuggestionSet(includedSet.getId());
+                   if (suggestionSet == null) {
+                     return;
                    }
 
-                   Set<String> importedLibraries = new HashSet<>();
-                   if (existingImports != null) {
-                     for (Map.Entry<String, Map<String, Set<String>>> entry : existingImports.entrySet()) {
-                       String importedLibraryUri = entry.getKey();
-                       Map<String, Set<String>> importedLibrary = entry.getValue();
-                       Set<String> names = importedLibrary.get(suggestion.getDeclaringLibraryUri());
-                       if (names != null && names.contains(suggestion.getLabel())) {
-                         importedLibraries.add(importedLibraryUri);
+                   Map<String, Map<String, Set<String>>> existingImports = das.getExistingImports(libraryFilePathSD);
+                   for (AvailableSuggestion suggestion : das.getAvailableSuggestions(suggestionSet.getId(), resultSet.getPrefixMatcher())) {
+                     final String kind = suggestion.getElement().getKind();
+                     if (!includedKinds.contains(kind)) {
+                       continue;
+                     }
+
+                     Set<String> importedLibraries = new HashSet<>();
+                     if (existingImports != null) {
+                       for (Map.Entry<String, Map<String, Set<String>>> entry : existingImports.entrySet()) {
+                         String importedLibraryUri = entry.getKey();
+                         Map<String, Set<String>> importedLibrary = entry.getValue();
+                         Set<String> names = importedLibrary.get(suggestion.getDeclaringLibraryUri());
+                         if (names != null && names.contains(suggestion.getLabel())) {
+                           importedLibraries.add(importedLibraryUri);
+                         }
                        }
                      }
-                   }
 
-                   if (!importedLibraries.isEmpty() && !importedLibraries.contains(suggestionSet.getUri())) {
-                     // If some library exports this label but the current suggestion set does not, we should filter.
-                     continue;
+                     if (!importedLibraries.isEmpty() && !importedLibraries.contains(suggestionSet.getUri())) {
+                       // If some library exports this label but the current suggestion set does not, we should filter.
+                       continue;
+                     }
+
+                     CompletionSuggestion completionSuggestion =
+                       createCompletionSuggestionFromAvailableSuggestion(suggestion, includedSet.getRelevance(), includedRelevanceTags);
+                     String displayUri = includedSet.getDisplayUri() != null ? includedSet.getDisplayUri() : suggestionSet.getUri();
+                     LookupElementBuilder lookupElement =
+                       createLookupElement(project, completionSuggestion, suggestionSet.getId(), targetFile, true, displayUri);
+
+                     resultSet.addElement(lookupElement);
+                     latencyReporter.elementAdded();
                    }
+                 };
+
+               final Document document = FileDocumentManager.getInstance().getDocument(file);
+               final CharSequence text = document != null ? document.getImmutableCharSequence() : null;
+               final DartCompletionResultCache resultCache = das.getCompletionResultCache();
+               if (text != null &&
+                   resultCache.replayIfApplicable(file.getPath(), text, offset, suggestionConsumer, libraryRefConsumer)) {
+                 latencyReporter.completed(true);
+                 return;
+               }
 
-                   CompletionSuggestion completionSuggestion =
-                     createCompletionSuggestionFromAvailableSuggestion(suggestion, includedSet.getRelevance(), includedRelevanceTags);
-                   String displayUri = includedSet.getDisplayUri() != null ? includedSet.getDisplayUri() : suggestionSet.getUri();
-                   LookupElementBuilder lookupElement =
-                     createLookupElement(project, completionSuggestion, suggestionSet.getId(), targetFile, true, displayUri);
+               final String completionId = das.completion_getSuggestions(file, offset);
+               if (completionId == null) return;
 
-                   resultSet.addElement(lookupElement);
-                 }
+               final DartCompletionResultCache.Results results =
+                 text != null
+                 ? new DartCompletionResultCache.Results(file.getPath(), getImportedFilePaths(project, file), text, offset)
+                 : null;
+               final boolean complete = das.addCompletions(file, completionId, (replacementOffset, replacementLength, suggestion) -> {
+                 if (results != null) results.addSuggestion(replacementOffset, replacementLength, suggestion);
+                 suggestionConsumer.consumeCompletionSuggestion(replacementOffset, replacementLength, suggestion);
+               }, (includedSet, includedKinds, includedRelevanceTags, libraryFilePathSD) -> {
+                 if (results != null) results.addLibraryRef(includedSet, includedKinds, includedRelevanceTags, libraryFilePathSD);
+                 libraryRefConsumer.consumeLibraryRef(includedSet, includedKinds, includedRelevanceTags, libraryFilePathSD);
                });
+
+               if (complete) {
+                 latencyReporter.completed(false);
+                 if (results != null) {
+                   resultCache.put(results);
+                 }
+               }
              }
            });
   }
 
+  @NotNull
+  private static Set<String> getImportedFilePaths(@NotNull final Project project, @NotNull final VirtualFile file) {
+    final Set<String> result = new HashSet<>();
+    for (DartImportOrExportInfo info : DartImportAndExportIndex.getImportAndExportInfos(project, file)) {
+      if (info.getKind() != DartImportOrExportInfo.Kind.Import) continue;
+      final VirtualFile importedFile = DartResolveUtil.getImportedFile(project, file, info.getUri());
+      if (importedFile != null) {
+        result.add(importedFile.getPath());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reports the perceived latency of completion, that is the time until the first suggestion is added to the lookup, in the
+   * {@link DartAnalysisServerService#getServerMetrics() server metrics}.
+   */
+  private static class LatencyReporter {
+    @NotNull private final DartAnalysisServerService myService;
+    private final long myStartNanos = System.nanoTime();
+    private long myFirstElementNanos;
+
+    LatencyReporter(@NotNull final DartAnalysisServerService service) {
+      myService = service;
+    }
+
+    void elementAdded() {
+      if (myFirstElementNanos == 0) {
+        myFirstElementNanos = System.nanoTime();
+      }
+    }
+
+    void completed(final boolean cached) {
+      if (myFirstElementNanos == 0) return;
+      myService.getServerMetrics()
+        .latencyMeasured(cached ? CACHED_COMPLETION_LATENCY_METRIC : COMPLETION_LATENCY_METRIC, myFirstElementNanos - myStartNanos);
+    }
+  }
+
   private static boolean isRightAfterBadIdentifier(@NotNull CharSequence text, int offset) {
     if (offset == 0 || offset >= text.length()) return false;
 
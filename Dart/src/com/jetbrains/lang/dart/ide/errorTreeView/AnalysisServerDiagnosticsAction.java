@@ -2,18 +2,27 @@
 package com.jetbrains.lang.dart.ide.errorTreeView;
 
 import com.google.dart.server.GetServerPortConsumer;
+import com.google.dart.server.internal.remote.AnalysisServerMetrics;
+import com.google.dart.server.internal.remote.ResponseDispatcher;
 import com.intellij.ide.BrowserUtil;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationAction;
 import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.ide.CopyPasteManager;
 import com.intellij.openapi.project.DumbAwareAction;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
 import com.jetbrains.lang.dart.DartBundle;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
+import com.jetbrains.lang.dart.analyzer.DartShardedAnalysisServer;
 import org.dartlang.analysis.server.protocol.RequestError;
 import org.jetbrains.annotations.NotNull;
 
+import java.awt.datatransfer.StringSelection;
+
 public class AnalysisServerDiagnosticsAction extends DumbAwareAction {
   private static final String GROUP_DISPLAY_ID = "Dart Analysis Server";
 
@@ -40,6 +49,22 @@ public class AnalysisServerDiagnosticsAction extends DumbAwareAction {
     // Get the current analysis server.
     DartAnalysisServerService server = DartAnalysisServerService.getInstance(project);
 
+    // Client-side statistics are not available on the server status page.
+    // Memory of the server processes is requested from the OS, so the statistics are collected on a pooled thread.
+    ApplicationManager.getApplication().executeOnPooledThread(() -> {
+      final Notification statistics = new Notification(GROUP_DISPLAY_ID,
+                                                        DartBundle.message("analysis.server.client.statistics.title"),
+                                                        getClientStatistics(server),
+                                                        NotificationType.INFORMATION);
+      statistics.addAction(new NotificationAction(DartBundle.message("analysis.server.client.statistics.copy.metrics")) {
+        @Override
+        public void actionPerformed(@NotNull AnActionEvent e, @NotNull Notification notification) {
+          CopyPasteManager.getInstance().setContents(new StringSelection(server.getServerMetrics().export()));
+        }
+      });
+      Notifications.Bus.notify(statistics, project);
+    });
+
     // Ask it for the diagnostics port.
     server.diagnostic_getServerPort(new GetServerPortConsumer() {
       @Override
@@ -59,4 +84,51 @@ public class AnalysisServerDiagnosticsAction extends DumbAwareAction {
       }
     });
   }
+
+  @NotNull
+  private static String getClientStatistics(@NotNull final DartAnalysisServerService server) {
+    final StringBuilder result = new StringBuilder();
+    for (DartShardedAnalysisServer.ShardStatistics shard : server.getServerShardStatistics()) {
+      final long memory = shard.getResidentMemoryBytes();
+      final String memoryText = memory < 0 ? DartBundle.message("analysis.server.client.statistics.memory.unknown")
+                                           : StringUtil.formatFileSize(memory);
+      if (shard.getPackageRootCount() < 0) {
+        result.append(DartBundle.message("analysis.server.client.statistics.process", memoryText));
+      }
+      else {
+        result.append(DartBundle.message("analysis.server.client.statistics.shard", shard.getIndex(), shard.getPackageRootCount(),
+                                         memoryText));
+      }
+      result.append("<br>");
+    }
+
+    result.append(DartBundle.message("analysis.server.client.statistics.overlays",
+                                     StringUtil.formatFileSize(server.getOverlayBytesSentPerSecond()),
+                                     StringUtil.formatFileSize(server.getOverlayBytesSentTotal())));
+
+    long responses = 0;
+    long timeouts = 0;
+    long cancellations = 0;
+    int inFlight = 0;
+    for (AnalysisServerMetrics.RequestStatistics request : server.getServerMetrics().getRequestStatistics()) {
+      responses += request.getCount();
+      timeouts += request.getTimeoutCount();
+      cancellations += request.getCancellationCount();
+      inFlight += request.getInFlightCount();
+    }
+    result.append("<br>");
+    result.append(DartBundle.message("analysis.server.client.statistics.requests", responses, inFlight, timeouts, cancellations));
+
+    for (ResponseDispatcher.LaneStatistics lane : server.getResponseLaneStatistics()) {
+      result.append("<br>");
+      result.append(DartBundle.message("analysis.server.client.statistics.lane",
+                                       lane.getName(),
+                                       lane.getQueueDepth(),
+                                       lane.getMaxQueueDepth(),
+                                       lane.getProcessedCount(),
+                                       lane.getTotalProcessingMillis(),
+                                       lane.getMaxProcessingMillis()));
+    }
+    return result.toString();
+  }
 }
@@ -28,7 +28,7 @@ import java.util.List;
 public class DartProblem implements AnalysisProblem {
 
   @NotNull private final Project myProject;
-  @NotNull private final AnalysisError myAnalysisError;
+  @NotNull private AnalysisError myAnalysisError;
 
   private String mySystemIndependentPath;
 
@@ -75,6 +75,19 @@ public class DartProblem implements AnalysisProblem {
                                                                    null)));
   }
 
+  @NotNull
+  AnalysisError getAnalysisError() {
+    return myAnalysisError;
+  }
+
+  /**
+   * Replaces the error with an error of the same kind in the same file, for example the same error moved by an edit above it.
+   * The presentable location without line number stays valid, the caller is responsible for repainting the problem.
+   */
+  void setAnalysisError(@NotNull final AnalysisError error) {
+    myAnalysisError = error;
+  }
+
   @Nullable List<DiagnosticMessage> getDiagnosticMessages() {
     return myAnalysisError.getContextMessages();
   }
@@ -166,6 +179,24 @@ public class DartProblem implements AnalysisProblem {
                                                                      : ("[" + dartPackageName + "] " + presentableFilePath);
   }
 
+  /**
+   * Computes the presentable location in advance, so that it is not done in the EDT when the problem is filtered or rendered.
+   * If {@code sameFileProblem} is already initialized then its location is reused instead of looking for the pubspec.yaml file again.
+   */
+  void computeLocation(@Nullable final DartProblem sameFileProblem) {
+    if (sameFileProblem != null &&
+        sameFileProblem.myPresentableLocationWithoutLineNumber != null &&
+        sameFileProblem.getSystemIndependentPath().equals(getSystemIndependentPath())) {
+      myFile = sameFileProblem.myFile;
+      myPackageRoot = sameFileProblem.myPackageRoot;
+      myContentRoot = sameFileProblem.myContentRoot;
+      myPresentableLocationWithoutLineNumber = sameFileProblem.myPresentableLocationWithoutLineNumber;
+      return;
+    }
+
+    ensureInitialized();
+  }
+
 
   /**
    * Returns Dart package name in brackets and relative path form Dart package root to the file.
@@ -4,93 +4,139 @@ package com.jetbrains.lang.dart.ide.errorTreeView;
 import com.intellij.analysis.problemsView.AnalysisProblem;
 import com.intellij.analysis.problemsView.AnalysisProblemsPresentationHelper;
 import com.intellij.analysis.problemsView.AnalysisProblemsTableModel;
+import gnu.trove.THashMap;
+import gnu.trove.THashSet;
+import org.dartlang.analysis.server.protocol.AnalysisError;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 public class DartProblemsTableModel extends AnalysisProblemsTableModel {
+
+  // All problems including the ones hidden by filters, for each file that has problems. Used to find out what has changed in a file.
+  private final Map<String, List<DartProblem>> myFilePathToProblems = new THashMap<>();
+
   public DartProblemsTableModel(@NotNull AnalysisProblemsPresentationHelper presentationHelper) {
     super(presentationHelper);
   }
 
   /**
+   * Replaces problems for the files from the {@code filePathToProblems} map. Problems that have not changed since the previous call stay
+   * in the table, only the rows of the removed problems are deleted and only the new problems are added. Problems that differ only in the
+   * location, for example because of an edit above them, keep their objects and get the new location, but their rows are removed and
+   * inserted again, because the row sorter doesn't resort updated rows and a view sorted by location would get stale. So when a file
+   * with many problems is edited, the table and its row sorter handle only the rows of the changed and moved problems.
+   * <p>
    * If {@code selectedProblem} was removed and similar one added again then this method returns the added one,
    * so that the caller could update selected row in the table
    */
   @Nullable
-  public AnalysisProblem setErrorsAndReturnReplacementForSelection(@NotNull Set<String> filePaths,
-                                                                   @NotNull List<? extends AnalysisProblem> problems,
-                                                                   @Nullable AnalysisProblem selectedProblem) {
-    final boolean selectedProblemRemoved = removeRowsForFilesInSet(filePaths, selectedProblem);
-    return addProblemsAndReturnReplacementForSelection(problems, selectedProblemRemoved ? selectedProblem : null);
-  }
-
-  private boolean removeRowsForFilesInSet(@NotNull Set<String> filePaths, @Nullable final AnalysisProblem selectedProblem) {
-    // Looks for regions in table items that should be removed and removes them.
-    // For performance reasons we try to call removeRows() as rare as possible, that means with regions as big as possible.
-    // Logic is based on the fact that all errors for each particular file are stored continuously in the myItems model
-
-    boolean selectedProblemRemoved = false;
-
-    int matchedFilesCount = 0;
-
-    for (int i = getRowCount() - 1; i >= 0; i--) {
-      final AnalysisProblem problem = getItem(i);
-      if (filePaths.contains(problem.getSystemIndependentPath())) {
-        matchedFilesCount++;
-        final int lastRowToDelete = i;
-
-        if (problem == selectedProblem) {
-          selectedProblemRemoved = true;
-        }
-
-        AnalysisProblem lastProblemForCurrentFile = problem;
+  public AnalysisProblem setProblemsAndReturnReplacementForSelection(@NotNull final Map<String, List<DartProblem>> filePathToProblems,
+                                                                     @Nullable final AnalysisProblem selectedProblem) {
+    // DartProblem doesn't override equals(), so this is effectively an identity set
+    final Set<AnalysisProblem> problemsToRemove = new THashSet<>();
+    final List<DartProblem> problemsToAdd = new ArrayList<>();
+    final Set<DartProblem> movedProblems = new THashSet<>();
+
+    for (Map.Entry<String, List<DartProblem>> entry : filePathToProblems.entrySet()) {
+      final List<DartProblem> oldProblems = myFilePathToProblems.remove(entry.getKey());
+      final List<DartProblem> problems = diff(oldProblems, entry.getValue(), problemsToRemove, problemsToAdd, movedProblems);
+      if (!problems.isEmpty()) {
+        myFilePathToProblems.put(entry.getKey(), problems);
+      }
+    }
 
-        int j = i - 1;
-        while (j >= 0) {
-          final AnalysisProblem previousProblem = getItem(j);
+    final boolean selectedProblemRemoved = selectedProblem != null && problemsToRemove.contains(selectedProblem);
+    final boolean selectedProblemMoved = selectedProblem != null && movedProblems.contains(selectedProblem);
+    problemsToRemove.addAll(movedProblems);
+    problemsToAdd.addAll(movedProblems);
+    removeRows(problemsToRemove);
 
-          if (previousProblem.getSystemIndependentPath().equals(lastProblemForCurrentFile.getSystemIndependentPath())) {
-            // previousProblem should be removed from the table as well
-            j--;
+    if (problemsToAdd.isEmpty()) return null;
+    final AnalysisProblem replacement =
+      addProblemsAndReturnReplacementForSelection(problemsToAdd, selectedProblemRemoved ? selectedProblem : null);
+    return selectedProblemMoved ? selectedProblem : replacement;
+  }
 
-            if (previousProblem == selectedProblem) {
-              selectedProblemRemoved = true;
-            }
+  /**
+   * Returns problems for the file, reusing the {@code oldProblems} that have errors with the same severity, type, code, message and
+   * correction. Errors are matched in the order of the lists, so problems moved by an edit above them are matched with their old problems.
+   * If the matched error is not equal, e.g. it has another offset, the old problem gets the new error and is added to {@code movedProblems}.
+   * Old problems without a match are added to {@code problemsToRemove}, new problems without a match are added to {@code problemsToAdd}.
+   */
+  @NotNull
+  private static List<DartProblem> diff(@Nullable final List<DartProblem> oldProblems,
+                                        @NotNull final List<DartProblem> newProblems,
+                                        @NotNull final Set<AnalysisProblem> problemsToRemove,
+                                        @NotNull final List<DartProblem> problemsToAdd,
+                                        @NotNull final Set<DartProblem> movedProblems) {
+    if (oldProblems == null) {
+      problemsToAdd.addAll(newProblems);
+      return newProblems;
+    }
 
-            continue;
-          }
+    // a file may have several errors of the same kind, for example from different analysis options or at different offsets
+    final Map<List<String>, Deque<DartProblem>> keyToOldProblems = new THashMap<>(oldProblems.size());
+    for (DartProblem problem : oldProblems) {
+      keyToOldProblems.computeIfAbsent(getMatchKey(problem.getAnalysisError()), key -> new ArrayDeque<>()).add(problem);
+    }
 
-          if (filePaths.contains(previousProblem.getSystemIndependentPath())) {
-            matchedFilesCount++;
-            // continue iterating the table because we met a range of problems for another file that also should be removed
-            lastProblemForCurrentFile = previousProblem;
-            j--;
+    final List<DartProblem> result = new ArrayList<>(newProblems.size());
+    for (DartProblem problem : newProblems) {
+      final Deque<DartProblem> sameProblems = keyToOldProblems.get(getMatchKey(problem.getAnalysisError()));
+      final DartProblem oldProblem = sameProblems != null ? sameProblems.pollFirst() : null;
+      if (oldProblem == null) {
+        result.add(problem);
+        problemsToAdd.add(problem);
+        continue;
+      }
 
-            if (previousProblem == selectedProblem) {
-              selectedProblemRemoved = true;
-            }
+      if (!oldProblem.getAnalysisError().equals(problem.getAnalysisError())) {
+        oldProblem.setAnalysisError(problem.getAnalysisError());
+        movedProblems.add(oldProblem);
+      }
+      result.add(oldProblem);
+    }
 
-            continue;
-          }
+    for (Deque<DartProblem> notMatchedProblems : keyToOldProblems.values()) {
+      problemsToRemove.addAll(notMatchedProblems);
+    }
 
-          break;
-        }
+    return result;
+  }
 
-        final int firstRowToDelete = j + 1;
-        removeRows(firstRowToDelete, lastRowToDelete);
+  // offset-independent part of the error, the file is the same for all errors passed to diff()
+  @NotNull
+  private static List<String> getMatchKey(@NotNull final AnalysisError error) {
+    return Arrays.asList(error.getSeverity(), error.getType(), error.getCode(), error.getMessage(), error.getCorrection());
+  }
 
-        if (matchedFilesCount == filePaths.size()) {
-          break;
+  private void removeRows(@NotNull final Set<AnalysisProblem> problems) {
+    // For performance reasons we try to call removeRows() as rare as possible, that means with regions as big as possible.
+    // Problems hidden by filters are not in the table, so the loop may not stop before the first row.
+    int problemsLeft = problems.size();
+    int lastRowToDelete = -1;
+
+    for (int i = getRowCount() - 1; i >= 0 && (problemsLeft > 0 || lastRowToDelete != -1); i--) {
+      if (problemsLeft > 0 && problems.contains(getItem(i))) {
+        problemsLeft--;
+        if (lastRowToDelete == -1) {
+          lastRowToDelete = i;
         }
-
-        //noinspection AssignmentToForLoopParameter
-        i = j + 1; // rewind according to the amount of removed rows
+      }
+      else if (lastRowToDelete != -1) {
+        removeRows(i + 1, lastRowToDelete);
+        lastRowToDelete = -1;
       }
     }
 
-    return selectedProblemRemoved;
+    if (lastRowToDelete != -1) {
+      removeRows(0, lastRowToDelete);
+    }
+  }
+
+  void clearProblems() {
+    myFilePathToProblems.clear();
   }
 }
@@ -9,9 +9,14 @@ import com.intellij.notification.impl.NotificationSettings;
 import com.intellij.notification.impl.NotificationsConfigurationImpl;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.*;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowManager;
@@ -30,6 +35,7 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import javax.swing.event.HyperlinkEvent;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -49,9 +55,12 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
   private final Project myProject;
   private final DartProblemsPresentationHelper myPresentationHelper;
 
-  private final Object myLock = new Object(); // use this lock to access myScheduledFilePathToErrors and myAlarm
+  private final Object myLock = new Object(); // use this lock to access myScheduledFilePathToErrors, myClearCount and myAlarm
   private final Map<String, List<? extends AnalysisError>> myScheduledFilePathToErrors = new THashMap<>();
+  private int myClearCount; // incremented in the EDT by clearAll(), so that problems prepared before are not shown after
   private final Alarm myAlarm;
+  // Problems are prepared in a pooled thread and shown in the EDT. Held while preparing, so that updates are shown in the same order.
+  private final Object myUpdateLock = new Object();
 
   @NotNull
   private Icon myCurrentIcon = DartIcons.Dart_13;
@@ -64,24 +73,35 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
   private final Runnable myUpdateRunnable = new Runnable() {
     @Override
     public void run() {
-      if (ProjectViewPane.ID.equals(ProjectView.getInstance(myProject).getCurrentViewId())) {
-        final int hash = DartAnalysisServerService.getInstance(myProject).getFilePathsWithErrorsHash();
-        if (myFilesWithErrorsHash != hash) {
-          // refresh red squiggles managed by com.jetbrains.lang.dart.projectView.DartNodeDecorator
-          myFilesWithErrorsHash = hash;
-          ProjectView.getInstance(myProject).refresh();
+      synchronized (myUpdateLock) {
+        if (myProject.isDisposed()) return;
+
+        final Map<String, List<? extends AnalysisError>> filePathToErrors;
+        final int clearCount;
+        synchronized (myLock) {
+          filePathToErrors = new THashMap<>(myScheduledFilePathToErrors);
+          myScheduledFilePathToErrors.clear();
+          clearCount = myClearCount;
         }
-      }
 
-      final Map<String, List<? extends AnalysisError>> filePathToErrors;
-      synchronized (myLock) {
-        filePathToErrors = new THashMap<>(myScheduledFilePathToErrors);
-        myScheduledFilePathToErrors.clear();
-      }
+        // VFS and project structure lookups for tens of thousands of problems should not freeze the UI;
+        // the read action is cancelled by write actions and restarted after them, so typing is not blocked
+        final Map<String, List<DartProblem>> filePathToProblems;
+        try {
+          filePathToProblems = ReadAction.nonBlocking(() -> createProblems(filePathToErrors))
+            .expireWith(myProject)
+            .executeSynchronously();
+        }
+        catch (ProcessCanceledException e) {
+          return; // project disposed
+        }
 
-      DartProblemsViewPanel panel = getProblemsViewPanel();
-      if (panel != null) {
-        panel.setErrors(filePathToErrors);
+        ApplicationManager.getApplication().invokeLater(() -> {
+          synchronized (myLock) {
+            if (clearCount != myClearCount) return;
+          }
+          showProblems(filePathToProblems);
+        }, ModalityState.NON_MODAL, myProject.getDisposed());
       }
     }
   };
@@ -89,7 +109,7 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
   public DartProblemsView(@NotNull Project project) {
     myProject = project;
     myPresentationHelper = new DartProblemsPresentationHelper(project);
-    myAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, project);
+    myAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, project);
 
     project.getMessageBus().connect().subscribe(
       DartAnalysisServerMessages.DART_ANALYSIS_TOPIC, new DartAnalysisServerMessages.DartAnalysisNotifier() {
@@ -108,6 +128,46 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
     );
   }
 
+  @NotNull
+  private Map<String, List<DartProblem>> createProblems(@NotNull final Map<String, List<? extends AnalysisError>> filePathToErrors) {
+    final DartProblemsViewSettings.ScopedAnalysisMode scopedAnalysisMode = myPresentationHelper.getScopedAnalysisMode();
+    final Map<String, List<DartProblem>> result = new THashMap<>(filePathToErrors.size());
+    for (Map.Entry<String, List<? extends AnalysisError>> entry : filePathToErrors.entrySet()) {
+      ProgressManager.checkCanceled();
+      final String filePath = entry.getKey();
+      final VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(filePath);
+      final boolean fileOk = vFile != null && (scopedAnalysisMode != DartProblemsViewSettings.ScopedAnalysisMode.All ||
+                                               ProjectFileIndex.getInstance(myProject).isInContent(vFile));
+      final List<? extends AnalysisError> errors = fileOk ? entry.getValue() : AnalysisError.EMPTY_LIST;
+
+      final List<DartProblem> problems = new ArrayList<>(errors.size());
+      for (AnalysisError analysisError : errors) {
+        ProgressManager.checkCanceled();
+        final DartProblem problem = new DartProblem(myProject, analysisError);
+        problem.computeLocation(problems.isEmpty() ? null : problems.get(0));
+        problems.add(problem);
+      }
+      result.put(filePath, problems);
+    }
+    return result;
+  }
+
+  private void showProblems(@NotNull final Map<String, List<DartProblem>> filePathToProblems) {
+    if (ProjectViewPane.ID.equals(ProjectView.getInstance(myProject).getCurrentViewId())) {
+      final int hash = DartAnalysisServerService.getInstance(myProject).getFilePathsWithErrorsHash();
+      if (myFilesWithErrorsHash != hash) {
+        // refresh red squiggles managed by com.jetbrains.lang.dart.projectView.DartNodeDecorator
+        myFilesWithErrorsHash = hash;
+        ProjectView.getInstance(myProject).refresh();
+      }
+    }
+
+    DartProblemsViewPanel panel = getProblemsViewPanel();
+    if (panel != null) {
+      panel.setProblems(filePathToProblems);
+    }
+  }
+
   DartProblemsPresentationHelper getPresentationHelper() {
 
     return myPresentationHelper;
@@ -280,7 +340,7 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
   public void updateErrorsForFile(@NotNull final String filePath, @NotNull List<? extends AnalysisError> errors) {
     synchronized (myLock) {
       if (myScheduledFilePathToErrors.isEmpty()) {
-        myAlarm.addRequest(myUpdateRunnable, TABLE_REFRESH_PERIOD, ModalityState.NON_MODAL);
+        myAlarm.addRequest(myUpdateRunnable, TABLE_REFRESH_PERIOD);
       }
 
       myScheduledFilePathToErrors.put(filePath, errors);
@@ -295,6 +355,7 @@ public class DartProblemsView implements PersistentStateComponent<DartProblemsVi
     synchronized (myLock) {
       myAlarm.cancelAllRequests();
       myScheduledFilePathToErrors.clear();
+      myClearCount++;
     }
 
     DartProblemsViewPanel panel = getProblemsViewPanel();
@@ -10,8 +10,6 @@ import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.application.WriteAction;
 import com.intellij.openapi.project.DumbAwareAction;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.roots.ProjectFileIndex;
-import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.LayeredIcon;
 import com.intellij.util.OpenSourceUtil;
@@ -21,14 +19,12 @@ import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
 import com.jetbrains.lang.dart.assists.AssistUtils;
 import com.jetbrains.lang.dart.assists.DartSourceEditException;
 import icons.DartIcons;
-import org.dartlang.analysis.server.protocol.AnalysisError;
 import org.dartlang.analysis.server.protocol.AnalysisErrorFixes;
 import org.dartlang.analysis.server.protocol.SourceChange;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -166,24 +162,13 @@ public class DartProblemsViewPanel extends AnalysisProblemsViewPanel {
     createAndShowPopup(DartBundle.message("analysis.server.settings.title"), serverSettingsForm.getMainPanel());
   }
 
-  public void setErrors(@NotNull final Map<String, List<? extends AnalysisError>> filePathToErrors) {
-    final DartProblemsViewSettings.ScopedAnalysisMode scopedAnalysisMode = getPresentationHelper().getScopedAnalysisMode();
-    final List<AnalysisProblem> problemsToAdd = new ArrayList<>();
-    for (Map.Entry<String, List<? extends AnalysisError>> entry : filePathToErrors.entrySet()) {
-      final String filePath = entry.getKey();
-      final VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(filePath);
-      final boolean fileOk = vFile != null && (scopedAnalysisMode != DartProblemsViewSettings.ScopedAnalysisMode.All ||
-                                               ProjectFileIndex.getInstance(myProject).isInContent(vFile));
-      List<? extends AnalysisError> errors = fileOk ? entry.getValue() : AnalysisError.EMPTY_LIST;
-
-      for (AnalysisError analysisError : errors) {
-        problemsToAdd.add(new DartProblem(myProject, analysisError));
-      }
-    }
-
+  /**
+   * @param filePathToProblems all problems for each updated file, an empty list if a file has no problems anymore
+   */
+  void setProblems(@NotNull final Map<String, List<DartProblem>> filePathToProblems) {
     AnalysisProblem oldSelectedProblem = myTable.getSelectedObject();
     DartProblemsTableModel model = getModel();
-    AnalysisProblem updatedSelectedProblem = model.setErrorsAndReturnReplacementForSelection(filePathToErrors.keySet(), problemsToAdd, oldSelectedProblem);
+    AnalysisProblem updatedSelectedProblem = model.setProblemsAndReturnReplacementForSelection(filePathToProblems, oldSelectedProblem);
 
     if (updatedSelectedProblem != null) {
       myTable.setSelection(Collections.singletonList(updatedSelectedProblem));
@@ -192,6 +177,12 @@ public class DartProblemsViewPanel extends AnalysisProblemsViewPanel {
     updateStatusDescription();
   }
 
+  @Override
+  public void clearAll() {
+    getModel().clearProblems();
+    super.clearAll();
+  }
+
   @NotNull
   @Override
   public DartProblemsTableModel getModel() {
@@ -0,0 +1,286 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.lang.LighterASTNode;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.intellij.openapi.util.Ref;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import com.intellij.util.diff.FlyweightCapableTreeStructure;
+import com.jetbrains.lang.dart.DartComponentType;
+import com.jetbrains.lang.dart.DartParser;
+import com.jetbrains.lang.dart.DartParserDefinition;
+import com.jetbrains.lang.dart.DartTokenTypesSets;
+import com.jetbrains.lang.dart.lexer.DartLexer;
+import com.jetbrains.lang.dart.util.DartPsiImplUtil;
+import gnu.trove.THashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static com.jetbrains.lang.dart.DartTokenTypes.*;
+import static com.jetbrains.lang.dart.ide.index.DartImportOrExportInfo.Kind;
+
+/**
+ * Computes the same {@link DartFileIndexData} as {@link DartIndexUtil#indexFileRoots(com.intellij.psi.PsiFile)} from the light tree
+ * produced by {@link PsiBuilder}, so that neither AST nor PSI is created for indexed files. Function bodies are lazy-parseable blocks,
+ * so the parser only checks their brace balance.
+ */
+final class DartLightTreeIndexer {
+  private static final TokenSet CLASSES = TokenSet.create(CLASS_DEFINITION, MIXIN_DECLARATION, ENUM_DEFINITION);
+  private static final TokenSet TOP_LEVEL_FUNCTIONS = TokenSet.create(FUNCTION_DECLARATION_WITH_BODY_OR_NATIVE, GETTER_DECLARATION,
+                                                                      SETTER_DECLARATION);
+  private static final TokenSet CLASS_MEMBER_COMPONENTS = TokenSet.create(METHOD_DECLARATION, GETTER_DECLARATION, SETTER_DECLARATION,
+                                                                          NAMED_CONSTRUCTOR_DECLARATION, FACTORY_CONSTRUCTOR_DECLARATION);
+
+  private static final DartParserDefinition PARSER_DEFINITION = new DartParserDefinition();
+
+  @NotNull private final CharSequence myText;
+  @NotNull private final FlyweightCapableTreeStructure<LighterASTNode> myTree;
+
+  private DartLightTreeIndexer(@NotNull final CharSequence text) {
+    myText = text;
+    final PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(PARSER_DEFINITION, new DartLexer(), text);
+    new DartParser().parseLight(DartTokenTypesSets.DART_FILE, builder);
+    myTree = builder.getLightTree();
+  }
+
+  @NotNull
+  static DartFileIndexData indexFile(@NotNull final CharSequence text) {
+    return new DartLightTreeIndexer(text).index();
+  }
+
+  @NotNull
+  private DartFileIndexData index() {
+    final DartFileIndexData result = new DartFileIndexData();
+    final List<LighterASTNode> children = getChildren(myTree.getRoot());
+
+    final LighterASTNode libraryStatement = findChild(children, LIBRARY_STATEMENT);
+    if (libraryStatement != null) {
+      final LighterASTNode libraryNameElement = findChild(getChildren(libraryStatement), LIBRARY_NAME_ELEMENT);
+      if (libraryNameElement != null) {
+        result.setLibraryName(getLibraryName(libraryNameElement));
+      }
+    }
+
+    result.setIsPart(findChild(children, PART_OF_STATEMENT) != null);
+
+    for (LighterASTNode child : children) {
+      final IElementType type = child.getTokenType();
+      if (type == VAR_DECLARATION_LIST) {
+        for (LighterASTNode variable : getVariables(child)) {
+          addComponent(result, getComponentName(variable), DartComponentType.GLOBAL_VARIABLE);
+        }
+      }
+      else if (CLASSES.contains(type)) {
+        final String name = getComponentName(child);
+        if (name == null) continue;
+
+        addComponent(result, name, DartComponentType.CLASS);
+        result.addClassName(name);
+        for (String memberName : getMemberNames(child)) {
+          result.addSymbol(memberName);
+        }
+      }
+      else if (type == FUNCTION_TYPE_ALIAS) {
+        addComponent(result, getComponentName(child), DartComponentType.TYPEDEF);
+      }
+      else if (TOP_LEVEL_FUNCTIONS.contains(type)) {
+        addComponent(result, getComponentName(child), DartComponentType.FUNCTION);
+      }
+    }
+
+    for (LighterASTNode child : children) {
+      final IElementType type = child.getTokenType();
+      if (type == IMPORT_STATEMENT || type == EXPORT_STATEMENT) {
+        processImportOrExportStatement(result, child);
+      }
+      else if (type == PART_STATEMENT) {
+        result.addPartUri(getUriString(child));
+      }
+    }
+
+    return result;
+  }
+
+  private static void addComponent(@NotNull final DartFileIndexData result,
+                                   @Nullable final String name,
+                                   @NotNull final DartComponentType type) {
+    if (name == null) return;
+
+    result.addSymbol(name);
+    result.addComponentInfo(name, new DartComponentInfo(type, result.getLibraryName()));
+  }
+
+  private void processImportOrExportStatement(@NotNull final DartFileIndexData result, @NotNull final LighterASTNode statement) {
+    final String uri = getUriString(statement);
+
+    final Set<String> showComponentNames = new THashSet<>();
+    final Set<String> hideComponentNames = new THashSet<>();
+    String importPrefix = null;
+
+    for (LighterASTNode child : getChildren(statement)) {
+      final IElementType type = child.getTokenType();
+      if (type == SHOW_COMBINATOR || type == HIDE_COMBINATOR) {
+        final LighterASTNode libraryReferenceList = findChild(getChildren(child), LIBRARY_REFERENCE_LIST);
+        if (libraryReferenceList != null) {
+          for (LighterASTNode reference : getChildren(libraryReferenceList)) {
+            if (reference.getTokenType() == LIBRARY_COMPONENT_REFERENCE_EXPRESSION) {
+              (type == SHOW_COMBINATOR ? showComponentNames : hideComponentNames).add(getText(reference));
+            }
+          }
+        }
+      }
+      else if (type == COMPONENT_NAME && statement.getTokenType() == IMPORT_STATEMENT && importPrefix == null) {
+        importPrefix = getName(child);
+      }
+    }
+
+    final Kind kind = statement.getTokenType() == IMPORT_STATEMENT ? Kind.Import : Kind.Export;
+    result.addImportInfo(new DartImportOrExportInfo(kind, uri, importPrefix, showComponentNames, hideComponentNames));
+    result.addComponentInfo(importPrefix, new DartComponentInfo(DartComponentType.LABEL, null));
+  }
+
+  /**
+   * Names of the enum constants or of the methods, accessors, constructors and fields of the class, see
+   * {@link com.jetbrains.lang.dart.util.DartResolveUtil#getNamedSubComponents}.
+   */
+  @NotNull
+  private List<String> getMemberNames(@NotNull final LighterASTNode dartClass) {
+    final List<String> result = new ArrayList<>();
+    final List<LighterASTNode> children = getChildren(dartClass);
+    if (dartClass.getTokenType() == ENUM_DEFINITION) {
+      for (LighterASTNode child : children) {
+        if (child.getTokenType() == ENUM_CONSTANT_DECLARATION) {
+          addIfNotNull(result, getComponentName(child));
+        }
+      }
+      return result;
+    }
+
+    final LighterASTNode classBody = findChild(children, CLASS_BODY);
+    final LighterASTNode classMembers = classBody == null ? null : findChild(getChildren(classBody), CLASS_MEMBERS);
+    if (classMembers == null) return result;
+
+    final List<LighterASTNode> members = getChildren(classMembers);
+    for (LighterASTNode member : members) {
+      final IElementType type = member.getTokenType();
+      if (CLASS_MEMBER_COMPONENTS.contains(type)) {
+        addIfNotNull(result, type == NAMED_CONSTRUCTOR_DECLARATION || type == FACTORY_CONSTRUCTOR_DECLARATION
+                             ? getConstructorName(member)
+                             : getComponentName(member));
+      }
+    }
+    for (LighterASTNode member : members) {
+      if (member.getTokenType() == VAR_DECLARATION_LIST) {
+        for (LighterASTNode variable : getVariables(member)) {
+          addIfNotNull(result, getComponentName(variable));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * See {@link DartPsiImplUtil#getComponentName(com.jetbrains.lang.dart.psi.DartNamedConstructorDeclaration)} and
+   * {@link DartPsiImplUtil#getComponentName(com.jetbrains.lang.dart.psi.DartFactoryConstructorDeclaration)}.
+   */
+  @Nullable
+  private String getConstructorName(@NotNull final LighterASTNode constructor) {
+    final List<LighterASTNode> componentNames = new ArrayList<>(2);
+    for (LighterASTNode child : getChildren(constructor)) {
+      if (child.getTokenType() == COMPONENT_NAME) {
+        componentNames.add(child);
+      }
+    }
+    if (componentNames.size() == 2) return getName(componentNames.get(1));
+    if (componentNames.size() == 1 && constructor.getTokenType() == FACTORY_CONSTRUCTOR_DECLARATION) return getName(componentNames.get(0));
+    return null;
+  }
+
+  /**
+   * The var access declaration followed by the var declaration list parts, see
+   * {@link com.jetbrains.lang.dart.util.DartControlFlowUtil#addFromVarDeclarationList}.
+   */
+  @NotNull
+  private List<LighterASTNode> getVariables(@NotNull final LighterASTNode varDeclarationList) {
+    final List<LighterASTNode> result = new ArrayList<>();
+    for (LighterASTNode child : getChildren(varDeclarationList)) {
+      final IElementType type = child.getTokenType();
+      if (type == VAR_ACCESS_DECLARATION || type == VAR_DECLARATION_LIST_PART) {
+        result.add(child);
+      }
+    }
+    return result;
+  }
+
+  @Nullable
+  private String getComponentName(@NotNull final LighterASTNode component) {
+    final LighterASTNode componentName = findChild(getChildren(component), COMPONENT_NAME);
+    return componentName == null ? null : getName(componentName);
+  }
+
+  @Nullable
+  private String getName(@NotNull final LighterASTNode componentName) {
+    final LighterASTNode id = findChild(getChildren(componentName), ID);
+    return id == null ? null : getText(id);
+  }
+
+  @NotNull
+  private String getLibraryName(@NotNull final LighterASTNode libraryNameElement) {
+    final StringBuilder name = new StringBuilder();
+    for (LighterASTNode child : getChildren(libraryNameElement)) {
+      if (child.getTokenType() == ID) {
+        if (name.length() > 0) {
+          name.append('.');
+        }
+        name.append(myText, child.getStartOffset(), child.getEndOffset());
+      }
+    }
+    return name.toString();
+  }
+
+  @NotNull
+  private String getUriString(@NotNull final LighterASTNode uriBasedDirective) {
+    final LighterASTNode uriElement = findChild(getChildren(uriBasedDirective), URI_ELEMENT);
+    return uriElement == null ? "" : DartPsiImplUtil.getUnquotedDartStringAndItsRange(getText(uriElement)).first;
+  }
+
+  @NotNull
+  private String getText(@NotNull final LighterASTNode node) {
+    return myText.subSequence(node.getStartOffset(), node.getEndOffset()).toString();
+  }
+
+  @NotNull
+  private List<LighterASTNode> getChildren(@NotNull final LighterASTNode node) {
+    final Ref<LighterASTNode[]> children = new Ref<>();
+    final int count = myTree.getChildren(node, children);
+    if (count == 0) return Collections.emptyList();
+
+    final LighterASTNode[] array = children.get();
+    final List<LighterASTNode> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(array[i]);
+    }
+    return result;
+  }
+
+  @Nullable
+  private static LighterASTNode findChild(@NotNull final List<LighterASTNode> children, @NotNull final IElementType type) {
+    for (LighterASTNode child : children) {
+      if (child.getTokenType() == type) return child;
+    }
+    return null;
+  }
+
+  private static void addIfNotNull(@NotNull final List<String> result, @Nullable final String name) {
+    if (name != null) {
+      result.add(name);
+    }
+  }
+}
@@ -497,6 +497,8 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
   }
 
   public void isolateSuspended(@NotNull final IsolateRef isolateRef) {
+    // objects may have changed since the previous pause
+    myVmServiceWrapper.invalidateObjectCache(isolateRef.getId());
     mySuspendedIsolateIds.add(isolateRef.getId());
   }
 
@@ -514,11 +516,13 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
   }
 
   public void isolateResumed(@NotNull final IsolateRef isolateRef) {
+    myVmServiceWrapper.invalidateObjectCache(isolateRef.getId());
     mySuspendedIsolateIds.remove(isolateRef.getId());
   }
 
   public void isolateExit(@NotNull final IsolateRef isolateRef) {
     myIsolatesInfo.deleteIsolate(isolateRef);
+    myVmServiceWrapper.invalidateObjectCache(isolateRef.getId());
     mySuspendedIsolateIds.remove(isolateRef.getId());
 
     if (isolateRef.getId().equals(myLatestCurrentIsolateId)) {
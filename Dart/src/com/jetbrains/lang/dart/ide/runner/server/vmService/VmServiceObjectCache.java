@@ -0,0 +1,206 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import gnu.trove.THashMap;
+import org.dartlang.vm.service.consumer.GetObjectConsumer;
+import org.dartlang.vm.service.element.Obj;
+import org.dartlang.vm.service.element.RPCError;
+import org.dartlang.vm.service.element.Sentinel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the responses to {@code getObject} requests until the isolate is resumed or paused again, so that expanding the same value
+ * in the Variables view, in the Watches and in the tooltip, or prefetching it when a frame is selected, costs a single round trip.
+ * Concurrent requests for the same object are sent once. Errors are not cached.
+ * <p>
+ * Collections are requested in pages of {@link #COLLECTION_PAGE_SIZE} elements, see {@link #getCollectionPage}, so that showing the
+ * next children of a large list or map is usually served from the cache.
+ */
+public class VmServiceObjectCache {
+
+  public static final int COLLECTION_PAGE_SIZE = 1000;
+
+  public interface ObjectFetcher {
+    void getObject(@NotNull String isolateId,
+                   @NotNull String objectId,
+                   @Nullable Integer offset,
+                   @Nullable Integer count,
+                   @NotNull GetObjectConsumer consumer);
+  }
+
+  private static final GetObjectConsumer EMPTY_CONSUMER = new GetObjectConsumer() {
+    @Override
+    public void received(Obj response) {
+    }
+
+    @Override
+    public void received(Sentinel response) {
+    }
+
+    @Override
+    public void onError(RPCError error) {
+    }
+  };
+
+  private static class CachedObject {
+    @Nullable private List<GetObjectConsumer> myWaitingConsumers = new ArrayList<>(1);
+    @Nullable private Obj myObj;
+    @Nullable private Sentinel mySentinel;
+
+    void replay(@NotNull final GetObjectConsumer consumer) {
+      if (myObj != null) {
+        consumer.received(myObj);
+      }
+      else {
+        consumer.received(mySentinel);
+      }
+    }
+  }
+
+  @NotNull private final ObjectFetcher myFetcher;
+  // isolate id -> (object key -> response)
+  private final Map<String, Map<String, CachedObject>> myIsolateIdToObjects = new THashMap<>();
+
+  public VmServiceObjectCache(@NotNull final ObjectFetcher fetcher) {
+    myFetcher = fetcher;
+  }
+
+  public void getObject(@NotNull final String isolateId, @NotNull final String objectId, @NotNull final GetObjectConsumer consumer) {
+    getObject(isolateId, objectId, null, null, consumer);
+  }
+
+  /**
+   * Returns the page of the collection that contains the element at {@code offset}, i.e. the elements or associations starting at
+   * {@link #getCollectionPageStart(int)}. The page may be shorter than requested if the VM limits the number of returned elements.
+   */
+  public void getCollectionPage(@NotNull final String isolateId,
+                                @NotNull final String objectId,
+                                final int offset,
+                                final int length,
+                                @NotNull final GetObjectConsumer consumer) {
+    final int pageStart = getCollectionPageStart(offset);
+    getObject(isolateId, objectId, pageStart, Math.min(COLLECTION_PAGE_SIZE, length - pageStart), consumer);
+  }
+
+  public static int getCollectionPageStart(final int offset) {
+    return offset - offset % COLLECTION_PAGE_SIZE;
+  }
+
+  /**
+   * Requests the object so that a later {@link #getObject} call for it is answered from the cache.
+   */
+  public void prefetch(@NotNull final String isolateId, @NotNull final String objectId) {
+    getObject(isolateId, objectId, EMPTY_CONSUMER);
+  }
+
+  /**
+   * Requests the collection page so that a later {@link #getCollectionPage} call for it is answered from the cache.
+   */
+  public void prefetchCollectionPage(@NotNull final String isolateId, @NotNull final String objectId, final int offset, final int length) {
+    getCollectionPage(isolateId, objectId, offset, length, EMPTY_CONSUMER);
+  }
+
+  public void getObject(@NotNull final String isolateId,
+                        @NotNull final String objectId,
+                        @Nullable final Integer offset,
+                        @Nullable final Integer count,
+                        @NotNull final GetObjectConsumer consumer) {
+    final String key = offset == null && count == null ? objectId : objectId + "[" + offset + ":" + count + "]";
+    final Map<String, CachedObject> objects;
+    CachedObject cachedObject;
+    final boolean newObject;
+    final boolean waiting;
+    synchronized (this) {
+      objects = myIsolateIdToObjects.computeIfAbsent(isolateId, id -> new THashMap<>());
+      cachedObject = objects.get(key);
+      newObject = cachedObject == null;
+      if (newObject) {
+        cachedObject = new CachedObject();
+        objects.put(key, cachedObject);
+      }
+      waiting = cachedObject.myWaitingConsumers != null;
+      if (waiting) {
+        cachedObject.myWaitingConsumers.add(consumer);
+      }
+    }
+
+    if (newObject) {
+      fetch(isolateId, objectId, offset, count, key, objects, cachedObject);
+    }
+    else if (!waiting) {
+      cachedObject.replay(consumer);
+    }
+  }
+
+  private void fetch(@NotNull final String isolateId,
+                     @NotNull final String objectId,
+                     @Nullable final Integer offset,
+                     @Nullable final Integer count,
+                     @NotNull final String key,
+                     @NotNull final Map<String, CachedObject> objects,
+                     @NotNull final CachedObject cachedObject) {
+    myFetcher.getObject(isolateId, objectId, offset, count, new GetObjectConsumer() {
+      @Override
+      public void received(Obj response) {
+        for (GetObjectConsumer waitingConsumer : complete(response, null)) {
+          waitingConsumer.received(response);
+        }
+      }
+
+      @Override
+      public void received(Sentinel response) {
+        for (GetObjectConsumer waitingConsumer : complete(null, response)) {
+          waitingConsumer.received(response);
+        }
+      }
+
+      @Override
+      public void onError(RPCError error) {
+        final List<GetObjectConsumer> waitingConsumers;
+        synchronized (VmServiceObjectCache.this) {
+          waitingConsumers = takeWaitingConsumers(cachedObject);
+          // the request may succeed when repeated
+          objects.remove(key, cachedObject);
+        }
+        for (GetObjectConsumer waitingConsumer : waitingConsumers) {
+          waitingConsumer.onError(error);
+        }
+      }
+
+      @NotNull
+      private List<GetObjectConsumer> complete(@Nullable final Obj obj, @Nullable final Sentinel sentinel) {
+        synchronized (VmServiceObjectCache.this) {
+          cachedObject.myObj = obj;
+          cachedObject.mySentinel = sentinel;
+          return takeWaitingConsumers(cachedObject);
+        }
+      }
+    });
+  }
+
+  @NotNull
+  private static List<GetObjectConsumer> takeWaitingConsumers(@NotNull final CachedObject cachedObject) {
+    final List<GetObjectConsumer> result = cachedObject.myWaitingConsumers;
+    cachedObject.myWaitingConsumers = null;
+    assert result != null;
+    return result;
+  }
+
+  /**
+   * Forgets the objects of the isolate. Responses to the requests that are still in progress are passed to their consumers but are not
+   * cached anymore.
+   */
+  public synchronized void invalidate(@NotNull final String isolateId) {
+    myIsolateIdToObjects.remove(isolateId);
+  }
+
+  public synchronized int getCachedObjectCount(@NotNull final String isolateId) {
+    final Map<String, CachedObject> objects = myIsolateIdToObjects.get(isolateId);
+    return objects == null ? 0 : objects.size();
+  }
+}
@@ -43,6 +43,7 @@ public class VmServiceWrapper implements Disposable {
   private final IsolatesInfo myIsolatesInfo;
   private final DartVmServiceBreakpointHandler myBreakpointHandler;
   private final Alarm myRequestsScheduler;
+  private final VmServiceObjectCache myObjectCache;
 
   private long myVmServiceReceiverThreadId;
 
@@ -59,6 +60,8 @@ public class VmServiceWrapper implements Disposable {
     myIsolatesInfo = isolatesInfo;
     myBreakpointHandler = breakpointHandler;
     myRequestsScheduler = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+    myObjectCache = new VmServiceObjectCache((isolateId, objectId, offset, count, consumer) ->
+                                               addRequest(() -> myVmService.getObject(isolateId, objectId, offset, count, consumer)));
   }
 
   @Override
@@ -328,6 +331,7 @@ public class VmServiceWrapper implements Disposable {
   public void restoreBreakpointsForIsolate(@NotNull final String isolateId, @Nullable final Runnable onFinished) {
     // Cached information about the isolate may now be stale.
     myIsolatesInfo.invalidateCache(isolateId);
+    myObjectCache.invalidate(isolateId);
 
     // Remove all existing VM breakpoints for this isolate.
     myBreakpointHandler.removeAllVmBreakpoints(isolateId);
@@ -358,6 +362,7 @@ public class VmServiceWrapper implements Disposable {
   }
 
   public void resumeIsolate(@NotNull final String isolateId, @Nullable final StepOption stepOption) {
+    myObjectCache.invalidate(isolateId);
     addRequest(() -> {
       myLatestStep = stepOption;
       myVmService.resume(isolateId, stepOption, null, VmServiceConsumers.EMPTY_SUCCESS_CONSUMER);
@@ -377,6 +382,7 @@ public class VmServiceWrapper implements Disposable {
    * function, so frameIndex must be at least 1.
    */
   public void dropFrame(@NotNull final String isolateId, int frameIndex) {
+    myObjectCache.invalidate(isolateId);
     addRequest(() -> {
       myLatestStep = StepOption.Rewind;
       myVmService.resume(isolateId, StepOption.Rewind, frameIndex, new SuccessConsumer() {
@@ -476,8 +482,11 @@ public class VmServiceWrapper implements Disposable {
     return resultRef.get();
   }
 
+  /**
+   * Objects are cached until the isolate is resumed or paused again, see {@link VmServiceObjectCache}.
+   */
   public void getObject(@NotNull final String isolateId, @NotNull final String objectId, @NotNull final GetObjectConsumer consumer) {
-    addRequest(() -> myVmService.getObject(isolateId, objectId, consumer));
+    myObjectCache.getObject(isolateId, objectId, consumer);
   }
 
   public void getCollectionObject(@NotNull final String isolateId,
@@ -485,7 +494,30 @@ public class VmServiceWrapper implements Disposable {
                                   final int offset,
                                   final int count,
                                   @NotNull final GetObjectConsumer consumer) {
-    addRequest(() -> myVmService.getObject(isolateId, objectId, offset, count, consumer));
+    myObjectCache.getObject(isolateId, objectId, offset, count, consumer);
+  }
+
+  /**
+   * @see VmServiceObjectCache#getCollectionPage
+   */
+  public void getCollectionPage(@NotNull final String isolateId,
+                                @NotNull final String objectId,
+                                final int offset,
+                                final int length,
+                                @NotNull final GetObjectConsumer consumer) {
+    myObjectCache.getCollectionPage(isolateId, objectId, offset, length, consumer);
+  }
+
+  public void prefetchObject(@NotNull final String isolateId, @NotNull final String objectId) {
+    myObjectCache.prefetch(isolateId, objectId);
+  }
+
+  public void prefetchCollectionPage(@NotNull final String isolateId, @NotNull final String objectId, final int length) {
+    myObjectCache.prefetchCollectionPage(isolateId, objectId, 0, length);
+  }
+
+  public void invalidateObjectCache(@NotNull final String isolateId) {
+    myObjectCache.invalidate(isolateId);
   }
 
   public void evaluateInFrame(@NotNull final String isolateId,
@@ -495,21 +527,25 @@ public class VmServiceWrapper implements Disposable {
     addRequest(() -> myVmService.evaluateInFrame(isolateId, vmFrame.getIndex(), expression, new EvaluateInFrameConsumer() {
       @Override
       public void received(InstanceRef instanceRef) {
+        invalidateAfterEvaluation(isolateId);
         callback.evaluated(new DartVmServiceValue(myDebugProcess, isolateId, "result", instanceRef, null, null, false));
       }
 
       @Override
       public void received(Sentinel sentinel) {
+        invalidateAfterEvaluation(isolateId);
         callback.errorOccurred(sentinel.getValueAsString());
       }
 
       @Override
       public void received(ErrorRef errorRef) {
+        invalidateAfterEvaluation(isolateId);
         callback.errorOccurred(DartVmServiceEvaluator.getPresentableError(errorRef.getMessage()));
       }
 
       @Override
       public void onError(RPCError error) {
+        invalidateAfterEvaluation(isolateId);
         callback.errorOccurred(error.getMessage());
       }
     }));
@@ -530,26 +566,38 @@ public class VmServiceWrapper implements Disposable {
     evaluateInTargetContext(isolateId, targetId, expression, new EvaluateConsumer() {
       @Override
       public void received(InstanceRef instanceRef) {
+        invalidateAfterEvaluation(isolateId);
         callback.evaluated(new DartVmServiceValue(myDebugProcess, isolateId, "result", instanceRef, null, null, false));
       }
 
       @Override
       public void received(Sentinel sentinel) {
+        invalidateAfterEvaluation(isolateId);
         callback.errorOccurred(sentinel.getValueAsString());
       }
 
       @Override
       public void received(ErrorRef errorRef) {
+        invalidateAfterEvaluation(isolateId);
         callback.errorOccurred(DartVmServiceEvaluator.getPresentableError(errorRef.getMessage()));
       }
 
       @Override
       public void onError(RPCError error) {
+        invalidateAfterEvaluation(isolateId);
         callback.errorOccurred(error.getMessage());
       }
     });
   }
 
+  /**
+   * Evaluated expression may change objects of the paused isolate, e.g. {@code list.add(x)}, and even a plain reference like {@code a.b}
+   * may call a getter with side effects, so objects cached during this pause are reloaded after any evaluation.
+   */
+  private void invalidateAfterEvaluation(@NotNull final String isolateId) {
+    myObjectCache.invalidate(isolateId);
+  }
+
   public void callToString(@NotNull final String isolateId,
                            @NotNull final String targetId,
                            @NotNull final InvokeConsumer callback) {
@@ -190,6 +190,14 @@ public class DartVmServiceStackFrame extends XStackFrame {
     }
 
     node.addChildren(childrenList, true);
+
+    // The variables are likely to be expanded next; their first level of children is fetched while the user looks at the frame.
+    for (BoundVariable var : vars) {
+      final Object value = var.getValue();
+      if (value instanceof InstanceRef) {
+        DartVmServiceValue.prefetchChildren(myDebugProcess, myIsolateId, (InstanceRef)value);
+      }
+    }
   }
 
   @Nullable
@@ -13,6 +13,7 @@ import com.intellij.xdebugger.frame.presentation.XNumericValuePresentation;
 import com.intellij.xdebugger.frame.presentation.XStringValuePresentation;
 import com.jetbrains.lang.dart.ide.runner.server.vmService.DartVmServiceDebugProcess;
 import com.jetbrains.lang.dart.ide.runner.server.vmService.VmServiceConsumers;
+import com.jetbrains.lang.dart.ide.runner.server.vmService.VmServiceObjectCache;
 import org.dartlang.vm.service.consumer.GetObjectConsumer;
 import org.dartlang.vm.service.element.*;
 import org.jetbrains.annotations.NotNull;
@@ -372,56 +373,92 @@ public class DartVmServiceValue extends XNamedValue {
     final int offset = myCollectionChildrenAlreadyShown.get();
     final int count = Math.min(myInstanceRef.getLength() - offset, XCompositeNode.MAX_CHILDREN_TO_SHOW);
 
-    myDebugProcess.getVmServiceWrapper().getCollectionObject(myIsolateId, myInstanceRef.getId(), offset, count, new GetObjectConsumer() {
-      @Override
-      public void received(Obj instance) {
-        if (isListKind(myInstanceRef.getKind())) {
-          addListChildren(node, ((Instance)instance).getElements());
-        }
-        else if (myInstanceRef.getKind() == InstanceKind.Map) {
-          addMapChildren(node, Objects.requireNonNull(((Instance)instance).getAssociations()));
-        }
-        else {
-          assert false : myInstanceRef.getKind();
-        }
+    // The page usually contains the following children as well, so that 'Show more' doesn't need another request.
+    myDebugProcess.getVmServiceWrapper().getCollectionPage(myIsolateId, myInstanceRef.getId(), offset, myInstanceRef.getLength(),
+                                                           new CollectionChildrenConsumer(node, offset, count, true));
+  }
 
-        myCollectionChildrenAlreadyShown.set(myCollectionChildrenAlreadyShown.get() + count);
+  private class CollectionChildrenConsumer implements GetObjectConsumer {
+    @NotNull private final XCompositeNode myNode;
+    private final int myOffset;
+    private final int myCount;
+    private final boolean myPage;
+
+    CollectionChildrenConsumer(@NotNull final XCompositeNode node, final int offset, final int count, final boolean page) {
+      myNode = node;
+      myOffset = offset;
+      myCount = count;
+      myPage = page;
+    }
 
-        if (offset + count < myInstanceRef.getLength()) {
-          node.tooManyChildren(myInstanceRef.getLength() - offset - count);
-        }
+    @Override
+    public void received(Obj obj) {
+      final Instance instance = (Instance)obj;
+      final int start = myOffset - (myPage ? VmServiceObjectCache.getCollectionPageStart(myOffset) : 0);
+      final int size = isListKind(myInstanceRef.getKind())
+                       ? (instance.getElements() == null ? 0 : instance.getElements().size())
+                       : (instance.getAssociations() == null ? 0 : instance.getAssociations().size());
+      if (myPage && start + myCount > size) {
+        // the VM has returned fewer elements than requested, ask for the exact range
+        myDebugProcess.getVmServiceWrapper().getCollectionObject(myIsolateId, myInstanceRef.getId(), myOffset, myCount,
+                                                                 new CollectionChildrenConsumer(myNode, myOffset, myCount, false));
+        return;
       }
 
-      @Override
-      public void received(Sentinel sentinel) {
-        node.setErrorMessage(sentinel.getValueAsString());
+      if (isListKind(myInstanceRef.getKind())) {
+        addListChildren(myNode, instance.getElements(), start, start + myCount);
+      }
+      else if (myInstanceRef.getKind() == InstanceKind.Map) {
+        addMapChildren(myNode, Objects.requireNonNull(instance.getAssociations()), start, start + myCount);
+      }
+      else {
+        assert false : myInstanceRef.getKind();
       }
 
-      @Override
-      public void onError(RPCError error) {
-        node.setErrorMessage(error.getMessage());
+      myCollectionChildrenAlreadyShown.set(myCollectionChildrenAlreadyShown.get() + myCount);
+
+      if (myOffset + myCount < myInstanceRef.getLength()) {
+        myNode.tooManyChildren(myInstanceRef.getLength() - myOffset - myCount);
       }
-    });
+    }
+
+    @Override
+    public void received(Sentinel sentinel) {
+      myNode.setErrorMessage(sentinel.getValueAsString());
+    }
+
+    @Override
+    public void onError(RPCError error) {
+      myNode.setErrorMessage(error.getMessage());
+    }
   }
 
-  private void addListChildren(@NotNull final XCompositeNode node, @Nullable final ElementList<InstanceRef> listElements) {
+  private void addListChildren(@NotNull final XCompositeNode node,
+                               @Nullable final ElementList<InstanceRef> listElements,
+                               final int start,
+                               final int end) {
     if (listElements == null) {
       node.addChildren(XValueChildrenList.EMPTY, true);
       return;
     }
 
-    final XValueChildrenList childrenList = new XValueChildrenList(listElements.size());
+    final XValueChildrenList childrenList = new XValueChildrenList(end - start);
     int index = myCollectionChildrenAlreadyShown.get();
-    for (InstanceRef listElement : listElements) {
+    for (int i = start; i < end; i++) {
+      final InstanceRef listElement = listElements.get(i);
       childrenList.add(new DartVmServiceValue(myDebugProcess, myIsolateId, String.valueOf(index++), listElement, null, null, false));
     }
     node.addChildren(childrenList, true);
   }
 
-  private void addMapChildren(@NotNull final XCompositeNode node, @NotNull final ElementList<MapAssociation> mapAssociations) {
-    final XValueChildrenList childrenList = new XValueChildrenList(mapAssociations.size());
+  private void addMapChildren(@NotNull final XCompositeNode node,
+                              @NotNull final ElementList<MapAssociation> mapAssociations,
+                              final int start,
+                              final int end) {
+    final XValueChildrenList childrenList = new XValueChildrenList(end - start);
     int index = myCollectionChildrenAlreadyShown.get();
-    for (MapAssociation mapAssociation : mapAssociations) {
+    for (int i = start; i < end; i++) {
+      final MapAssociation mapAssociation = mapAssociations.get(i);
       final InstanceRef keyInstanceRef = mapAssociation.getKey();
       final InstanceRef valueInstanceRef = mapAssociation.getValue();
 
@@ -485,6 +522,32 @@ public class DartVmServiceValue extends XNamedValue {
     }
   }
 
+  /**
+   * Requests the objects that {@link #computeChildren} of the value would request, so that expanding the value is answered from the
+   * object cache of the {@link com.jetbrains.lang.dart.ide.runner.server.vmService.VmServiceWrapper}.
+   */
+  static void prefetchChildren(@NotNull final DartVmServiceDebugProcess debugProcess,
+                               @NotNull final String isolateId,
+                               @NotNull final InstanceRef instanceRef) {
+    final InstanceKind kind = instanceRef.getKind();
+    if (kind == InstanceKind.Null ||
+        kind == InstanceKind.Bool ||
+        kind == InstanceKind.Double ||
+        kind == InstanceKind.Int ||
+        kind == InstanceKind.String) {
+      return;
+    }
+
+    if (isListKind(kind) || kind == InstanceKind.Map) {
+      if (instanceRef.getLength() > 0) {
+        debugProcess.getVmServiceWrapper().prefetchCollectionPage(isolateId, instanceRef.getId(), instanceRef.getLength());
+      }
+    }
+    else {
+      debugProcess.getVmServiceWrapper().prefetchObject(isolateId, instanceRef.getId());
+    }
+  }
+
   private static boolean isListKind(@NotNull final InstanceKind kind) {
     // List, Uint8ClampedList, Uint8List, Uint16List, Uint32List, Uint64List, Int8List, Int16List, Int32List, Int64List, Float32List, Float64List, Int32x4List, Float32x4List, Float64x2List
     return kind == InstanceKind.List ||
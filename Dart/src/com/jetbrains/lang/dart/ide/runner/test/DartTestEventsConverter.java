@@ -7,6 +7,7 @@ import com.intellij.execution.testframework.sm.ServiceMessageBuilder;
 import com.intellij.execution.testframework.sm.runner.OutputToGeneralTestEventsConverter;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.PathUtil;
@@ -17,7 +18,9 @@ import jetbrains.buildServer.messages.serviceMessages.ServiceMessageVisitor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -32,6 +35,12 @@ import java.util.regex.Pattern;
  * NOTE: The test runner runs tests asynchronously. It is possible to get a 'testDone'
  * event followed some time later by an 'error' event for that same test. That should
  * convert a successful test into a failure. That case is not being handled.
+ * <p>
+ * In the streaming mode, meant for large suites with a lot of output, lines that are not JSON are passed on without an attempt to parse
+ * them, consecutive 'print' events of a test are reported as a single output event, and the output of a test that exceeds
+ * {@link #setMaxOutputPerTest(int)} is written to a temporary file instead of being kept in the test tree.
+ * 'testStart' and 'testDone' events are not batched: the test tree needs a separate started and finished event for each test,
+ * and service messages have no form that starts or finishes several tests at once.
  */
 public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter {
   private static final Logger LOG = Logger.getInstance(DartTestEventsConverter.class.getName());
@@ -84,6 +93,9 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   private static final String SET_UP_ALL_VIRTUAL_TEST_NAME = "(setUpAll)";
   private static final String TEAR_DOWN_ALL_VIRTUAL_TEST_NAME = "(tearDownAll)";
 
+  // the pending output of a test is reported when it gets this long even if no other event comes
+  private static final int MAX_PENDING_OUTPUT = 64 * 1024;
+
   private static final Gson GSON = new Gson();
 
   @NotNull private final DartUrlResolver myUrlResolver;
@@ -97,11 +109,27 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   private final Map<Integer, Suite> mySuiteData;
   private int mySuitCount;
 
+  private final boolean myStreaming;
+  private int myMaxOutputPerTest = Integer.MAX_VALUE;
+  @Nullable private Test myPendingOutputTest;
+  private final StringBuilder myPendingOutput = new StringBuilder();
+  @Nullable private File mySpillFile;
+  @Nullable private Writer mySpillWriter;
+  @Nullable private Test myLastSpilledTest;
+
   public DartTestEventsConverter(@NotNull final String testFrameworkName,
                                  @NotNull final TestConsoleProperties consoleProperties,
                                  @NotNull final DartUrlResolver urlResolver) {
+    this(testFrameworkName, consoleProperties, urlResolver, false);
+  }
+
+  public DartTestEventsConverter(@NotNull final String testFrameworkName,
+                                 @NotNull final TestConsoleProperties consoleProperties,
+                                 @NotNull final DartUrlResolver urlResolver,
+                                 final boolean streaming) {
     super(testFrameworkName, consoleProperties);
     myUrlResolver = urlResolver;
+    myStreaming = streaming;
     myTestIdToTimestamp = new TIntLongHashMap();
     myTestData = new HashMap<>();
     myGroupData = new HashMap<>();
@@ -118,27 +146,62 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return processEventText(text);
   }
 
+  /**
+   * Output of a test that exceeds the given number of characters is written to a temporary file; a link to the file is added to the
+   * test output instead. Applies to the streaming mode only.
+   */
+  public void setMaxOutputPerTest(final int maxOutputPerTest) {
+    myMaxOutputPerTest = maxOutputPerTest;
+  }
+
+  @Override
+  public void flushBufferOnProcessTermination(final int exitCode) {
+    try {
+      flushPendingOutput();
+    }
+    catch (ParseException ex) {
+      // ignore it
+    }
+    closeSpillWriter();
+    super.flushBufferOnProcessTermination(exitCode);
+  }
+
+  @Override
+  public void dispose() {
+    closeSpillWriter();
+    super.dispose();
+  }
+
   private boolean processEventText(final String text) throws JsonSyntaxException, ParseException {
+    if (myStreaming && !StringUtil.trimLeading(text).startsWith("{")) {
+      // not an event, there's no need to pay for a JsonSyntaxException
+      return flushPendingOutput() & processNonJsonText(text);
+    }
+
     JsonParser jp = new JsonParser();
     JsonElement elem;
     try {
       elem = jp.parse(text);
     }
     catch (JsonSyntaxException ex) {
-      if (text.contains("\"json\" is not an allowed value for option \"reporter\"")) {
-        final ServiceMessageBuilder testStarted = ServiceMessageBuilder.testStarted("Failed to start");
-        final ServiceMessageBuilder testFailed = ServiceMessageBuilder.testFailed("Failed to start");
-        testFailed.addAttribute("message", "Please update your pubspec.yaml dependency on package:test to version 0.12.9 or later.");
-        final ServiceMessageBuilder testFinished = ServiceMessageBuilder.testFinished("Failed to start");
-        return finishMessage(testStarted, 1, 0) & finishMessage(testFailed, 1, 0) & finishMessage(testFinished, 1, 0);
-      }
-
-      return doProcessServiceMessages(text);
+      return flushPendingOutput() & processNonJsonText(text);
     }
     if (elem == null || !elem.isJsonObject()) return false;
     return process(elem.getAsJsonObject());
   }
 
+  private boolean processNonJsonText(@NotNull final String text) throws ParseException {
+    if (text.contains("\"json\" is not an allowed value for option \"reporter\"")) {
+      final ServiceMessageBuilder testStarted = ServiceMessageBuilder.testStarted("Failed to start");
+      final ServiceMessageBuilder testFailed = ServiceMessageBuilder.testFailed("Failed to start");
+      testFailed.addAttribute("message", "Please update your pubspec.yaml dependency on package:test to version 0.12.9 or later.");
+      final ServiceMessageBuilder testFinished = ServiceMessageBuilder.testFinished("Failed to start");
+      return finishMessage(testStarted, 1, 0) & finishMessage(testFailed, 1, 0) & finishMessage(testFinished, 1, 0);
+    }
+
+    return doProcessServiceMessages(text);
+  }
+
   private boolean doProcessServiceMessages(@NotNull final String text) throws ParseException {
     LOG.debug(">>> " + text);
     return super.processServiceMessages(text, myCurrentOutputType, myCurrentVisitor);
@@ -146,6 +209,10 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
 
   private boolean process(JsonObject obj) throws JsonSyntaxException, ParseException {
     String type = obj.get(JSON_TYPE).getAsString();
+    if (!TYPE_PRINT.equals(type) && !flushPendingOutput()) {
+      return false;
+    }
+
     if (TYPE_TEST_START.equals(type)) {
       return handleTestStart(obj);
     }
@@ -361,9 +428,14 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
         return true; // output in successfully passing setUpAll/tearDownAll is not important enough to make these nodes visible
       }
 
+      result = flushPendingOutput();
       final ServiceMessageBuilder testStarted = ServiceMessageBuilder.testStarted(test.getBaseName());
       test.myTestStartReported = true;
-      result = finishMessage(testStarted, test.getId(), test.getValidParentId());
+      result &= finishMessage(testStarted, test.getId(), test.getValidParentId());
+    }
+
+    if (myStreaming) {
+      return result & addPendingOutput(test, appendLineBreakIfNeeded(getMessage(obj)));
     }
 
     ServiceMessageBuilder message = ServiceMessageBuilder.testStdOut(test.getBaseName());
@@ -372,6 +444,96 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return result & finishMessage(message, test.getId(), test.getValidParentId());
   }
 
+  private boolean addPendingOutput(@NotNull final Test test, @NotNull final String output) throws ParseException {
+    boolean result = true;
+    if (myPendingOutputTest != test) {
+      result = flushPendingOutput();
+      myPendingOutputTest = test;
+    }
+
+    if (test.myOutputLength + output.length() > myMaxOutputPerTest) {
+      spillOutput(test, output);
+    }
+    else {
+      test.myOutputLength += output.length();
+      myPendingOutput.append(output);
+    }
+
+    if (myPendingOutput.length() >= MAX_PENDING_OUTPUT) {
+      result &= flushPendingOutput();
+    }
+    return result;
+  }
+
+  private boolean flushPendingOutput() throws ParseException {
+    final Test test = myPendingOutputTest;
+    if (test == null) return true;
+
+    myPendingOutputTest = null;
+    if (myPendingOutput.length() == 0) return true;
+
+    final ServiceMessageBuilder message = ServiceMessageBuilder.testStdOut(test.getBaseName());
+    message.addAttribute("out", myPendingOutput.toString());
+    myPendingOutput.setLength(0);
+    return finishMessage(message, test.getId(), test.getValidParentId());
+  }
+
+  private void spillOutput(@NotNull final Test test, @NotNull final String output) {
+    final Writer writer = getSpillWriter();
+    if (!test.myOutputSpilled) {
+      test.myOutputSpilled = true;
+      myPendingOutput.append(writer == null || mySpillFile == null
+                             ? "Output is longer than " + myMaxOutputPerTest + " characters, the rest is omitted\n"
+                             : "Output is longer than " + myMaxOutputPerTest + " characters, the rest is written to " +
+                               mySpillFile.getPath() + "\n");
+    }
+    if (writer == null) return;
+
+    try {
+      if (myLastSpilledTest != test) {
+        myLastSpilledTest = test;
+        writer.write("--- " + test.getName() + " ---\n");
+      }
+      writer.write(output);
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to write test output to " + mySpillFile, e);
+      closeSpillWriter();
+      mySpillFile = null;
+    }
+  }
+
+  @Nullable
+  private Writer getSpillWriter() {
+    if (mySpillWriter != null) return mySpillWriter;
+
+    try {
+      final boolean append = mySpillFile != null;
+      if (mySpillFile == null) {
+        mySpillFile = FileUtil.createTempFile("dart-test-output", ".log", true);
+      }
+      mySpillWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mySpillFile, append), StandardCharsets.UTF_8));
+      myLastSpilledTest = null;
+      return mySpillWriter;
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to create a file for test output", e);
+      return null;
+    }
+  }
+
+  private void closeSpillWriter() {
+    if (mySpillWriter == null) return;
+
+    try {
+      mySpillWriter.close();
+    }
+    catch (IOException e) {
+      // ignore it
+    }
+    mySpillWriter = null;
+  }
+
   private boolean handleStart(JsonObject obj) throws ParseException {
     myTestIdToTimestamp.clear();
     myTestData.clear();
@@ -385,6 +547,8 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   private boolean handleDone(JsonObject obj) throws ParseException {
     // The test runner has reached the end of the tests.
     processAllTestsDone();
+    // the file stays until the IDE exits so that the output can be opened from the test tree
+    closeSpillWriter();
     return true;
   }
 
@@ -710,6 +874,8 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   private static class Test extends Item {
     private boolean myTestStartReported = false;
     private boolean myTestErrorReported = false;
+    private int myOutputLength = 0;
+    private boolean myOutputSpilled = false;
 
     static Test from(JsonObject obj, Map<Integer, Group> groups, Map<Integer, Suite> suites) {
       int[] groupIds = GSON.fromJson(obj.get(JSON_GROUP_IDS), (Type)int[].class);
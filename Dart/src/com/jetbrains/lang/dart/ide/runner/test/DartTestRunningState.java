@@ -225,7 +225,11 @@ public class DartTestRunningState extends DartCommandLineRunningState {
       final DartRunConfiguration runConfiguration = (DartRunConfiguration)getConfiguration();
       try {
         final VirtualFile file = runConfiguration.getRunnerParameters().getDartFileOrDirectory();
-        return new DartTestEventsConverter(testFrameworkName, consoleProperties, DartUrlResolver.getInstance(getProject(), file));
+        final DartTestEventsConverter converter =
+          new DartTestEventsConverter(testFrameworkName, consoleProperties, DartUrlResolver.getInstance(getProject(), file),
+                                      Registry.is("dart.test.events.streaming", false));
+        converter.setMaxOutputPerTest(Registry.intValue("dart.test.output.per.test.kb", 1024) * 1024);
+        return converter;
       }
       catch (RuntimeConfigurationError error) {
         throw new RuntimeException(error); // can't happen, already checked
@@ -0,0 +1,119 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.util;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable mapping between package names and package root folders, precomputed by {@link DartPackageMapService} and shared by all
+ * {@link DartUrlResolver} instances created for the same pubspec.yaml file or module.
+ * <p>
+ * Package name -> roots is a hash map lookup. Root -> package name, needed to build a {@code package:} URI for a file, is a lookup in a
+ * trie of path segments, so its cost depends on the depth of the file path and not on the number of packages.
+ */
+public final class DartPackageMap {
+  public static final DartPackageMap EMPTY = new DartPackageMap(Collections.emptyMap(), Collections.emptyMap());
+
+  private static final class TrieNode {
+    @Nullable private Map<String, TrieNode> myChildren;
+    @Nullable private String myPackageName;
+
+    @NotNull
+    private TrieNode getOrCreateChild(@NotNull final String segment) {
+      if (myChildren == null) {
+        myChildren = new THashMap<>();
+      }
+      return myChildren.computeIfAbsent(segment, s -> new TrieNode());
+    }
+
+    @Nullable
+    private TrieNode getChild(@NotNull final String segment) {
+      return myChildren == null ? null : myChildren.get(segment);
+    }
+  }
+
+  // package name -> live package folder, from .packages file or from pubspec.yaml files of the path packages
+  @NotNull private final Map<String, VirtualFile> myPackageNameToDir;
+  // package name -> package folder paths, from the Dart Packages library of a module
+  @NotNull private final Map<String, List<String>> myPackageNameToDirPaths;
+  @NotNull private final TrieNode myRootNode = new TrieNode();
+
+  public DartPackageMap(@NotNull final Map<String, VirtualFile> packageNameToDir,
+                        @NotNull final Map<String, List<String>> packageNameToDirPaths) {
+    myPackageNameToDir = Collections.unmodifiableMap(new THashMap<>(packageNameToDir));
+    myPackageNameToDirPaths = Collections.unmodifiableMap(new THashMap<>(packageNameToDirPaths));
+
+    for (Map.Entry<String, VirtualFile> entry : myPackageNameToDir.entrySet()) {
+      addRoot(entry.getValue().getPath(), entry.getKey());
+    }
+    for (Map.Entry<String, List<String>> entry : myPackageNameToDirPaths.entrySet()) {
+      for (String dirPath : entry.getValue()) {
+        addRoot(dirPath, entry.getKey());
+      }
+    }
+  }
+
+  private void addRoot(@NotNull final String rootPath, @NotNull final String packageName) {
+    TrieNode node = myRootNode;
+    for (String segment : StringUtil.tokenize(rootPath, "/")) {
+      node = node.getOrCreateChild(segment);
+    }
+    // the first package wins if several packages have the same root
+    if (node.myPackageName == null) {
+      node.myPackageName = packageName;
+    }
+  }
+
+  @NotNull
+  public Map<String, VirtualFile> getPackageNameToDir() {
+    return myPackageNameToDir;
+  }
+
+  @NotNull
+  public Map<String, List<String>> getPackageNameToDirPaths() {
+    return myPackageNameToDirPaths;
+  }
+
+  @NotNull
+  public Collection<String> getLivePackageNames() {
+    return myPackageNameToDir.keySet();
+  }
+
+  /**
+   * @return {@code package:} URI of the file if it is located in one of the package roots, {@code null} otherwise. If package roots are
+   * nested, the innermost one is used.
+   */
+  @Nullable
+  public String getPackageUrl(@NotNull final String filePath) {
+    TrieNode node = myRootNode;
+    TrieNode packageNode = null;
+    int packageNodeEnd = -1;
+
+    int start = filePath.startsWith("/") ? 1 : 0;
+    while (start < filePath.length()) {
+      int end = filePath.indexOf('/', start);
+      if (end < 0) end = filePath.length();
+
+      node = node.getChild(filePath.substring(start, end));
+      if (node == null) break;
+
+      if (node.myPackageName != null) {
+        packageNode = node;
+        packageNodeEnd = end;
+      }
+      start = end + 1;
+    }
+
+    if (packageNode == null) return null;
+    final String pathInPackage = packageNodeEnd == filePath.length() ? "/" : filePath.substring(packageNodeEnd);
+    return DartUrlResolver.PACKAGE_PREFIX + packageNode.myPackageName + pathInPackage;
+  }
+}
@@ -0,0 +1,299 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.util;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.*;
+import com.intellij.openapi.roots.impl.libraries.LibraryEx;
+import com.intellij.openapi.roots.libraries.LibraryProperties;
+import com.intellij.openapi.roots.libraries.LibraryTablesRegistrar;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.*;
+import com.intellij.util.PathUtil;
+import com.intellij.util.messages.MessageBusConnection;
+import com.jetbrains.lang.dart.sdk.DartPackagesLibraryProperties;
+import com.jetbrains.lang.dart.sdk.DartPackagesLibraryType;
+import gnu.trove.THashMap;
+import gnu.trove.THashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps {@link DartPackageMap}s used by {@link DartUrlResolverImpl}, so that package maps are not rebuilt from .packages and pubspec.yaml
+ * files each time a resolver is created, which happens for each import or package reference being resolved.
+ * <p>
+ * A package map of a pubspec.yaml file remembers the files it has been built from: the pubspec.yaml file itself, the .packages file next to
+ * it and pubspec.yaml files of the path packages. It is dropped when any of them is changed, including unsaved changes in pubspec.yaml
+ * documents. Maps of other pubspec.yaml files are kept. Creation, deletion, move or rename of such files, changes of project roots and
+ * changes of folders that may contain packages drop all maps.
+ * <p>
+ * Package maps of modules without pubspec.yaml come from the "Dart Packages" library and are dropped when project roots change.
+ */
+public final class DartPackageMapService {
+
+  private static final class Entry {
+    @NotNull private final DartPackageMap myPackageMap;
+    // system-independent paths of the files the package map is built from
+    @NotNull private final Set<String> myDependencyPaths;
+
+    private Entry(@NotNull final DartPackageMap packageMap, @NotNull final Set<String> dependencyPaths) {
+      myPackageMap = packageMap;
+      myDependencyPaths = dependencyPaths;
+    }
+
+    private boolean dependsOnFilesIn(@NotNull final String dirPath) {
+      for (String path : myDependencyPaths) {
+        if (FileUtil.startsWith(path, dirPath)) return true;
+      }
+      for (VirtualFile packageDir : myPackageMap.getPackageNameToDir().values()) {
+        if (FileUtil.startsWith(packageDir.getPath(), dirPath)) return true;
+      }
+      return false;
+    }
+  }
+
+  @NotNull private final Project myProject;
+
+  private final Object myLock = new Object();
+  @NotNull private final Map<VirtualFile, Entry> myPubspecToPackageMap = new ConcurrentHashMap<>();
+  @NotNull private final Map<Module, DartPackageMap> myModuleToPackageMap = new ConcurrentHashMap<>();
+  // incremented on each invalidation, package maps computed in an older generation are not cached
+  private long myGeneration;
+
+  public static DartPackageMapService getInstance(@NotNull final Project project) {
+    return ServiceManager.getService(project, DartPackageMapService.class);
+  }
+
+  public DartPackageMapService(@NotNull final Project project) {
+    myProject = project;
+
+    final MessageBusConnection connection = project.getMessageBus().connect(project);
+    connection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+      @Override
+      public void after(@NotNull List<? extends VFileEvent> events) {
+        for (VFileEvent event : events) {
+          onFileEvent(event);
+        }
+      }
+    });
+    connection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootListener() {
+      @Override
+      public void rootsChanged(@NotNull ModuleRootEvent event) {
+        invalidateAll();
+      }
+    });
+
+    EditorFactory.getInstance().getEventMulticaster().addDocumentListener(new DocumentListener() {
+      @Override
+      public void documentChanged(@NotNull DocumentEvent event) {
+        final VirtualFile file = FileDocumentManager.getInstance().getFile(event.getDocument());
+        if (file != null && PubspecYamlUtil.PUBSPEC_YAML.equals(file.getName())) {
+          invalidate(file.getPath());
+        }
+      }
+    }, project);
+  }
+
+  private static boolean isPackageConfigFileName(@Nullable final String fileName) {
+    return PubspecYamlUtil.PUBSPEC_YAML.equals(fileName) || DotPackagesFileUtil.DOT_PACKAGES.equals(fileName);
+  }
+
+  private void onFileEvent(@NotNull final VFileEvent event) {
+    final String fileName = PathUtil.getFileName(event.getPath());
+
+    if (event instanceof VFileContentChangeEvent) {
+      if (isPackageConfigFileName(fileName)) {
+        invalidate(event.getPath());
+      }
+      return;
+    }
+
+    if (event instanceof VFilePropertyChangeEvent) {
+      final VFilePropertyChangeEvent propertyChangeEvent = (VFilePropertyChangeEvent)event;
+      if (!propertyChangeEvent.isRename()) return;
+
+      if (isPackageConfigFileName(String.valueOf(propertyChangeEvent.getOldValue())) ||
+          isPackageConfigFileName(String.valueOf(propertyChangeEvent.getNewValue()))) {
+        invalidateAll();
+      }
+      else if (propertyChangeEvent.getFile().isDirectory()) {
+        invalidateFilesIn(propertyChangeEvent.getOldPath());
+      }
+      return;
+    }
+
+    if (event instanceof VFileCreateEvent ||
+        event instanceof VFileDeleteEvent ||
+        event instanceof VFileMoveEvent ||
+        event instanceof VFileCopyEvent) {
+      final VirtualFile file = event.getFile();
+      if (isPackageConfigFileName(fileName) || PubspecYamlUtil.LIB_DIR_NAME.equals(fileName)) {
+        // new pubspec.yaml, .packages or lib folder may change package maps of any pubspec.yaml file
+        invalidateAll();
+      }
+      else if (event instanceof VFileDeleteEvent && file != null && file.isDirectory()) {
+        invalidateFilesIn(event.getPath());
+      }
+      else if (event instanceof VFileMoveEvent && file != null && file.isDirectory()) {
+        invalidateFilesIn(((VFileMoveEvent)event).getOldPath());
+      }
+    }
+  }
+
+  private void invalidate(@NotNull final String filePath) {
+    synchronized (myLock) {
+      myGeneration++;
+      myPubspecToPackageMap.values().removeIf(entry -> entry.myDependencyPaths.contains(filePath));
+    }
+  }
+
+  private void invalidateFilesIn(@NotNull final String dirPath) {
+    synchronized (myLock) {
+      myGeneration++;
+      myPubspecToPackageMap.values().removeIf(entry -> entry.dependsOnFilesIn(dirPath));
+    }
+  }
+
+  private void invalidateAll() {
+    synchronized (myLock) {
+      myGeneration++;
+      myPubspecToPackageMap.clear();
+      myModuleToPackageMap.clear();
+    }
+  }
+
+  /**
+   * Packages from the .packages file next to {@code pubspecYamlFile} if it exists, otherwise this package itself and its path packages.
+   */
+  @NotNull
+  public DartPackageMap getLivePackageMap(@NotNull final VirtualFile pubspecYamlFile) {
+    final Entry entry = myPubspecToPackageMap.get(pubspecYamlFile);
+    if (entry != null) return entry.myPackageMap;
+
+    final long generation;
+    synchronized (myLock) {
+      generation = myGeneration;
+    }
+
+    final Set<String> dependencyPaths = new THashSet<>();
+    final DartPackageMap packageMap = computeLivePackageMap(myProject, pubspecYamlFile, dependencyPaths);
+
+    synchronized (myLock) {
+      if (generation == myGeneration) {
+        myPubspecToPackageMap.put(pubspecYamlFile, new Entry(packageMap, dependencyPaths));
+      }
+    }
+    return packageMap;
+  }
+
+  /**
+   * Packages from the "Dart Packages" library of the module containing {@code contextFile}.
+   */
+  @NotNull
+  public DartPackageMap getLibraryPackageMap(@NotNull final VirtualFile contextFile) {
+    final Module module = ModuleUtilCore.findModuleForFile(contextFile, myProject);
+    if (module == null) {
+      return computeLibraryPackageMap(ProjectRootManager.getInstance(myProject).getFileIndex().getOrderEntriesForFile(contextFile));
+    }
+
+    final DartPackageMap cached = myModuleToPackageMap.get(module);
+    if (cached != null) return cached;
+
+    final long generation;
+    synchronized (myLock) {
+      generation = myGeneration;
+    }
+
+    final DartPackageMap packageMap = computeLibraryPackageMap(Arrays.asList(ModuleRootManager.getInstance(module).getOrderEntries()));
+
+    synchronized (myLock) {
+      if (generation == myGeneration) {
+        myModuleToPackageMap.put(module, packageMap);
+      }
+    }
+    return packageMap;
+  }
+
+  @NotNull
+  private static DartPackageMap computeLivePackageMap(@NotNull final Project project,
+                                                      @NotNull final VirtualFile pubspecYamlFile,
+                                                      @NotNull final Set<String> dependencyPaths) {
+    final VirtualFile baseDir = pubspecYamlFile.getParent();
+    if (baseDir == null) return DartPackageMap.EMPTY;
+
+    dependencyPaths.add(pubspecYamlFile.getPath());
+    dependencyPaths.add(baseDir.getPath() + "/" + DotPackagesFileUtil.DOT_PACKAGES);
+
+    final Map<String, VirtualFile> packageNameToDir = new THashMap<>();
+    final VirtualFile dotPackagesFile = baseDir.findChild(DotPackagesFileUtil.DOT_PACKAGES);
+
+    if (dotPackagesFile != null && !dotPackagesFile.isDirectory()) {
+      final Map<String, String> packagesMap = DotPackagesFileUtil.getPackagesMap(dotPackagesFile);
+      if (packagesMap != null) {
+        for (Map.Entry<String, String> entry : packagesMap.entrySet()) {
+          final String packageName = entry.getKey();
+          final String packagePath = entry.getValue();
+          final VirtualFile packageDir = pubspecYamlFile.getFileSystem().findFileByPath(packagePath);
+          if (packageDir != null) {
+            packageNameToDir.put(packageName, packageDir);
+          }
+        }
+      }
+    }
+    else {
+      final String name = PubspecYamlUtil.getDartProjectName(pubspecYamlFile);
+      final VirtualFile libFolder = baseDir.findChild(PubspecYamlUtil.LIB_DIR_NAME);
+
+      if (name != null && libFolder != null && libFolder.isDirectory()) {
+        packageNameToDir.put(name, libFolder);
+      }
+
+      PubspecYamlUtil.processInProjectPathPackagesRecursively(project, pubspecYamlFile, (packageName, packageDir) -> {
+        packageNameToDir.put(packageName, packageDir);
+        dependencyPaths.add(packageDir.getParent().getPath() + "/" + PubspecYamlUtil.PUBSPEC_YAML);
+      });
+    }
+
+    return new DartPackageMap(packageNameToDir, new THashMap<>());
+  }
+
+  @NotNull
+  private static DartPackageMap computeLibraryPackageMap(@NotNull final List<OrderEntry> orderEntries) {
+    for (OrderEntry orderEntry : orderEntries) {
+      if (orderEntry instanceof LibraryOrderEntry &&
+          LibraryTablesRegistrar.PROJECT_LEVEL.equals(((LibraryOrderEntry)orderEntry).getLibraryLevel()) &&
+          DartPackagesLibraryType.DART_PACKAGES_LIBRARY_NAME.equals(((LibraryOrderEntry)orderEntry).getLibraryName())) {
+        final LibraryEx library = (LibraryEx)((LibraryOrderEntry)orderEntry).getLibrary();
+        final LibraryProperties properties = library == null ? null : library.getProperties();
+
+        if (properties instanceof DartPackagesLibraryProperties) {
+          final Map<String, List<String>> packageNameToDirPaths = new THashMap<>();
+          for (Map.Entry<String, List<String>> entry : ((DartPackagesLibraryProperties)properties).getPackageNameToDirsMap().entrySet()) {
+            if (entry != null && entry.getKey() != null && entry.getValue() != null) {
+              packageNameToDirPaths.put(entry.getKey(), entry.getValue());
+            }
+          }
+          return new DartPackageMap(new THashMap<>(), packageNameToDirPaths);
+        }
+      }
+    }
+
+    return DartPackageMap.EMPTY;
+  }
+}
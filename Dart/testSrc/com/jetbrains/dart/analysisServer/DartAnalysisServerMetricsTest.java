@@ -0,0 +1,98 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.dart.analysisServer;
+
+import com.google.dart.server.internal.remote.AnalysisServerMetrics;
+import com.google.dart.server.internal.remote.StreamingResponseStream;
+import com.intellij.openapi.util.io.FileUtil;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DartAnalysisServerMetricsTest extends TestCase {
+
+  public void testRequestStatistics() {
+    final AnalysisServerMetrics metrics = new AnalysisServerMetrics();
+    metrics.requestSent("1", "analysis.getHover");
+    metrics.requestSent("2", "analysis.getHover");
+    metrics.requestSent("3", "completion.getSuggestions");
+    metrics.responseReceived("1", false);
+    metrics.responseReceived("3", true);
+    metrics.responseReceived("unknown", false);
+    metrics.requestTimedOut("analysis.getHover");
+    metrics.requestCancelled("completion.getSuggestions");
+
+    final AnalysisServerMetrics.RequestStatistics hover = metrics.getRequestStatistics("analysis.getHover");
+    assertEquals(1, hover.getCount());
+    assertEquals(0, hover.getErrorCount());
+    assertEquals(1, hover.getInFlightCount());
+    assertEquals(1, hover.getTimeoutCount());
+    long histogramCount = 0;
+    for (long count : hover.getBucketCounts()) {
+      histogramCount += count;
+    }
+    assertEquals(1, histogramCount);
+
+    final AnalysisServerMetrics.RequestStatistics suggestions = metrics.getRequestStatistics("completion.getSuggestions");
+    assertEquals(1, suggestions.getCount());
+    assertEquals(1, suggestions.getErrorCount());
+    assertEquals(0, suggestions.getInFlightCount());
+    assertEquals(1, suggestions.getCancellationCount());
+
+    metrics.clearPendingRequests();
+    assertEquals(0, metrics.getRequestStatistics("analysis.getHover").getInFlightCount());
+
+    final List<String> methods = new ArrayList<>();
+    for (AnalysisServerMetrics.RequestStatistics statistics : metrics.getRequestStatistics()) {
+      methods.add(statistics.getMethod());
+    }
+    assertEquals(Arrays.asList("analysis.getHover", "completion.getSuggestions"), methods);
+
+    metrics.reset();
+    assertEquals(0, metrics.getRequestStatistics("analysis.getHover").getCount());
+  }
+
+  public void testClearPendingRequestsOfOneClient() {
+    final AnalysisServerMetrics metrics = new AnalysisServerMetrics();
+    metrics.requestSent("0:1", "analysis.getHover");
+    metrics.requestSent("1:1", "analysis.getHover");
+    metrics.requestSent("10:1", "analysis.getHover");
+    assertEquals(3, metrics.getRequestStatistics("analysis.getHover").getInFlightCount());
+
+    // the second of several clients sharing the metrics is restarted
+    metrics.clearPendingRequests("1:");
+    assertEquals(2, metrics.getRequestStatistics("analysis.getHover").getInFlightCount());
+
+    metrics.responseReceived("0:1", false);
+    metrics.responseReceived("10:1", false);
+    metrics.responseReceived("1:1", false);
+    final AnalysisServerMetrics.RequestStatistics hover = metrics.getRequestStatistics("analysis.getHover");
+    assertEquals(0, hover.getInFlightCount());
+    assertEquals(2, hover.getCount());
+  }
+
+  public void testNotificationStatisticsFromStream() throws Exception {
+    final AnalysisServerMetrics metrics = new AnalysisServerMetrics();
+    final PipedOutputStream out = new PipedOutputStream();
+    final StreamingResponseStream stream = new StreamingResponseStream(new PipedInputStream(out), null, null);
+    stream.setJsonLineListener(metrics::jsonLineReceived);
+    try (InputStream in = new FileInputStream(new File(DartTestUtils.BASE_TEST_DATA_PATH + "/analysisServer/traffic/session.log"))) {
+      FileUtil.copy(in, out);
+    }
+    out.close();
+    //noinspection StatementWithEmptyBody
+    while (stream.takeResponse() != null) ;
+
+    final List<String> notifications = new ArrayList<>();
+    for (AnalysisServerMetrics.NotificationStatistics statistics : metrics.getNotificationStatistics()) {
+      assertTrue(statistics.getTotalChars() >= statistics.getMaxChars());
+      notifications.add(statistics.getEvent() + " " + statistics.getCount());
+    }
+    assertTrue(notifications.toString(), notifications.contains("analysis.errors 2"));
+    assertTrue(notifications.toString(), notifications.contains("completion.results 2"));
+    assertTrue(notifications.toString(), notifications.contains("server.connected 1"));
+  }
+}
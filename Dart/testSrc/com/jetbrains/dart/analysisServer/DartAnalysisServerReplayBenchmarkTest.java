@@ -0,0 +1,227 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.dart.analysisServer;
+
+import com.google.dart.server.AnalysisServerListenerAdapter;
+import com.google.dart.server.GetSuggestionsConsumer;
+import com.google.dart.server.GetVersionConsumer;
+import com.google.dart.server.internal.remote.RemoteAnalysisServerImpl;
+import com.google.dart.server.internal.remote.ReplayServerSocket;
+import com.google.dart.server.internal.remote.TrafficRecorder;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays recorded Analysis Server traffic through {@link ReplayServerSocket}, so that the client side of the protocol can be measured
+ * offline. {@link #testReplayBenchmark()} times completion requests while the client is flooded with notifications; the load can be
+ * increased with the {@code dart.server.replay.benchmark.rounds} system property.
+ */
+public class DartAnalysisServerReplayBenchmarkTest extends TestCase {
+  private static final String MAIN_FILE = "/project/lib/main.dart";
+
+  private static class CountingListener extends AnalysisServerListenerAdapter {
+    private final AtomicInteger myNotificationCount = new AtomicInteger();
+    private final Map<String, CountDownLatch> myCompletionLatches = new ConcurrentHashMap<>();
+
+    @Override
+    public void computedErrors(String file, List<AnalysisError> errors) {
+      myNotificationCount.incrementAndGet();
+    }
+
+    @Override
+    public void computedHighlights(String file, List<HighlightRegion> highlights) {
+      myNotificationCount.incrementAndGet();
+    }
+
+    @Override
+    public void computedNavigation(String file, List<NavigationRegion> targets) {
+      myNotificationCount.incrementAndGet();
+    }
+
+    @Override
+    public void computedCompletion(String completionId,
+                                   int replacementOffset,
+                                   int replacementLength,
+                                   List<CompletionSuggestion> completions,
+                                   List<IncludedSuggestionSet> includedSuggestionSets,
+                                   List<String> includedElementKinds,
+                                   List<IncludedSuggestionRelevanceTag> includedSuggestionRelevanceTags,
+                                   boolean isLast,
+                                   @Nullable String libraryFile) {
+      if (isLast) {
+        latch(completionId).countDown();
+      }
+    }
+
+    @NotNull
+    CountDownLatch latch(@NotNull final String completionId) {
+      return myCompletionLatches.computeIfAbsent(completionId, id -> new CountDownLatch(1));
+    }
+
+    boolean awaitNotifications(int count, long timeoutMillis) throws InterruptedException {
+      final long end = System.currentTimeMillis() + timeoutMillis;
+      while (myNotificationCount.get() < count) {
+        if (System.currentTimeMillis() > end) return false;
+        Thread.sleep(1);
+      }
+      return true;
+    }
+  }
+
+  private static final GetSuggestionsConsumer NO_OP_CONSUMER = new GetSuggestionsConsumer() {
+    @Override
+    public void computedCompletionId(String completionId) {
+    }
+
+    @Override
+    public void onError(RequestError requestError) {
+    }
+  };
+
+  @NotNull
+  private static List<TrafficRecorder.Entry> readSession() throws IOException {
+    return TrafficRecorder.read(new File(DartTestUtils.BASE_TEST_DATA_PATH + "/analysisServer/traffic/session.log"));
+  }
+
+  @NotNull
+  private static String findLine(@NotNull final List<TrafficRecorder.Entry> entries, @NotNull final String prefix) {
+    return findLine(entries, prefix, "");
+  }
+
+  @NotNull
+  private static String findLine(@NotNull final List<TrafficRecorder.Entry> entries,
+                                 @NotNull final String prefix,
+                                 @NotNull final String infix) {
+    for (TrafficRecorder.Entry entry : entries) {
+      if (entry.getLine().startsWith(prefix) && entry.getLine().contains(infix)) return entry.getLine();
+    }
+    throw new AssertionError(prefix);
+  }
+
+  @NotNull
+  private static RemoteAnalysisServerImpl startServer(@NotNull final ReplayServerSocket socket,
+                                                      @NotNull final CountingListener listener) throws Exception {
+    socket.setUseStreamingDecoder(true);
+    final RemoteAnalysisServerImpl server = new RemoteAnalysisServerImpl(socket, false);
+    server.addAnalysisServerListener(listener);
+    server.start();
+    return server;
+  }
+
+  public void testRecordAndRead() throws Exception {
+    final StringWriter recording = new StringWriter();
+    final TrafficRecorder recorder = new TrafficRecorder(recording);
+
+    final OutputStream serverInput = recorder.recordServerInput(new ByteArrayOutputStream());
+    serverInput.write("{\"id\":\"0\",\"method\":\"server.getVersion\"}\n".getBytes(StandardCharsets.UTF_8));
+
+    final byte[] output = "{\"id\":\"0\",\"result\":{\"version\":\"1.27.4\"}}\r\nObservatory\n{\"event\":\"server.status\"".getBytes(StandardCharsets.UTF_8);
+    try (InputStream serverOutput = recorder.recordServerOutput(new ByteArrayInputStream(output))) {
+      // read in small pieces to split lines between reads
+      final byte[] buffer = new byte[7];
+      //noinspection StatementWithEmptyBody
+      while (serverOutput.read(buffer) != -1) ;
+    }
+    // lines written after the end of the server output are not recorded
+    serverInput.write("{\"id\":\"1\"}\n".getBytes(StandardCharsets.UTF_8));
+
+    final List<TrafficRecorder.Entry> entries = TrafficRecorder.read(new StringReader(recording.toString()));
+    assertEquals(3, entries.size());
+    assertFalse(entries.get(0).isFromServer());
+    assertEquals("{\"id\":\"0\",\"method\":\"server.getVersion\"}", entries.get(0).getLine());
+    assertTrue(entries.get(1).isFromServer());
+    assertEquals("{\"id\":\"0\",\"result\":{\"version\":\"1.27.4\"}}", entries.get(1).getLine());
+    assertEquals("Observatory", entries.get(2).getLine());
+    assertTrue(entries.get(2).getTime() > 0);
+  }
+
+  public void testOriginalTiming() throws Exception {
+    final List<TrafficRecorder.Entry> entries = Arrays.asList(
+      new TrafficRecorder.Entry(1000, true, "{\"event\":\"server.connected\",\"params\":{\"version\":\"1.27.4\",\"pid\":1}}"),
+      new TrafficRecorder.Entry(1200, true, "{\"event\":\"server.status\",\"params\":{\"analysis\":{\"isAnalyzing\":false}}}"));
+    final ReplayServerSocket socket = new ReplayServerSocket(entries, true);
+    final RemoteAnalysisServerImpl server = startServer(socket, new CountingListener());
+    assertTrue(socket.awaitFinished(10000));
+    assertEquals(2, socket.getReplayedLineCount());
+    server.server_shutdown();
+  }
+
+  public void testReplaySession() throws Exception {
+    final CountingListener listener = new CountingListener();
+    final ReplayServerSocket socket = new ReplayServerSocket(readSession(), false);
+    final RemoteAnalysisServerImpl server = startServer(socket, listener);
+
+    // the recorded client has sent server.getVersion and completion.getSuggestions
+    final CountDownLatch versionReceived = new CountDownLatch(1);
+    server.server_getVersion(new GetVersionConsumer() {
+      @Override
+      public void computedVersion(String version) {
+        versionReceived.countDown();
+      }
+
+      @Override
+      public void onError(RequestError requestError) {
+      }
+    });
+    assertTrue(versionReceived.await(10, TimeUnit.SECONDS));
+    server.completion_getSuggestions(MAIN_FILE, 42, NO_OP_CONSUMER);
+
+    assertTrue(listener.latch("7").await(10, TimeUnit.SECONDS));
+    assertTrue(socket.awaitFinished(10000));
+    // 2 analysis.errors, analysis.highlights and analysis.navigation
+    assertTrue(listener.awaitNotifications(4, 10000));
+    server.server_shutdown();
+  }
+
+  public void testReplayBenchmark() throws Exception {
+    final int rounds = Integer.getInteger("dart.server.replay.benchmark.rounds", 20);
+    final int filesPerRound = 10;
+    final List<TrafficRecorder.Entry> session = readSession();
+    final String[] fileNotifications = {
+      findLine(session, "{\"event\":\"analysis.errors\",\"params\":{\"file\":\"" + MAIN_FILE),
+      findLine(session, "{\"event\":\"analysis.highlights\""),
+      findLine(session, "{\"event\":\"analysis.navigation\""),
+    };
+    final String completionResults = findLine(session, "{\"event\":\"completion.results\"", "\"isLast\":true");
+
+    // each round floods the client with notifications for several files, followed by a completion response and its results
+    final List<TrafficRecorder.Entry> entries = new ArrayList<>();
+    entries.add(new TrafficRecorder.Entry(0, true, findLine(session, "{\"event\":\"server.connected\"")));
+    for (int round = 0; round < rounds; round++) {
+      for (int file = 0; file < filesPerRound; file++) {
+        for (String notification : fileNotifications) {
+          entries.add(new TrafficRecorder.Entry(0, true, notification.replace(MAIN_FILE, "/project/lib/file" + file + ".dart")));
+        }
+      }
+      entries.add(new TrafficRecorder.Entry(0, true, "{\"id\":\"" + round + "\",\"result\":{\"id\":\"c" + round + "\"}}"));
+      entries.add(new TrafficRecorder.Entry(0, true, completionResults.replace("\"id\":\"7\"", "\"id\":\"c" + round + "\"")));
+    }
+    // the response to server.shutdown
+    entries.add(new TrafficRecorder.Entry(0, true, "{\"id\":\"" + rounds + "\"}"));
+    final int notificationCount = rounds * filesPerRound * fileNotifications.length;
+
+    PlatformTestUtil.startPerformanceTest("Replay of " + notificationCount + " notifications and " + rounds + " completions", 10_000, () -> {
+      final CountingListener listener = new CountingListener();
+      final ReplayServerSocket socket = new ReplayServerSocket(entries, false);
+      final RemoteAnalysisServerImpl server = startServer(socket, listener);
+      for (int round = 0; round < rounds; round++) {
+        server.completion_getSuggestions(MAIN_FILE, 42, NO_OP_CONSUMER);
+        assertTrue(listener.latch("c" + round).await(30, TimeUnit.SECONDS));
+      }
+      assertTrue(listener.awaitNotifications(notificationCount, 30000));
+      server.server_shutdown();
+      assertTrue(socket.awaitFinished(30000));
+    }).attempts(3).assertTiming();
+  }
+}
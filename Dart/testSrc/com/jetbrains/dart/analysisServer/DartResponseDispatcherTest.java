@@ -0,0 +1,92 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.dart.analysisServer;
+
+import com.google.dart.server.internal.remote.ResponseDispatcher;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class DartResponseDispatcherTest extends TestCase {
+
+  public void testFileOrderIsPreserved() throws Exception {
+    final ResponseDispatcher dispatcher = new ResponseDispatcher(3);
+    final List<String> processed = Collections.synchronizedList(new ArrayList<>());
+    final String[] files = {"/a.dart", "/b.dart", "/c.dart", "/d.dart"};
+    for (int i = 0; i < 100; i++) {
+      for (String file : files) {
+        final String item = file + i;
+        dispatcher.dispatchForFile(file, () -> processed.add(item));
+      }
+    }
+    final CountDownLatch done = new CountDownLatch(1);
+    dispatcher.dispatchOrdered(done::countDown);
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    dispatcher.shutdown();
+
+    assertEquals(400, processed.size());
+    for (String file : files) {
+      int expected = 0;
+      for (String item : processed) {
+        if (item.startsWith(file)) {
+          assertEquals(file + expected++, item);
+        }
+      }
+      assertEquals(100, expected);
+    }
+  }
+
+  public void testPriorityLaneIsNotBlockedByNotifications() throws Exception {
+    final ResponseDispatcher dispatcher = new ResponseDispatcher(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch priorityDone = new CountDownLatch(1);
+    dispatcher.dispatchForFile("/huge.dart", () -> {
+      try {
+        release.await();
+      }
+      catch (InterruptedException ignored) {
+      }
+    });
+    dispatcher.dispatchOrdered(() -> {
+    });
+    dispatcher.dispatchPriority(priorityDone::countDown);
+
+    assertTrue(priorityDone.await(10, TimeUnit.SECONDS));
+    release.countDown();
+    dispatcher.shutdown();
+  }
+
+  public void testOrderedTaskSeesAllPreviousNotifications() throws Exception {
+    final ResponseDispatcher dispatcher = new ResponseDispatcher(4);
+    final List<String> processed = Collections.synchronizedList(new ArrayList<>());
+    for (int i = 0; i < 20; i++) {
+      final String file = "/file" + i + ".dart";
+      dispatcher.dispatchForFile(file, () -> processed.add(file));
+    }
+    final List<Integer> seenByOrderedTask = new ArrayList<>();
+    dispatcher.dispatchOrdered(() -> seenByOrderedTask.add(processed.size()));
+    for (int i = 0; i < 20; i++) {
+      final String file = "/file" + i + ".dart";
+      dispatcher.dispatchForFile(file, () -> processed.add(file));
+    }
+    final CountDownLatch done = new CountDownLatch(1);
+    dispatcher.dispatchOrdered(done::countDown);
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+
+    assertEquals(Collections.singletonList(20), seenByOrderedTask);
+    assertEquals(40, processed.size());
+
+    final List<ResponseDispatcher.LaneStatistics> statistics = dispatcher.getStatistics();
+    assertEquals(5, statistics.size());
+    long processedCount = 0;
+    for (ResponseDispatcher.LaneStatistics lane : statistics) {
+      processedCount += lane.getProcessedCount();
+    }
+    // 40 file tasks and the first ordered task that took all 4 lanes, the last one may still be running
+    assertTrue(String.valueOf(processedCount), processedCount >= 44);
+    dispatcher.shutdown();
+  }
+}
@@ -1,11 +1,13 @@
 // Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package com.jetbrains.dart.analysisServer;
 
+import com.google.dart.server.internal.remote.AnalysisServerMetrics;
 import com.intellij.codeInsight.completion.CompletionType;
 import com.intellij.codeInsight.lookup.Lookup;
 import com.intellij.codeInsight.lookup.LookupElement;
 import com.intellij.codeInsight.lookup.LookupEx;
 import com.intellij.codeInsight.lookup.LookupManager;
+import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -14,6 +16,7 @@ import com.intellij.testFramework.fixtures.CodeInsightFixtureTestCase;
 import com.intellij.testFramework.fixtures.impl.CodeInsightTestFixtureImpl;
 import com.intellij.util.containers.ContainerUtil;
 import com.jetbrains.lang.dart.analyzer.DartAnalysisServerService;
+import com.jetbrains.lang.dart.ide.completion.DartServerCompletionContributor;
 import com.jetbrains.lang.dart.util.DartTestUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -207,4 +210,32 @@ public class DartServerCompletionTest extends CodeInsightFixtureTestCase {
   }
 
   public void testConstructorParens() { doTest(); }
+
+  public void testCachedResultsAfterTyping() {
+    myFixture.configureByText("foo.dart",
+                              "main() {\n" +
+                              "  var fooBar = 1, fooBaz = 2, other = 3;\n" +
+                              "  fo<caret>;\n" +
+                              "}");
+    myFixture.doHighlighting();
+    final AnalysisServerMetrics metrics = DartAnalysisServerService.getInstance(getProject()).getServerMetrics();
+    metrics.reset();
+
+    myFixture.completeBasic();
+    assertContainsElements(myFixture.getLookupElementStrings(), "fooBar", "fooBaz");
+    LookupManager.getInstance(getProject()).hideActiveLookup();
+
+    // new completion session after typing: suggestions come from the cache, not from the server
+    myFixture.type("oB");
+    myFixture.completeBasic();
+    assertSameElements(myFixture.getLookupElementStrings(), "fooBar", "fooBaz");
+    assertEquals(1, metrics.getRequestStatistics("completion.getSuggestions").getCount());
+    assertEquals(1, metrics.getRequestStatistics(DartServerCompletionContributor.CACHED_COMPLETION_LATENCY_METRIC).getCount());
+
+    // a change before the replacement offset needs a new request
+    LookupManager.getInstance(getProject()).hideActiveLookup();
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> getEditor().getDocument().insertString(0, "// comment\n"));
+    myFixture.completeBasic();
+    assertEquals(2, metrics.getRequestStatistics("completion.getSuggestions").getCount());
+  }
 }
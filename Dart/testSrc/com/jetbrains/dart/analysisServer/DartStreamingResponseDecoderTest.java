@@ -0,0 +1,180 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.dart.analysisServer;
+
+import com.google.dart.server.AnalysisServerListener;
+import com.google.dart.server.AnalysisServerListenerAdapter;
+import com.google.dart.server.internal.remote.ByteResponseStream;
+import com.google.dart.server.internal.remote.DecodedNotification;
+import com.google.dart.server.internal.remote.StreamingResponseStream;
+import com.google.dart.server.internal.remote.processor.*;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replays recorded Analysis Server output through {@link ByteResponseStream} with {@code Notification*Processor}s
+ * and through {@link StreamingResponseStream}, and checks that listeners are notified with equal protocol objects.
+ */
+public class DartStreamingResponseDecoderTest extends TestCase {
+
+  private static class RecordingListener extends AnalysisServerListenerAdapter {
+    private final List<Object> myCalls = new ArrayList<>();
+
+    @Override
+    public void computedErrors(String file, List<AnalysisError> errors) {
+      myCalls.add(Arrays.asList("errors", file, errors));
+    }
+
+    @Override
+    public void computedHighlights(String file, List<HighlightRegion> highlights) {
+      myCalls.add(Arrays.asList("highlights", file, highlights));
+    }
+
+    @Override
+    public void computedNavigation(String file, List<NavigationRegion> regions) {
+      final List<Object> targets = new ArrayList<>();
+      for (NavigationRegion region : regions) {
+        for (NavigationTarget target : region.getTargetObjects()) {
+          targets.add(Arrays.asList(target, target.getFile()));
+        }
+      }
+      myCalls.add(Arrays.asList("navigation", file, regions, targets));
+    }
+
+    @Override
+    public void computedOutline(String file, Outline outline) {
+      myCalls.add(Arrays.asList("outline", file, outline, outline.getChildren().get(1).getChildren().get(0).getParent().getElement()));
+    }
+
+    @Override
+    public void computedCompletion(String completionId,
+                                   int replacementOffset,
+                                   int replacementLength,
+                                   List<CompletionSuggestion> completions,
+                                   List<IncludedSuggestionSet> includedSuggestionSets,
+                                   List<String> includedElementKinds,
+                                   List<IncludedSuggestionRelevanceTag> includedSuggestionRelevanceTags,
+                                   boolean isLast,
+                                   @Nullable String libraryFile) {
+      myCalls.add(Arrays.asList("completion", completionId, replacementOffset, replacementLength, completions, includedSuggestionSets,
+                                includedElementKinds, includedSuggestionRelevanceTags, isLast, libraryFile));
+    }
+  }
+
+  @NotNull
+  private static InputStream openRecordedTraffic() throws Exception {
+    return new FileInputStream(new File(DartTestUtils.BASE_TEST_DATA_PATH + "/analysisServer/traffic/session.log"));
+  }
+
+  private static void processWithJsonTree(@NotNull final JsonObject response, @NotNull final AnalysisServerListener listener)
+    throws Exception {
+    final JsonElement event = response.get("event");
+    if (event == null) return;
+
+    switch (event.getAsString()) {
+      case "analysis.errors":
+        new NotificationAnalysisErrorsProcessor(listener).process(response);
+        break;
+      case "analysis.highlights":
+        new NotificationAnalysisHighlightsProcessor(listener).process(response);
+        break;
+      case "analysis.navigation":
+        new NotificationAnalysisNavigationProcessor(listener).process(response);
+        break;
+      case "analysis.outline":
+        new NotificationAnalysisOutlineProcessor(listener).process(response);
+        break;
+      case "completion.results":
+        new NotificationCompletionResultsProcessor(listener).process(response);
+        break;
+    }
+  }
+
+  public void testDecodedNotificationsMatchJsonTreeProcessing() throws Exception {
+    final RecordingListener expectedListener = new RecordingListener();
+    final List<JsonObject> expectedOtherResponses = new ArrayList<>();
+    final ByteResponseStream byteStream = new ByteResponseStream(openRecordedTraffic(), null, null);
+    JsonObject response;
+    while ((response = byteStream.take()) != null) {
+      final JsonElement event = response.get("event");
+      if (event != null && StreamingNotificationDecoder.canDecode(event.getAsString())) {
+        processWithJsonTree(response, expectedListener);
+      }
+      else {
+        expectedOtherResponses.add(response);
+      }
+    }
+
+    final RecordingListener actualListener = new RecordingListener();
+    final List<JsonObject> actualOtherResponses = new ArrayList<>();
+    final StreamingResponseStream streamingStream = new StreamingResponseStream(openRecordedTraffic(), null, null);
+    Object streamingResponse;
+    while ((streamingResponse = streamingStream.takeResponse()) != null) {
+      if (streamingResponse instanceof DecodedNotification) {
+        ((DecodedNotification)streamingResponse).notifyListener(actualListener);
+      }
+      else {
+        actualOtherResponses.add((JsonObject)streamingResponse);
+      }
+    }
+
+    assertEquals(7, expectedListener.myCalls.size());
+    assertEquals(expectedListener.myCalls, actualListener.myCalls);
+    assertEquals(expectedOtherResponses, actualOtherResponses);
+  }
+
+  public void testDirectDecodingDisabled() throws Exception {
+    final PipedOutputStream out = new PipedOutputStream();
+    final StreamingResponseStream streamingStream = new StreamingResponseStream(new PipedInputStream(out), null, null);
+    streamingStream.setDirectDecodingCondition(() -> false);
+    try (InputStream in = openRecordedTraffic()) {
+      FileUtil.copy(in, out);
+    }
+    out.close();
+
+    final RecordingListener listener = new RecordingListener();
+    Object response;
+    while ((response = streamingStream.takeResponse()) != null) {
+      assertTrue(response instanceof JsonObject);
+      processWithJsonTree((JsonObject)response, listener);
+    }
+    assertEquals(7, listener.myCalls.size());
+  }
+
+  public void testMalformedLineDoesNotDropFollowingResponses() throws Exception {
+    final String output = "{\"id\":\"0\",\"result\":{}}\n" +
+                          "{\"id\":\"1\",\"result\":{\"broken\": ]], \"tail\":\"" + StringUtil.repeat("x", 2000) + "\"}}\n" +
+                          "{\"id\":\"2\",\"result\":{}}\n" +
+                          "debug output\n" +
+                          "{\"id\":\"3\",\"result\":{}}\n" +
+                          "{\"id\":\"4\",\"result\":{\"unterminated\":\n" +
+                          "{\"id\":\"5\",\"result\":{}}\n" +
+                          "{\"id\":\"6\",\"result\":{}}\n";
+    final StreamingResponseStream streamingStream =
+      new StreamingResponseStream(new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8)), null, null);
+
+    final List<String> ids = new ArrayList<>();
+    Object response;
+    while ((response = streamingStream.takeResponse()) != null) {
+      ids.add(((JsonObject)response).get("id").getAsString());
+    }
+    assertEquals(Arrays.asList("0", "2", "3", "5", "6"), ids);
+  }
+}
@@ -0,0 +1,150 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.codeInsight.completion.impl.CamelHumpMatcher;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import org.dartlang.analysis.server.protocol.AvailableSuggestion;
+import org.dartlang.analysis.server.protocol.AvailableSuggestionSet;
+import org.dartlang.analysis.server.protocol.Element;
+import org.dartlang.analysis.server.protocol.ElementKind;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Checks that {@link DartAvailableSuggestionIndex} finds the same suggestions as the completion prefix matcher applied to all items.
+ * The number of items of the benchmark can be set with the {@code dart.suggestions.benchmark.count} system property.
+ */
+public class DartAvailableSuggestionIndexTest extends BasePlatformTestCase {
+  private static final String[] WORDS = {"String", "Buffer", "Widget", "State", "Stateless", "Animation", "Controller", "Material", "Page",
+    "Route", "Html", "Parser", "Text", "Field", "Button", "Icon", "List", "View", "Builder", "Stream", "Future", "Provider", "Box",
+    "Decoration", "Edge", "Insets", "Color", "Scheme", "Theme", "Data", "Gesture", "Detector", "Scroll", "Physics", "Layout", "Render"};
+
+  @NotNull
+  private static AvailableSuggestion createSuggestion(@NotNull final String label) {
+    final Element element = new Element(ElementKind.CLASS, label, null, 0, null, null, null);
+    return new AvailableSuggestion(label, "package:lib/lib.dart", element, null, null, null, null, null, null);
+  }
+
+  @NotNull
+  private static AvailableSuggestionSet createSet(final int id, @NotNull final String... labels) {
+    final List<AvailableSuggestion> items = new ArrayList<>();
+    for (String label : labels) {
+      items.add(createSuggestion(label));
+    }
+    return new AvailableSuggestionSet(id, "package:lib/lib" + id + ".dart", items);
+  }
+
+  @NotNull
+  private static AvailableSuggestionSet createSyntheticSet(final int id, final int itemCount) {
+    final Random random = new Random(id);
+    final List<AvailableSuggestion> items = new ArrayList<>(itemCount);
+    for (int i = 0; i < itemCount; i++) {
+      final StringBuilder label = new StringBuilder();
+      if (i % 10 == 0) label.append('_');
+      final int wordCount = 1 + random.nextInt(3);
+      for (int j = 0; j < wordCount; j++) {
+        label.append(WORDS[random.nextInt(WORDS.length)]);
+      }
+      if (i % 3 == 0) label.setCharAt(label.length() - 1, Character.forDigit(i % 10, 10));
+      items.add(createSuggestion(label.toString()));
+    }
+    return new AvailableSuggestionSet(id, "package:lib/lib" + id + ".dart", items);
+  }
+
+  @NotNull
+  private static List<String> getLabels(@NotNull final List<AvailableSuggestion> suggestions) {
+    final List<String> result = new ArrayList<>();
+    for (AvailableSuggestion suggestion : suggestions) {
+      result.add(suggestion.getLabel());
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  // the prefix matcher of the completion result set
+  @NotNull
+  private static List<AvailableSuggestion> getCandidates(@NotNull final DartAvailableSuggestionIndex index,
+                                                         final int id,
+                                                         @NotNull final String prefix) {
+    return index.getCandidates(id, new CamelHumpMatcher(prefix));
+  }
+
+  public void testWordStarts() {
+    assertTrue(DartAvailableSuggestionIndex.isWordStart("StringBuffer", 0));
+    assertTrue(DartAvailableSuggestionIndex.isWordStart("StringBuffer", 6));
+    assertFalse(DartAvailableSuggestionIndex.isWordStart("StringBuffer", 1));
+    assertTrue(DartAvailableSuggestionIndex.isWordStart("HTMLParser", 1));
+    assertTrue(DartAvailableSuggestionIndex.isWordStart("HTMLParser", 4));
+    assertTrue(DartAvailableSuggestionIndex.isWordStart("_private", 1));
+    assertTrue(DartAvailableSuggestionIndex.isWordStart("Foo.named", 4));
+    assertTrue(DartAvailableSuggestionIndex.isWordStart("utf8", 3));
+    assertTrue(DartAvailableSuggestionIndex.isWordStart("Http2client", 5));
+    assertFalse(DartAvailableSuggestionIndex.isWordStart("_private", 0));
+  }
+
+  public void testCandidates() {
+    final DartAvailableSuggestionIndex index = new DartAvailableSuggestionIndex();
+    index.update(Collections.singletonList(createSet(1, "StringBuffer", "StreamBuilder", "Stream", "HTMLParser", "_State", "substring",
+                                                     "Foo.named")),
+                 new int[0]);
+
+    assertEquals(7, getCandidates(index, 1, "").size());
+    assertContainsElements(getLabels(getCandidates(index, 1, "SB")), "StreamBuilder", "StringBuffer");
+    assertContainsElements(getLabels(getCandidates(index, 1, "StrBuf")), "StringBuffer");
+    assertContainsElements(getLabels(getCandidates(index, 1, "htmlp")), "HTMLParser");
+    assertContainsElements(getLabels(getCandidates(index, 1, "_St")), "_State");
+    assertEquals(Collections.emptyList(), getLabels(getCandidates(index, 1, "xyz")));
+    assertEquals(Collections.emptyList(), getLabels(getCandidates(index, 2, "s")));
+  }
+
+  public void testUpdate() {
+    final DartAvailableSuggestionIndex index = new DartAvailableSuggestionIndex();
+    index.update(Arrays.asList(createSet(1, "Widget"), createSet(2, "Window")), new int[0]);
+    assertEquals(1, getCandidates(index, 2, "Win").size());
+
+    index.update(Collections.singletonList(createSet(1, "Widget", "WidgetBuilder")), new int[]{2});
+    assertEquals(2, getCandidates(index, 1, "Wid").size());
+    assertNull(index.getSet(2));
+    assertEquals(0, getCandidates(index, 2, "Win").size());
+
+    index.clear();
+    assertNull(index.getSet(1));
+  }
+
+  public void testSameCandidatesAsPrefixMatcher() {
+    final AvailableSuggestionSet set = createSyntheticSet(1, 20_000);
+    final DartAvailableSuggestionIndex index = new DartAvailableSuggestionIndex();
+    index.update(Collections.singletonList(set), new int[0]);
+
+    // prefixes, camel humps, middle matches, typos, digits, private names and a prefix typed in another keyboard layout
+    for (String prefix : new String[]{"s", "St", "SB", "strbuf", "wid", "WiBu", "Buf", "Stirng", "Wdiget", "_", "_Sta", "1", "x",
+      "Render9", "edgeins", "Ыек"}) {
+      assertEquals(prefix, getLabels(DartAvailableSuggestionIndex.filterByLinearScan(set, new CamelHumpMatcher(prefix))),
+                   getLabels(getCandidates(index, 1, prefix)));
+    }
+  }
+
+  public void testLookupBenchmark() {
+    final int itemCount = Integer.getInteger("dart.suggestions.benchmark.count", 300_000);
+    final int setCount = 30;
+    final List<AvailableSuggestionSet> sets = new ArrayList<>();
+    for (int i = 0; i < setCount; i++) {
+      sets.add(createSyntheticSet(i, itemCount / setCount));
+    }
+    final DartAvailableSuggestionIndex index = new DartAvailableSuggestionIndex();
+    index.update(sets, new int[0]);
+
+    // prefixes as they grow while typing
+    final String[] prefixes = {"S", "St", "Sta", "Stat", "Stateless", "B", "Bu", "Bui", "Build", "E", "Ed", "EI"};
+    PlatformTestUtil.startPerformanceTest("Lookup of " + prefixes.length + " prefixes in " + itemCount + " suggestions", 2_000, () -> {
+      for (String prefix : prefixes) {
+        final CamelHumpMatcher matcher = new CamelHumpMatcher(prefix);
+        for (AvailableSuggestionSet set : sets) {
+          index.getCandidates(set.getId(), matcher);
+        }
+      }
+    }).attempts(3).assertTiming();
+  }
+}
@@ -0,0 +1,60 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.SourceEdit;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DartContentOverlayTrackerTest extends TestCase {
+  private static final String INITIAL_TEXT = "void main() {\n  print('hello');\n}\n";
+
+  private final List<SourceEdit> myEdits = new ArrayList<>();
+  private String myDocumentText = INITIAL_TEXT;
+
+  private void change(final int offset, final int oldLength, @NotNull final String newText) {
+    DartContentOverlayTracker.addEdit(myEdits, offset, oldLength, newText);
+    myDocumentText = myDocumentText.substring(0, offset) + newText + myDocumentText.substring(offset + oldLength);
+  }
+
+  private void checkEdits(final int expectedEditCount) {
+    String serverText = INITIAL_TEXT;
+    for (SourceEdit edit : myEdits) {
+      serverText = serverText.substring(0, edit.getOffset()) + edit.getReplacement() + serverText.substring(edit.getOffset() + edit.getLength());
+    }
+    assertEquals(myDocumentText, serverText);
+    assertEquals(expectedEditCount, myEdits.size());
+  }
+
+  public void testTyping() {
+    change(30, 0, "x");
+    change(31, 0, "y");
+    change(32, 0, "z");
+    checkEdits(1);
+  }
+
+  public void testTypingAndBackspace() {
+    change(30, 0, "a");
+    change(31, 0, "b");
+    change(31, 1, "");
+    change(30, 1, "");
+    change(30, 0, "c");
+    checkEdits(1);
+  }
+
+  public void testBackspaceBeyondInsertedText() {
+    change(30, 0, "a");
+    change(30, 1, "");
+    change(29, 1, "");
+    checkEdits(2);
+  }
+
+  public void testUnrelatedEdits() {
+    change(0, 4, "int");
+    change(20, 0, "\n");
+    change(5, 0, " ");
+    checkEdits(3);
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.jetbrains.lang.dart.analyzer.DartServerData.DartHighlightRegion;
+import com.jetbrains.lang.dart.analyzer.DartServerData.DartNavigationRegion;
+import com.jetbrains.lang.dart.analyzer.DartServerData.DartNavigationTarget;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DartPackedRegionsTest extends TestCase {
+
+  private static String toString(@NotNull final List<? extends DartServerData.DartRegion> regions) {
+    final List<String> result = new ArrayList<>();
+    for (DartServerData.DartRegion region : regions) {
+      result.add(region.getOffset() + ":" + region.getLength());
+    }
+    return String.join(" ", result);
+  }
+
+  @NotNull
+  private static DartPackedRegions<DartHighlightRegion> highlights(@NotNull final DartPackedRegions.StringTable strings) {
+    // "var a = foo(bar);"
+    return new DartPackedRegions.Highlights(new int[]{0, 4, 8, 12}, new int[]{3, 1, 3, 3},
+                                            new int[]{strings.getId("KEYWORD"), strings.getId("LOCAL_VARIABLE_DECLARATION"),
+                                              strings.getId("TOP_LEVEL_FUNCTION_REFERENCE"), strings.getId("TOP_LEVEL_GETTER_REFERENCE")},
+                                            strings);
+  }
+
+  public void testHighlightsAreShiftedAndResized() {
+    final DartPackedRegions.StringTable strings = new DartPackedRegions.StringTable();
+    final DartPackedRegions<DartHighlightRegion> regions = highlights(strings);
+    assertEquals("0:3 4:1 8:3 12:3", toString(regions));
+    assertEquals("TOP_LEVEL_FUNCTION_REFERENCE", regions.get(2).getType());
+
+    // typing inside 'foo'
+    final DartPackedRegions<DartHighlightRegion> typed = regions.updateForDocumentChange(9, 2, "/a.dart");
+    assertEquals("0:3 4:1 8:5 14:3", toString(typed));
+    assertEquals("TOP_LEVEL_GETTER_REFERENCE", typed.get(3).getType());
+    // the original list is not modified
+    assertEquals("0:3 4:1 8:3 12:3", toString(regions));
+
+    // deleting the whole 'a' deletes its region
+    final DartPackedRegions<DartHighlightRegion> deleted = regions.updateForDocumentChange(4, -1, "/a.dart");
+    assertEquals("0:3 7:3 11:3", toString(deleted));
+    assertEquals(Arrays.asList("KEYWORD", "TOP_LEVEL_FUNCTION_REFERENCE", "TOP_LEVEL_GETTER_REFERENCE"),
+                 Arrays.asList(deleted.get(0).getType(), deleted.get(1).getType(), deleted.get(2).getType()));
+
+    // typing after all regions changes nothing
+    assertSame(regions, regions.updateForDocumentChange(16, 1, "/a.dart"));
+  }
+
+  public void testNavigationTargetsAreShared() {
+    final DartPackedRegions.StringTable strings = new DartPackedRegions.StringTable();
+    final int file = strings.getId("/a.dart");
+    final int otherFile = strings.getId("/b.dart");
+    final int kind = strings.getId("FUNCTION");
+    // three regions, the first and the last point to the same target in /a.dart, the second one to /b.dart
+    final DartPackedRegions<DartNavigationRegion> regions =
+      new DartPackedRegions.Navigation(new int[]{10, 20, 30}, new int[]{3, 3, 3},
+                                       new int[]{0, 1, 2, 3}, new int[]{0, 1, 0},
+                                       new int[]{file, otherFile}, new int[]{50, 5}, new int[]{kind, kind}, new int[]{50, -1},
+                                       strings);
+
+    final DartNavigationTarget target = regions.get(2).getTargets().get(0);
+    assertEquals("/a.dart", target.getFile());
+    assertEquals("FUNCTION", target.getKind());
+    assertEquals("/b.dart", regions.get(1).getTargets().get(0).getFile());
+
+    // typing inside the second region deletes it and shifts the converted offset of the target in the edited file
+    final DartPackedRegions<DartNavigationRegion> updated = regions.updateForDocumentChange(21, 4, "/a.dart");
+    assertEquals("10:3 34:3", toString(updated));
+    assertEquals(1, updated.get(1).getTargets().size());
+    assertEquals("/a.dart", updated.get(1).getTargets().get(0).getFile());
+
+    // typing after the last region still shifts the target
+    final DartPackedRegions<DartNavigationRegion> shifted = regions.updateForDocumentChange(40, 1, "/a.dart");
+    assertNotSame(regions, shifted);
+    assertEquals("10:3 20:3 30:3", toString(shifted));
+
+    // editing another file is ignored
+    assertSame(regions, regions.updateForDocumentChange(40, 1, "/c.dart"));
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+public class DartShardedAnalysisServerTest extends TestCase {
+  public void testAllRootsAssigned() {
+    final List<String> roots = new ArrayList<>();
+    for (int i = 0; i < 120; i++) {
+      roots.add("/monorepo/packages/package_" + i);
+    }
+
+    final List<List<String>> shardRoots = DartShardedAnalysisServer.assignPackageRoots(roots, 4);
+    assertEquals(4, shardRoots.size());
+
+    final Set<String> assigned = new HashSet<>();
+    for (List<String> shard : shardRoots) {
+      assertFalse(shard.isEmpty());
+      assigned.addAll(shard);
+    }
+    assertEquals(new HashSet<>(roots), assigned);
+  }
+
+  public void testAssignmentIsStable() {
+    final List<String> roots = Arrays.asList("/repo/a", "/repo/b", "/repo/c", "/repo/d", "/repo/e");
+    final Map<String, Integer> before =
+      DartShardedAnalysisServer.createRootToShardMap(DartShardedAnalysisServer.assignPackageRoots(roots, 3));
+
+    final List<String> moreRoots = new ArrayList<>(roots);
+    moreRoots.add(0, "/repo/0");
+    Collections.reverse(moreRoots);
+    final Map<String, Integer> after =
+      DartShardedAnalysisServer.createRootToShardMap(DartShardedAnalysisServer.assignPackageRoots(moreRoots, 3));
+
+    for (String root : roots) {
+      assertEquals(root, before.get(root), after.get(root));
+    }
+  }
+
+  public void testFindShardIndex() {
+    final Map<String, Integer> rootToShard = DartShardedAnalysisServer.createRootToShardMap(
+      Arrays.asList(Collections.singletonList("/repo/app"),
+                    Collections.singletonList("/repo/packages/core"),
+                    Collections.singletonList("/repo/app/example")));
+
+    assertEquals(0, DartShardedAnalysisServer.findShardIndex(rootToShard, "/repo/app/lib/main.dart"));
+    assertEquals(1, DartShardedAnalysisServer.findShardIndex(rootToShard, "/repo/packages/core/lib/src/core.dart"));
+    // the innermost package wins
+    assertEquals(2, DartShardedAnalysisServer.findShardIndex(rootToShard, "/repo/app/example/lib/main.dart"));
+    // not a package of any shard
+    assertEquals(0, DartShardedAnalysisServer.findShardIndex(rootToShard, "/repo/tool/build.dart"));
+    assertEquals(0, DartShardedAnalysisServer.findShardIndex(rootToShard, "/repo/packages/core_extra/lib/a.dart"));
+    assertEquals(0, DartShardedAnalysisServer.findShardIndex(Collections.emptyMap(), "/repo/packages/core/lib/a.dart"));
+  }
+}
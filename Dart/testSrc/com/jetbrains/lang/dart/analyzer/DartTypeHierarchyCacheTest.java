@@ -0,0 +1,157 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.util.Consumer;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.Element;
+import org.dartlang.analysis.server.protocol.ElementKind;
+import org.dartlang.analysis.server.protocol.Location;
+import org.dartlang.analysis.server.protocol.TypeHierarchyItem;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class DartTypeHierarchyCacheTest extends TestCase {
+  private static final DartTypeHierarchyCache.Key KEY = new DartTypeHierarchyCache.Key("/project/lib/a.dart", 10, false);
+
+  // keeps consumers of sent requests so that the test decides when the server responds
+  private final List<Consumer<? super List<TypeHierarchyItem>>> mySentRequests = new ArrayList<>();
+
+  private boolean sendRequest(@NotNull final DartTypeHierarchyCache.Key key,
+                              @NotNull final Consumer<? super List<TypeHierarchyItem>> consumer) {
+    mySentRequests.add(consumer);
+    return true;
+  }
+
+  @NotNull
+  private static List<TypeHierarchyItem> createItems(@NotNull final String className) {
+    final Element element = new Element(ElementKind.CLASS, className, null, 0, null, null, null);
+    return Collections.singletonList(new TypeHierarchyItem(element, className, null, null, new int[0], new int[0], new int[0]));
+  }
+
+  @NotNull
+  private static TypeHierarchyItem createItem(@NotNull final String className, @NotNull final String filePath) {
+    final Element element = new Element(ElementKind.CLASS, className, new Location(filePath, 10, 1, 1, 7), 0, null, null, null);
+    return new TypeHierarchyItem(element, className, null, null, new int[0], new int[0], new int[0]);
+  }
+
+  public void testConcurrentRequestsShareResponse() {
+    final DartTypeHierarchyCache cache = new DartTypeHierarchyCache(10);
+    final CompletableFuture<List<TypeHierarchyItem>> first = cache.getOrRequest(KEY, this::sendRequest);
+    final CompletableFuture<List<TypeHierarchyItem>> second = cache.getOrRequest(KEY, this::sendRequest);
+    assertSame(first, second);
+    assertEquals(1, mySentRequests.size());
+    assertNull(cache.getCached(KEY));
+
+    final List<TypeHierarchyItem> items = createItems("A");
+    mySentRequests.get(0).consume(items);
+    assertEquals(items, first.getNow(null));
+    assertEquals(items, cache.getCached(KEY));
+
+    cache.getOrRequest(KEY, this::sendRequest);
+    assertEquals(1, mySentRequests.size());
+  }
+
+  public void testInvalidate() {
+    final DartTypeHierarchyCache cache = new DartTypeHierarchyCache(10);
+    cache.getOrRequest(KEY, this::sendRequest);
+    mySentRequests.get(0).consume(createItems("A"));
+    assertNotNull(cache.getCached(KEY));
+
+    cache.invalidate();
+    assertNull(cache.getCached(KEY));
+
+    // the response to a request sent before invalidation is passed to the waiting caller but not cached
+    final CompletableFuture<List<TypeHierarchyItem>> future = cache.getOrRequest(KEY, this::sendRequest);
+    assertNotNull(future);
+    cache.invalidate();
+    final CompletableFuture<List<TypeHierarchyItem>> newFuture = cache.getOrRequest(KEY, this::sendRequest);
+    assertNotSame(future, newFuture);
+    assertEquals(3, mySentRequests.size());
+
+    mySentRequests.get(1).consume(createItems("Old"));
+    assertEquals(createItems("Old"), future.getNow(null));
+    assertNull(cache.getCached(KEY));
+
+    mySentRequests.get(2).consume(createItems("New"));
+    assertEquals(createItems("New"), cache.getCached(KEY));
+  }
+
+  public void testPrefetchedEntrySurvivesEditOfUnrelatedFile() {
+    final DartTypeHierarchyCache cache = new DartTypeHierarchyCache(10);
+    // prefetched when the server reported implemented classes of a.dart
+    cache.getOrRequest(KEY, this::sendRequest);
+    mySentRequests.get(0).consume(Arrays.asList(createItem("A", "/project/lib/a.dart"), createItem("B", "/project/lib/b.dart")));
+
+    cache.invalidate("/project/lib/unrelated.dart");
+    assertNotNull(cache.getCached(KEY));
+    cache.getOrRequest(KEY, this::sendRequest);
+    assertEquals(1, mySentRequests.size());
+  }
+
+  public void testInvalidateFile() {
+    final DartTypeHierarchyCache cache = new DartTypeHierarchyCache(10);
+    final DartTypeHierarchyCache.Key keyInB = new DartTypeHierarchyCache.Key("/project/lib/b.dart", 10, false);
+    final DartTypeHierarchyCache.Key keyInC = new DartTypeHierarchyCache.Key("/project/lib/c.dart", 10, false);
+    cache.getOrRequest(KEY, this::sendRequest);
+    mySentRequests.get(0).consume(Arrays.asList(createItem("A", "/project/lib/a.dart"), createItem("B", "/project/lib/b.dart")));
+    cache.getOrRequest(keyInB, this::sendRequest);
+    mySentRequests.get(1).consume(Collections.singletonList(createItem("B", "/project/lib/b.dart")));
+    cache.getOrRequest(keyInC, this::sendRequest);
+    mySentRequests.get(2).consume(Collections.singletonList(createItem("C", "/project/lib/c.dart")));
+
+    // the hierarchy of A contains B, so it refers to offsets in b.dart
+    cache.invalidate("/project/lib/b.dart");
+    assertNull(cache.getCached(KEY));
+    assertNull(cache.getCached(keyInB));
+    assertNotNull(cache.getCached(keyInC));
+
+    // the response to a request for an element of the invalidated file is passed to the waiting caller but not cached
+    final CompletableFuture<List<TypeHierarchyItem>> future = cache.getOrRequest(keyInB, this::sendRequest);
+    assertNotNull(future);
+    cache.invalidate("/project/lib/b.dart");
+    mySentRequests.get(3).consume(createItems("Old"));
+    assertEquals(createItems("Old"), future.getNow(null));
+    assertNull(cache.getCached(keyInB));
+  }
+
+  public void testErrorsAreNotCached() {
+    final DartTypeHierarchyCache cache = new DartTypeHierarchyCache(10);
+    final CompletableFuture<List<TypeHierarchyItem>> future = cache.getOrRequest(KEY, this::sendRequest);
+    mySentRequests.get(0).consume(null);
+    assertEquals(Collections.emptyList(), future.getNow(null));
+    assertNull(cache.getCached(KEY));
+  }
+
+  public void testServerNotRunning() {
+    final DartTypeHierarchyCache cache = new DartTypeHierarchyCache(10);
+    assertNull(cache.getOrRequest(KEY, (key, consumer) -> false));
+    // nothing is left in flight
+    cache.getOrRequest(KEY, this::sendRequest);
+    assertEquals(1, mySentRequests.size());
+  }
+
+  public void testLeastRecentlyUsedEvicted() {
+    final DartTypeHierarchyCache cache = new DartTypeHierarchyCache(2);
+    final DartTypeHierarchyCache.Key key1 = new DartTypeHierarchyCache.Key("/a.dart", 1, false);
+    final DartTypeHierarchyCache.Key key2 = new DartTypeHierarchyCache.Key("/a.dart", 2, false);
+    final DartTypeHierarchyCache.Key key3 = new DartTypeHierarchyCache.Key("/a.dart", 2, true);
+
+    for (DartTypeHierarchyCache.Key key : new DartTypeHierarchyCache.Key[]{key1, key2}) {
+      cache.getOrRequest(key, this::sendRequest);
+      mySentRequests.get(mySentRequests.size() - 1).consume(createItems("A"));
+    }
+    assertNotNull(cache.getCached(key1)); // key2 is the least recently used now
+
+    cache.getOrRequest(key3, this::sendRequest);
+    mySentRequests.get(mySentRequests.size() - 1).consume(createItems("A"));
+
+    assertNotNull(cache.getCached(key1));
+    assertNull(cache.getCached(key2));
+    assertNotNull(cache.getCached(key3));
+  }
+}
@@ -0,0 +1,217 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.errorTreeView;
+
+import com.intellij.analysis.problemsView.AnalysisErrorSeverity;
+import com.intellij.analysis.problemsView.AnalysisProblem;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import gnu.trove.THashMap;
+import org.dartlang.analysis.server.protocol.AnalysisError;
+import org.dartlang.analysis.server.protocol.AnalysisErrorType;
+import org.dartlang.analysis.server.protocol.Location;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Checks that {@link DartProblemsTableModel} updates only the changed rows and keeps the selection, and benchmarks updating 100 000
+ * problems file by file. The number of problems can be set with the {@code dart.problems.benchmark.count} system property.
+ */
+public class DartProblemsTableModelTest extends BasePlatformTestCase {
+  private static final int PROBLEMS_PER_FILE = 100;
+  private static final String[] SEVERITIES = {AnalysisErrorSeverity.ERROR, AnalysisErrorSeverity.WARNING, AnalysisErrorSeverity.INFO};
+
+  private DartProblemsTableModel myModel;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myModel = new DartProblemsTableModel(new DartProblemsPresentationHelper(getProject()));
+  }
+
+  @NotNull
+  private static String getFilePath(final int fileIndex) {
+    return "/benchmark/lib/file" + fileIndex + ".dart";
+  }
+
+  @NotNull
+  private static AnalysisError createError(@NotNull final String filePath, final int line, @NotNull final String message) {
+    final Location location = new Location(filePath, line * 20, 5, line, 3);
+    return new AnalysisError(SEVERITIES[line % SEVERITIES.length], AnalysisErrorType.STATIC_WARNING, location, message, null,
+                             "code_" + line % 7, null, null, false);
+  }
+
+  /**
+   * @param changedLine the line of the error that gets a different message, or -1
+   */
+  @NotNull
+  private List<DartProblem> createProblems(final int fileIndex, final int problemCount, final int changedLine, final int version) {
+    final String filePath = getFilePath(fileIndex);
+    final List<DartProblem> problems = new ArrayList<>(problemCount);
+    for (int line = 0; line < problemCount; line++) {
+      final String message = line == changedLine ? "Changed problem " + version : "Problem " + line;
+      final DartProblem problem = new DartProblem(getProject(), createError(filePath, line, message));
+      problem.computeLocation(problems.isEmpty() ? null : problems.get(0));
+      problems.add(problem);
+    }
+    return problems;
+  }
+
+  @NotNull
+  private List<AnalysisProblem> getItems() {
+    final List<AnalysisProblem> result = new ArrayList<>(myModel.getRowCount());
+    for (int i = 0; i < myModel.getRowCount(); i++) {
+      result.add(myModel.getItem(i));
+    }
+    return result;
+  }
+
+  @NotNull
+  private List<String> getMessages() {
+    final List<String> result = new ArrayList<>(myModel.getRowCount());
+    for (AnalysisProblem problem : getItems()) {
+      result.add(problem.getErrorMessage());
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  private static boolean containsSame(@NotNull final List<AnalysisProblem> problems, @NotNull final AnalysisProblem problem) {
+    for (AnalysisProblem p : problems) {
+      if (p == problem) return true;
+    }
+    return false;
+  }
+
+  public void testUnchangedProblemsStayInTable() {
+    final List<DartProblem> problems = createProblems(0, 3, -1, 0);
+    myModel.setProblemsAndReturnReplacementForSelection(Collections.singletonMap(getFilePath(0), problems), null);
+    assertEquals(3, myModel.getRowCount());
+
+    myModel.setProblemsAndReturnReplacementForSelection(Collections.singletonMap(getFilePath(0), createProblems(0, 3, 1, 1)), null);
+    final List<AnalysisProblem> items = getItems();
+    assertEquals(3, items.size());
+    assertTrue(containsSame(items, problems.get(0)));
+    assertFalse(containsSame(items, problems.get(1)));
+    assertTrue(containsSame(items, problems.get(2)));
+    assertOrderedEquals(getMessages(), "Changed problem 1", "Problem 0", "Problem 2");
+  }
+
+  public void testMovedProblemsStayInTable() {
+    final String filePath = getFilePath(0);
+    final List<DartProblem> problems = createProblems(0, 3, -1, 0);
+    myModel.setProblemsAndReturnReplacementForSelection(Collections.singletonMap(filePath, problems), null);
+
+    // two lines inserted above the problems, and a new problem in the first of them
+    final List<DartProblem> movedProblems = new ArrayList<>();
+    movedProblems.add(new DartProblem(getProject(), createError(filePath, 0, "New problem")));
+    for (DartProblem problem : problems) {
+      final AnalysisError error = problem.getAnalysisError();
+      final Location location = error.getLocation();
+      final Location movedLocation = new Location(filePath, location.getOffset() + 40, location.getLength(),
+                                                   location.getStartLine() + 2, location.getStartColumn());
+      movedProblems.add(new DartProblem(getProject(), new AnalysisError(error.getSeverity(), error.getType(), movedLocation,
+                                                                        error.getMessage(), error.getCorrection(), error.getCode(),
+                                                                        null, null, false)));
+    }
+    myModel.setProblemsAndReturnReplacementForSelection(Collections.singletonMap(filePath, movedProblems), null);
+
+    final List<AnalysisProblem> items = getItems();
+    assertEquals(4, items.size());
+    for (int i = 0; i < problems.size(); i++) {
+      assertTrue(containsSame(items, problems.get(i)));
+      assertEquals(i + 2, problems.get(i).getLineNumber());
+    }
+    assertFalse(containsSame(items, movedProblems.get(1)));
+    assertTrue(containsSame(items, movedProblems.get(0)));
+  }
+
+  public void testEqualErrorsInFile() {
+    final String filePath = getFilePath(0);
+    final List<DartProblem> problems = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      problems.add(new DartProblem(getProject(), createError(filePath, 1, "Duplicate")));
+    }
+    myModel.setProblemsAndReturnReplacementForSelection(Collections.singletonMap(filePath, problems), null);
+    assertEquals(3, myModel.getRowCount());
+
+    final List<DartProblem> fewerProblems = new ArrayList<>(problems.subList(0, 2));
+    myModel.setProblemsAndReturnReplacementForSelection(Collections.singletonMap(filePath, fewerProblems), null);
+    assertEquals(2, myModel.getRowCount());
+  }
+
+  public void testFileWithoutProblems() {
+    final Map<String, List<DartProblem>> filePathToProblems = new THashMap<>();
+    filePathToProblems.put(getFilePath(0), createProblems(0, 2, -1, 0));
+    filePathToProblems.put(getFilePath(1), createProblems(1, 2, -1, 0));
+    myModel.setProblemsAndReturnReplacementForSelection(filePathToProblems, null);
+    assertEquals(4, myModel.getRowCount());
+
+    myModel.setProblemsAndReturnReplacementForSelection(Collections.singletonMap(getFilePath(0), Collections.emptyList()), null);
+    assertEquals(2, myModel.getRowCount());
+    for (AnalysisProblem problem : getItems()) {
+      assertEquals(getFilePath(1), problem.getSystemIndependentPath());
+    }
+  }
+
+  public void testSelectedUnchangedProblem() {
+    final List<DartProblem> problems = createProblems(0, 3, -1, 0);
+    myModel.setProblemsAndReturnReplacementForSelection(Collections.singletonMap(getFilePath(0), problems), null);
+
+    final AnalysisProblem replacement = myModel.setProblemsAndReturnReplacementForSelection(
+      Collections.singletonMap(getFilePath(0), createProblems(0, 3, 2, 1)), problems.get(0));
+    assertNull(replacement);
+    assertTrue(containsSame(getItems(), problems.get(0)));
+  }
+
+  public void testSelectedMovedProblem() {
+    final String filePath = getFilePath(0);
+    final List<DartProblem> problems = createProblems(0, 2, -1, 0);
+    myModel.setProblemsAndReturnReplacementForSelection(Collections.singletonMap(filePath, problems), null);
+
+    // a line inserted above the problems
+    final List<DartProblem> movedProblems = new ArrayList<>();
+    for (DartProblem problem : problems) {
+      final AnalysisError error = problem.getAnalysisError();
+      final Location location = error.getLocation();
+      final Location movedLocation = new Location(filePath, location.getOffset() + 20, location.getLength(),
+                                                   location.getStartLine() + 1, location.getStartColumn());
+      movedProblems.add(new DartProblem(getProject(), new AnalysisError(error.getSeverity(), error.getType(), movedLocation,
+                                                                        error.getMessage(), error.getCorrection(), error.getCode(),
+                                                                        null, null, false)));
+    }
+
+    final AnalysisProblem replacement =
+      myModel.setProblemsAndReturnReplacementForSelection(Collections.singletonMap(filePath, movedProblems), problems.get(1));
+    assertSame(problems.get(1), replacement);
+    assertEquals(2, problems.get(1).getLineNumber());
+    assertOrderedEquals(getMessages(), "Problem 0", "Problem 1");
+  }
+
+  public void testProblemsViewBenchmark() {
+    final int problemCount = Integer.getInteger("dart.problems.benchmark.count", 100_000);
+    final int fileCount = problemCount / PROBLEMS_PER_FILE;
+
+    final Map<String, List<DartProblem>> filePathToProblems = new THashMap<>(fileCount);
+    for (int i = 0; i < fileCount; i++) {
+      filePathToProblems.put(getFilePath(i), createProblems(i, PROBLEMS_PER_FILE, -1, 0));
+    }
+    myModel.setProblemsAndReturnReplacementForSelection(filePathToProblems, null);
+    assertEquals(fileCount * PROBLEMS_PER_FILE, myModel.getRowCount());
+
+    // typing in a file: one problem of the file changes per update
+    final int updateCount = Math.min(fileCount, 200);
+    final List<Map<String, List<DartProblem>>> updates = new ArrayList<>(updateCount);
+    for (int version = 1; version <= updateCount; version++) {
+      final int fileIndex = version % fileCount;
+      updates.add(Collections.singletonMap(getFilePath(fileIndex),
+                                           createProblems(fileIndex, PROBLEMS_PER_FILE, version % PROBLEMS_PER_FILE, version)));
+    }
+    PlatformTestUtil.startPerformanceTest(updateCount + " single problem edits in " + problemCount + " problems", 2_000, () -> {
+      for (Map<String, List<DartProblem>> update : updates) {
+        myModel.setProblemsAndReturnReplacementForSelection(update, null);
+      }
+    }).assertTiming();
+    assertEquals(fileCount * PROBLEMS_PER_FILE, myModel.getRowCount());
+  }
+}
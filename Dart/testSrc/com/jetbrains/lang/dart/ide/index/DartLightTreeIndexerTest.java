@@ -0,0 +1,200 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.intellij.util.containers.ContainerUtil;
+import com.jetbrains.lang.dart.DartLanguage;
+import com.jetbrains.lang.dart.psi.DartComponentName;
+import com.jetbrains.lang.dart.psi.DartImportStatement;
+import com.jetbrains.lang.dart.util.DartControlFlowUtil;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+import gnu.trove.THashSet;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that {@link DartLightTreeIndexer} computes the same data as the PSI-based indexer, that it indexes the benchmark
+ * corpus in time and compares throughput and peak heap usage of both indexers. The corpus is the Dart test data; a larger
+ * one, e.g. {@code ~/.pub-cache}, can be set with the {@code dart.index.benchmark.corpus} system property.
+ */
+public class DartLightTreeIndexerTest extends BasePlatformTestCase {
+  private static final Logger LOG = Logger.getInstance(DartLightTreeIndexerTest.class);
+  private static final Pattern DART_FILE_PATTERN = Pattern.compile(".*\\.dart");
+
+  @NotNull
+  private static Map<String, String> loadCorpus(@NotNull final String path) throws IOException {
+    final Map<String, String> result = new LinkedHashMap<>();
+    for (File file : FileUtil.findFilesByMask(DART_FILE_PATTERN, new File(path))) {
+      result.put(file.getPath(), FileUtil.loadFile(file, true));
+    }
+    return result;
+  }
+
+  @NotNull
+  private static List<String> loadBenchmarkCorpus() throws IOException {
+    return new ArrayList<>(loadCorpus(System.getProperty("dart.index.benchmark.corpus", DartTestUtils.BASE_TEST_DATA_PATH)).values());
+  }
+
+  @NotNull
+  private PsiFile createPsiFile(@NotNull final String text) {
+    return PsiFileFactory.getInstance(getProject()).createFileFromText("file.dart", DartLanguage.INSTANCE, text);
+  }
+
+  @NotNull
+  private DartFileIndexData indexWithPsi(@NotNull final String text) {
+    return DartIndexUtil.indexFileRoots(createPsiFile(text));
+  }
+
+  /**
+   * Returns the top-level names that are declared more than once, e.g. by a class and an import prefix. The PSI indexer keeps
+   * the component info of the declaration that comes last in the iteration order of a hash set, so it is not compared.
+   */
+  @NotNull
+  private static Set<String> getConflictingTopLevelNames(@NotNull final PsiFile psiFile) {
+    final Set<String> names = new THashSet<>();
+    final Set<String> result = new THashSet<>();
+    for (DartComponentName componentName : DartControlFlowUtil.getSimpleDeclarations(psiFile.getChildren(), null, false)) {
+      final String name = componentName.getName();
+      if (name != null && !names.add(name)) {
+        result.add(name);
+      }
+    }
+    for (DartImportStatement importStatement : PsiTreeUtil.getChildrenOfTypeAsList(psiFile, DartImportStatement.class)) {
+      final DartComponentName importPrefix = importStatement.getImportPrefix();
+      final String name = importPrefix != null ? importPrefix.getName() : null;
+      if (name != null && !names.add(name)) {
+        result.add(name);
+      }
+    }
+    return result;
+  }
+
+  private void assertSameData(@NotNull final String text, @NotNull final DartFileIndexData expected, @NotNull final DartFileIndexData actual) {
+    assertEquals(text, expected.getLibraryName(), actual.getLibraryName());
+    assertEquals(text, expected.isPart(), actual.isPart());
+    assertEquals(text, ContainerUtil.sorted(expected.getSymbols()), ContainerUtil.sorted(actual.getSymbols()));
+    assertEquals(text, ContainerUtil.sorted(expected.getClassNames()), ContainerUtil.sorted(actual.getClassNames()));
+    assertEquals(text, expected.getComponentInfoMap().keySet(), actual.getComponentInfoMap().keySet());
+    final Set<String> conflictingNames = getConflictingTopLevelNames(createPsiFile(text));
+    for (Map.Entry<String, DartComponentInfo> entry : expected.getComponentInfoMap().entrySet()) {
+      if (!conflictingNames.contains(entry.getKey())) {
+        assertEquals(text + "\n" + entry.getKey(), entry.getValue(), actual.getComponentInfoMap().get(entry.getKey()));
+      }
+    }
+    assertEquals(text, expected.getImportAndExportInfos(), actual.getImportAndExportInfos());
+    assertEquals(text, expected.getPartUris(), actual.getPartUris());
+  }
+
+  public void testDeclarationsAndDirectives() {
+    final String text = "library foo.bar;\n" +
+                        "import 'dart:async' deferred as async show Future, Stream hide Timer;\n" +
+                        "export \"package:a/b.dart\" hide B;\n" +
+                        "part r'''part.dart''';\n" +
+                        "@deprecated var a = 1, b;\n" +
+                        "final int c = 0;\n" +
+                        "typedef void F(int x);\n" +
+                        "typedef G<T> = T Function();\n" +
+                        "int get g => 0;\n" +
+                        "set s(v) {}\n" +
+                        "main() { var local; }\n" +
+                        "abstract class C<T> extends Object with M implements I {\n" +
+                        "  C();\n" +
+                        "  C.named() : super();\n" +
+                        "  factory C.f() => null;\n" +
+                        "  static const x = 1, y = 2;\n" +
+                        "  int get size => 0;\n" +
+                        "  bool operator ==(other) => false;\n" +
+                        "  void method<E>(E e) {}\n" +
+                        "}\n" +
+                        "class D = Object with M;\n" +
+                        "mixin M on Object { int field; }\n" +
+                        "enum E { one, two }\n" +
+                        "extension X on String { void ext() {} }\n";
+    final DartFileIndexData data = DartLightTreeIndexer.indexFile(text);
+    final DartFileIndexData expected = indexWithPsi(text);
+    assertSameData(text, expected, data);
+    assertEquals(expected.getComponentInfoMap(), data.getComponentInfoMap());
+
+    assertEquals("foo.bar", data.getLibraryName());
+    assertFalse(data.isPart());
+    assertEquals(ContainerUtil.newArrayList("C", "D", "E", "M"), ContainerUtil.sorted(data.getClassNames()));
+    assertEquals(ContainerUtil.newArrayList("==", "C", "C", "D", "E", "F", "G", "M", "a", "b", "c", "f", "field", "g", "main", "method",
+                                            "named", "one", "s", "size", "two", "x", "y"),
+                 ContainerUtil.sorted(data.getSymbols()));
+    assertEquals(ContainerUtil.newArrayList("part.dart"), data.getPartUris());
+    assertEquals(2, data.getImportAndExportInfos().size());
+    final DartImportOrExportInfo importInfo = data.getImportAndExportInfos().get(0);
+    assertEquals("dart:async", importInfo.getUri());
+    assertEquals("async", importInfo.getImportPrefix());
+    assertEquals(ContainerUtil.newHashSet("Future", "Stream"), importInfo.getShowComponents());
+    assertEquals(ContainerUtil.newHashSet("Timer"), importInfo.getHideComponents());
+  }
+
+  public void testPartOf() {
+    final String text = "part of foo;\nclass A {}";
+    final DartFileIndexData data = DartLightTreeIndexer.indexFile(text);
+    assertSameData(text, indexWithPsi(text), data);
+    assertTrue(data.isPart());
+  }
+
+  public void testSameDataAsPsiIndexerOnTestData() throws IOException {
+    final Map<String, String> corpus = loadCorpus(DartTestUtils.BASE_TEST_DATA_PATH);
+    final List<String> skippedPaths = new ArrayList<>();
+    for (Map.Entry<String, String> entry : corpus.entrySet()) {
+      final DartFileIndexData expected;
+      try {
+        expected = indexWithPsi(entry.getValue());
+      }
+      catch (RuntimeException e) {
+        // the PSI indexer fails on some incomplete declarations, there is nothing to compare with
+        LOG.info("PSI indexer failed on " + entry.getKey() + ": " + e);
+        skippedPaths.add(entry.getKey());
+        continue;
+      }
+      assertSameData(entry.getValue(), expected, DartLightTreeIndexer.indexFile(entry.getValue()));
+    }
+    LOG.info("Compared index data of " + (corpus.size() - skippedPaths.size()) + " files, skipped " + skippedPaths.size());
+  }
+
+  public void testIndexerBenchmark() throws IOException {
+    final List<String> corpus = loadBenchmarkCorpus();
+    PlatformTestUtil.startPerformanceTest("Light tree indexer", 3_000, () -> {
+      for (String text : corpus) {
+        assertNotNull(DartLightTreeIndexer.indexFile(text));
+      }
+    }).attempts(3).assertTiming();
+  }
+
+  // the same corpus indexed with the PSI indexer, for comparison with testIndexerBenchmark
+  public void testPsiIndexerBenchmark() throws IOException {
+    final List<String> corpus = loadBenchmarkCorpus();
+    PlatformTestUtil.startPerformanceTest("PSI indexer", 10_000, () -> {
+      for (String text : corpus) {
+        indexWithPsiIgnoringErrors(text);
+      }
+    }).attempts(3).assertTiming();
+  }
+
+  private DartFileIndexData indexWithPsiIgnoringErrors(@NotNull final String text) {
+    try {
+      return indexWithPsi(text);
+    }
+    catch (RuntimeException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,351 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import junit.framework.TestCase;
+import org.dartlang.vm.service.consumer.GetObjectConsumer;
+import org.dartlang.vm.service.element.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks {@link VmServiceObjectCache} against a stand-in for the VM service of a paused isolate, including that the cache reduces the
+ * number of round trips and transferred elements needed to expand values in the Variables view. The simulated round trip time can be
+ * set with the {@code dart.vm.service.benchmark.latency} system property, in milliseconds.
+ */
+public class VmServiceObjectCacheTest extends TestCase {
+  private static final String ISOLATE_ID = "isolates/1";
+  private static final int CHILDREN_TO_SHOW = 100; // XCompositeNode.MAX_CHILDREN_TO_SHOW
+
+  /**
+   * Answers {@code getObject} requests on its own thread after the round trip time. {@code list/<length>} is a list of ints,
+   * {@code expired/*} is a sentinel, {@code error/*} fails, any other id is an object with 10 fields.
+   */
+  private static class StandInVmService implements VmServiceObjectCache.ObjectFetcher {
+    private final ScheduledExecutorService myExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final long myLatencyMillis;
+    private final AtomicInteger myRequestCount = new AtomicInteger();
+    private final AtomicInteger myTransferredElementCount = new AtomicInteger();
+
+    StandInVmService(final long latencyMillis) {
+      myLatencyMillis = latencyMillis;
+    }
+
+    @Override
+    public void getObject(@NotNull final String isolateId,
+                          @NotNull final String objectId,
+                          @Nullable final Integer offset,
+                          @Nullable final Integer count,
+                          @NotNull final GetObjectConsumer consumer) {
+      myRequestCount.incrementAndGet();
+      myExecutor.schedule(() -> respond(objectId, offset, count, consumer), myLatencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void respond(@NotNull final String objectId,
+                         @Nullable final Integer offset,
+                         @Nullable final Integer count,
+                         @NotNull final GetObjectConsumer consumer) {
+      if (objectId.startsWith("expired/")) {
+        final JsonObject json = new JsonObject();
+        json.addProperty("type", "Sentinel");
+        json.addProperty("kind", "Expired");
+        json.addProperty("valueAsString", "<expired>");
+        consumer.received(new Sentinel(json));
+      }
+      else if (objectId.startsWith("error/")) {
+        final JsonObject json = new JsonObject();
+        json.addProperty("code", 100);
+        json.addProperty("message", "Feature is disabled");
+        consumer.onError(new RPCError(json));
+      }
+      else if (objectId.startsWith("list/")) {
+        final int length = Integer.parseInt(objectId.substring("list/".length()));
+        final int start = offset == null ? 0 : offset;
+        final int end = count == null ? length : Math.min(length, start + count);
+        final JsonArray elements = new JsonArray();
+        for (int i = start; i < end; i++) {
+          elements.add(createInstanceRef("objects/int" + i, "Int"));
+        }
+        myTransferredElementCount.addAndGet(end - start);
+
+        final JsonObject json = createInstanceRef(objectId, "List");
+        json.addProperty("type", "Instance");
+        json.addProperty("length", length);
+        json.addProperty("offset", start);
+        json.addProperty("count", end - start);
+        json.add("elements", elements);
+        consumer.received(new Instance(json));
+      }
+      else {
+        final JsonArray fields = new JsonArray();
+        for (int i = 0; i < 10; i++) {
+          final JsonObject decl = new JsonObject();
+          decl.addProperty("type", "@Field");
+          decl.addProperty("id", objectId + "/field" + i);
+          decl.addProperty("name", "field" + i);
+          final JsonObject field = new JsonObject();
+          field.add("decl", decl);
+          field.add("value", createInstanceRef(objectId + "/" + i, "PlainInstance"));
+          fields.add(field);
+        }
+        myTransferredElementCount.addAndGet(10);
+
+        final JsonObject json = createInstanceRef(objectId, "PlainInstance");
+        json.addProperty("type", "Instance");
+        json.add("fields", fields);
+        consumer.received(new Instance(json));
+      }
+    }
+
+    @NotNull
+    private static JsonObject createInstanceRef(@NotNull final String id, @NotNull final String kind) {
+      final JsonObject classRef = new JsonObject();
+      classRef.addProperty("type", "@Class");
+      classRef.addProperty("id", "classes/" + kind);
+      classRef.addProperty("name", kind);
+      final JsonObject json = new JsonObject();
+      json.addProperty("type", "@Instance");
+      json.addProperty("id", id);
+      json.addProperty("kind", kind);
+      json.add("class", classRef);
+      return json;
+    }
+
+    int getRequestCount() {
+      return myRequestCount.get();
+    }
+
+    void dispose() {
+      myExecutor.shutdownNow();
+    }
+  }
+
+  private static class FutureConsumer extends CompletableFuture<Object> implements GetObjectConsumer {
+    @Override
+    public void received(Obj response) {
+      complete(response);
+    }
+
+    @Override
+    public void received(Sentinel response) {
+      complete(response);
+    }
+
+    @Override
+    public void onError(RPCError error) {
+      complete(error);
+    }
+
+    @NotNull
+    Object await() throws Exception {
+      return get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  private StandInVmService myVmService;
+  private VmServiceObjectCache myCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myVmService = new StandInVmService(1);
+    myCache = new VmServiceObjectCache(myVmService);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myVmService.dispose();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  @NotNull
+  private Object getObject(@NotNull final String objectId) throws Exception {
+    final FutureConsumer consumer = new FutureConsumer();
+    myCache.getObject(ISOLATE_ID, objectId, consumer);
+    return consumer.await();
+  }
+
+  public void testObjectCachedUntilInvalidated() throws Exception {
+    final Object first = getObject("objects/1");
+    assertTrue(first instanceof Instance);
+    assertSame(first, getObject("objects/1"));
+    assertEquals(1, myVmService.getRequestCount());
+
+    myCache.invalidate(ISOLATE_ID);
+    assertEquals(0, myCache.getCachedObjectCount(ISOLATE_ID));
+    final Object second = getObject("objects/1");
+    assertNotSame(first, second);
+    assertEquals(2, myVmService.getRequestCount());
+  }
+
+  public void testConcurrentRequestsSentOnce() throws Exception {
+    final List<FutureConsumer> consumers = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      final FutureConsumer consumer = new FutureConsumer();
+      myCache.getObject(ISOLATE_ID, "objects/1", consumer);
+      consumers.add(consumer);
+    }
+    final Object result = consumers.get(0).await();
+    for (FutureConsumer consumer : consumers) {
+      assertSame(result, consumer.await());
+    }
+    assertEquals(1, myVmService.getRequestCount());
+  }
+
+  public void testSentinelCachedErrorNot() throws Exception {
+    assertTrue(getObject("expired/1") instanceof Sentinel);
+    assertTrue(getObject("expired/1") instanceof Sentinel);
+    assertEquals(1, myVmService.getRequestCount());
+
+    assertTrue(getObject("error/1") instanceof RPCError);
+    assertTrue(getObject("error/1") instanceof RPCError);
+    assertEquals(3, myVmService.getRequestCount());
+  }
+
+  public void testResponseAfterInvalidationNotCached() throws Exception {
+    final FutureConsumer consumer = new FutureConsumer();
+    myCache.getObject(ISOLATE_ID, "objects/1", consumer);
+    myCache.invalidate(ISOLATE_ID);
+    assertTrue(consumer.await() instanceof Instance);
+    assertEquals(0, myCache.getCachedObjectCount(ISOLATE_ID));
+
+    getObject("objects/1");
+    assertEquals(2, myVmService.getRequestCount());
+  }
+
+  public void testIsolatesCachedSeparately() throws Exception {
+    getObject("objects/1");
+    final FutureConsumer consumer = new FutureConsumer();
+    myCache.getObject("isolates/2", "objects/1", consumer);
+    consumer.await();
+    assertEquals(2, myVmService.getRequestCount());
+
+    myCache.invalidate("isolates/2");
+    assertEquals(1, myCache.getCachedObjectCount(ISOLATE_ID));
+  }
+
+  public void testCollectionPages() throws Exception {
+    final int length = 2500;
+    for (int offset = 0; offset < length; offset += CHILDREN_TO_SHOW) {
+      final FutureConsumer consumer = new FutureConsumer();
+      myCache.getCollectionPage(ISOLATE_ID, "list/" + length, offset, length, consumer);
+      final Instance page = (Instance)consumer.await();
+      final int pageStart = VmServiceObjectCache.getCollectionPageStart(offset);
+      assertEquals(pageStart, page.getOffset());
+      assertEquals("objects/int" + offset, page.getElements().get(offset - pageStart).getId());
+    }
+    assertEquals(3, myVmService.getRequestCount());
+    assertEquals(500, ((Instance)getCachedPage(length, 2000)).getCount());
+  }
+
+  @NotNull
+  private Object getCachedPage(final int length, final int offset) throws Exception {
+    final FutureConsumer consumer = new FutureConsumer();
+    myCache.getCollectionPage(ISOLATE_ID, "list/" + length, offset, length, consumer);
+    return consumer.await();
+  }
+
+  public void testPrefetch() throws Exception {
+    myCache.prefetch(ISOLATE_ID, "objects/1");
+    myCache.prefetchCollectionPage(ISOLATE_ID, "list/10", 0, 10);
+    getObject("objects/1");
+    getCachedPage(10, 0);
+    assertEquals(2, myVmService.getRequestCount());
+  }
+
+  public void testVariablesViewBenchmark() throws Exception {
+    final long latency = Long.getLong("dart.vm.service.benchmark.latency", 2);
+    final BenchmarkResult uncached = runBenchmark(latency, false);
+    final BenchmarkResult cached = runBenchmark(latency, true);
+    final String measured = "without cache: " + uncached + "; with cache: " + cached;
+
+    // each variable and its first field once instead of once per view, and one request per page instead of one per 100 children
+    assertEquals(measured, 80, uncached.myVariablesRequests);
+    assertEquals(measured, 40, cached.myVariablesRequests);
+    assertEquals(measured, 100, uncached.myListRequests);
+    assertEquals(measured, 10_000 / VmServiceObjectCache.COLLECTION_PAGE_SIZE, cached.myListRequests);
+    assertEquals(measured, 10_000 + 800, uncached.myTransferredElements);
+    assertEquals(measured, 10_000 + 400, cached.myTransferredElements);
+  }
+
+  private static class BenchmarkResult {
+    private final int myVariablesRequests;
+    private final int myListRequests;
+    private final int myTransferredElements;
+
+    BenchmarkResult(final int variablesRequests, final int listRequests, final int transferredElements) {
+      myVariablesRequests = variablesRequests;
+      myListRequests = listRequests;
+      myTransferredElements = transferredElements;
+    }
+
+    @Override
+    public String toString() {
+      return "variables " + myVariablesRequests + " requests; 10k list " + myListRequests + " requests; " + myTransferredElements +
+             " elements transferred";
+    }
+  }
+
+  /**
+   * Selects a frame with 20 variables, expands each of them and their first field twice (Variables view and Watches), then expands a
+   * list of 10,000 elements completely, 100 children at a time, as the Variables view does.
+   */
+  @NotNull
+  private static BenchmarkResult runBenchmark(final long latencyMillis, final boolean cached) throws Exception {
+    final StandInVmService vmService = new StandInVmService(latencyMillis);
+    final VmServiceObjectCache cache = new VmServiceObjectCache(vmService);
+    try {
+      if (cached) {
+        for (int i = 0; i < 20; i++) {
+          cache.prefetch(ISOLATE_ID, "objects/var" + i);
+        }
+      }
+      for (int view = 0; view < 2; view++) {
+        for (int i = 0; i < 20; i++) {
+          final FutureConsumer varConsumer = new FutureConsumer();
+          final FutureConsumer fieldConsumer = new FutureConsumer();
+          if (cached) {
+            cache.getObject(ISOLATE_ID, "objects/var" + i, varConsumer);
+            varConsumer.await();
+            cache.getObject(ISOLATE_ID, "objects/var" + i + "/0", fieldConsumer);
+          }
+          else {
+            vmService.getObject(ISOLATE_ID, "objects/var" + i, null, null, varConsumer);
+            varConsumer.await();
+            vmService.getObject(ISOLATE_ID, "objects/var" + i + "/0", null, null, fieldConsumer);
+          }
+          fieldConsumer.await();
+        }
+      }
+      final int variablesRequests = vmService.getRequestCount();
+
+      final int length = 10_000;
+      for (int offset = 0; offset < length; offset += CHILDREN_TO_SHOW) {
+        final FutureConsumer consumer = new FutureConsumer();
+        if (cached) {
+          cache.getCollectionPage(ISOLATE_ID, "list/" + length, offset, length, consumer);
+        }
+        else {
+          vmService.getObject(ISOLATE_ID, "list/" + length, offset, Math.min(CHILDREN_TO_SHOW, length - offset), consumer);
+        }
+        assertTrue(consumer.await() instanceof Instance);
+      }
+
+      return new BenchmarkResult(variablesRequests, vmService.getRequestCount() - variablesRequests,
+                                 vmService.myTransferredElementCount.get());
+    }
+    finally {
+      vmService.dispose();
+    }
+  }
+}
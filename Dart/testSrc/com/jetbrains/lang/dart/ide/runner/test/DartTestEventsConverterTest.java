@@ -13,6 +13,8 @@ import com.intellij.execution.ui.ConsoleViewContentType;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.testFramework.PlatformTestUtil;
 import com.jetbrains.lang.dart.util.DartUrlResolver;
 import org.jetbrains.annotations.NotNull;
@@ -20,12 +22,15 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreeModel;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class DartTestEventsConverterTest extends BaseSMTRunnerTestCase {
+  private static final int MAX_OUTPUT_PER_TEST = 64 * 1024;
 
   // Do not reformat this list.
   private static final String[] Sample1Events = {
@@ -338,6 +343,177 @@ public class DartTestEventsConverterTest extends BaseSMTRunnerTestCase {
     runTest(events, signals, new int[]{});
   }
 
+  public void testStreamingMode() {
+    String[] events = {
+      "{'protocolVersion':'0.1.0','runnerVersion':'0.12.10','type':'start','time':0}\n",
+      "{'suite':{'id':0,'platform':'vm','path':'test/foo_test.dart'},'type':'suite','time':0}\n",
+      "{'group':{'id':1,'suiteID':0,'parentID':null,'name':null,'metadata':{'skip':false,'skipReason':null},'testCount':2},'type':'group','time':1}\n",
+      "{'test':{'id':2,'name':'first','suiteID':0,'groupIDs':[1],'metadata':{'skip':false,'skipReason':null}},'type':'testStart','time':1}\n",
+      "{'testID':2,'message':'a','type':'print','time':2}\n",
+      "{'testID':2,'message':'b','type':'print','time':2}\n",
+      "{'testID':2,'message':'c\\n','type':'print','time':2}\n",
+      "{'testID':2,'result':'success','hidden':false,'type':'testDone','time':3}\n",
+      "{'test':{'id':3,'name':'second','suiteID':0,'groupIDs':[1],'metadata':{'skip':false,'skipReason':null}},'type':'testStart','time':3}\n",
+      "{'testID':3,'message':'d','type':'print','time':4}\n",
+      "not an event\n",
+      "{'testID':3,'message':'e','type':'print','time':4}\n",
+      "{'testID':3,'error':'boom','stackTrace':'','isFailure':true,'type':'error','time':5}\n",
+      "{'testID':3,'result':'failure','hidden':false,'type':'testDone','time':5}\n",
+      "{'success':false,'type':'done','time':6}\n",
+    };
+    String[] signals = {
+      "suite started foo_test.dart",
+      "start first",
+      "print first a\nb\nc\n",
+      "finish first",
+      "start second",
+      "print second d\n",
+      "print second e\n",
+      "fail second false",
+      "finish second",
+      "suite finished foo_test.dart"
+    };
+    myEventsConverter = createConverter(true);
+    runTest(events, signals, new int[]{});
+  }
+
+  public void testStreamingModeOutputLimit() throws IOException {
+    myEventsConverter = createConverter(true);
+    myEventsConverter.setMaxOutputPerTest(12);
+    String[] events = {
+      "{'test':{'id':1,'name':'noisy','groupIDs':[],'metadata':{'skip':false,'skipReason':null}},'type':'testStart','time':0}\n",
+      "{'testID':1,'message':'12345','type':'print','time':1}\n",
+      "{'testID':1,'message':'67890','type':'print','time':1}\n",
+      "{'testID':1,'message':'abcde','type':'print','time':1}\n",
+      "{'testID':1,'result':'success','hidden':false,'type':'testDone','time':2}\n",
+      "{'success':true,'type':'done','time':3}\n",
+    };
+    for (String event : events) {
+      myEventsConverter.process(event, new Key("stdout"));
+    }
+
+    assertEquals(3, myEventsProcessor.signals.size());
+    final String output = myEventsProcessor.signals.get(1);
+    final String prefix = "print noisy 12345\n67890\nOutput is longer than 12 characters, the rest is written to ";
+    assertTrue(output, output.startsWith(prefix));
+    final File spillFile = new File(output.substring(prefix.length()).trim());
+    assertEquals("--- noisy ---\nabcde\n", FileUtil.loadFile(spillFile));
+    FileUtil.delete(spillFile);
+  }
+
+  /**
+   * Replays a synthetic log of 100,000 events, or of the number set with the {@code dart.test.events.benchmark.count} system property,
+   * in both modes, and checks that the streaming mode sends fewer events to the test tree and keeps at most {@code MAX_OUTPUT_PER_TEST}
+   * characters of output per test.
+   */
+  public void testStreamingModeOnLargeLog() {
+    final List<String> log = createSyntheticLog(Integer.getInteger("dart.test.events.benchmark.count", 100_000));
+    int testCount = 0;
+    for (String event : log) {
+      if (event.contains("\"type\":\"testStart\"")) testCount++;
+    }
+
+    final ReplayResult defaultMode = replayLog(log, false);
+    final ReplayResult streamingMode = replayLog(log, true);
+    final String measured = log.size() + " events, default mode: " + defaultMode + "; streaming mode: " + streamingMode;
+
+    assertTrue(measured, streamingMode.myTreeEventCount < defaultMode.myTreeEventCount);
+    assertTrue(measured, streamingMode.myRetainedOutputLength < defaultMode.myRetainedOutputLength);
+    assertTrue(measured, streamingMode.myRetainedOutputLength <= testCount * (MAX_OUTPUT_PER_TEST + 1024L));
+  }
+
+  /**
+   * Times the streaming mode on the synthetic log of {@link #testStreamingModeOnLargeLog()}.
+   */
+  public void testStreamingModeBenchmark() {
+    final List<String> log = createSyntheticLog(Integer.getInteger("dart.test.events.benchmark.count", 100_000));
+    PlatformTestUtil.startPerformanceTest("Dart test events in streaming mode", 5_000, () -> {
+      final RetainingEventsProcessor processor = new RetainingEventsProcessor(getProject());
+      final DartTestEventsConverter converter = createBenchmarkConverter(processor, true);
+      replay(converter, log);
+      Disposer.dispose(converter);
+      Disposer.dispose(processor);
+    }).attempts(3).assertTiming();
+  }
+
+  private static class ReplayResult {
+    private final int myTreeEventCount;
+    private final int myRetainedOutputLength;
+
+    ReplayResult(final int treeEventCount, final int retainedOutputLength) {
+      myTreeEventCount = treeEventCount;
+      myRetainedOutputLength = retainedOutputLength;
+    }
+
+    @Override
+    public String toString() {
+      return myTreeEventCount + " tree events, " + (myRetainedOutputLength >> 10) + " KB of retained output";
+    }
+  }
+
+  @NotNull
+  private static List<String> createSyntheticLog(final int eventCount) {
+    final List<String> log = new ArrayList<>(eventCount + 10);
+    log.add("{\"protocolVersion\":\"0.1.0\",\"runnerVersion\":\"1.14.0\",\"type\":\"start\",\"time\":0}\n");
+    log.add("{\"suite\":{\"id\":0,\"platform\":\"vm\",\"path\":\"test/big_test.dart\"},\"type\":\"suite\",\"time\":0}\n");
+    log.add("{\"group\":{\"id\":1,\"suiteID\":0,\"parentID\":null,\"name\":null,\"metadata\":{\"skip\":false,\"skipReason\":null}," +
+            "\"testCount\":0},\"type\":\"group\",\"time\":0}\n");
+    final String line = StringUtil.repeat("x", 100);
+    for (int id = 2; log.size() < eventCount; id++) {
+      log.add("{\"test\":{\"id\":" + id + ",\"name\":\"test " + id + "\",\"suiteID\":0,\"groupIDs\":[1]," +
+              "\"metadata\":{\"skip\":false,\"skipReason\":null},\"line\":10,\"column\":5,\"url\":\"file:///test/big_test.dart\"}," +
+              "\"type\":\"testStart\",\"time\":" + id + "}\n");
+      // every 500th test is very noisy
+      final int printCount = id % 500 == 0 ? 5000 : 2;
+      for (int i = 0; i < printCount; i++) {
+        log.add("{\"testID\":" + id + ",\"message\":\"" + line + i + "\",\"type\":\"print\",\"time\":" + id + "}\n");
+      }
+      if (id % 50 == 0) {
+        log.add("Some output not reported by package:test\n");
+      }
+      log.add("{\"testID\":" + id + ",\"result\":\"success\",\"hidden\":false,\"type\":\"testDone\",\"time\":" + (id + 1) + "}\n");
+    }
+    log.add("{\"success\":true,\"type\":\"done\",\"time\":1000000}\n");
+    return log;
+  }
+
+  @NotNull
+  private ReplayResult replayLog(@NotNull final List<String> log, final boolean streaming) {
+    final RetainingEventsProcessor processor = new RetainingEventsProcessor(getProject());
+    final DartTestEventsConverter converter = createBenchmarkConverter(processor, streaming);
+    replay(converter, log);
+    // the processor keeps the output of each test, as the test tree does
+    final ReplayResult result = new ReplayResult(processor.myEventCount, processor.getRetainedOutputLength());
+    Disposer.dispose(converter);
+    Disposer.dispose(processor);
+    return result;
+  }
+
+  @NotNull
+  private DartTestEventsConverter createBenchmarkConverter(@NotNull final RetainingEventsProcessor processor, final boolean streaming) {
+    final DartTestEventsConverter converter = createConverter(streaming);
+    converter.setProcessor(processor);
+    converter.setMaxOutputPerTest(MAX_OUTPUT_PER_TEST);
+    return converter;
+  }
+
+  private static void replay(@NotNull final DartTestEventsConverter converter, @NotNull final List<String> log) {
+    final Key key = new Key("stdout");
+    for (String event : log) {
+      converter.process(event, key);
+    }
+    converter.flushBufferOnProcessTermination(0);
+  }
+
+  @NotNull
+  private DartTestEventsConverter createConverter(final boolean streaming) {
+    final DartTestEventsConverter converter =
+      new DartTestEventsConverter(DartTestRunningState.DART_FRAMEWORK_NAME, myConsole.getProperties(),
+                                  DartUrlResolver.getInstance(getProject(), getSourceRoot()), streaming);
+    converter.setProcessor(myEventsProcessor);
+    return converter;
+  }
+
   private void runTest(String[] jsonEvents, String[] signals, int[] parents) {
     DartTestEventsConverter parser = myEventsConverter;
     Key key = new Key("stdout");
@@ -429,6 +605,94 @@ public class DartTestEventsConverterTest extends BaseSMTRunnerTestCase {
     }
   }
 
+  /**
+   * Counts the events and keeps the output of each test, as the test tree does.
+   */
+  private static class RetainingEventsProcessor extends GeneralTestEventsProcessor {
+    private final Map<String, StringBuilder> myTestIdToOutput = new HashMap<>();
+    private int myEventCount;
+
+    RetainingEventsProcessor(Project project) {
+      super(project, DartTestRunningState.DART_FRAMEWORK_NAME, new SMTestProxy.SMRootTestProxy());
+    }
+
+    int getRetainedOutputLength() {
+      int result = 0;
+      for (StringBuilder output : myTestIdToOutput.values()) {
+        result += output.length();
+      }
+      return result;
+    }
+
+    @Override
+    public void onTestStarted(@NotNull TestStartedEvent testStartedEvent) {
+      myEventCount++;
+    }
+
+    @Override
+    public void onTestFinished(@NotNull TestFinishedEvent testFinishedEvent) {
+      myEventCount++;
+    }
+
+    @Override
+    public void onTestFailure(@NotNull TestFailedEvent testFailedEvent) {
+      myEventCount++;
+    }
+
+    @Override
+    public void onTestIgnored(@NotNull TestIgnoredEvent testIgnoredEvent) {
+      myEventCount++;
+    }
+
+    @Override
+    public void onTestOutput(@NotNull TestOutputEvent testOutputEvent) {
+      myEventCount++;
+      myTestIdToOutput.computeIfAbsent(testOutputEvent.getId(), id -> new StringBuilder()).append(testOutputEvent.getText());
+    }
+
+    @Override
+    public void onSuiteStarted(@NotNull TestSuiteStartedEvent suiteStartedEvent) {
+      myEventCount++;
+    }
+
+    @Override
+    public void onSuiteFinished(@NotNull TestSuiteFinishedEvent suiteFinishedEvent) {
+      myEventCount++;
+    }
+
+    @Override
+    public void onStartTesting() {
+    }
+
+    @Override
+    public void onTestsCountInSuite(int count) {
+    }
+
+    @Override
+    public void onUncapturedOutput(@NotNull String text, Key outputType) {
+    }
+
+    @Override
+    public void onError(@NotNull String localizedMessage, @Nullable String stackTrace, boolean isCritical) {
+    }
+
+    @Override
+    public void onFinishTesting() {
+    }
+
+    @Override
+    public void onTestsReporterAttached() {
+    }
+
+    @Override
+    public void setLocator(@NotNull SMTestLocator locator) {
+    }
+
+    @Override
+    public void setPrinterProvider(@NotNull TestProxyPrinterProvider printerProvider) {
+    }
+  }
+
   private class DartTestEventsProcessor extends GeneralTestEventsProcessor {
     List<String> signals = new ArrayList<>();
 
@@ -0,0 +1,87 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.util;
+
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+
+public class DartPackageMapServiceTest extends BasePlatformTestCase {
+
+  @NotNull
+  private DartPackageMap getLivePackageMap(@NotNull final VirtualFile pubspecYamlFile) {
+    return DartPackageMapService.getInstance(getProject()).getLivePackageMap(pubspecYamlFile);
+  }
+
+  @NotNull
+  private static Collection<String> getPackageNames(@NotNull final DartPackageMap packageMap) {
+    return ContainerUtil.sorted(packageMap.getPackageNameToDir().keySet());
+  }
+
+  private static void setText(@NotNull final VirtualFile file, @NotNull final String text) {
+    WriteAction.runAndWait(() -> VfsUtil.saveText(file, text));
+  }
+
+  public void testDotPackagesChangeDropsPackageMap() {
+    final VirtualFile pubspec = myFixture.addFileToProject("app/pubspec.yaml", "name: app").getVirtualFile();
+    myFixture.addFileToProject("app/lib/app.dart", "");
+    myFixture.addFileToProject("foo/lib/foo.dart", "");
+    myFixture.addFileToProject("bar/lib/bar.dart", "");
+    final VirtualFile dotPackages = myFixture.addFileToProject("app/.packages", "app:lib/\nfoo:../foo/lib/").getVirtualFile();
+
+    final DartPackageMap packageMap = getLivePackageMap(pubspec);
+    assertOrderedEquals(getPackageNames(packageMap), "app", "foo");
+    assertSame(packageMap, getLivePackageMap(pubspec));
+
+    setText(dotPackages, "app:lib/\nbar:../bar/lib/");
+    assertOrderedEquals(getPackageNames(getLivePackageMap(pubspec)), "app", "bar");
+  }
+
+  public void testDotPackagesCreationDropsPackageMap() {
+    final VirtualFile pubspec = myFixture.addFileToProject("app/pubspec.yaml", "name: app").getVirtualFile();
+    myFixture.addFileToProject("app/lib/app.dart", "");
+    myFixture.addFileToProject("foo/lib/foo.dart", "");
+
+    assertOrderedEquals(getPackageNames(getLivePackageMap(pubspec)), "app");
+
+    myFixture.addFileToProject("app/.packages", "app:lib/\nfoo:../foo/lib/");
+    assertOrderedEquals(getPackageNames(getLivePackageMap(pubspec)), "app", "foo");
+  }
+
+  public void testPubspecDocumentChangeDropsPackageMap() {
+    final VirtualFile pubspec = myFixture.addFileToProject("app/pubspec.yaml", "name: app").getVirtualFile();
+    myFixture.addFileToProject("app/lib/app.dart", "");
+
+    final DartPackageMap packageMap = getLivePackageMap(pubspec);
+    assertOrderedEquals(getPackageNames(packageMap), "app");
+
+    final Document document = FileDocumentManager.getInstance().getDocument(pubspec);
+    assertNotNull(document);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> document.setText("name: renamed_app"));
+    assertNotSame(packageMap, getLivePackageMap(pubspec));
+  }
+
+  public void testChangeOfOtherDotPackagesKeepsPackageMap() {
+    final VirtualFile pubspec = myFixture.addFileToProject("app/pubspec.yaml", "name: app").getVirtualFile();
+    myFixture.addFileToProject("app/lib/app.dart", "");
+    myFixture.addFileToProject("app/.packages", "app:lib/");
+    final VirtualFile otherPubspec = myFixture.addFileToProject("other/pubspec.yaml", "name: other").getVirtualFile();
+    myFixture.addFileToProject("other/lib/other.dart", "");
+    final VirtualFile otherDotPackages = myFixture.addFileToProject("other/.packages", "other:lib/").getVirtualFile();
+
+    final DartPackageMap packageMap = getLivePackageMap(pubspec);
+    final DartPackageMap otherPackageMap = getLivePackageMap(otherPubspec);
+
+    setText(otherDotPackages, "other:lib/\napp:../app/lib/");
+    assertSame(packageMap, getLivePackageMap(pubspec));
+    assertNotSame(otherPackageMap, getLivePackageMap(otherPubspec));
+    assertOrderedEquals(getPackageNames(getLivePackageMap(otherPubspec)), "app", "other");
+  }
+}
@@ -0,0 +1,121 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.jetbrains.lang.dart.util;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+public class DartPackageMapTest extends TestCase {
+  @NotNull
+  private static DartPackageMap createPackageMap(@NotNull final Map<String, List<String>> packageNameToDirPaths) {
+    return new DartPackageMap(Collections.emptyMap(), packageNameToDirPaths);
+  }
+
+  @NotNull
+  private static Map<String, List<String>> createSyntheticPackages(final int packageCount) {
+    final Map<String, List<String>> result = new LinkedHashMap<>();
+    for (int i = 0; i < packageCount; i++) {
+      final String dirPath = "/home/user/.pub-cache/hosted/pub.dartlang.org/package_" + i + "-1.0." + i + "/lib";
+      result.put("package_" + i, Collections.singletonList(dirPath));
+    }
+    return result;
+  }
+
+  // the lookup that DartUrlResolverImpl used before package maps were precomputed
+  @Nullable
+  private static String getPackageUrlByLinearScan(@NotNull final Map<String, List<String>> packageNameToDirPaths,
+                                                  @NotNull final String filePath) {
+    for (Map.Entry<String, List<String>> entry : packageNameToDirPaths.entrySet()) {
+      for (String dirPath : entry.getValue()) {
+        if (filePath.startsWith(dirPath + "/")) {
+          return DartUrlResolver.PACKAGE_PREFIX + entry.getKey() + filePath.substring(dirPath.length());
+        }
+      }
+    }
+    return null;
+  }
+
+  public void testPackageUrl() {
+    final Map<String, List<String>> packages = new LinkedHashMap<>();
+    packages.put("app", Collections.singletonList("/repo/app/lib"));
+    packages.put("example", Collections.singletonList("/repo/app/lib/example/lib"));
+    packages.put("core", Arrays.asList("/repo/core/lib", "/repo/core_generated/lib"));
+    packages.put("core_copy", Collections.singletonList("/repo/core/lib"));
+    final DartPackageMap packageMap = createPackageMap(packages);
+
+    assertEquals("package:app/main.dart", packageMap.getPackageUrl("/repo/app/lib/main.dart"));
+    assertEquals("package:app/src/a/b.dart", packageMap.getPackageUrl("/repo/app/lib/src/a/b.dart"));
+    assertEquals("package:app/", packageMap.getPackageUrl("/repo/app/lib"));
+    // the innermost package root wins
+    assertEquals("package:example/main.dart", packageMap.getPackageUrl("/repo/app/lib/example/lib/main.dart"));
+    assertEquals("package:app/example/main.dart", packageMap.getPackageUrl("/repo/app/lib/example/main.dart"));
+    // a package with several roots
+    assertEquals("package:core/gen.dart", packageMap.getPackageUrl("/repo/core_generated/lib/gen.dart"));
+    // the first package wins if packages have the same root
+    assertEquals("package:core/core.dart", packageMap.getPackageUrl("/repo/core/lib/core.dart"));
+
+    assertNull(packageMap.getPackageUrl("/repo/app/bin/main.dart"));
+    assertNull(packageMap.getPackageUrl("/repo/app/library/main.dart"));
+    assertNull(packageMap.getPackageUrl("/repo/core_extra/lib/a.dart"));
+    assertNull(packageMap.getPackageUrl("/repo"));
+    assertNull(DartPackageMap.EMPTY.getPackageUrl("/repo/app/lib/main.dart"));
+  }
+
+  public void testMapsAreImmutable() {
+    final Map<String, List<String>> packages = new LinkedHashMap<>(createSyntheticPackages(3));
+    final DartPackageMap packageMap = createPackageMap(packages);
+    packages.clear();
+    assertEquals(3, packageMap.getPackageNameToDirPaths().size());
+
+    try {
+      packageMap.getPackageNameToDirPaths().clear();
+      fail();
+    }
+    catch (UnsupportedOperationException ignored) {
+    }
+  }
+
+  public void testSameUrlsAsLinearScan() {
+    final Map<String, List<String>> packages = createSyntheticPackages(500);
+    final DartPackageMap packageMap = createPackageMap(packages);
+
+    for (int i = 0; i < 600; i += 7) {
+      final String filePath = "/home/user/.pub-cache/hosted/pub.dartlang.org/package_" + i + "-1.0." + i + "/lib/src/file_" + i + ".dart";
+      assertEquals(filePath, getPackageUrlByLinearScan(packages, filePath), packageMap.getPackageUrl(filePath));
+    }
+  }
+
+  public void testResolveBenchmark() {
+    final int urlCount = Integer.getInteger("dart.package.map.benchmark.count", 100_000);
+    final int packageCount = 1000;
+    final DartPackageMap packageMap = createPackageMap(createSyntheticPackages(packageCount));
+
+    final String[] urls = new String[urlCount];
+    for (int i = 0; i < urlCount; i++) {
+      urls[i] = DartUrlResolver.PACKAGE_PREFIX + "package_" + (i * 31 % packageCount) + "/src/file_" + i % 100 + ".dart";
+    }
+
+    PlatformTestUtil.startPerformanceTest("Resolving " + urlCount + " package: URIs with " + packageCount + " packages", 1_000,
+                                          () -> assertEquals(urlCount, runResolve(packageMap, urls)))
+      .attempts(3).assertTiming();
+  }
+
+  // resolves package: URIs to file paths and file paths back to package: URIs, returns the number of URIs that survived the round trip
+  private static int runResolve(@NotNull final DartPackageMap packageMap, @NotNull final String[] urls) {
+    int count = 0;
+    for (String url : urls) {
+      final String packageRelPath = url.substring(DartUrlResolver.PACKAGE_PREFIX.length());
+      final int slashIndex = packageRelPath.indexOf('/');
+      final String packageName = packageRelPath.substring(0, slashIndex);
+      final List<String> dirPaths = packageMap.getPackageNameToDirPaths().get(packageName);
+      if (dirPaths == null) continue;
+
+      final String filePath = dirPaths.get(0) + packageRelPath.substring(slashIndex);
+      if (url.equals(packageMap.getPackageUrl(filePath))) count++;
+    }
+    return count;
+  }
+}
@@ -26,6 +26,12 @@ import java.util.Set;
 /**
  * The interface {@code AnalysisServerListener} defines the behavior of objects that listen for
  * results from an analysis server.
+ * <p>
+ * By default all callbacks of a listener are invoked on a single thread in the order the server sent
+ * the notifications. If notification lanes are enabled with
+ * {@code RemoteAnalysisServerImpl.setNotificationLaneCount(int)}, notifications about different files
+ * may be delivered concurrently on several threads, so listeners must be thread-safe; notifications
+ * about the same file are still delivered in order on one thread.
  *
  * @coverage dart.server
  */
@@ -13,6 +13,8 @@
  */
 package com.google.dart.server;
 
+import org.dartlang.analysis.server.protocol.RequestError;
+
 /**
  * The interface {@code UpdateContentConsumer} defines the behavior of objects that consume
  * 'analysis.updateContent' responses.
@@ -24,4 +26,11 @@ public interface UpdateContentConsumer extends Consumer {
    * A response to the request was received.
    */
   public void onResponse();
+
+  /**
+   * The request failed, e.g. because a {@code ChangeContentOverlay} could not be applied to the content
+   * known to the server. {@link #onResponse()} is called afterwards anyway.
+   */
+  default public void onError(RequestError requestError) {
+  }
 }
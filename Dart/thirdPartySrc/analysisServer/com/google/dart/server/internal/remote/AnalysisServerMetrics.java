@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2020, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and throughput statistics of the communication with the analysis server: a latency
+ * histogram, in-flight, error, timeout and cancellation counts for each request method, and count
+ * and size of each notification kind.
+ * <p>
+ * All methods are thread-safe.
+ *
+ * @coverage dart.server.remote
+ */
+public class AnalysisServerMetrics {
+  /**
+   * Upper bounds (inclusive) of the latency histogram buckets in milliseconds. The last bucket
+   * counts all requests that took longer than the last bound.
+   */
+  public static final long[] LATENCY_BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+  private static final String EVENT_PREFIX = "\"event\":\"";
+
+  /**
+   * A snapshot of statistics of one request method.
+   */
+  public static final class RequestStatistics {
+    private final String method;
+    private final long count;
+    private final long errorCount;
+    private final long timeoutCount;
+    private final long cancellationCount;
+    private final int inFlightCount;
+    private final long totalMillis;
+    private final long maxMillis;
+    private final long[] bucketCounts;
+
+    RequestStatistics(String method,
+                      long count,
+                      long errorCount,
+                      long timeoutCount,
+                      long cancellationCount,
+                      int inFlightCount,
+                      long totalMillis,
+                      long maxMillis,
+                      long[] bucketCounts) {
+      this.method = method;
+      this.count = count;
+      this.errorCount = errorCount;
+      this.timeoutCount = timeoutCount;
+      this.cancellationCount = cancellationCount;
+      this.inFlightCount = inFlightCount;
+      this.totalMillis = totalMillis;
+      this.maxMillis = maxMillis;
+      this.bucketCounts = bucketCounts;
+    }
+
+    /**
+     * The protocol method name, e.g. {@code completion.getSuggestions}.
+     */
+    public String getMethod() {
+      return method;
+    }
+
+    /**
+     * The number of received responses.
+     */
+    public long getCount() {
+      return count;
+    }
+
+    public long getErrorCount() {
+      return errorCount;
+    }
+
+    /**
+     * The number of times the client stopped waiting for a response because of a timeout.
+     */
+    public long getTimeoutCount() {
+      return timeoutCount;
+    }
+
+    /**
+     * The number of times the client stopped waiting for a response because the operation was
+     * canceled.
+     */
+    public long getCancellationCount() {
+      return cancellationCount;
+    }
+
+    /**
+     * The number of requests that have been sent but not responded yet.
+     */
+    public int getInFlightCount() {
+      return inFlightCount;
+    }
+
+    public long getTotalMillis() {
+      return totalMillis;
+    }
+
+    public long getMaxMillis() {
+      return maxMillis;
+    }
+
+    /**
+     * Response counts for each bucket of {@link #LATENCY_BUCKET_BOUNDS_MILLIS}, the last element
+     * counts responses slower than the last bound.
+     */
+    public long[] getBucketCounts() {
+      return bucketCounts.clone();
+    }
+
+    /**
+     * Returns the upper bound of the histogram bucket that contains the given percentile, or
+     * {@link #getMaxMillis()} if it is in the last bucket. Returns {@code 0} if there were no
+     * responses.
+     */
+    public long getPercentileMillis(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long threshold = (long)Math.ceil(count * percentile / 100);
+      long sum = 0;
+      for (int i = 0; i < LATENCY_BUCKET_BOUNDS_MILLIS.length; i++) {
+        sum += bucketCounts[i];
+        if (sum >= threshold) {
+          return Math.min(LATENCY_BUCKET_BOUNDS_MILLIS[i], maxMillis);
+        }
+      }
+      return maxMillis;
+    }
+
+    @Override
+    public String toString() {
+      return method + ": " + count + " responses, " + errorCount + " errors, " + timeoutCount + " timeouts, " +
+             cancellationCount + " cancellations, " + inFlightCount + " in flight, " +
+             "avg " + (count == 0 ? 0 : totalMillis / count) + " ms, p50 <= " + getPercentileMillis(50) + " ms, " +
+             "p90 <= " + getPercentileMillis(90) + " ms, p99 <= " + getPercentileMillis(99) + " ms, max " + maxMillis + " ms";
+    }
+  }
+
+  /**
+   * A snapshot of statistics of one notification kind.
+   */
+  public static final class NotificationStatistics {
+    private final String event;
+    private final long count;
+    private final long totalChars;
+    private final long maxChars;
+
+    NotificationStatistics(String event, long count, long totalChars, long maxChars) {
+      this.event = event;
+      this.count = count;
+      this.totalChars = totalChars;
+      this.maxChars = maxChars;
+    }
+
+    public String getEvent() {
+      return event;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * The total length of the notification JSON text in characters. The protocol text is mostly
+     * ASCII, so it is close to the number of bytes received.
+     */
+    public long getTotalChars() {
+      return totalChars;
+    }
+
+    public long getMaxChars() {
+      return maxChars;
+    }
+
+    @Override
+    public String toString() {
+      return event + ": " + count + " notifications, " + totalChars + " chars, max " + maxChars + " chars";
+    }
+  }
+
+  private static final class RequestCounters {
+    private long count;
+    private long errorCount;
+    private long timeoutCount;
+    private long cancellationCount;
+    private int inFlightCount;
+    private long totalNanos;
+    private long maxNanos;
+    private final long[] bucketCounts = new long[LATENCY_BUCKET_BOUNDS_MILLIS.length + 1];
+
+    synchronized void responseReceived(long nanos, boolean error) {
+      count++;
+      if (error) {
+        errorCount++;
+      }
+      totalNanos += nanos;
+      maxNanos = Math.max(maxNanos, nanos);
+      long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+      int bucket = 0;
+      while (bucket < LATENCY_BUCKET_BOUNDS_MILLIS.length && millis > LATENCY_BUCKET_BOUNDS_MILLIS[bucket]) {
+        bucket++;
+      }
+      bucketCounts[bucket]++;
+    }
+
+    synchronized void reset() {
+      count = 0;
+      errorCount = 0;
+      timeoutCount = 0;
+      cancellationCount = 0;
+      totalNanos = 0;
+      maxNanos = 0;
+      Arrays.fill(bucketCounts, 0);
+    }
+
+    synchronized RequestStatistics getStatistics(String method) {
+      return new RequestStatistics(method, count, errorCount, timeoutCount, cancellationCount, inFlightCount,
+                                   TimeUnit.NANOSECONDS.toMillis(totalNanos), TimeUnit.NANOSECONDS.toMillis(maxNanos),
+                                   bucketCounts.clone());
+    }
+  }
+
+  private static final class NotificationCounters {
+    private long count;
+    private long totalChars;
+    private long maxChars;
+
+    synchronized void notificationReceived(int chars) {
+      count++;
+      totalChars += chars;
+      maxChars = Math.max(maxChars, chars);
+    }
+
+    synchronized NotificationStatistics getStatistics(String event) {
+      return new NotificationStatistics(event, count, totalChars, maxChars);
+    }
+  }
+
+  private static final class PendingRequest {
+    private final String method;
+    private final long startNanos;
+
+    PendingRequest(String method, long startNanos) {
+      this.method = method;
+      this.startNanos = startNanos;
+    }
+  }
+
+  private final Map<String, RequestCounters> requestCounters = new ConcurrentHashMap<>();
+  private final Map<String, NotificationCounters> notificationCounters = new ConcurrentHashMap<>();
+  private final Map<String, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+
+  /**
+   * Records that a request with the given id has been sent to the server.
+   */
+  public void requestSent(String id, String method) {
+    RequestCounters counters = getRequestCounters(method);
+    synchronized (counters) {
+      counters.inFlightCount++;
+    }
+    pendingRequests.put(id, new PendingRequest(method, System.nanoTime()));
+  }
+
+  /**
+   * Records that a response to the request with the given id has been received.
+   */
+  public void responseReceived(String id, boolean error) {
+    PendingRequest request = pendingRequests.remove(id);
+    if (request == null) {
+      return;
+    }
+    RequestCounters counters = getRequestCounters(request.method);
+    synchronized (counters) {
+      counters.inFlightCount--;
+      counters.responseReceived(System.nanoTime() - request.startNanos, error);
+    }
+  }
+
+  /**
+   * Forgets requests sent to a server that is not running anymore, their responses will never be
+   * received.
+   */
+  public void clearPendingRequests() {
+    clearPendingRequests("");
+  }
+
+  /**
+   * Forgets requests with ids starting with the given prefix, sent by a client of a server that is
+   * not running anymore. Requests of other clients sharing this instance stay in flight, see
+   * {@link RemoteAnalysisServerImpl#setRequestIdPrefix(String)}.
+   */
+  public void clearPendingRequests(String idPrefix) {
+    for (String id : new ArrayList<>(pendingRequests.keySet())) {
+      if (!id.startsWith(idPrefix)) {
+        continue;
+      }
+      PendingRequest request = pendingRequests.remove(id);
+      if (request != null) {
+        RequestCounters counters = getRequestCounters(request.method);
+        synchronized (counters) {
+          counters.inFlightCount--;
+        }
+      }
+    }
+  }
+
+  /**
+   * Records that the client stopped waiting for a response to a request with the given method
+   * because of a timeout.
+   */
+  public void requestTimedOut(String method) {
+    RequestCounters counters = getRequestCounters(method);
+    synchronized (counters) {
+      counters.timeoutCount++;
+    }
+  }
+
+  /**
+   * Records that the client stopped waiting for a response to a request with the given method
+   * because the operation was canceled.
+   */
+  public void requestCancelled(String method) {
+    RequestCounters counters = getRequestCounters(method);
+    synchronized (counters) {
+      counters.cancellationCount++;
+    }
+  }
+
+  /**
+   * Records the latency of a client operation that is not a single request, for example the time
+   * from starting a code completion until the first suggestions are shown. It is reported together
+   * with the requests, under the given name.
+   */
+  public void latencyMeasured(String name, long nanos) {
+    getRequestCounters(name).responseReceived(nanos, false);
+  }
+
+  public void notificationReceived(String event, int chars) {
+    notificationCounters.computeIfAbsent(event, e -> new NotificationCounters()).notificationReceived(chars);
+  }
+
+  /**
+   * Records a JSON line received from the server, given its beginning and its length. Notifications
+   * are recognized by the {@code event} property that comes first in the line.
+   */
+  public void jsonLineReceived(CharSequence linePrefix, int length) {
+    String prefix = linePrefix.toString();
+    int eventStart = prefix.indexOf(EVENT_PREFIX);
+    if (eventStart < 0) {
+      return;
+    }
+    eventStart += EVENT_PREFIX.length();
+    int eventEnd = prefix.indexOf('"', eventStart);
+    if (eventEnd < 0) {
+      return;
+    }
+    notificationReceived(prefix.substring(eventStart, eventEnd), length);
+  }
+
+  public List<RequestStatistics> getRequestStatistics() {
+    List<RequestStatistics> result = new ArrayList<>();
+    for (Map.Entry<String, RequestCounters> entry : requestCounters.entrySet()) {
+      result.add(entry.getValue().getStatistics(entry.getKey()));
+    }
+    result.sort((s1, s2) -> s1.getMethod().compareTo(s2.getMethod()));
+    return result;
+  }
+
+  /**
+   * Returns statistics of the given request method, or {@code null} if no such requests have been
+   * sent.
+   */
+  public RequestStatistics getRequestStatistics(String method) {
+    RequestCounters counters = requestCounters.get(method);
+    return counters != null ? counters.getStatistics(method) : null;
+  }
+
+  public List<NotificationStatistics> getNotificationStatistics() {
+    List<NotificationStatistics> result = new ArrayList<>();
+    for (Map.Entry<String, NotificationCounters> entry : notificationCounters.entrySet()) {
+      result.add(entry.getValue().getStatistics(entry.getKey()));
+    }
+    result.sort((s1, s2) -> s1.getEvent().compareTo(s2.getEvent()));
+    return result;
+  }
+
+  /**
+   * Returns all statistics as text, one request method or notification kind per line, with the
+   * latency histogram of each request method.
+   */
+  public String export() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("Latency bucket upper bounds, ms: ").append(Arrays.toString(LATENCY_BUCKET_BOUNDS_MILLIS)).append('\n');
+    builder.append("Requests:\n");
+    for (RequestStatistics statistics : getRequestStatistics()) {
+      builder.append("  ").append(statistics).append('\n');
+      builder.append("    histogram: ").append(Arrays.toString(statistics.bucketCounts)).append('\n');
+    }
+    builder.append("Notifications:\n");
+    for (NotificationStatistics statistics : getNotificationStatistics()) {
+      builder.append("  ").append(statistics).append('\n');
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Forgets all statistics except in-flight requests.
+   */
+  public void reset() {
+    for (RequestCounters counters : requestCounters.values()) {
+      counters.reset();
+    }
+    notificationCounters.clear();
+  }
+
+  private RequestCounters getRequestCounters(String method) {
+    return requestCounters.computeIfAbsent(method, m -> new RequestCounters());
+  }
+}
@@ -21,6 +21,7 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.ObjIntConsumer;
 
 /**
  * An {@link InputStream} based implementation of {@link ResponseStream}. Each line must contain
@@ -62,6 +63,10 @@ public class ByteResponseStream implements ResponseStream {
         if (!line.startsWith("{")) {
           continue;
         }
+        ObjIntConsumer<CharSequence> listener = jsonLineListener;
+        if (listener != null) {
+          listener.accept(line, line.length());
+        }
         // add a JSON line
         lineQueue.add(line);
       }
@@ -80,6 +85,7 @@ public class ByteResponseStream implements ResponseStream {
    */
   private final DebugPrintStream debugStream;
   private final Runnable onStreamEndRunnable;
+  private volatile ObjIntConsumer<CharSequence> jsonLineListener;
 
   /**
    * The queue of lines.
@@ -104,6 +110,19 @@ public class ByteResponseStream implements ResponseStream {
   }
 
   @Override
+  public void setJsonLineListener(ObjIntConsumer<CharSequence> listener) {
+    jsonLineListener = listener;
+  }
+
+  @Override
+  public Object takeResponse() throws Exception {
+    return take();
+  }
+
+  /**
+   * Takes the next response from the stream. Returns {@code null} at the end of the stream.
+   * Blocks if no response available.
+   */
   public JsonObject take() throws Exception {
     String line = lineQueue.take();
     if (line == EOF_LINE) {
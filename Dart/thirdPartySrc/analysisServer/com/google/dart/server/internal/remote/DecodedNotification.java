@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2020, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.dart.server.AnalysisServerListener;
+
+import java.util.function.Consumer;
+
+/**
+ * A notification that has been decoded directly from the server output into protocol objects,
+ * without building an intermediate {@link com.google.gson.JsonObject}.
+ *
+ * @coverage dart.server.remote
+ */
+public final class DecodedNotification {
+  private final String event;
+  private final String file;
+  private final Consumer<AnalysisServerListener> dispatcher;
+
+  public DecodedNotification(String event, String file, Consumer<AnalysisServerListener> dispatcher) {
+    this.event = event;
+    this.file = file;
+    this.dispatcher = dispatcher;
+  }
+
+  /**
+   * The notification kind, e.g. {@code analysis.highlights}.
+   */
+  public String getEvent() {
+    return event;
+  }
+
+  /**
+   * The file the notification is about, or {@code null} if it is not about a single file.
+   */
+  public String getFile() {
+    return file;
+  }
+
+  /**
+   * Notifies the given listener the same way as the corresponding {@code Notification*Processor} does.
+   */
+  public void notifyListener(AnalysisServerListener listener) {
+    dispatcher.accept(listener);
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2020, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A {@link Reader} that passes through only the lines that start with <code>{</code>, one line at
+ * a time: the end of each JSON line is reported as the end of input, and {@link #nextLine()} moves
+ * to the next JSON line. A fresh {@link com.google.gson.stream.JsonReader} is used for each line, so
+ * that a malformed line never takes buffered content of the following lines with it, while the
+ * lines are still never materialized as strings. Non-JSON (debug) lines are dropped, as
+ * {@link ByteResponseStream} does.
+ * <p>
+ * If a {@link DebugPrintStream} is given, each line is reported to it, truncated to
+ * {@link #maxDebugLineLength} characters, so that whole lines never need to be materialized.
+ * Similarly, the line listener gets the beginning of each JSON line and the line length.
+ *
+ * @coverage dart.server.remote
+ */
+class JsonLineFilterReader extends Reader {
+  private final Reader in;
+  private final DebugPrintStream debugStream;
+  private final int maxDebugLineLength;
+  private final StringBuilder debugLine;
+
+  private final char[] buffer = new char[8192];
+  private int position;
+  private int limit;
+
+  private boolean atLineStart = true;
+  private boolean skippingLine;
+  private boolean lineIsEmpty = true;
+
+  /**
+   * {@code true} if the current JSON line has been read up to its end, {@link #read} returns
+   * {@code -1} until {@link #nextLine()} is called.
+   */
+  private boolean lineEnded;
+  private boolean endOfStream;
+
+  private volatile ObjIntConsumer<CharSequence> lineListener;
+  private final StringBuilder jsonLinePrefix = new StringBuilder();
+  private boolean isJsonLine;
+  private int jsonLineLength;
+
+  JsonLineFilterReader(Reader in, DebugPrintStream debugStream, int maxDebugLineLength) {
+    this.in = in;
+    this.debugStream = debugStream;
+    this.maxDebugLineLength = maxDebugLineLength;
+    this.debugLine = debugStream != null ? new StringBuilder() : null;
+  }
+
+  @Override
+  public int read(char[] cbuf, int off, int len) throws IOException {
+    if (lineEnded) {
+      return -1;
+    }
+
+    int count = 0;
+    while (count == 0) {
+      if (position == limit && !fillBuffer()) {
+        return -1;
+      }
+
+      // do not block on the underlying reader once something has been read
+      while (position < limit && count < len) {
+        char c = buffer[position++];
+        if (c == '\n') {
+          boolean endsJsonLine = !atLineStart && !skippingLine;
+          endLine();
+          if (endsJsonLine) {
+            lineEnded = true;
+            return count > 0 ? count : -1;
+          }
+          continue;
+        }
+
+        appendToLine(c);
+        if (!skippingLine) {
+          cbuf[off + count++] = c;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Moves to the next JSON line. The rest of the current line is dropped if it has not been read
+   * up to its end, e.g. because it contains malformed JSON.
+   *
+   * @return {@code false} if the end of the underlying stream has been reached
+   */
+  boolean nextLine() throws IOException {
+    if (!lineEnded && !atLineStart) {
+      skippingLine = true;
+      while (!atLineStart) {
+        if (position == limit && !fillBuffer()) {
+          break;
+        }
+        char c = buffer[position++];
+        if (c == '\n') {
+          endLine();
+        }
+        else {
+          appendToLine(c);
+        }
+      }
+    }
+    lineEnded = false;
+    return !endOfStream;
+  }
+
+  boolean isEndOfStream() {
+    return endOfStream;
+  }
+
+  void setLineListener(ObjIntConsumer<CharSequence> listener) {
+    lineListener = listener;
+  }
+
+  private boolean fillBuffer() throws IOException {
+    limit = in.read(buffer, 0, buffer.length);
+    position = 0;
+    if (limit <= 0) {
+      limit = 0;
+      endLine();
+      endOfStream = true;
+      return false;
+    }
+    return true;
+  }
+
+  private void appendToLine(char c) {
+    if (debugLine != null && debugLine.length() < maxDebugLineLength) {
+      debugLine.append(c);
+    }
+    lineIsEmpty = false;
+
+    if (atLineStart) {
+      atLineStart = false;
+      skippingLine = c != '{';
+      isJsonLine = !skippingLine;
+    }
+
+    if (isJsonLine) {
+      jsonLineLength++;
+      if (jsonLinePrefix.length() < ResponseStream.JSON_LINE_PREFIX_LENGTH) {
+        jsonLinePrefix.append(c);
+      }
+    }
+  }
+
+  private void endLine() {
+    flushDebugLine();
+    flushJsonLine();
+    atLineStart = true;
+    skippingLine = false;
+  }
+
+  private void flushJsonLine() {
+    if (!isJsonLine) {
+      return;
+    }
+    ObjIntConsumer<CharSequence> listener = lineListener;
+    if (listener != null) {
+      listener.accept(jsonLinePrefix, jsonLineLength);
+    }
+    jsonLinePrefix.setLength(0);
+    jsonLineLength = 0;
+    isJsonLine = false;
+  }
+
+  private void flushDebugLine() {
+    if (debugLine == null || lineIsEmpty) {
+      return;
+    }
+    debugStream.println(System.currentTimeMillis() + " <= " + debugLine);
+    debugLine.setLength(0);
+    lineIsEmpty = true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -125,6 +125,11 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
    */
   private final AtomicInteger nextId = new AtomicInteger();
 
+  /**
+   * The prefix of the ids of the requests sent by this client, see {@link #setRequestIdPrefix(String)}.
+   */
+  private String requestIdPrefix = "";
+
   /**
    * A mapping between "getRefactoring" request ids and the requested refactoring kinds.
    */
@@ -151,6 +156,23 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
    */
   private final boolean checkServerVersion;
 
+  /**
+   * The number of threads processing notifications about files, see {@link ResponseDispatcher}.
+   * If {@code 0}, all responses are processed on the {@link ServerResponseReaderThread}.
+   */
+  private volatile int notificationLaneCount;
+
+  /**
+   * The dispatcher of responses of the running server or {@code null} if responses are processed
+   * on the {@link ServerResponseReaderThread}.
+   */
+  private volatile ResponseDispatcher responseDispatcher;
+
+  /**
+   * Latency and throughput statistics of requests and notifications.
+   */
+  private volatile AnalysisServerMetrics metrics = new AnalysisServerMetrics();
+
   public RemoteAnalysisServerImpl(AnalysisServerSocket socket) {
     this(socket, true);
   }
@@ -606,6 +628,45 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     startWatcher(5000);
   }
 
+  /**
+   * Sets the number of threads processing notifications about files, takes effect when the server
+   * is started. If {@code 0}, all responses are processed on a single thread in the order they were
+   * received.
+   */
+  public void setNotificationLaneCount(int notificationLaneCount) {
+    this.notificationLaneCount = notificationLaneCount;
+  }
+
+  /**
+   * Returns statistics of the {@link ResponseDispatcher} lanes, empty if responses are processed
+   * on a single thread.
+   */
+  public List<ResponseDispatcher.LaneStatistics> getResponseLaneStatistics() {
+    ResponseDispatcher dispatcher = responseDispatcher;
+    return dispatcher != null ? dispatcher.getStatistics() : ImmutableList.of();
+  }
+
+  /**
+   * Sets the object collecting latency and throughput statistics, so that statistics may be kept
+   * across server restarts. Must be called before the server is started.
+   */
+  public void setMetrics(AnalysisServerMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public AnalysisServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Sets the prefix of the ids of the requests sent by this client. Several clients sharing one
+   * {@link AnalysisServerMetrics} instance must use different prefixes, otherwise the requests
+   * they have in flight at the same time are confused. Must be called before the server is started.
+   */
+  public void setRequestIdPrefix(String requestIdPrefix) {
+    this.requestIdPrefix = requestIdPrefix;
+  }
+
   @VisibleForTesting
   public void test_waitForWorkerComplete() {
     while (!consumerMap.isEmpty()) {
@@ -620,7 +681,7 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
    * @return a unique {@link String} id to be used in the requests sent to the analysis server
    */
   public String generateUniqueId() {
-    return Integer.toString(nextId.getAndIncrement());
+    return requestIdPrefix + nextId.getAndIncrement();
   }
 
   /**
@@ -712,8 +773,79 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     return true;
   }
 
+  /**
+   * Passes the given response to the {@link ResponseDispatcher} lane that should process it.
+   */
+  private void dispatchResponse(final JsonObject response, ResponseDispatcher dispatcher) {
+    // response listeners are notified in the order responses were received
+    notifyResponseListeners(response);
+    final Runnable task = () -> {
+      try {
+        processResponseContent(response);
+      }
+      catch (Exception e) {
+        Logging.getLogger().logError(e.getMessage(), e);
+      }
+    };
+
+    JsonElement eventElement = response.get("event");
+    if (eventElement == null || !eventElement.isJsonPrimitive()) {
+      Consumer consumer = null;
+      JsonElement idElement = response.get("id");
+      if (idElement != null && idElement.isJsonPrimitive()) {
+        synchronized (consumerMapLock) {
+          consumer = consumerMap.get(idElement.getAsString());
+        }
+      }
+      if (consumer instanceof UpdateContentConsumer) {
+        // notifications received after this response are about the updated content
+        dispatcher.dispatchOrdered(task);
+      }
+      else {
+        dispatcher.dispatchPriority(task);
+      }
+      return;
+    }
+
+    String event = eventElement.getAsString();
+    if (event.equals(COMPLETION_NOTIFICATION_RESULTS) || event.equals(SEARCH_NOTIFICATION_RESULTS)) {
+      dispatcher.dispatchPriority(task);
+      return;
+    }
+
+    String file = null;
+    JsonElement paramsElement = response.get("params");
+    if (paramsElement != null && paramsElement.isJsonObject()) {
+      JsonElement fileElement = paramsElement.getAsJsonObject().get("file");
+      if (fileElement != null && fileElement.isJsonPrimitive()) {
+        file = fileElement.getAsString();
+      }
+    }
+    if (file != null) {
+      dispatcher.dispatchForFile(file, task);
+    }
+    else {
+      dispatcher.dispatchOrdered(task);
+    }
+  }
+
+  private void dispatchDecodedNotification(final DecodedNotification notification, ResponseDispatcher dispatcher) {
+    final Runnable task = () -> notification.notifyListener(listener);
+    String file = notification.getFile();
+    if (file != null) {
+      dispatcher.dispatchForFile(file, task);
+    }
+    else {
+      dispatcher.dispatchPriority(task);
+    }
+  }
+
   private void processResponse(JsonObject response) throws Exception {
     notifyResponseListeners(response);
+    processResponseContent(response);
+  }
+
+  private void processResponseContent(JsonObject response) throws Exception {
     // handle notification
     if (processNotification(response)) {
       return;
@@ -724,6 +856,7 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
       return;
     }
     String idString = idJsonPrimitive.getAsString();
+    metrics.responseReceived(idString, response.get("error") != null);
     // prepare consumer
     Consumer consumer;
     synchronized (consumerMapLock) {
@@ -743,6 +876,9 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     // Analysis Domain
     //
     if (consumer instanceof UpdateContentConsumer) {
+      if (requestError != null) {
+        ((UpdateContentConsumer)consumer).onError(requestError);
+      }
       ((UpdateContentConsumer)consumer).onResponse();
     }
     //
@@ -907,6 +1043,10 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     synchronized (consumerMapLock) {
       consumerMap.put(id, consumer);
     }
+    JsonElement method = request.get("method");
+    if (method != null && method.isJsonPrimitive()) {
+      metrics.requestSent(id, method.getAsString());
+    }
     lastRequestTime.set(System.currentTimeMillis());
     synchronized (requestSinkLock) {
       requestSink.add(request);
@@ -918,8 +1058,19 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     consumerMap.clear();
     requestSink = socket.getRequestSink();
     responseStream = socket.getResponseStream();
+    metrics.clearPendingRequests(requestIdPrefix);
+    responseStream.setJsonLineListener(metrics::jsonLineReceived);
+    if (responseStream instanceof StreamingResponseStream) {
+      // response listeners need JSON text of each notification
+      ((StreamingResponseStream)responseStream).setDirectDecodingCondition(() -> {
+        synchronized (responseListenerList) {
+          return responseListenerList.isEmpty();
+        }
+      });
+    }
     errorStream = socket.getErrorStream();
-    new ServerResponseReaderThread(responseStream).start();
+    responseDispatcher = notificationLaneCount > 0 ? new ResponseDispatcher(notificationLaneCount) : null;
+    new ServerResponseReaderThread(responseStream, responseDispatcher).start();
     if (errorStream != null) {
       new ServerErrorReaderThread(errorStream, listener).start();
     }
@@ -1121,24 +1272,54 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
   public class ServerResponseReaderThread extends Thread {
 
     private ResponseStream stream;
+    private final ResponseDispatcher dispatcher;
 
     public ServerResponseReaderThread(ResponseStream stream) {
+      this(stream, null);
+    }
+
+    public ServerResponseReaderThread(ResponseStream stream, ResponseDispatcher dispatcher) {
       setDaemon(true);
       setName("ServerResponseReaderThread");
       this.stream = stream;
+      this.dispatcher = dispatcher;
     }
 
     @Override
     public void run() {
+      try {
+        readResponses();
+      }
+      finally {
+        if (dispatcher != null) {
+          dispatcher.shutdown();
+        }
+      }
+    }
+
+    private void readResponses() {
       while (true) {
         try {
-          JsonObject response = stream.take();
+          Object response = stream.takeResponse();
           if (response == null) {
             return;
           }
           lastResponseTime.set(System.currentTimeMillis());
           try {
-            processResponse(response);
+            if (dispatcher != null) {
+              if (response instanceof DecodedNotification) {
+                dispatchDecodedNotification((DecodedNotification)response, dispatcher);
+              }
+              else {
+                dispatchResponse((JsonObject)response, dispatcher);
+              }
+            }
+            else if (response instanceof DecodedNotification) {
+              ((DecodedNotification)response).notifyListener(listener);
+            }
+            else {
+              processResponse((JsonObject)response);
+            }
           }
           finally {
             stream.lastRequestProcessed();
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2020, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.common.base.Preconditions;
+import com.google.dart.server.AnalysisServerSocket;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A stub server socket that replays the server side of a recorded session, see
+ * {@link TrafficRecorder}, without starting a server process.
+ * <p>
+ * Server lines are written to the client either with the recorded timing or as fast as possible.
+ * A response is not written until the client has sent the request with the same id, so a client
+ * that sends the same requests as the recorded one receives each response after its request, as it
+ * would from a real server. Everything that follows a response in the recording waits as well.
+ *
+ * @coverage dart.server.remote
+ */
+public class ReplayServerSocket implements AnalysisServerSocket {
+  private class ReplayThread extends Thread {
+    private final PipedOutputStream out;
+
+    ReplayThread(PipedOutputStream out) {
+      setName("ReplayServerSocket.ReplayThread");
+      setDaemon(true);
+      this.out = out;
+    }
+
+    @Override
+    public void run() {
+      try {
+        replay(out);
+      } catch (IOException e) {
+        // the client has closed the stream
+      } catch (InterruptedException e) {
+        // stopped
+      } finally {
+        try {
+          out.close();
+        } catch (IOException e) {
+          // ignore
+        }
+        synchronized (lock) {
+          finished = true;
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+
+  private class ReplayRequestSink implements RequestSink {
+    @Override
+    public void add(JsonObject request) {
+      JsonElement id = request.get("id");
+      synchronized (lock) {
+        if (id != null) {
+          receivedRequestIds.add(id.getAsString());
+        }
+        lock.notifyAll();
+      }
+    }
+
+    @Override
+    public void close() {
+      synchronized (lock) {
+        requestSinkClosed = true;
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * The server lines to replay, encoded as UTF-8 and terminated by a line separator.
+   */
+  private final byte[][] lines;
+
+  /**
+   * The recorded time of each line, in milliseconds.
+   */
+  private final long[] times;
+
+  /**
+   * For each line, the id of the response it contains, or {@code null} if it is not a response.
+   */
+  private final String[] responseIds;
+
+  /**
+   * Whether the lines should be replayed with the recorded delays between them.
+   */
+  private final boolean originalTiming;
+
+  private final Object lock = new Object();
+  private final Set<String> receivedRequestIds = new HashSet<String>();
+  private boolean requestSinkClosed;
+  private boolean finished;
+  private int replayedLineCount;
+
+  private boolean useStreamingDecoder;
+  private RequestSink requestSink;
+  private ResponseStream responseStream;
+  private ReplayThread replayThread;
+
+  /**
+   * Initializes a newly created socket that replays the server lines of the given recording.
+   *
+   * @param entries        the recorded lines, lines from the client are ignored
+   * @param originalTiming {@code true} to replay with the recorded delays, {@code false} to replay
+   *                       as fast as the client reads
+   */
+  public ReplayServerSocket(List<TrafficRecorder.Entry> entries, boolean originalTiming) {
+    List<TrafficRecorder.Entry> serverEntries = new ArrayList<TrafficRecorder.Entry>(entries.size());
+    for (TrafficRecorder.Entry entry : entries) {
+      if (entry.isFromServer()) {
+        serverEntries.add(entry);
+      }
+    }
+    int count = serverEntries.size();
+    lines = new byte[count][];
+    times = new long[count];
+    responseIds = new String[count];
+    for (int i = 0; i < count; i++) {
+      TrafficRecorder.Entry entry = serverEntries.get(i);
+      lines[i] = (entry.getLine() + "\n").getBytes(StandardCharsets.UTF_8);
+      times[i] = entry.getTime();
+      responseIds[i] = getResponseId(entry.getLine());
+    }
+    this.originalTiming = originalTiming;
+  }
+
+  /**
+   * Return the id of the response in the given line, or {@code null} if the line is not a
+   * response.
+   */
+  private static String getResponseId(String line) {
+    if (!line.startsWith("{\"id\"")) {
+      return null;
+    }
+    try {
+      JsonObject object = new JsonParser().parse(line).getAsJsonObject();
+      return object.has("event") ? null : object.get("id").getAsString();
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Block until all lines have been replayed or the socket has been stopped.
+   *
+   * @return {@code true} if the replay has finished within the given time
+   */
+  public boolean awaitFinished(long timeoutMillis) throws InterruptedException {
+    long end = System.currentTimeMillis() + timeoutMillis;
+    synchronized (lock) {
+      while (!finished) {
+        long wait = end - System.currentTimeMillis();
+        if (wait <= 0) {
+          return false;
+        }
+        lock.wait(wait);
+      }
+      return true;
+    }
+  }
+
+  @Override
+  public ByteLineReaderStream getErrorStream() {
+    return null;
+  }
+
+  /**
+   * Return the number of server lines that have been written to the client so far.
+   */
+  public int getReplayedLineCount() {
+    synchronized (lock) {
+      return replayedLineCount;
+    }
+  }
+
+  @Override
+  public RequestSink getRequestSink() {
+    Preconditions.checkNotNull(requestSink, "Server is not started.");
+    return requestSink;
+  }
+
+  @Override
+  public ResponseStream getResponseStream() {
+    Preconditions.checkNotNull(responseStream, "Server is not started.");
+    return responseStream;
+  }
+
+  @Override
+  public boolean isOpen() {
+    synchronized (lock) {
+      return replayThread != null && !finished;
+    }
+  }
+
+  /**
+   * Set whether the replayed lines should be parsed by {@link StreamingResponseStream} rather than
+   * {@link ByteResponseStream}. Must be set before the socket has been started.
+   */
+  public void setUseStreamingDecoder(boolean useStreamingDecoder) {
+    this.useStreamingDecoder = useStreamingDecoder;
+  }
+
+  @Override
+  public void start() throws Exception {
+    PipedOutputStream out = new PipedOutputStream();
+    PipedInputStream in = new PipedInputStream(out, 64 * 1024);
+    synchronized (lock) {
+      receivedRequestIds.clear();
+      requestSinkClosed = false;
+      finished = false;
+      replayedLineCount = 0;
+    }
+    requestSink = new ReplayRequestSink();
+    responseStream = useStreamingDecoder ? new StreamingResponseStream(in, null, null)
+        : new ByteResponseStream(in, null, null);
+    replayThread = new ReplayThread(out);
+    replayThread.start();
+  }
+
+  @Override
+  public void stop() {
+    if (replayThread != null) {
+      replayThread.interrupt();
+    }
+  }
+
+  private void replay(OutputStream out) throws IOException, InterruptedException {
+    long startTime = System.currentTimeMillis();
+    long firstTime = -1;
+    for (int i = 0; i < lines.length; i++) {
+      if (originalTiming && times[i] > 0) {
+        if (firstTime < 0) {
+          firstTime = times[i];
+        }
+        long delay = startTime + (times[i] - firstTime) - System.currentTimeMillis();
+        if (delay > 0) {
+          Thread.sleep(delay);
+        }
+      }
+      if (responseIds[i] != null) {
+        synchronized (lock) {
+          while (!receivedRequestIds.contains(responseIds[i])) {
+            if (requestSinkClosed) {
+              return;
+            }
+            lock.wait();
+          }
+        }
+      }
+      out.write(lines[i]);
+      out.flush();
+      synchronized (lock) {
+        replayedLineCount++;
+      }
+    }
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2020, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.dart.server.utilities.logging.Logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes server responses on several threads ("lanes"), so that a huge notification for one
+ * file doesn't delay the response to a request the user is waiting for.
+ * <ul>
+ * <li>The priority lane processes request responses and notifications that belong to them,
+ * e.g. {@code completion.results}, in the order they were received.</li>
+ * <li>Notifications about a file are processed by one of the notification lanes chosen by the
+ * file path, so notifications about the same file are processed in the order they were received,
+ * and notifications about different files are processed in parallel.</li>
+ * <li>Ordered tasks are processed after all notifications received before them have been
+ * processed and before any notification received after them. The priority lane is not blocked.</li>
+ * </ul>
+ *
+ * @coverage dart.server.remote
+ */
+public class ResponseDispatcher {
+  /**
+   * A snapshot of lane statistics.
+   */
+  public static final class LaneStatistics {
+    private final String name;
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final long processedCount;
+    private final long totalProcessingMillis;
+    private final long maxProcessingMillis;
+
+    LaneStatistics(String name,
+                   int queueDepth,
+                   int maxQueueDepth,
+                   long processedCount,
+                   long totalProcessingMillis,
+                   long maxProcessingMillis) {
+      this.name = name;
+      this.queueDepth = queueDepth;
+      this.maxQueueDepth = maxQueueDepth;
+      this.processedCount = processedCount;
+      this.totalProcessingMillis = totalProcessingMillis;
+      this.maxProcessingMillis = maxProcessingMillis;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getQueueDepth() {
+      return queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+      return maxQueueDepth;
+    }
+
+    public long getProcessedCount() {
+      return processedCount;
+    }
+
+    public long getTotalProcessingMillis() {
+      return totalProcessingMillis;
+    }
+
+    public long getMaxProcessingMillis() {
+      return maxProcessingMillis;
+    }
+
+    @Override
+    public String toString() {
+      return name + ": queued " + queueDepth + " (max " + maxQueueDepth + "), processed " + processedCount +
+             " in " + totalProcessingMillis + " ms (max " + maxProcessingMillis + " ms)";
+    }
+  }
+
+  private static final Runnable STOP = () -> {
+  };
+
+  private final class Lane extends Thread {
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private volatile int maxQueueDepth;
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong totalProcessingNanos = new AtomicLong();
+    private volatile long maxProcessingNanos;
+
+    Lane(String name) {
+      setName("ResponseDispatcher." + name);
+      setDaemon(true);
+    }
+
+    void submit(Runnable task) {
+      queue.add(task);
+      int depth = queue.size();
+      if (depth > maxQueueDepth) {
+        maxQueueDepth = depth;
+      }
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Runnable task;
+        try {
+          task = queue.take();
+        }
+        catch (InterruptedException e) {
+          return;
+        }
+        if (task == STOP) {
+          return;
+        }
+
+        long start = System.nanoTime();
+        try {
+          task.run();
+        }
+        catch (Throwable e) {
+          Logging.getLogger().logError(e.getMessage(), e);
+        }
+        long duration = System.nanoTime() - start;
+        processedCount.incrementAndGet();
+        totalProcessingNanos.addAndGet(duration);
+        if (duration > maxProcessingNanos) {
+          maxProcessingNanos = duration;
+        }
+      }
+    }
+
+    LaneStatistics getStatistics() {
+      return new LaneStatistics(getName().substring("ResponseDispatcher.".length()),
+                                queue.size(),
+                                maxQueueDepth,
+                                processedCount.get(),
+                                TimeUnit.NANOSECONDS.toMillis(totalProcessingNanos.get()),
+                                TimeUnit.NANOSECONDS.toMillis(maxProcessingNanos));
+    }
+  }
+
+  private final Lane priorityLane;
+  private final Lane[] notificationLanes;
+
+  /**
+   * @param notificationLaneCount the number of threads processing file notifications, must be positive
+   */
+  public ResponseDispatcher(int notificationLaneCount) {
+    if (notificationLaneCount <= 0) {
+      throw new IllegalArgumentException("notificationLaneCount: " + notificationLaneCount);
+    }
+    priorityLane = new Lane("priority");
+    priorityLane.start();
+    notificationLanes = new Lane[notificationLaneCount];
+    for (int i = 0; i < notificationLaneCount; i++) {
+      notificationLanes[i] = new Lane("notifications-" + i);
+      notificationLanes[i].start();
+    }
+  }
+
+  /**
+   * Processes the given task on the priority lane.
+   */
+  public void dispatchPriority(Runnable task) {
+    priorityLane.submit(task);
+  }
+
+  /**
+   * Processes the given task on the notification lane that owns the given file.
+   */
+  public void dispatchForFile(String file, Runnable task) {
+    notificationLanes[Math.floorMod(file.hashCode(), notificationLanes.length)].submit(task);
+  }
+
+  /**
+   * Processes the given task when all notification lanes are done with previously dispatched tasks.
+   * Notification lanes are paused until the task is complete.
+   */
+  public void dispatchOrdered(Runnable task) {
+    if (notificationLanes.length == 1) {
+      notificationLanes[0].submit(task);
+      return;
+    }
+
+    CountDownLatch arrived = new CountDownLatch(notificationLanes.length - 1);
+    CountDownLatch done = new CountDownLatch(1);
+    for (int i = 1; i < notificationLanes.length; i++) {
+      notificationLanes[i].submit(() -> {
+        arrived.countDown();
+        awaitUninterruptibly(done);
+      });
+    }
+    notificationLanes[0].submit(() -> {
+      awaitUninterruptibly(arrived);
+      try {
+        task.run();
+      }
+      finally {
+        done.countDown();
+      }
+    });
+  }
+
+  /**
+   * Lets the lanes finish already dispatched tasks and stops them.
+   */
+  public void shutdown() {
+    priorityLane.submit(STOP);
+    for (Lane lane : notificationLanes) {
+      lane.submit(STOP);
+    }
+  }
+
+  public List<LaneStatistics> getStatistics() {
+    List<LaneStatistics> result = new ArrayList<>(notificationLanes.length + 1);
+    result.add(priorityLane.getStatistics());
+    for (Lane lane : notificationLanes) {
+      result.add(lane.getStatistics());
+    }
+    return result;
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        latch.await();
+        break;
+      }
+      catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -15,19 +15,36 @@ package com.google.dart.server.internal.remote;
 
 import com.google.gson.JsonObject;
 
+import java.util.function.ObjIntConsumer;
+
 /**
  * A source of remote server responses.
  * 
  * @coverage dart.server.remote
  */
 public interface ResponseStream {
+  /**
+   * The minimal length of line beginnings passed to the JSON line listener.
+   */
+  int JSON_LINE_PREFIX_LENGTH = 64;
+
   /**
    * Notifies this {@link ResponseStream} that the last taken response has been processed.
    */
   void lastRequestProcessed();
 
   /**
-   * Takes the the next response from the stream. Blocks if no response available.
+   * Takes the next response from the stream, which is either a {@link JsonObject} or a
+   * {@link DecodedNotification} decoded directly from the stream. Returns {@code null} at the end
+   * of the stream. Blocks if no response available.
+   */
+  Object takeResponse() throws Exception;
+
+  /**
+   * Sets the listener notified about each JSON line read from the stream, with the beginning of
+   * the line (at least the first {@link #JSON_LINE_PREFIX_LENGTH} characters) and the line length
+   * in characters.
    */
-  JsonObject take() throws Exception;
+  default void setJsonLineListener(ObjIntConsumer<CharSequence> listener) {
+  }
 }
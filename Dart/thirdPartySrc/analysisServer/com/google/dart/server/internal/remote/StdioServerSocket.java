@@ -19,6 +19,8 @@ import com.google.dart.server.utilities.logging.Logging;
 
 import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -52,6 +54,17 @@ public class StdioServerSocket implements AnalysisServerSocket {
    */
   private String clientVersion;
 
+  /**
+   * Whether the server output is parsed by {@link StreamingResponseStream} rather than
+   * {@link ByteResponseStream}.
+   */
+  private boolean useStreamingDecoder;
+
+  /**
+   * The recorder of the complete server traffic, or {@code null} if the traffic is not recorded.
+   */
+  private TrafficRecorder trafficRecorder;
+
   public StdioServerSocket(String runtimePath, List<String> additionalVmArguments,
       String analysisServerPath, List<String> additionalServerArguments,
       DebugPrintStream debugStream) {
@@ -80,6 +93,14 @@ public class StdioServerSocket implements AnalysisServerSocket {
     return responseStream;
   }
 
+  /**
+   * Return the server process, or {@code null} if the server has not been started or has been
+   * stopped.
+   */
+  public Process getProcess() {
+    return process;
+  }
+
   @Override
   public boolean isOpen() {
     try {
@@ -108,6 +129,24 @@ public class StdioServerSocket implements AnalysisServerSocket {
     clientVersion = version;
   }
 
+  /**
+   * Set whether the server output should be parsed by {@link StreamingResponseStream}, which
+   * decodes the most voluminous notifications without building intermediate JSON trees. Must be
+   * set before the server has been started.
+   */
+  public void setUseStreamingDecoder(boolean useStreamingDecoder) {
+    this.useStreamingDecoder = useStreamingDecoder;
+  }
+
+  /**
+   * Set the recorder of the complete traffic between the client and the server, which can be
+   * replayed later by {@link ReplayServerSocket}. The recorder is closed when the server output
+   * ends. Must be set before the server has been started.
+   */
+  public void setTrafficRecorder(TrafficRecorder trafficRecorder) {
+    this.trafficRecorder = trafficRecorder;
+  }
+
   @Override
   public void start() throws Exception {
     String[] arguments = computeProcessArguments();
@@ -126,8 +165,16 @@ public class StdioServerSocket implements AnalysisServerSocket {
     }
     ProcessBuilder processBuilder = new ProcessBuilder(arguments);
     process = processBuilder.start();
-    requestSink = new ByteRequestSink(process.getOutputStream(), debugStream);
-    responseStream = new ByteResponseStream(process.getInputStream(), debugStream, () -> requestSink.close());
+    OutputStream serverInput = process.getOutputStream();
+    InputStream serverOutput = process.getInputStream();
+    if (trafficRecorder != null) {
+      serverInput = trafficRecorder.recordServerInput(serverInput);
+      serverOutput = trafficRecorder.recordServerOutput(serverOutput);
+    }
+    requestSink = new ByteRequestSink(serverInput, debugStream);
+    responseStream = useStreamingDecoder
+                     ? new StreamingResponseStream(serverOutput, debugStream, () -> requestSink.close())
+                     : new ByteResponseStream(serverOutput, debugStream, () -> requestSink.close());
     errorStream = new ByteLineReaderStream(process.getErrorStream());
   }
 
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2020, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import com.google.dart.server.internal.remote.processor.StreamingNotificationDecoder;
+import com.google.dart.server.utilities.logging.Logging;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BooleanSupplier;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * An {@link InputStream} based implementation of {@link ResponseStream} that parses the server
+ * output with a streaming {@link JsonReader} instead of reading each line into a {@link String}
+ * and building a JSON tree from it.
+ * <p>
+ * Params of the notifications supported by {@link StreamingNotificationDecoder} are decoded
+ * straight into protocol objects and returned from {@link #takeResponse()} as
+ * {@link DecodedNotification}s, all other responses are returned as {@link JsonObject}s.
+ *
+ * @coverage dart.server.remote
+ */
+public class StreamingResponseStream implements ResponseStream {
+  private class ResponseReaderThread extends Thread {
+    public ResponseReaderThread() {
+      setName("StreamingResponseStream.ResponseReaderThread");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        do {
+          // a fresh reader for each line, so that a malformed line does not affect the following ones
+          JsonReader jsonReader = createJsonReader();
+          try {
+            while (jsonReader.peek() != JsonToken.END_DOCUMENT) {
+              responseQueue.add(readResponse(jsonReader));
+            }
+          }
+          catch (JsonIOException e) {
+            // stream closed while reading a value with JsonParser
+            break;
+          }
+          catch (MalformedJsonException | EOFException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            // the rest of the broken line is dropped by nextLine(), reading continues from the next line
+            if (!lineFilterReader.isEndOfStream()) {
+              Logging.getLogger().logError("Parse server message failed", e);
+            }
+          }
+        }
+        while (lineFilterReader.nextLine());
+      }
+      catch (IOException e) {
+        // stream closed
+      }
+
+      responseQueue.add(EOF);
+      if (onStreamEndRunnable != null) {
+        onStreamEndRunnable.run();
+      }
+    }
+  }
+
+  private static final Object EOF = new Object();
+
+  /**
+   * Lines reported to the {@link DebugPrintStream} are truncated to this length.
+   */
+  private static final int MAX_DEBUG_LINE_LENGTH = 1000;
+
+  private static final JsonParser JSON_PARSER = new JsonParser();
+
+  private final JsonLineFilterReader lineFilterReader;
+  private final Runnable onStreamEndRunnable;
+
+  /**
+   * The queue of {@link JsonObject}s and {@link DecodedNotification}s.
+   */
+  private final BlockingQueue<Object> responseQueue = new LinkedBlockingQueue<Object>();
+
+  private volatile BooleanSupplier directDecodingCondition = () -> true;
+
+  /**
+   * Initializes a newly created response stream.
+   *
+   * @param stream the byte stream to read JSON objects from
+   * @param debugStream the {@link DebugPrintStream} to print all lines to, may be {@code null}
+   */
+  public StreamingResponseStream(InputStream stream, DebugPrintStream debugStream, Runnable onStreamEndRunnable) {
+    lineFilterReader =
+      new JsonLineFilterReader(new InputStreamReader(stream, StandardCharsets.UTF_8), debugStream, MAX_DEBUG_LINE_LENGTH);
+    this.onStreamEndRunnable = onStreamEndRunnable;
+    new ResponseReaderThread().start();
+  }
+
+  /**
+   * Notifications are decoded directly only while the given condition is met. It is used to
+   * disable direct decoding while there are listeners that need JSON text of every response.
+   */
+  public void setDirectDecodingCondition(BooleanSupplier condition) {
+    directDecodingCondition = condition;
+  }
+
+  @Override
+  public void lastRequestProcessed() {
+  }
+
+  @Override
+  public void setJsonLineListener(ObjIntConsumer<CharSequence> listener) {
+    lineFilterReader.setLineListener(listener);
+  }
+
+  @Override
+  public Object takeResponse() throws Exception {
+    Object response = responseQueue.take();
+    if (response == EOF) {
+      responseQueue.add(response);
+      return null;
+    }
+    return response;
+  }
+
+  private JsonReader createJsonReader() {
+    JsonReader jsonReader = new JsonReader(lineFilterReader);
+    // lenient mode allows a sequence of top-level objects on a line
+    jsonReader.setLenient(true);
+    return jsonReader;
+  }
+
+  private Object readResponse(JsonReader reader) throws IOException {
+    JsonObject response = new JsonObject();
+    String event = null;
+    DecodedNotification decoded = null;
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("event") && reader.peek() == JsonToken.STRING) {
+        event = reader.nextString();
+        response.addProperty(name, event);
+      }
+      else if (name.equals("params") &&
+               event != null &&
+               StreamingNotificationDecoder.canDecode(event) &&
+               directDecodingCondition.getAsBoolean()) {
+        decoded = StreamingNotificationDecoder.decodeParams(event, reader);
+      }
+      else {
+        response.add(name, JSON_PARSER.parse(reader));
+      }
+    }
+    reader.endObject();
+
+    return decoded != null ? decoded : response;
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2020, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the complete stdio traffic between the client and the analysis server, so that a session
+ * can later be replayed by {@link ReplayServerSocket}.
+ * <p>
+ * Each line of the recording is {@code <millis> <= <line>} for a line written by the server, or
+ * {@code <millis> => <line>} for a line written by the client. The lines are taken from tees of
+ * the process streams rather than from the {@link DebugPrintStream}, which sees truncated lines
+ * only.
+ *
+ * @coverage dart.server.remote
+ */
+public class TrafficRecorder implements Closeable {
+  /**
+   * A single recorded line.
+   */
+  public static final class Entry {
+    private final long time;
+    private final boolean fromServer;
+    private final String line;
+
+    public Entry(long time, boolean fromServer, String line) {
+      this.time = time;
+      this.fromServer = fromServer;
+      this.line = line;
+    }
+
+    /**
+     * Return the line, without the line terminator.
+     */
+    public String getLine() {
+      return line;
+    }
+
+    /**
+     * Return the time at which the line was recorded, in milliseconds.
+     */
+    public long getTime() {
+      return time;
+    }
+
+    /**
+     * Return {@code true} if the line was written by the server, {@code false} if by the client.
+     */
+    public boolean isFromServer() {
+      return fromServer;
+    }
+  }
+
+  /**
+   * A tee that records each complete line passing through the stream.
+   */
+  private class LineTee {
+    private final boolean fromServer;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(1024);
+
+    LineTee(boolean fromServer) {
+      this.fromServer = fromServer;
+    }
+
+    void accept(byte[] bytes, int offset, int length) {
+      int lineStart = offset;
+      int end = offset + length;
+      for (int i = offset; i < end; i++) {
+        if (bytes[i] == '\n') {
+          line.write(bytes, lineStart, i - lineStart);
+          flushLine();
+          lineStart = i + 1;
+        }
+      }
+      line.write(bytes, lineStart, end - lineStart);
+    }
+
+    void flushLine() {
+      byte[] bytes = line.toByteArray();
+      int length = bytes.length;
+      if (length > 0 && bytes[length - 1] == '\r') {
+        length--;
+      }
+      String text = new String(bytes, 0, length, StandardCharsets.UTF_8);
+      line.reset();
+      record(fromServer, text);
+    }
+  }
+
+  private static final String SERVER_SEPARATOR = " <= ";
+  private static final String CLIENT_SEPARATOR = " => ";
+
+  private final Writer writer;
+  private boolean closed;
+
+  /**
+   * Initializes a newly created recorder that writes the recording to the given writer.
+   */
+  public TrafficRecorder(Writer writer) {
+    this.writer = writer;
+  }
+
+  /**
+   * Initializes a newly created recorder that writes the recording to the given file, replacing
+   * its previous content.
+   */
+  public TrafficRecorder(File file) throws IOException {
+    this(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Read a recording written by a {@link TrafficRecorder}. Lines without a timestamp and a
+   * direction are read as server lines with time {@code 0}, so that a raw dump of the server output
+   * can be replayed too.
+   */
+  public static List<Entry> read(Reader reader) throws IOException {
+    List<Entry> entries = new ArrayList<Entry>();
+    BufferedReader lineReader = new BufferedReader(reader);
+    String line;
+    while ((line = lineReader.readLine()) != null) {
+      entries.add(parseLine(line));
+    }
+    return entries;
+  }
+
+  /**
+   * Read a recording from the given file, see {@link #read(Reader)}.
+   */
+  public static List<Entry> read(File file) throws IOException {
+    try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+      return read(reader);
+    }
+  }
+
+  private static Entry parseLine(String line) {
+    int digits = 0;
+    while (digits < line.length() && Character.isDigit(line.charAt(digits))) {
+      digits++;
+    }
+    if (digits > 0 && digits < 19) {
+      if (line.startsWith(SERVER_SEPARATOR, digits)) {
+        return new Entry(Long.parseLong(line.substring(0, digits)), true, line.substring(digits + SERVER_SEPARATOR.length()));
+      }
+      if (line.startsWith(CLIENT_SEPARATOR, digits)) {
+        return new Entry(Long.parseLong(line.substring(0, digits)), false, line.substring(digits + CLIENT_SEPARATOR.length()));
+      }
+    }
+    return new Entry(0, true, line);
+  }
+
+  /**
+   * Close the recording. Lines received after closing are ignored.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      writer.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  /**
+   * Return an {@link InputStream} that reads from the given server output and records each line
+   * that has been read. The recording is closed when the end of the stream is reached.
+   */
+  public InputStream recordServerOutput(InputStream stream) {
+    final LineTee tee = new LineTee(true);
+    return new FilterInputStream(stream) {
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b == -1) {
+          TrafficRecorder.this.close();
+        } else {
+          tee.accept(new byte[] {(byte) b}, 0, 1);
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int count = super.read(b, off, len);
+        if (count == -1) {
+          TrafficRecorder.this.close();
+        } else {
+          tee.accept(b, off, count);
+        }
+        return count;
+      }
+
+      @Override
+      public void close() throws IOException {
+        TrafficRecorder.this.close();
+        super.close();
+      }
+    };
+  }
+
+  /**
+   * Return an {@link OutputStream} that writes to the given server input and records each line
+   * that has been written.
+   */
+  public OutputStream recordServerInput(OutputStream stream) {
+    final LineTee tee = new LineTee(false);
+    return new FilterOutputStream(stream) {
+      @Override
+      public void write(int b) throws IOException {
+        out.write(b);
+        tee.accept(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        tee.accept(b, off, len);
+      }
+    };
+  }
+
+  private synchronized void record(boolean fromServer, String line) {
+    if (closed) {
+      return;
+    }
+    try {
+      writer.write(Long.toString(System.currentTimeMillis()));
+      writer.write(fromServer ? SERVER_SEPARATOR : CLIENT_SEPARATOR);
+      writer.write(line);
+      writer.write('\n');
+      if (!fromServer) {
+        // requests are rare, make sure that a crash does not lose the last ones
+        writer.flush();
+      }
+    } catch (IOException e) {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,789 @@
+/*
+ * Copyright (c) 2020, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote.processor;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.dart.server.internal.remote.DecodedNotification;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.dartlang.analysis.server.protocol.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decodes the params of the most voluminous notifications straight from a {@link JsonReader} into
+ * protocol objects. The result is the same as produced by the corresponding
+ * {@code Notification*Processor} from a {@link com.google.gson.JsonObject}, but no intermediate
+ * JSON tree is built.
+ * <p>
+ * Unknown members are skipped, absent optional members are decoded as {@code null} exactly as
+ * {@code fromJson()} methods in {@code org.dartlang.analysis.server.protocol} do.
+ *
+ * @coverage dart.server.remote.processor
+ */
+public class StreamingNotificationDecoder {
+  private static final String ANALYSIS_NOTIFICATION_ERRORS = "analysis.errors";
+  private static final String ANALYSIS_NOTIFICATION_HIGHTLIGHTS = "analysis.highlights";
+  private static final String ANALYSIS_NOTIFICATION_NAVIGATION = "analysis.navigation";
+  private static final String ANALYSIS_NOTIFICATION_OUTLINE = "analysis.outline";
+  private static final String COMPLETION_NOTIFICATION_RESULTS = "completion.results";
+
+  private static final Set<String> DECODED_EVENTS = ImmutableSet.of(ANALYSIS_NOTIFICATION_ERRORS,
+                                                                     ANALYSIS_NOTIFICATION_HIGHTLIGHTS,
+                                                                     ANALYSIS_NOTIFICATION_NAVIGATION,
+                                                                     ANALYSIS_NOTIFICATION_OUTLINE,
+                                                                     COMPLETION_NOTIFICATION_RESULTS);
+
+  /**
+   * Returns {@code true} if the params of the given notification kind can be decoded by
+   * {@link #decodeParams(String, JsonReader)}.
+   */
+  public static boolean canDecode(String event) {
+    return DECODED_EVENTS.contains(event);
+  }
+
+  /**
+   * Decodes the {@code params} object of a notification. The reader must be positioned at the
+   * beginning of the object, the whole object is consumed.
+   */
+  public static DecodedNotification decodeParams(String event, JsonReader reader) throws IOException {
+    switch (event) {
+      case ANALYSIS_NOTIFICATION_ERRORS:
+        return decodeErrors(reader);
+      case ANALYSIS_NOTIFICATION_HIGHTLIGHTS:
+        return decodeHighlights(reader);
+      case ANALYSIS_NOTIFICATION_NAVIGATION:
+        return decodeNavigation(reader);
+      case ANALYSIS_NOTIFICATION_OUTLINE:
+        return decodeOutline(reader);
+      case COMPLETION_NOTIFICATION_RESULTS:
+        return decodeCompletionResults(reader);
+      default:
+        throw new IllegalArgumentException("Unsupported notification: " + event);
+    }
+  }
+
+  private static DecodedNotification decodeErrors(JsonReader reader) throws IOException {
+    String file = null;
+    List<AnalysisError> errors = new ArrayList<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "file":
+          file = readString(reader);
+          break;
+        case "errors":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            errors.add(readAnalysisError(reader));
+          }
+          reader.endArray();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    final String finalFile = file;
+    return new DecodedNotification(ANALYSIS_NOTIFICATION_ERRORS, finalFile, listener -> listener.computedErrors(finalFile, errors));
+  }
+
+  private static DecodedNotification decodeHighlights(JsonReader reader) throws IOException {
+    String file = null;
+    List<HighlightRegion> regions = new ArrayList<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "file":
+          file = readString(reader);
+          break;
+        case "regions":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            regions.add(readHighlightRegion(reader));
+          }
+          reader.endArray();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    final String finalFile = file;
+    return new DecodedNotification(ANALYSIS_NOTIFICATION_HIGHTLIGHTS, finalFile, listener -> listener.computedHighlights(finalFile, regions));
+  }
+
+  private static DecodedNotification decodeNavigation(JsonReader reader) throws IOException {
+    String file = null;
+    List<NavigationRegion> regions = new ArrayList<>();
+    List<NavigationTarget> targets = new ArrayList<>();
+    List<String> files = Collections.emptyList();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "file":
+          file = readString(reader);
+          break;
+        case "regions":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            regions.add(readNavigationRegion(reader));
+          }
+          reader.endArray();
+          break;
+        case "targets":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            targets.add(readNavigationTarget(reader));
+          }
+          reader.endArray();
+          break;
+        case "files":
+          files = readStringList(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    // regions and targets may come in any order, link them when everything is read
+    String[] targetFiles = files.toArray(new String[0]);
+    for (NavigationTarget target : targets) {
+      target.lookupFile(targetFiles);
+    }
+    for (NavigationRegion region : regions) {
+      region.lookupTargets(targets);
+    }
+
+    final String finalFile = file;
+    return new DecodedNotification(ANALYSIS_NOTIFICATION_NAVIGATION, finalFile, listener -> listener.computedNavigation(finalFile, regions));
+  }
+
+  private static DecodedNotification decodeOutline(JsonReader reader) throws IOException {
+    String file = null;
+    OutlineData outlineData = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "file":
+          file = readString(reader);
+          break;
+        case "outline":
+          outlineData = readOutline(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    final String finalFile = file;
+    final Outline outline = outlineData == null ? null : outlineData.toOutline(null);
+    return new DecodedNotification(ANALYSIS_NOTIFICATION_OUTLINE, finalFile, listener -> listener.computedOutline(finalFile, outline));
+  }
+
+  private static DecodedNotification decodeCompletionResults(JsonReader reader) throws IOException {
+    String completionId = null;
+    int replacementOffset = 0;
+    int replacementLength = 0;
+    List<CompletionSuggestion> results = new ArrayList<>();
+    List<IncludedSuggestionSet> includedSuggestionSets = Collections.emptyList();
+    List<String> includedElementKinds = null;
+    List<String> includedSuggestionKinds = null;
+    List<IncludedSuggestionRelevanceTag> includedSuggestionRelevanceTags = Collections.emptyList();
+    boolean isLast = false;
+    String libraryFile = null;
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "id":
+          completionId = readString(reader);
+          break;
+        case "replacementOffset":
+          replacementOffset = reader.nextInt();
+          break;
+        case "replacementLength":
+          replacementLength = reader.nextInt();
+          break;
+        case "results":
+          reader.beginArray();
+          while (reader.hasNext()) {
+            results.add(readCompletionSuggestion(reader));
+          }
+          reader.endArray();
+          break;
+        case "includedSuggestionSets":
+          includedSuggestionSets = new ArrayList<>();
+          reader.beginArray();
+          while (reader.hasNext()) {
+            includedSuggestionSets.add(readIncludedSuggestionSet(reader));
+          }
+          reader.endArray();
+          break;
+        case "includedElementKinds":
+          includedElementKinds = readStringList(reader);
+          break;
+        case "includedSuggestionKinds":
+          includedSuggestionKinds = readStringList(reader);
+          break;
+        case "includedSuggestionRelevanceTags":
+          includedSuggestionRelevanceTags = new ArrayList<>();
+          reader.beginArray();
+          while (reader.hasNext()) {
+            includedSuggestionRelevanceTags.add(readIncludedSuggestionRelevanceTag(reader));
+          }
+          reader.endArray();
+          break;
+        case "isLast":
+          isLast = reader.nextBoolean();
+          break;
+        case "libraryFile":
+          libraryFile = readString(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    final String finalCompletionId = completionId;
+    final int finalReplacementOffset = replacementOffset;
+    final int finalReplacementLength = replacementLength;
+    final List<IncludedSuggestionSet> finalIncludedSuggestionSets = includedSuggestionSets;
+    final List<String> finalIncludedElementKinds = includedElementKinds != null ? includedElementKinds
+                                                   : includedSuggestionKinds != null ? includedSuggestionKinds
+                                                   : Collections.emptyList();
+    final List<IncludedSuggestionRelevanceTag> finalIncludedSuggestionRelevanceTags = includedSuggestionRelevanceTags;
+    final boolean finalIsLast = isLast;
+    final String finalLibraryFile = libraryFile;
+    return new DecodedNotification(COMPLETION_NOTIFICATION_RESULTS, null, listener -> listener.computedCompletion(
+      finalCompletionId,
+      finalReplacementOffset,
+      finalReplacementLength,
+      results,
+      finalIncludedSuggestionSets,
+      finalIncludedElementKinds,
+      finalIncludedSuggestionRelevanceTags,
+      finalIsLast,
+      finalLibraryFile));
+  }
+
+  private static HighlightRegion readHighlightRegion(JsonReader reader) throws IOException {
+    String type = null;
+    int offset = 0;
+    int length = 0;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "type":
+          type = readString(reader);
+          break;
+        case "offset":
+          offset = reader.nextInt();
+          break;
+        case "length":
+          length = reader.nextInt();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new HighlightRegion(type, offset, length);
+  }
+
+  private static NavigationRegion readNavigationRegion(JsonReader reader) throws IOException {
+    int offset = 0;
+    int length = 0;
+    int[] targets = new int[0];
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "offset":
+          offset = reader.nextInt();
+          break;
+        case "length":
+          length = reader.nextInt();
+          break;
+        case "targets":
+          targets = readIntArray(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new NavigationRegion(offset, length, targets);
+  }
+
+  private static NavigationTarget readNavigationTarget(JsonReader reader) throws IOException {
+    String kind = null;
+    int fileIndex = 0;
+    int offset = 0;
+    int length = 0;
+    int startLine = 0;
+    int startColumn = 0;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "kind":
+          kind = readString(reader);
+          break;
+        case "fileIndex":
+          fileIndex = reader.nextInt();
+          break;
+        case "offset":
+          offset = reader.nextInt();
+          break;
+        case "length":
+          length = reader.nextInt();
+          break;
+        case "startLine":
+          startLine = reader.nextInt();
+          break;
+        case "startColumn":
+          startColumn = reader.nextInt();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new NavigationTarget(kind, fileIndex, offset, length, startLine, startColumn);
+  }
+
+  private static AnalysisError readAnalysisError(JsonReader reader) throws IOException {
+    String severity = null;
+    String type = null;
+    Location location = null;
+    String message = null;
+    String correction = null;
+    String code = null;
+    String url = null;
+    List<DiagnosticMessage> contextMessages = null;
+    Boolean hasFix = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "severity":
+          severity = readString(reader);
+          break;
+        case "type":
+          type = readString(reader);
+          break;
+        case "location":
+          location = readLocation(reader);
+          break;
+        case "message":
+          message = readString(reader);
+          break;
+        case "correction":
+          correction = readString(reader);
+          break;
+        case "code":
+          code = readString(reader);
+          break;
+        case "url":
+          url = readString(reader);
+          break;
+        case "contextMessages":
+          contextMessages = new ArrayList<>();
+          reader.beginArray();
+          while (reader.hasNext()) {
+            contextMessages.add(readDiagnosticMessage(reader));
+          }
+          reader.endArray();
+          break;
+        case "hasFix":
+          hasFix = readBoolean(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new AnalysisError(severity, type, location, message, correction, code, url, contextMessages, hasFix);
+  }
+
+  private static DiagnosticMessage readDiagnosticMessage(JsonReader reader) throws IOException {
+    String message = null;
+    Location location = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "message":
+          message = readString(reader);
+          break;
+        case "location":
+          location = readLocation(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new DiagnosticMessage(message, location);
+  }
+
+  private static Location readLocation(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    String file = null;
+    int offset = 0;
+    int length = 0;
+    int startLine = 0;
+    int startColumn = 0;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "file":
+          file = readString(reader);
+          break;
+        case "offset":
+          offset = reader.nextInt();
+          break;
+        case "length":
+          length = reader.nextInt();
+          break;
+        case "startLine":
+          startLine = reader.nextInt();
+          break;
+        case "startColumn":
+          startColumn = reader.nextInt();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new Location(file, offset, length, startLine, startColumn);
+  }
+
+  private static Element readElement(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    String kind = null;
+    String name = null;
+    Location location = null;
+    int flags = 0;
+    String parameters = null;
+    String returnType = null;
+    String typeParameters = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "kind":
+          kind = readString(reader);
+          break;
+        case "name":
+          name = readString(reader);
+          break;
+        case "location":
+          location = readLocation(reader);
+          break;
+        case "flags":
+          flags = reader.nextInt();
+          break;
+        case "parameters":
+          parameters = readString(reader);
+          break;
+        case "returnType":
+          returnType = readString(reader);
+          break;
+        case "typeParameters":
+          typeParameters = readString(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new Element(kind, name, location, flags, parameters, returnType, typeParameters);
+  }
+
+  /**
+   * {@link Outline} needs its parent at construction time, but members of an outline object may
+   * come in any order, so outline data is collected first and the tree is created afterwards.
+   */
+  private static final class OutlineData {
+    private Element element;
+    private int offset;
+    private int length;
+    private Integer codeOffset;
+    private Integer codeLength;
+    private final List<OutlineData> children = new ArrayList<>();
+
+    private Outline toOutline(Outline parent) {
+      Outline outline = new Outline(parent,
+                                    element,
+                                    offset,
+                                    length,
+                                    codeOffset != null ? codeOffset : offset,
+                                    codeLength != null ? codeLength : length);
+      List<Outline> childrenList = new ArrayList<>(children.size());
+      for (OutlineData child : children) {
+        childrenList.add(child.toOutline(outline));
+      }
+      outline.setChildren(childrenList);
+      return outline;
+    }
+  }
+
+  private static OutlineData readOutline(JsonReader reader) throws IOException {
+    OutlineData data = new OutlineData();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "element":
+          data.element = readElement(reader);
+          break;
+        case "offset":
+          data.offset = reader.nextInt();
+          break;
+        case "length":
+          data.length = reader.nextInt();
+          break;
+        case "codeOffset":
+          data.codeOffset = readInteger(reader);
+          break;
+        case "codeLength":
+          data.codeLength = readInteger(reader);
+          break;
+        case "children":
+          if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+              data.children.add(readOutline(reader));
+            }
+            reader.endArray();
+          }
+          else {
+            reader.skipValue();
+          }
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return data;
+  }
+
+  private static CompletionSuggestion readCompletionSuggestion(JsonReader reader) throws IOException {
+    String kind = null;
+    int relevance = 0;
+    String completion = null;
+    String displayText = null;
+    int selectionOffset = 0;
+    int selectionLength = 0;
+    boolean isDeprecated = false;
+    boolean isPotential = false;
+    String docSummary = null;
+    String docComplete = null;
+    String declaringType = null;
+    String defaultArgumentListString = null;
+    int[] defaultArgumentListTextRanges = null;
+    Element element = null;
+    String returnType = null;
+    List<String> parameterNames = null;
+    List<String> parameterTypes = null;
+    Integer requiredParameterCount = null;
+    Boolean hasNamedParameters = null;
+    String parameterName = null;
+    String parameterType = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "kind":
+          kind = readString(reader);
+          break;
+        case "relevance":
+          relevance = reader.nextInt();
+          break;
+        case "completion":
+          completion = readString(reader);
+          break;
+        case "displayText":
+          displayText = readString(reader);
+          break;
+        case "selectionOffset":
+          selectionOffset = reader.nextInt();
+          break;
+        case "selectionLength":
+          selectionLength = reader.nextInt();
+          break;
+        case "isDeprecated":
+          isDeprecated = reader.nextBoolean();
+          break;
+        case "isPotential":
+          isPotential = reader.nextBoolean();
+          break;
+        case "docSummary":
+          docSummary = readString(reader);
+          break;
+        case "docComplete":
+          docComplete = readString(reader);
+          break;
+        case "declaringType":
+          declaringType = readString(reader);
+          break;
+        case "defaultArgumentListString":
+          defaultArgumentListString = readString(reader);
+          break;
+        case "defaultArgumentListTextRanges":
+          defaultArgumentListTextRanges = readIntArray(reader);
+          break;
+        case "element":
+          element = readElement(reader);
+          break;
+        case "returnType":
+          returnType = readString(reader);
+          break;
+        case "parameterNames":
+          parameterNames = readStringList(reader);
+          break;
+        case "parameterTypes":
+          parameterTypes = readStringList(reader);
+          break;
+        case "requiredParameterCount":
+          requiredParameterCount = readInteger(reader);
+          break;
+        case "hasNamedParameters":
+          hasNamedParameters = readBoolean(reader);
+          break;
+        case "parameterName":
+          parameterName = readString(reader);
+          break;
+        case "parameterType":
+          parameterType = readString(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new CompletionSuggestion(kind, relevance, completion, displayText, selectionOffset, selectionLength, isDeprecated, isPotential,
+                                    docSummary, docComplete, declaringType, defaultArgumentListString, defaultArgumentListTextRanges,
+                                    element, returnType, parameterNames, parameterTypes, requiredParameterCount, hasNamedParameters,
+                                    parameterName, parameterType);
+  }
+
+  private static IncludedSuggestionSet readIncludedSuggestionSet(JsonReader reader) throws IOException {
+    int id = 0;
+    int relevance = 0;
+    String displayUri = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "id":
+          id = reader.nextInt();
+          break;
+        case "relevance":
+          relevance = reader.nextInt();
+          break;
+        case "displayUri":
+          displayUri = readString(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new IncludedSuggestionSet(id, relevance, displayUri);
+  }
+
+  private static IncludedSuggestionRelevanceTag readIncludedSuggestionRelevanceTag(JsonReader reader) throws IOException {
+    String tag = null;
+    int relevanceBoost = 0;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "tag":
+          tag = readString(reader);
+          break;
+        case "relevanceBoost":
+          relevanceBoost = reader.nextInt();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new IncludedSuggestionRelevanceTag(tag, relevanceBoost);
+  }
+
+  private static String readString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextString();
+  }
+
+  private static Integer readInteger(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextInt();
+  }
+
+  private static Boolean readBoolean(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextBoolean();
+  }
+
+  private static int[] readIntArray(JsonReader reader) throws IOException {
+    int[] result = new int[16];
+    int size = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (size == result.length) {
+        int[] newResult = new int[size * 2];
+        System.arraycopy(result, 0, newResult, 0, size);
+        result = newResult;
+      }
+      result[size++] = reader.nextInt();
+    }
+    reader.endArray();
+    if (size == result.length) {
+      return result;
+    }
+    int[] trimmed = new int[size];
+    System.arraycopy(result, 0, trimmed, 0, size);
+    return trimmed;
+  }
+
+  private static List<String> readStringList(JsonReader reader) throws IOException {
+    List<String> result = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      result.add(reader.nextString());
+    }
+    reader.endArray();
+    return result;
+  }
+}